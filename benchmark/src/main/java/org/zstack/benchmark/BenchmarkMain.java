@@ -0,0 +1,49 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, build and run them by:
+ *
+ * mvn -P benchmark -pl benchmark -am package -DskipTests
+ * java -jar benchmark/target/benchmarks.jar [JMH options] [benchmark regexp]
+ *
+ * Benchmarks measure in sample-time mode so results have latency percentiles. Unless
+ * overridden by the JMH options, allocation is recorded by the GC profiler and results
+ * are written to benchmark-results.json, which can be diffed between releases.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+
+        if (cmd.shouldList()) {
+            new Runner(cmd).list();
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+
+        if (!cmd.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+
+        if (!cmd.getResult().hasValue()) {
+            builder.result("benchmark-results.json");
+        }
+
+        if (cmd.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+
+        new Runner(builder.build()).run();
+    }
+}
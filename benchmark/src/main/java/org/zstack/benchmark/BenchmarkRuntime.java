@@ -0,0 +1,30 @@
+package org.zstack.benchmark;
+
+import org.zstack.core.aspect.ThreadAspect;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.core.thread.ThreadFacadeImpl;
+
+/**
+ * The part of the management node runtime shared by benchmarks, wired by hand instead
+ * of by Spring: a real ThreadFacade with its thread pools, dispatch queues and timer,
+ * also used by @AsyncThread methods.
+ */
+public class BenchmarkRuntime {
+    private static ThreadFacadeImpl thdf;
+
+    public static synchronized ThreadFacade getThreadFacade() {
+        if (thdf != null) {
+            return thdf;
+        }
+
+        ThreadFacadeImpl t = new ThreadFacadeImpl();
+        Stubs.inject(t, "jmxf", Stubs.stub(JmxFacade.class));
+        t.init();
+        Stubs.inject(Stubs.get(t, "dpq"), "_threadFacade", t);
+        Stubs.inject(ThreadAspect.aspectOf(), "thread", t);
+
+        thdf = t;
+        return thdf;
+    }
+}
@@ -0,0 +1,102 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.cloudbus.CloudBusImpl3;
+import org.zstack.core.cloudbus.DeadMessageManager;
+import org.zstack.core.cloudbus.ResourceDestinationMaker;
+import org.zstack.core.componentloader.PluginRegistry;
+import org.zstack.core.errorcode.ErrorFacade;
+import org.zstack.core.timeout.ApiTimeoutManager;
+import org.zstack.header.Service;
+import org.zstack.header.message.Message;
+import org.zstack.header.message.MessageReply;
+import org.zstack.header.message.NeedReplyMessage;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Round trip of a message sent to a service on the same management node: sending,
+ * dispatching to the service's queue, replying and calling back the sender.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class CloudBusBenchmark {
+    private static final String SERVICE_ID = "benchmark.service";
+
+    public static class BenchmarkMsg extends NeedReplyMessage {
+    }
+
+    private class EchoService implements Service {
+        @Override
+        public void handleMessage(Message msg) {
+            bus.reply(msg, new MessageReply());
+        }
+
+        @Override
+        public String getId() {
+            return SERVICE_ID;
+        }
+
+        @Override
+        public int getSyncLevel() {
+            return 0;
+        }
+
+        @Override
+        public List<String> getAliasIds() {
+            return null;
+        }
+
+        @Override
+        public boolean start() {
+            return true;
+        }
+
+        @Override
+        public boolean stop() {
+            return true;
+        }
+    }
+
+    private CloudBusImpl3 bus;
+
+    @Setup
+    public void setup() {
+        bus = new CloudBusImpl3();
+
+        Map<String, Function<Object[], Object>> timeoutAnswers = new HashMap<>();
+        timeoutAnswers.put("setMessageTimeout", args -> {
+            if (args[0] instanceof NeedReplyMessage) {
+                ((NeedReplyMessage) args[0]).setTimeout(TimeUnit.MINUTES.toMillis(5));
+            }
+            return null;
+        });
+
+        EchoService service = new EchoService();
+        Map<String, Function<Object[], Object>> pluginAnswers = new HashMap<>();
+        pluginAnswers.put("getExtensionList", args -> args[0] == Service.class ?
+                new ArrayList<>(Collections.singletonList(service)) : new ArrayList<>());
+
+        Stubs.inject(bus, "thdf", BenchmarkRuntime.getThreadFacade());
+        Stubs.inject(bus, "errf", Stubs.stub(ErrorFacade.class));
+        Stubs.inject(bus, "timeoutMgr", Stubs.stub(ApiTimeoutManager.class, timeoutAnswers));
+        Stubs.inject(bus, "destMaker", Stubs.stub(ResourceDestinationMaker.class));
+        Stubs.inject(bus, "pluginRgty", Stubs.stub(PluginRegistry.class, pluginAnswers));
+        Stubs.inject(bus, "deadMessageManager", Stubs.stub(DeadMessageManager.class));
+        bus.start();
+    }
+
+    @Benchmark
+    public MessageReply localCall() {
+        BenchmarkMsg msg = new BenchmarkMsg();
+        bus.makeLocalServiceId(msg, SERVICE_ID);
+        return bus.call(msg);
+    }
+}
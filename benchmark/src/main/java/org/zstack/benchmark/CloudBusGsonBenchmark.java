@@ -0,0 +1,66 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.cloudbus.CloudBusGson;
+import org.zstack.header.message.Message;
+import org.zstack.header.vm.APICreateVmInstanceEvent;
+import org.zstack.header.vm.APICreateVmInstanceMsg;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing and deserializing messages as they cross management nodes, with an API
+ * message and an event carrying an inventory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CloudBusGsonBenchmark {
+    private Message msg;
+    private String msgJson;
+    private Message event;
+    private String eventJson;
+
+    @Setup
+    public void setup() {
+        APICreateVmInstanceMsg amsg = APICreateVmInstanceMsg.__example__();
+        amsg.setSystemTags(Arrays.asList("staticIp::l3::127.0.0.1", "hostname::benchmark"));
+        amsg.setServiceId("api.portal");
+        msg = amsg;
+        msgJson = CloudBusGson.toJson(msg);
+
+        APICreateVmInstanceEvent evt = new APICreateVmInstanceEvent(amsg.getId());
+        evt.setInventory(APICreateVmInstanceEvent.__example__().getInventory());
+        event = evt;
+        eventJson = CloudBusGson.toJson(event);
+    }
+
+    @Benchmark
+    public String messageToJson() {
+        return CloudBusGson.toJson(msg);
+    }
+
+    @Benchmark
+    public Message messageFromJson() {
+        return CloudBusGson.fromJson(msgJson);
+    }
+
+    @Benchmark
+    public Message messageRoundTrip() {
+        return CloudBusGson.fromJson(CloudBusGson.toJson(msg));
+    }
+
+    @Benchmark
+    public Message eventRoundTrip() {
+        return CloudBusGson.fromJson(CloudBusGson.toJson(event));
+    }
+
+    @Benchmark
+    public Message eventFromJson() {
+        return CloudBusGson.fromJson(eventJson);
+    }
+}
@@ -0,0 +1,94 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.thread.ChainTask;
+import org.zstack.core.thread.SyncTask;
+import org.zstack.core.thread.SyncTaskChain;
+import org.zstack.core.thread.ThreadFacade;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from submitting a chain task or a sync task to its completion, with callers
+ * spread over a number of queues.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class DispatchQueueBenchmark {
+    @Param({"1", "64"})
+    int queueNum;
+
+    private ThreadFacade thdf;
+    private String[] signatures;
+
+    @Setup
+    public void setup() {
+        thdf = BenchmarkRuntime.getThreadFacade();
+        signatures = new String[queueNum];
+        for (int i = 0; i < queueNum; i++) {
+            signatures[i] = "benchmark-queue-" + i;
+        }
+    }
+
+    private String nextSignature() {
+        return signatures[ThreadLocalRandom.current().nextInt(signatures.length)];
+    }
+
+    @Benchmark
+    public void chainSubmit() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        String signature = nextSignature();
+        thdf.chainSubmit(new ChainTask(null) {
+            @Override
+            public String getSyncSignature() {
+                return signature;
+            }
+
+            @Override
+            public void run(SyncTaskChain chain) {
+                latch.countDown();
+                chain.next();
+            }
+
+            @Override
+            public String getName() {
+                return "benchmark-chain-task";
+            }
+        });
+
+        latch.await();
+    }
+
+    @Benchmark
+    public Object syncSubmit() throws Exception {
+        String signature = nextSignature();
+        return thdf.syncSubmit(new SyncTask<Object>() {
+            @Override
+            public String getSyncSignature() {
+                return signature;
+            }
+
+            @Override
+            public int getSyncLevel() {
+                return 1;
+            }
+
+            @Override
+            public String getName() {
+                return "benchmark-sync-task";
+            }
+
+            @Override
+            public Object call() {
+                return signature;
+            }
+        }).get();
+    }
+}
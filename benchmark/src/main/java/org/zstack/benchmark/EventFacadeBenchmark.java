@@ -0,0 +1,64 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacadeImpl;
+import org.zstack.header.exception.CloudRuntimeException;
+
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Firing a canonical event among subscribers of other paths, the cost on the thread
+ * calling fire(); publishing to other management nodes is stubbed and no webhook is
+ * registered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EventFacadeBenchmark {
+    private static final String FIRED_PATH = "/vm/state/change/benchmark-vm";
+
+    @Param({"0", "1000"})
+    int subscriberNum;
+
+    private EventFacadeImpl evtf;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkRuntime.getThreadFacade();
+
+        evtf = new EventFacadeImpl();
+        Stubs.inject(evtf, "bus", Stubs.stub(CloudBus.class));
+        // an empty webhook index instead of loading webhooks from the database
+        Constructor<?> c = Class.forName("org.zstack.core.cloudbus.EventPathRouter").getDeclaredConstructor();
+        c.setAccessible(true);
+        Stubs.inject(evtf, "webhookIndex", c.newInstance());
+
+        for (int i = 0; i < subscriberNum; i++) {
+            String path = i % 2 == 0 ? String.format("/host/{uuid}/status/change-%s", i) : String.format("/volume/status/change/volume-%s", i);
+            evtf.onLocal(path, new EventCallback() {
+                @Override
+                protected void run(Map tokens, Object data) {
+                    throw new CloudRuntimeException("should not be called");
+                }
+            });
+            evtf.on(path, new EventCallback() {
+                @Override
+                protected void run(Map tokens, Object data) {
+                    throw new CloudRuntimeException("should not be called");
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void fire() {
+        evtf.fire(FIRED_PATH, "Running");
+    }
+}
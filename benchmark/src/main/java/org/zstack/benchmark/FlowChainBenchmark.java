@@ -0,0 +1,97 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.workflow.FlowChainBuilder;
+import org.zstack.core.workflow.ShareFlow;
+import org.zstack.header.core.workflow.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running a flow chain of flows that complete synchronously, so the chain's own overhead
+ * is measured, the size of a VM creation chain by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FlowChainBenchmark {
+    @Param({"40"})
+    int flowNum;
+
+    public static class NopFlow extends NoRollbackFlow {
+        String __name__ = "nop-flow";
+
+        @AfterDone
+        List<Runnable> afterDone = new ArrayList<>();
+
+        @Override
+        public void run(FlowTrigger trigger, Map data) {
+            data.put(__name__, Boolean.TRUE);
+            trigger.next();
+        }
+    }
+
+    private List<Flow> flows = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < flowNum; i++) {
+            flows.add(new NopFlow());
+        }
+    }
+
+    @Benchmark
+    public Map simpleFlowChain() {
+        FlowChain chain = FlowChainBuilder.newSimpleFlowChain();
+        chain.setName("benchmark-simple-flow-chain");
+        flows.forEach(chain::then);
+
+        Map[] ret = new Map[1];
+        chain.done(new FlowDoneHandler(null) {
+            @Override
+            public void handle(Map data) {
+                ret[0] = data;
+            }
+        }).start();
+
+        return ret[0];
+    }
+
+    @Benchmark
+    public Map shareFlowChain() {
+        FlowChain chain = FlowChainBuilder.newShareFlowChain();
+        chain.setName("benchmark-share-flow-chain");
+
+        Map[] ret = new Map[1];
+        chain.then(new ShareFlow() {
+            @Override
+            public void setup() {
+                for (int i = 0; i < flowNum; i++) {
+                    flow(new NoRollbackFlow() {
+                        String __name__ = "share-nop-flow";
+
+                        @Override
+                        public void run(FlowTrigger trigger, Map data) {
+                            trigger.next();
+                        }
+                    });
+                }
+
+                done(new FlowDoneHandler(null) {
+                    @Override
+                    public void handle(Map data) {
+                        ret[0] = data;
+                    }
+                });
+            }
+        }).start();
+
+        return ret[0];
+    }
+}
@@ -0,0 +1,144 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.compute.allocator.HostAllocatorGlobalConfig;
+import org.zstack.compute.allocator.HostCapacityAllocatorFlow;
+import org.zstack.compute.allocator.HostCapacityModel;
+import org.zstack.compute.allocator.HostCapacityOverProvisioningManagerImpl;
+import org.zstack.compute.allocator.HostCapacityReserveManager;
+import org.zstack.core.config.GlobalConfig;
+import org.zstack.header.allocator.AbstractHostAllocatorFlow;
+import org.zstack.header.allocator.HostAllocatorSpec;
+import org.zstack.header.allocator.HostAllocatorTrigger;
+import org.zstack.header.allocator.HostCapacityVO;
+import org.zstack.header.host.HostVO;
+import org.zstack.resourceconfig.ResourceConfigFacade;
+import org.zstack.utils.data.SizeUnit;
+
+import java.lang.reflect.Constructor;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Filtering candidate hosts by cpu and memory in HostCapacityAllocatorFlow, with the
+ * over-provisioning ratios of all candidates resolved in bulk. Capacities come from the
+ * capacity model and ratios from resource configs in memory, so the database is not
+ * touched; every tenth host has its own memory ratio.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HostAllocatorBenchmark {
+    @Param({"10", "100", "1000"})
+    int hostNum;
+
+    private List<HostVO> hosts = new ArrayList<>();
+    private List<String> hostUuids = new ArrayList<>();
+    private HostCapacityOverProvisioningManagerImpl ratioMgr;
+    private HostCapacityAllocatorFlow flow;
+    private List<HostVO> result;
+
+    private static class CapacityModel extends HostCapacityModel {
+        final Map<String, Capacity> capacities = new HashMap<>();
+
+        @Override
+        public Map<String, Capacity> getCapacities(Collection<String> hostUuids) {
+            Map<String, Capacity> ret = new HashMap<>();
+            hostUuids.forEach(uuid -> ret.put(uuid, capacities.get(uuid)));
+            return ret;
+        }
+
+        @Override
+        public Map<String, Capacity> reload(Collection<String> hostUuids) {
+            return getCapacities(hostUuids);
+        }
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        Stubs.inject(HostAllocatorGlobalConfig.HOST_ALLOCATOR_MAX_MEMORY, "value", "true");
+
+        Constructor<HostCapacityModel.Capacity> cons = HostCapacityModel.Capacity.class.getDeclaredConstructor(HostCapacityVO.class);
+        cons.setAccessible(true);
+
+        CapacityModel model = new CapacityModel();
+        ratioMgr = new HostCapacityOverProvisioningManagerImpl();
+        Random random = new Random(1);
+        for (int i = 0; i < hostNum; i++) {
+            HostCapacityVO cap = new HostCapacityVO();
+            cap.setUuid(UUID.randomUUID().toString().replace("-", ""));
+            cap.setCpuNum(32);
+            cap.setTotalCpu(32);
+            // half of the hosts have capacity for the VM
+            cap.setAvailableCpu(i % 2 == 0 ? 32 : random.nextInt(33));
+            cap.setTotalPhysicalMemory(SizeUnit.GIGABYTE.toByte(128));
+            cap.setTotalMemory(SizeUnit.GIGABYTE.toByte(128));
+            cap.setAvailableMemory(SizeUnit.GIGABYTE.toByte(i % 2 == 0 ? 64 : random.nextInt(129)));
+
+            HostVO host = new HostVO();
+            host.setUuid(cap.getUuid());
+            host.setCapacity(cap);
+            hosts.add(host);
+            hostUuids.add(host.getUuid());
+            model.capacities.put(host.getUuid(), cons.newInstance(cap));
+
+            if (i % 10 == 0) {
+                ratioMgr.setMemoryRatio(host.getUuid(), 2.0);
+            }
+        }
+
+        Map<String, Function<Object[], Object>> answers = new HashMap<>();
+        answers.put("getResourceConfigValues", args -> {
+            Map<String, Double> ret = new HashMap<>();
+            ((Collection<String>) args[1]).forEach(uuid -> ret.put(uuid, 1.5));
+            return ret;
+        });
+        Stubs.inject(ratioMgr, "rcf", Stubs.stub(ResourceConfigFacade.class, answers));
+        Stubs.inject(ratioMgr, "globalConfig", new GlobalConfig("mevoco", "overProvisioning.memory"));
+
+        HostAllocatorSpec spec = new HostAllocatorSpec();
+        spec.setCpuCapacity(4);
+        spec.setMemoryCapacity(SizeUnit.GIGABYTE.toByte(16));
+
+        flow = new HostCapacityAllocatorFlow();
+        Stubs.inject(flow, "ratioMgr", ratioMgr);
+        Stubs.inject(flow, "capacityModel", model);
+        Map<String, Function<Object[], Object>> reserveAnswers = new HashMap<>();
+        // reserved capacity is not measured
+        reserveAnswers.put("filterOutHostsByReservedCapacity", args -> args[0]);
+        Stubs.inject(flow, "reserveMgr", Stubs.stub(HostCapacityReserveManager.class, reserveAnswers));
+        flow.setCandidates(hosts);
+        flow.setSpec(spec);
+        flow.setTrigger(new HostAllocatorTrigger() {
+            @Override
+            public void next(List<HostVO> candidates) {
+                result = candidates;
+            }
+
+            @Override
+            public void skip() {
+            }
+
+            @Override
+            public boolean isFirstFlow(AbstractHostAllocatorFlow f) {
+                return false;
+            }
+        });
+    }
+
+    @Benchmark
+    public List<HostVO> allocate() {
+        flow.allocate();
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, Double> resolveMemoryRatios() {
+        return ratioMgr.getMemoryRatios(hostUuids);
+    }
+}
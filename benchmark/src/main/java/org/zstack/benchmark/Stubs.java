@@ -0,0 +1,107 @@
+package org.zstack.benchmark;
+
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.utils.FieldUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Stand-ins for the Spring beans a benchmarked component depends on.
+ *
+ * A stub implements an interface by returning empty values: null, 0, false, or empty
+ * collections, except for the methods given an answer. Stubs and dependencies are injected
+ * into fields by name, as Spring would autowire them.
+ */
+public class Stubs {
+    public static <T> T stub(Class<T> iface) {
+        return stub(iface, Collections.emptyMap());
+    }
+
+    /**
+     * @param answers method name to a function computing the return value from the arguments
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(Class<T> iface, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class[]{iface}, (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args);
+            }
+
+            return emptyValue(method.getReturnType());
+        });
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "stub of " + proxy.getClass().getInterfaces()[0].getName();
+        }
+    }
+
+    private static Object emptyValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == void.class) {
+            return null;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type.isPrimitive()) {
+            return primitiveZero(type);
+        } else if (type == List.class || type == Collection.class) {
+            return new ArrayList<>();
+        } else if (type == Set.class) {
+            return new HashSet<>();
+        } else if (type == Map.class) {
+            return new HashMap<>();
+        }
+
+        return null;
+    }
+
+    private static Object primitiveZero(Class<?> type) {
+        if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else {
+            return 0d;
+        }
+    }
+
+    public static void inject(Object target, String fieldName, Object value) {
+        Field f = FieldUtils.getField(fieldName, target.getClass());
+        if (f == null) {
+            throw new CloudRuntimeException(String.format("cannot find field[%s] on %s", fieldName, target.getClass().getName()));
+        }
+
+        try {
+            f.setAccessible(true);
+            f.set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new CloudRuntimeException(e);
+        }
+    }
+
+    public static <T> T get(Object target, String fieldName) {
+        return FieldUtils.getFieldValue(fieldName, target);
+    }
+}
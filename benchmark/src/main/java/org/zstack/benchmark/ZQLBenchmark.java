@@ -0,0 +1,47 @@
+package org.zstack.benchmark;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.Platform;
+import org.zstack.header.zql.ASTNode;
+import org.zstack.zql.antlr4.ZQLLexer;
+import org.zstack.zql.antlr4.ZQLParser;
+import org.zstack.zql.ast.visitors.QueryVisitor;
+import org.zstack.zql.ast.visitors.result.QueryResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a ZQL text into SQL, the part of a ZQL query done before the database is
+ * touched; executing the SQL is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ZQLBenchmark {
+    @Param({"query vminstance where state='Running' and name like '%vm%' order by createDate desc limit 100",
+            "query vminstance where vmNics.l3Network.l2Network.zoneUuid='a5576d5e57a7443894eeb078702023fd' limit 100"})
+    String text;
+
+    @Setup
+    public void setup() {
+        // loads the ZQL metadata of inventories
+        Platform.getUuid();
+    }
+
+    @Benchmark
+    public ASTNode.Query parse() {
+        ZQLParser p = new ZQLParser(new CommonTokenStream(new ZQLLexer(CharStreams.fromString(text))));
+        ZQLParser.ZqlContext ctx = p.zqls().zql(0);
+        return ((ZQLParser.QueryGrammarContext) ctx).query().accept(new org.zstack.zql.ast.parser.visitors.QueryVisitor());
+    }
+
+    @Benchmark
+    public String compile() {
+        return ((QueryResult) parse().accept(new QueryVisitor(false))).sql;
+    }
+}
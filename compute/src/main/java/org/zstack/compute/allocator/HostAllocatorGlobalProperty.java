@@ -0,0 +1,13 @@
+package org.zstack.compute.allocator;
+
+import org.zstack.core.GlobalProperty;
+import org.zstack.core.GlobalPropertyDefinition;
+
+/**
+ */
+@GlobalPropertyDefinition
+public class HostAllocatorGlobalProperty {
+    // in seconds, how long capacities of hosts are kept in memory, 0 disables the in-memory capacity model
+    @GlobalProperty(name = "HostAllocator.capacityModel.expireSeconds", defaultValue = "60")
+    public static long CAPACITY_MODEL_EXPIRE_SECONDS;
+}
@@ -3,6 +3,7 @@ package org.zstack.compute.allocator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusListCallBack;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.DatabaseFacade;
@@ -52,6 +53,7 @@ import javax.persistence.TypedQuery;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 import static org.zstack.core.Platform.operr;
 import static org.zstack.utils.CollectionDSL.list;
@@ -79,6 +81,8 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
     private ErrorFacade errf;
     @Autowired
     private ThreadFacade thdf;
+    @Autowired
+    private HostCapacityModel capacityModel;
 
     @Override
     @MessageSafe
@@ -99,6 +103,8 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
             handle((ReturnHostCapacityMsg) msg);
         } else if (msg instanceof RecalculateHostCapacityMsg) {
             handle((RecalculateHostCapacityMsg) msg);
+        } else if (msg instanceof PlanHostPlacementMsg) {
+            handle((PlanHostPlacementMsg) msg);
         } else {
             bus.dealWithUnknownMessage(msg);
         }
@@ -171,6 +177,9 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
             Long usedCpu;
         }
 
+        Map<String, Double> memoryRatios = ratioMgr.getMemoryRatios(hostUuids);
+        Map<String, Integer> cpuRatios = cpuRatioMgr.getRatios(hostUuids);
+
         List<HostUsedCpuMem> hostUsedCpuMemList = new Callable<List<HostUsedCpuMem>>() {
             @Override
             @Transactional(readOnly = true)
@@ -198,7 +207,7 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
                         continue;
                     }
 
-                    s.usedMemory = ratioMgr.calculateMemoryByRatio(s.hostUuid, t.get(0, Long.class));
+                    s.usedMemory = Math.round(t.get(0, Long.class) / memoryRatios.get(s.hostUuid));
                     s.usedCpu = t.get(2, Long.class);
                     ret.add(s);
                 }
@@ -227,7 +236,7 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
                     long avail = s.usedMemory == null ? cap.getTotalMemory() : cap.getTotalMemory() - s.usedMemory;
                     cap.setAvailableMemory(avail);
 
-                    long totalCpu = cpuRatioMgr.calculateHostCpuByRatio(s.hostUuid, cap.getCpuNum());
+                    long totalCpu = (long) cap.getCpuNum() * cpuRatios.get(s.hostUuid);
                     long totalCpuBefore = cap.getTotalCpu();
                     cap.setTotalCpu(totalCpu);
 
@@ -249,6 +258,46 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
         }
     }
 
+    private void handle(PlanHostPlacementMsg msg) {
+        // candidates of every spec are found once by the allocator flows, which are filters of the planner
+        List<AllocateHostMsg> amsgs = msg.getSpecs().stream().map(spec -> {
+            AllocateHostMsg amsg = spec.getAllocation();
+            amsg.setDryRun(true);
+            amsg.setListAllHosts(true);
+            bus.makeLocalServiceId(amsg, HostAllocatorConstant.SERVICE_ID);
+            return amsg;
+        }).collect(Collectors.toList());
+
+        PlanHostPlacementReply reply = new PlanHostPlacementReply();
+        if (amsgs.isEmpty()) {
+            bus.reply(msg, reply);
+            return;
+        }
+
+        bus.send(amsgs, new CloudBusListCallBack(msg) {
+            @Override
+            public void run(List<MessageReply> replies) {
+                HostPlacementPlanner planner = new HostPlacementPlanner(HostPlacementStrategy.valueOf(msg.getPlacementStrategy()));
+                for (int i = 0; i < replies.size(); i++) {
+                    HostPlacementSpec spec = msg.getSpecs().get(i);
+                    MessageReply r = replies.get(i);
+                    if (!r.isSuccess()) {
+                        logger.debug(String.format("no candidate host for VMs%s, %s", spec.getVmUuids(), r.getError()));
+                        continue;
+                    }
+
+                    List<String> candidates = ((AllocateHostDryRunReply) r).getHosts().stream()
+                            .map(HostInventory::getUuid).collect(Collectors.toList());
+                    planner.addVms(spec.getVmUuids(), spec.getAllocation().getCpuCapacity(),
+                            spec.getAllocation().getMemoryCapacity(), candidates);
+                }
+
+                reply.setPlacements(planner.plan());
+                bus.reply(msg, reply);
+            }
+        });
+    }
+
     private void handle(ReturnHostCapacityMsg msg) {
         returnComputeResourceCapacity(msg.getHostUuid(), msg.getCpuCapacity(), msg.getMemoryCapacity());
     }
@@ -307,48 +356,24 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
                 vo = ext.reportHostCapacity(s);
             }
             dbf.update(vo);
+            capacityModel.capacityChanged(vo.getUuid());
         }
 
         bus.reply(msg, new MessageReply());
     }
 
-    private void handle(final AllocateHostMsg msg) {
+    private int getAllocationSyncLevel() {
+        // CPU and memory are reserved by compare-and-set with the capacity model and decided by the
+        // database, but HostAllocatorReserveExtensionPoint flows reserve their resources in this queue
+        // and are not required to be safe to run concurrently, so hostAllocator.concurrent stays the switch
         if (HostAllocatorGlobalConfig.HOST_ALLOCATOR_ALLOW_CONCURRENT.value(Boolean.class)) {
-            thdf.chainSubmit(new ChainTask(msg) {
-                @Override
-                public String getSyncSignature() {
-                    return "host-allocator";
-                }
-
-                @Override
-                public void run(SyncTaskChain chain) {
-                    doHandleAllocateHost(msg, new Completion(chain) {
-                        @Override
-                        public void success() {
-                            chain.next();
-                        }
-
-                        @Override
-                        public void fail(ErrorCode errorCode) {
-                            chain.next();
-                        }
-                    });
-                }
-
-                @Override
-                public String getName() {
-                    return "allocate-host-for-vm-" + msg.getVmInstance().getUuid();
-                }
-
-                @Override
-                protected int getSyncLevel() {
-                    return HostAllocatorGlobalConfig.HOST_ALLOCATOR_CONCURRENT_LEVEL.value(Integer.class);
-                }
-            });
-
-            return;
+            return HostAllocatorGlobalConfig.HOST_ALLOCATOR_CONCURRENT_LEVEL.value(Integer.class);
         }
 
+        return 1;
+    }
+
+    private void handle(final AllocateHostMsg msg) {
         thdf.chainSubmit(new ChainTask(msg) {
             @Override
             public String getSyncSignature() {
@@ -374,6 +399,11 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
             public String getName() {
                 return "allocate-host-for-vm-" + msg.getVmInstance().getUuid();
             }
+
+            @Override
+            protected int getSyncLevel() {
+                return getAllocationSyncLevel();
+            }
         });
     }
 
@@ -13,7 +13,10 @@ import org.zstack.header.host.HostVO;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
@@ -28,22 +31,52 @@ public class HostCapacityAllocatorFlow extends AbstractHostAllocatorFlow {
     private HostCapacityOverProvisioningManager ratioMgr;
     @Autowired
     private HostCpuOverProvisioningManager cpuRatioMgr;
+    @Autowired
+    private HostCapacityModel capacityModel;
+
+    private boolean hasCapacity(HostCapacityModel.Capacity cap, Double ratio, long cpu, long memory, long oldMemory, boolean checkMaxMemory) {
+        return cap != null
+                && (cpu == 0 || cap.availableCpu >= cpu)
+                && (!checkMaxMemory || memory + oldMemory < cap.totalPhysicalMemory)
+                && (memory == 0 || Math.round(cap.availableMemory * ratio) >= memory);
+    }
 
-    private boolean memoryCheck(long vmMemSize, long oldMemory, HostVO hvo) {
-        if (HostAllocatorGlobalConfig.HOST_ALLOCATOR_MAX_MEMORY.value(Boolean.class)) {
-            if ((vmMemSize + oldMemory) >= hvo.getCapacity().getTotalPhysicalMemory()) {
-                return false;
+    private List<HostVO> allocate(List<HostVO> vos, long cpu, long memory, long oldMemory) {
+        List<String> uuids = vos.stream().map(HostVO::getUuid).collect(Collectors.toList());
+        // capacities in memory include reservations of allocations running concurrently
+        Map<String, HostCapacityModel.Capacity> capacities = capacityModel.getCapacities(uuids);
+        Map<String, Double> ratios = memory == 0 ? new HashMap<>() : ratioMgr.getMemoryRatios(uuids);
+        boolean checkMaxMemory = memory != 0 && HostAllocatorGlobalConfig.HOST_ALLOCATOR_MAX_MEMORY.value(Boolean.class);
+
+        int size = vos.size();
+        boolean[] accepted = new boolean[size];
+        List<String> rejected = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String uuid = uuids.get(i);
+            accepted[i] = hasCapacity(capacities.get(uuid), ratios.get(uuid), cpu, memory, oldMemory, checkMaxMemory);
+            if (!accepted[i]) {
+                rejected.add(uuid);
             }
         }
 
-        return ratioMgr.calculateHostAvailableMemoryByRatio(hvo.getUuid(), hvo.getCapacity().getAvailableMemory()) >= vmMemSize;
-    }
-
+        if (!rejected.isEmpty()) {
+            // a capacity in memory may be behind a change made on another management node,
+            // reload the hosts from the database before rejecting them
+            Map<String, HostCapacityModel.Capacity> reloaded = capacityModel.reload(rejected);
+            for (int i = 0; i < size; i++) {
+                String uuid = uuids.get(i);
+                if (!accepted[i]) {
+                    accepted[i] = hasCapacity(reloaded.get(uuid), ratios.get(uuid), cpu, memory, oldMemory, checkMaxMemory);
+                }
+            }
+        }
 
-    private List<HostVO> allocate(List<HostVO> vos, long cpu, long memory, long oldMemory) {
-        List<HostVO> ret = vos.stream()
-                .filter(hvo -> (cpu == 0 || hvo.getCapacity().getAvailableCpu() >= cpu)
-                        && (memory == 0 || memoryCheck(memory, oldMemory, hvo))).collect(Collectors.toList());
+        List<HostVO> ret = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (accepted[i]) {
+                ret.add(vos.get(i));
+            }
+        }
 
         return ret;
     }
@@ -53,7 +86,8 @@ public class HostCapacityAllocatorFlow extends AbstractHostAllocatorFlow {
     }
 
     private boolean isNoMemory(long mem) {
-        return !candidates.stream().anyMatch(vo -> ratioMgr.calculateHostAvailableMemoryByRatio(vo.getUuid(), vo.getCapacity().getAvailableMemory()) >= mem);
+        Map<String, Double> ratios = ratioMgr.getMemoryRatios(candidates.stream().map(HostVO::getUuid).collect(Collectors.toList()));
+        return candidates.stream().noneMatch(vo -> Math.round(vo.getCapacity().getAvailableMemory() * ratios.get(vo.getUuid())) >= mem);
     }
 
     @Override
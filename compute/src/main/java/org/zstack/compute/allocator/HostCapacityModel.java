@@ -0,0 +1,228 @@
+package org.zstack.compute.allocator;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.db.Q;
+import org.zstack.header.allocator.HostCapacityVO;
+import org.zstack.header.allocator.HostCapacityVO_;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * keeps capacities of hosts in memory for host allocation, so allocations filter hosts and
+ * reserve capacity concurrently without locking HostCapacityVO.
+ *
+ * A reservation is made by compare-and-set on the capacity in memory, so concurrent allocations
+ * on this management node see each other, then through HostCapacityUpdater in the database, which
+ * is shared by all management nodes and always decides. Capacities changed by HostCapacityUpdater
+ * are refreshed when committed; entries also expire in case of changes made on other management
+ * nodes or behind the updater. Allocators reload hosts they would reject from the database, so an
+ * entry behind such a change never makes a host having capacity be missed.
+ */
+public class HostCapacityModel {
+    private static final CLogger logger = Utils.getLogger(HostCapacityModel.class);
+
+    public static class Capacity {
+        public final int cpuNum;
+        public final long totalCpu;
+        public final long availableCpu;
+        public final long totalMemory;
+        public final long availableMemory;
+        public final long totalPhysicalMemory;
+        public final long availablePhysicalMemory;
+        private final long loadTime;
+
+        private Capacity(HostCapacityVO vo) {
+            cpuNum = vo.getCpuNum();
+            totalCpu = vo.getTotalCpu();
+            availableCpu = vo.getAvailableCpu();
+            totalMemory = vo.getTotalMemory();
+            availableMemory = vo.getAvailableMemory();
+            totalPhysicalMemory = vo.getTotalPhysicalMemory();
+            availablePhysicalMemory = vo.getAvailablePhysicalMemory();
+            loadTime = System.currentTimeMillis();
+        }
+
+        private Capacity(Capacity old, long cpu, long memory) {
+            cpuNum = old.cpuNum;
+            totalCpu = old.totalCpu;
+            availableCpu = old.availableCpu - cpu;
+            totalMemory = old.totalMemory;
+            availableMemory = old.availableMemory - memory;
+            totalPhysicalMemory = old.totalPhysicalMemory;
+            availablePhysicalMemory = old.availablePhysicalMemory;
+            loadTime = old.loadTime;
+        }
+
+        private boolean isExpired(long now) {
+            return now - loadTime > TimeUnit.SECONDS.toMillis(HostAllocatorGlobalProperty.CAPACITY_MODEL_EXPIRE_SECONDS);
+        }
+
+        private boolean canReserve(long cpu, long memory, long reservedMemory) {
+            return (cpu == 0 || availableCpu - cpu >= 0) && (memory == 0 || availableMemory - memory - reservedMemory >= 0);
+        }
+    }
+
+    private final Map<String, Capacity> capacities = new ConcurrentHashMap<>();
+    // increased by every change, capacities loaded across a change are not kept
+    private final AtomicLong generation = new AtomicLong();
+
+    public boolean isEnabled() {
+        return HostAllocatorGlobalProperty.CAPACITY_MODEL_EXPIRE_SECONDS > 0;
+    }
+
+    private Map<String, Capacity> load(Collection<String> hostUuids) {
+        Map<String, Capacity> ret = new HashMap<>();
+        long gen = generation.get();
+        List<HostCapacityVO> vos = Q.New(HostCapacityVO.class).in(HostCapacityVO_.uuid, hostUuids).list();
+        vos.forEach(vo -> ret.put(vo.getUuid(), new Capacity(vo)));
+
+        if (isEnabled() && gen == generation.get()) {
+            capacities.putAll(ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return host uuid -> capacity of the host, hosts not found are not in the map
+     */
+    public Map<String, Capacity> getCapacities(Collection<String> hostUuids) {
+        if (hostUuids.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        if (!isEnabled()) {
+            return load(hostUuids);
+        }
+
+        Map<String, Capacity> ret = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String uuid : hostUuids) {
+            Capacity c = capacities.get(uuid);
+            if (c != null && !c.isExpired(now)) {
+                ret.put(uuid, c);
+            } else {
+                missing.add(uuid);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            ret.putAll(load(missing));
+        }
+
+        return ret;
+    }
+
+    /**
+     * loads capacities from the database regardless of those in memory
+     */
+    public Map<String, Capacity> reload(Collection<String> hostUuids) {
+        return hostUuids.isEmpty() ? new HashMap<>() : load(hostUuids);
+    }
+
+    public Capacity getCapacity(String hostUuid) {
+        return getCapacities(Collections.singletonList(hostUuid)).get(hostUuid);
+    }
+
+    private boolean reserveInDatabase(String hostUuid, long cpu, long memory, long reservedMemory) {
+        return new HostCapacityUpdater(hostUuid).run(cap -> {
+            if (cpu != 0 && cap.getAvailableCpu() - cpu < 0) {
+                return null;
+            }
+
+            if (memory != 0 && cap.getAvailableMemory() - memory - reservedMemory < 0) {
+                return null;
+            }
+
+            cap.setAvailableCpu(cap.getAvailableCpu() - cpu);
+            cap.setAvailableMemory(cap.getAvailableMemory() - memory);
+            return cap;
+        });
+    }
+
+    /**
+     * reserves capacity of a host, negative values return the capacity
+     *
+     * @param memory the memory calculated by the over-provisioning ratio of the host
+     * @param reservedMemory the memory reserved on the host, not allocatable to VMs
+     * @return false if the host doesn't have enough capacity, or it's deleted
+     */
+    public boolean reserve(String hostUuid, long cpu, long memory, long reservedMemory) {
+        if (!isEnabled()) {
+            return reserveInDatabase(hostUuid, cpu, memory, reservedMemory);
+        }
+
+        boolean reloaded = false;
+        while (true) {
+            Capacity c = capacities.get(hostUuid);
+            if (c == null || c.isExpired(System.currentTimeMillis())) {
+                c = load(Collections.singletonList(hostUuid)).get(hostUuid);
+                reloaded = true;
+            }
+
+            if (c == null) {
+                return false;
+            }
+
+            if (!c.canReserve(cpu, memory, reservedMemory)) {
+                if (reloaded) {
+                    return false;
+                }
+
+                // the capacity in memory may be behind changes on other management nodes
+                invalidate(hostUuid);
+                continue;
+            }
+
+            generation.incrementAndGet();
+            if (capacities.replace(hostUuid, c, new Capacity(c, cpu, memory))) {
+                break;
+            }
+
+            if (!capacities.containsKey(hostUuid)) {
+                // loaded across a change and not kept, reserve in the database only
+                break;
+            }
+        }
+
+        if (reserveInDatabase(hostUuid, cpu, memory, reservedMemory)) {
+            return true;
+        }
+
+        logger.debug(String.format("[Host Capacity] capacity of the host[uuid:%s] in memory is out of date, failed to reserve cpu[%s]," +
+                " memory[%s bytes] in the database", hostUuid, cpu, memory));
+        invalidate(hostUuid);
+        return false;
+    }
+
+    public void invalidate(String hostUuid) {
+        generation.incrementAndGet();
+        capacities.remove(hostUuid);
+    }
+
+    /**
+     * called when the capacity of a host is changed, the host is reloaded when the change completes
+     */
+    public void capacityChanged(String hostUuid) {
+        invalidate(hostUuid);
+
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+
+        // the capacity loaded before the change is committed would be kept otherwise
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                invalidate(hostUuid);
+            }
+        });
+    }
+}
@@ -7,7 +7,7 @@ import org.zstack.resourceconfig.ResourceConfig;
 import org.zstack.resourceconfig.ResourceConfigFacade;
 import org.zstack.header.allocator.HostCapacityOverProvisioningManager;
 
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -63,6 +63,32 @@ public class HostCapacityOverProvisioningManagerImpl implements HostCapacityOver
         }
     }
 
+    @Override
+    public Map<String, Double> getMemoryRatios(Collection<String> hostUuids) {
+        Map<String, Double> ret = new HashMap<>();
+        List<String> others = new ArrayList<>();
+        for (String hostUuid : hostUuids) {
+            Double ratio = hostMemoryRatio.get(hostUuid);
+            if (ratio != null) {
+                ret.put(hostUuid, ratio);
+            } else {
+                others.add(hostUuid);
+            }
+        }
+
+        if (others.isEmpty()) {
+            return ret;
+        }
+
+        if (globalConfig != null) {
+            ret.putAll(rcf.getResourceConfigValues(globalConfig, others, Double.class));
+        } else {
+            others.forEach(hostUuid -> ret.put(hostUuid, globalMemoryRatio));
+        }
+
+        return ret;
+    }
+
     @Override
     public Map<String, Double> getAllMemoryRatio() {
         return hostMemoryRatio;
@@ -4,6 +4,7 @@ import org.zstack.header.allocator.ReservedHostCapacity;
 import org.zstack.header.host.HostVO;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  */
@@ -16,5 +17,7 @@ public interface HostCapacityReserveManager {
 
     ReservedHostCapacity getReservedHostCapacityByHosts(List<String> hostUuids);
 
+    Map<String, ReservedHostCapacity> getReservedHostCapacityOfHosts(List<String> hostUuids);
+
     void reserveCapacity(String hostUuid, long requiredCpu, long requiredMemory);
 }
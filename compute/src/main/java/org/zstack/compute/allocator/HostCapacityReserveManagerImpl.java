@@ -27,6 +27,7 @@ import org.zstack.utils.logging.CLogger;
 import javax.persistence.Tuple;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.stream.Collectors;
 
 /**
  */
@@ -39,6 +40,8 @@ public class HostCapacityReserveManagerImpl implements HostCapacityReserveManage
     private PluginRegistry pluginRgty;
     @Autowired
     private HostCapacityOverProvisioningManager ratioMgr;
+    @Autowired
+    private HostCapacityModel capacityModel;
 
     private Map<String, HostReservedCapacityExtensionPoint> exts = new HashMap<>();
 
@@ -133,6 +136,11 @@ public class HostCapacityReserveManagerImpl implements HostCapacityReserveManage
         }
     }
 
+    private static boolean hasMemory(HostVO hvo, HostCapacityModel.Capacity cap, ReservedHostCapacity hc, double ratio, long requiredMemory) {
+        long availableMemory = cap != null ? cap.availableMemory : hvo.getCapacity().getAvailableMemory();
+        return availableMemory - hc.getReservedMemoryCapacity() >= Math.round(requiredMemory / ratio);
+    }
+
     @Override
     public List<HostVO> filterOutHostsByReservedCapacity(List<HostVO> candidates, long requiredCpu, long requiredMemory) {
         ReservedCapacityFinder finder = new ReservedCapacityFinder();
@@ -144,10 +152,22 @@ public class HostCapacityReserveManagerImpl implements HostCapacityReserveManage
         });
 
         Map<String, ReservedHostCapacity> reserves = finder.find();
+        Map<String, HostCapacityModel.Capacity> capacities = capacityModel.getCapacities(reserves.keySet());
+        Map<String, Double> ratios = requiredMemory == 0 ? new HashMap<>() : ratioMgr.getMemoryRatios(finder.hostUuids);
+        if (requiredMemory != 0) {
+            // a capacity in memory may be behind a change made on another management node,
+            // reload the hosts from the database before rejecting them
+            List<String> rejected = candidates.stream()
+                    .filter(hvo -> !hasMemory(hvo, capacities.get(hvo.getUuid()), reserves.get(hvo.getUuid()), ratios.get(hvo.getUuid()), requiredMemory))
+                    .map(HostVO::getUuid)
+                    .collect(Collectors.toList());
+            capacities.putAll(capacityModel.reload(rejected));
+        }
+
         List<HostVO> ret = new ArrayList<>(candidates.size());
         for (HostVO hvo : candidates) {
             ReservedHostCapacity hc = reserves.get(hvo.getUuid());
-            if (requiredMemory == 0 || hvo.getCapacity().getAvailableMemory() - hc.getReservedMemoryCapacity() >= ratioMgr.calculateMemoryByRatio(hvo.getUuid(), requiredMemory)) {
+            if (requiredMemory == 0 || hasMemory(hvo, capacities.get(hvo.getUuid()), hc, ratios.get(hvo.getUuid()), requiredMemory)) {
                 ret.add(hvo);
             } else {
                 if (logger.isTraceEnabled()) {
@@ -227,9 +247,15 @@ public class HostCapacityReserveManagerImpl implements HostCapacityReserveManage
         return finder.find().values().iterator().next();
     }
 
+    @Override
+    public Map<String, ReservedHostCapacity> getReservedHostCapacityOfHosts(List<String> hostUuids) {
+        ReservedCapacityFinder finder = new ReservedCapacityFinder();
+        finder.hostUuids = new ArrayList<>(hostUuids);
+        return finder.find();
+    }
+
     @Override
     public void reserveCapacity(final String hostUuid, final long requestCpu, final long requestMemory) {
-        HostCapacityUpdater updater = new HostCapacityUpdater(hostUuid);
         HostVO host = dbf.findByUuid(hostUuid, HostVO.class);
         HostReservedCapacityExtensionPoint ext = exts.get(host.getHypervisorType());
 
@@ -243,24 +269,9 @@ public class HostCapacityReserveManagerImpl implements HostCapacityReserveManage
             ret.setReservedMemoryCapacity(0);
         }
 
-        updater.run(cap -> {
-            long availCpu = cap.getAvailableCpu() - requestCpu;
-            if (requestCpu != 0 && availCpu < 0) {
-                throw new UnableToReserveHostCapacityException(
-                        String.format("no enough CPU[%s] on the host[uuid:%s]", requestCpu, hostUuid));
-            }
-
-            cap.setAvailableCpu(availCpu);
-
-            long availMemory = cap.getAvailableMemory() - ratioMgr.calculateMemoryByRatio(hostUuid, requestMemory);
-            if (requestMemory != 0 && availMemory - ret.getReservedMemoryCapacity() < 0) {
-                throw new UnableToReserveHostCapacityException(
-                        String.format("no enough memory[%s] on the host[uuid:%s]", requestMemory, hostUuid));
-            }
-
-            cap.setAvailableMemory(availMemory);
-
-            return cap;
-        });
+        if (!capacityModel.reserve(hostUuid, requestCpu, ratioMgr.calculateMemoryByRatio(hostUuid, requestMemory), ret.getReservedMemoryCapacity())) {
+            throw new UnableToReserveHostCapacityException(
+                    String.format("no enough CPU[%s] or memory[%s] on the host[uuid:%s]", requestCpu, requestMemory, hostUuid));
+        }
     }
 }
@@ -16,8 +16,7 @@ import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.function.Function;
 
 import javax.persistence.Query;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -120,6 +119,26 @@ public class HostCpuOverProvisioningManagerImpl implements HostCpuOverProvisioni
         return r == null ? rcf.getResourceConfigValue(HostGlobalConfig.HOST_CPU_OVER_PROVISIONING_RATIO, hostUuid, Integer.class) : r;
     }
 
+    @Override
+    public Map<String, Integer> getRatios(Collection<String> hostUuids) {
+        Map<String, Integer> ret = new HashMap<>();
+        List<String> others = new ArrayList<>();
+        for (String hostUuid : hostUuids) {
+            Integer r = ratios.get(hostUuid);
+            if (r != null) {
+                ret.put(hostUuid, r);
+            } else {
+                others.add(hostUuid);
+            }
+        }
+
+        if (!others.isEmpty()) {
+            ret.putAll(rcf.getResourceConfigValues(HostGlobalConfig.HOST_CPU_OVER_PROVISIONING_RATIO, others, Integer.class));
+        }
+
+        return ret;
+    }
+
     @Override
     public Map<String, Integer> getAllRatio() {
         return ratios;
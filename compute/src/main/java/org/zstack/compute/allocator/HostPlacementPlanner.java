@@ -0,0 +1,137 @@
+package org.zstack.compute.allocator;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.header.allocator.HostCapacityOverProvisioningManager;
+import org.zstack.header.allocator.HostPlacementStrategy;
+import org.zstack.header.allocator.ReservedHostCapacity;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+
+/**
+ * places a batch of VMs on hosts in one pass.
+ *
+ * Candidates of VMs are found by the allocator flows, which work as filters here; free capacities
+ * of all candidates are taken from one snapshot of the capacity model, and every VM placed takes
+ * its capacity from the snapshot, so VMs of the batch see each other. VMs are placed from the
+ * largest, each on the candidate leaving the least free memory for Pack, or the most for Spread.
+ * Capacities are not reserved, VMs reserve them when allocated to the planned hosts.
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public class HostPlacementPlanner {
+    private static final CLogger logger = Utils.getLogger(HostPlacementPlanner.class);
+
+    @Autowired
+    private HostCapacityModel capacityModel;
+    @Autowired
+    private HostCapacityReserveManager reserveMgr;
+    @Autowired
+    private HostCapacityOverProvisioningManager ratioMgr;
+
+    private static class Vm {
+        String uuid;
+        long cpu;
+        long memory;
+        List<String> candidates;
+    }
+
+    private static class FreeCapacity {
+        long cpu;
+        long memory;
+        long totalMemory;
+    }
+
+    private final HostPlacementStrategy strategy;
+    private final List<Vm> vms = new ArrayList<>();
+
+    public HostPlacementPlanner(HostPlacementStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public void addVms(List<String> vmUuids, long cpu, long memory, List<String> candidateHostUuids) {
+        for (String uuid : vmUuids) {
+            Vm vm = new Vm();
+            vm.uuid = uuid;
+            vm.cpu = cpu;
+            vm.memory = memory;
+            vm.candidates = candidateHostUuids;
+            vms.add(vm);
+        }
+    }
+
+    private Map<String, FreeCapacity> snapshot() {
+        Set<String> hostUuids = new HashSet<>();
+        vms.forEach(vm -> hostUuids.addAll(vm.candidates));
+
+        Map<String, HostCapacityModel.Capacity> capacities = capacityModel.getCapacities(hostUuids);
+        Map<String, ReservedHostCapacity> reserves = reserveMgr.getReservedHostCapacityOfHosts(new ArrayList<>(capacities.keySet()));
+
+        Map<String, FreeCapacity> ret = new HashMap<>();
+        capacities.forEach((uuid, cap) -> {
+            ReservedHostCapacity reserved = reserves.get(uuid);
+            FreeCapacity free = new FreeCapacity();
+            free.cpu = cap.availableCpu;
+            free.memory = cap.availableMemory - (reserved == null ? 0 : reserved.getReservedMemoryCapacity());
+            free.totalMemory = Math.max(cap.totalMemory, 1);
+            ret.put(uuid, free);
+        });
+
+        return ret;
+    }
+
+    /**
+     * @return vm uuid -> host uuid, VMs can't be placed are not in the map
+     */
+    public Map<String, String> plan() {
+        Map<String, String> ret = new HashMap<>();
+        if (vms.isEmpty()) {
+            return ret;
+        }
+
+        Map<String, FreeCapacity> capacities = snapshot();
+        Map<String, Double> ratios = ratioMgr.getMemoryRatios(capacities.keySet());
+        vms.sort(Comparator.comparingLong((Vm vm) -> vm.memory).thenComparingLong(vm -> vm.cpu).reversed());
+
+        for (Vm vm : vms) {
+            String best = null;
+            long bestMemory = 0;
+            double bestLeft = 0;
+            for (String hostUuid : vm.candidates) {
+                FreeCapacity free = capacities.get(hostUuid);
+                if (free == null) {
+                    continue;
+                }
+
+                long memory = Math.round(vm.memory / ratios.get(hostUuid));
+                if (free.cpu < vm.cpu || (vm.memory != 0 && free.memory < memory)) {
+                    continue;
+                }
+
+                // compared by the fraction of memory left, so hosts of different sizes are comparable
+                double left = (double) (free.memory - memory) / free.totalMemory;
+                if (best == null || (strategy == HostPlacementStrategy.Pack ? left < bestLeft : left > bestLeft)) {
+                    best = hostUuid;
+                    bestMemory = memory;
+                    bestLeft = left;
+                }
+            }
+
+            if (best == null) {
+                logger.debug(String.format("no candidate host has enough capacity for the VM[uuid:%s, cpu:%s, memory:%s bytes]" +
+                        " in the batch", vm.uuid, vm.cpu, vm.memory));
+                continue;
+            }
+
+            FreeCapacity free = capacities.get(best);
+            free.cpu -= vm.cpu;
+            free.memory -= bestMemory;
+            ret.put(vm.uuid, best);
+        }
+
+        logger.debug(String.format("placed %s of %s VMs by the strategy[%s]: %s", ret.size(), vms.size(), strategy, ret));
+        return ret;
+    }
+}
@@ -0,0 +1,15 @@
+package org.zstack.compute.host;
+
+import org.zstack.core.GlobalProperty;
+import org.zstack.core.GlobalPropertyDefinition;
+
+/**
+ */
+@GlobalPropertyDefinition
+public class HostGlobalProperty {
+    // in milliseconds, how often the host tracker looks for hosts due to ping
+    @GlobalProperty(name = "HostTracker.tickInterval", defaultValue = "500")
+    public static long HOST_TRACKER_TICK_INTERVAL;
+    @GlobalProperty(name = "HostTracker.maxConcurrentPings", defaultValue = "100")
+    public static int HOST_TRACKER_MAX_CONCURRENT_PINGS;
+}
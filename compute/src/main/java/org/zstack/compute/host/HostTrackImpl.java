@@ -6,7 +6,7 @@ import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.db.Q;
 import org.zstack.core.db.SQLBatch;
-import org.zstack.core.thread.AsyncTimer;
+import org.zstack.core.thread.PeriodicTask;
 import org.zstack.core.thread.ThreadFacade;
 import org.zstack.header.Component;
 import org.zstack.header.core.Completion;
@@ -24,6 +24,8 @@ import org.zstack.utils.logging.CLogger;
 import javax.persistence.Tuple;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -31,7 +33,10 @@ import java.util.stream.Collectors;
 public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener, Component, ManagementNodeReadyExtensionPoint {
     private final static CLogger logger = Utils.getLogger(HostTrackImpl.class);
 
-    private Map<String, Tracker> trackers = new HashMap<>();
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+    // pings sent and not replied yet, capped by HostTracker.maxConcurrentPings
+    private final AtomicInteger inFlightPings = new AtomicInteger();
+    private Future<Void> schedulerTask;
 
     @Autowired
     private DatabaseFacade dbf;
@@ -79,54 +84,40 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
         });
     }
 
-    private class Tracker extends AsyncTimer {
-        private final CLogger logger = Utils.getLogger(HostTrackImpl.class);
-
-        private String uuid;
-        private String hypervisorType;
+    /**
+     * the ping state of a host, hosts are pinged by the scheduler in batches instead of
+     * each having a timer
+     */
+    private class Tracker {
+        private final String uuid;
+        private final String hypervisorType;
         private HostReconnectTask reconnectTask;
 
-        Tracker(String uuid) {
-            super(TimeUnit.SECONDS, HostGlobalConfig.PING_HOST_INTERVAL.value(Long.class));
-            this.uuid = uuid;
-            hypervisorType = Q.New(HostVO.class).select(HostVO_.hypervisorType)
-                    .eq(HostVO_.uuid, uuid).findValue();
-            if (hypervisorType == null) {
-                throw new CloudRuntimeException(String.format("host[uuid:%s] is deleted, why you submit a tracker for it???", uuid));
-            }
-
+        // when the host should be pinged next time, in milliseconds
+        private volatile long nextPingTime;
+        // a ping or a reconnect is in progress, the scheduler skips the host
+        private volatile boolean busy;
+        private volatile boolean cancelled;
 
-            __name__ = String.format("host-tracker-%s-hypervisor-%s", uuid, hypervisorType);
+        Tracker(String uuid, String hypervisorType) {
+            this.uuid = uuid;
+            this.hypervisorType = hypervisorType;
+            // spread the first pings over one interval so hosts tracked together are not pinged together
+            nextPingTime = System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(getPingInterval()) + 1;
         }
 
-        @Override
-        protected void execute() {
-            track();
+        private long getPingInterval() {
+            return Math.max(TimeUnit.SECONDS.toMillis(HostGlobalConfig.PING_HOST_INTERVAL.value(Long.class)), 1);
         }
 
-        private void track()  {
-            Tuple t = Q.New(HostVO.class).select(HostVO_.state, HostVO_.status)
-                    .eq(HostVO_.uuid, uuid).findTuple();
-
-            if (t == null) {
-                logger.debug(String.format("host[uuid:%s] seems to be deleted, stop tracking it", uuid));
-                return;
-            }
-
-            HostState state = t.get(0, HostState.class);
-
-            if (state == HostState.PreMaintenance || state == HostState.Maintenance) {
-                logger.debug(String.format("host[uuid:%s] is in state of %s, not tracking it this time", uuid, state));
-                continueToRunThisTimer();
-                return;
-            }
-
+        private void ping() {
             PingHostMsg msg = new PingHostMsg();
             msg.setHostUuid(uuid);
             bus.makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, uuid);
             bus.send(msg, new CloudBusCallBack(null) {
                 @Override
                 public void run(MessageReply reply) {
+                    inFlightPings.decrementAndGet();
                     decideWhatToDoNext(makeReconnectDecision(reply));
                 }
 
@@ -171,17 +162,17 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
 
         private void decideWhatToDoNext(ReconnectDecision decision) {
             if (decision == ReconnectDecision.DoNothing) {
-                continueToRunThisTimer();
+                continueToPing();
             } else if (decision == ReconnectDecision.ReconnectNow) {
                 reconnectNow(uuid, new Completion(new NoErrorCompletion() {
                     @Override
                     public void done() {
-                        continueToRunThisTimer();
+                        continueToPing();
                     }
                 }) {
                     @Override
                     public void success() {
-                        continueToRunThisTimer();
+                        continueToPing();
                     }
 
                     @Override
@@ -199,7 +190,7 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
         }
 
         private void submitReconnectTask() {
-            if (isCanceled()) {
+            if (cancelled) {
                 return;
             }
 
@@ -210,36 +201,114 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
             reconnectTask = getHostReconnectTaskFactory(hypervisorType).createTask(uuid, new NoErrorCompletion() {
                 @Override
                 public void done() {
-                    continueToRunThisTimer();
+                    continueToPing();
                 }
             });
 
             reconnectTask.start();
         }
 
-        @Override
-        public void cancel() {
+        private void continueToPing() {
+            if (cancelled) {
+                return;
+            }
+
+            nextPingTime = System.currentTimeMillis() + getPingInterval();
+            busy = false;
+        }
+
+        void cancel() {
+            cancelled = true;
+
             if (reconnectTask != null) {
                 reconnectTask.cancel();
             }
 
-            super.cancel();
-
-            trackers.remove(uuid);
+            trackers.remove(uuid, this);
         }
     }
 
+    private void schedulePings() {
+        int slots = HostGlobalProperty.HOST_TRACKER_MAX_CONCURRENT_PINGS - inFlightPings.get();
+        if (slots <= 0 || trackers.isEmpty()) {
+            return;
+        }
 
-    public void trackHost(String hostUuid) {
-        Tracker t = trackers.get(hostUuid);
-        if (t != null) {
-            t.cancel();
+        long now = System.currentTimeMillis();
+        List<Tracker> due = trackers.values().stream()
+                .filter(t -> !t.busy && !t.cancelled && t.nextPingTime <= now)
+                .sorted(Comparator.comparingLong(t -> t.nextPingTime))
+                .limit(slots)
+                .collect(Collectors.toList());
+        if (due.isEmpty()) {
+            return;
         }
 
-        t = new Tracker(hostUuid);
-        trackers.put(hostUuid, t);
-        t.start();
-        logger.debug(String.format("starting tracking hosts[uuid:%s]", hostUuid));
+        Map<String, HostState> states = new HashMap<>();
+        List<Tuple> ts = Q.New(HostVO.class).select(HostVO_.uuid, HostVO_.state)
+                .in(HostVO_.uuid, due.stream().map(t -> t.uuid).collect(Collectors.toList()))
+                .listTuple();
+        ts.forEach(t -> states.put(t.get(0, String.class), t.get(1, HostState.class)));
+
+        // only this task marks trackers busy, the ping replies and reconnect tasks clear it
+        due.forEach(t -> t.busy = true);
+
+        for (Tracker t : due) {
+            HostState state = states.get(t.uuid);
+            if (state == null) {
+                logger.debug(String.format("host[uuid:%s] seems to be deleted, stop tracking it", t.uuid));
+                t.cancel();
+                continue;
+            }
+
+            if (state == HostState.PreMaintenance || state == HostState.Maintenance) {
+                logger.debug(String.format("host[uuid:%s] is in state of %s, not tracking it this time", t.uuid, state));
+                t.continueToPing();
+                continue;
+            }
+
+            inFlightPings.incrementAndGet();
+            try {
+                t.ping();
+            } catch (Throwable th) {
+                logger.warn(String.format("failed to ping host[uuid:%s]", t.uuid), th);
+                inFlightPings.decrementAndGet();
+                t.continueToPing();
+            }
+        }
+    }
+
+    private void startScheduler() {
+        schedulerTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.MILLISECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return HostGlobalProperty.HOST_TRACKER_TICK_INTERVAL;
+            }
+
+            @Override
+            public String getName() {
+                return "host-tracker-scheduler";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    schedulePings();
+                } catch (Throwable t) {
+                    // an exception would cancel this periodic task and stop pinging all hosts
+                    logger.warn("unhandled exception happened when scheduling host pings", t);
+                }
+            }
+        });
+    }
+
+    public void trackHost(String hostUuid) {
+        trackHost(Collections.singletonList(hostUuid));
     }
 
     @Override
@@ -248,13 +317,32 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
         if (t != null) {
             t.cancel();
         }
-        trackers.remove(huuid);
         logger.debug(String.format("stop tracking host[uuid:%s]", huuid));
     }
 
     @Override
     public void trackHost(Collection<String> huuids) {
-        huuids.forEach(this::trackHost);
+        if (huuids.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> hypervisorTypes = new HashMap<>();
+        List<Tuple> ts = Q.New(HostVO.class).select(HostVO_.uuid, HostVO_.hypervisorType)
+                .in(HostVO_.uuid, huuids).listTuple();
+        ts.forEach(t -> hypervisorTypes.put(t.get(0, String.class), t.get(1, String.class)));
+
+        for (String huuid : huuids) {
+            String hypervisorType = hypervisorTypes.get(huuid);
+            if (hypervisorType == null) {
+                throw new CloudRuntimeException(String.format("host[uuid:%s] is deleted, why you submit a tracker for it???", huuid));
+            }
+
+            Tracker old = trackers.put(huuid, new Tracker(huuid, hypervisorType));
+            if (old != null) {
+                old.cancel();
+            }
+            logger.debug(String.format("starting tracking hosts[uuid:%s]", huuid));
+        }
     }
 
     @Override
@@ -323,6 +411,7 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
     public boolean start() {
         populateExtensions();
         onHostStatusChange();
+        startScheduler();
 
         HostGlobalConfig.PING_HOST_INTERVAL.installUpdateExtension((oldConfig, newConfig) -> {
             logger.debug(String.format("%s change from %s to %s, restart host trackers",
@@ -370,6 +459,9 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
 
     @Override
     public boolean stop() {
+        if (schedulerTask != null) {
+            schedulerTask.cancel(true);
+        }
         return true;
     }
 }
@@ -67,4 +67,7 @@ public class VmGlobalConfig {
     @GlobalConfigValidation(inNumberRange = {1, 256})
     @BindResourceConfig({VmInstanceVO.class})
     public static GlobalConfig VM_NIC_MULTIQUEUE_NUM = new GlobalConfig(CATEGORY, "nicMultiQueueNum");
+
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig BATCH_CREATE_PARALLELISM_DEGREE = new GlobalConfig(CATEGORY, "batchCreate.parallelismDegree");
 }
@@ -75,6 +75,8 @@ public class VmInstanceApiInterceptor implements ApiMessageInterceptor {
     public APIMessage intercept(APIMessage msg) throws ApiMessageInterceptionException {
         if (msg instanceof APIDestroyVmInstanceMsg) {
             validate((APIDestroyVmInstanceMsg) msg);
+        } else if (msg instanceof APIBatchCreateVmInstanceMsg) {
+            validate((APIBatchCreateVmInstanceMsg) msg);
         } else if (msg instanceof APICreateVmInstanceMsg) {
             validate((APICreateVmInstanceMsg) msg);
         } else if (msg instanceof APIGetVmAttachableDataVolumeMsg) {
@@ -728,6 +730,19 @@ public class VmInstanceApiInterceptor implements ApiMessageInterceptor {
         msg.setMemorySize(ivo.getMemorySize());
     }
 
+    private void validate(APIBatchCreateVmInstanceMsg msg) throws ApiMessageInterceptionException {
+        if (msg.getResourceUuid() != null) {
+            throw new ApiMessageInterceptionException(argerr("resourceUuid can not be specified for a batch of VMs"));
+        }
+
+        if (msg.getCount() > 1 && msg.getSystemTags() != null && msg.getSystemTags().stream()
+                .anyMatch(t -> VmSystemTags.STATIC_IP.isMatch(t) || VmSystemTags.CUSTOM_MAC.isMatch(t))) {
+            throw new ApiMessageInterceptionException(argerr("static IP or custom MAC can not be shared by a batch of VMs"));
+        }
+
+        validate((APICreateVmInstanceMsg) msg);
+    }
+
     private void validate(APICreateVmInstanceMsg msg) throws ApiMessageInterceptionException {
         validateInstanceSettings(msg);
 
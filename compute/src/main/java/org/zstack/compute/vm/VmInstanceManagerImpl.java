@@ -24,6 +24,9 @@ import org.zstack.header.AbstractService;
 import org.zstack.header.allocator.AllocateHostDryRunReply;
 import org.zstack.header.allocator.DesignatedAllocateHostMsg;
 import org.zstack.header.allocator.HostAllocatorConstant;
+import org.zstack.header.allocator.HostPlacementSpec;
+import org.zstack.header.allocator.PlanHostPlacementMsg;
+import org.zstack.header.allocator.PlanHostPlacementReply;
 import org.zstack.header.apimediator.ApiMessageInterceptionException;
 import org.zstack.header.apimediator.GlobalApiMessageInterceptor;
 import org.zstack.header.cluster.ClusterInventory;
@@ -205,7 +208,9 @@ public class VmInstanceManagerImpl extends AbstractService implements
     }
 
     private void handleApiMessage(APIMessage msg) {
-        if (msg instanceof APICreateVmInstanceMsg) {
+        if (msg instanceof APIBatchCreateVmInstanceMsg) {
+            handle((APIBatchCreateVmInstanceMsg) msg);
+        } else if (msg instanceof APICreateVmInstanceMsg) {
             handle((APICreateVmInstanceMsg) msg);
         } else if(msg instanceof APICreateVmNicMsg) {
             handle((APICreateVmNicMsg) msg);
@@ -1092,6 +1097,150 @@ public class VmInstanceManagerImpl extends AbstractService implements
         });
     }
 
+    private DesignatedAllocateHostMsg makeAllocateHostMsgForPlacement(CreateVmInstanceMsg cmsg) {
+        DesignatedAllocateHostMsg amsg = new DesignatedAllocateHostMsg();
+
+        ImageVO image = dbf.findByUuid(cmsg.getImageUuid(), ImageVO.class);
+        amsg.setImage(ImageInventory.valueOf(image));
+        amsg.setZoneUuid(cmsg.getZoneUuid());
+        amsg.setClusterUuid(cmsg.getClusterUuid());
+        amsg.setHostUuid(cmsg.getHostUuid());
+        amsg.setCpuCapacity(cmsg.getCpuNum());
+        amsg.setMemoryCapacity(cmsg.getMemorySize());
+
+        List<DiskOfferingInventory> diskOfferings = new ArrayList<>();
+        if (cmsg.getDataDiskOfferingUuids() != null) {
+            cmsg.getDataDiskOfferingUuids().forEach(uuid -> diskOfferings.add(DiskOfferingInventory.valueOf(dbf.findByUuid(uuid, DiskOfferingVO.class))));
+        }
+
+        long diskSize = 0;
+        if (image.getMediaType() != ImageMediaType.ISO) {
+            diskSize = image.getSize();
+        } else if (cmsg.getRootDiskOfferingUuid() != null) {
+            diskOfferings.add(DiskOfferingInventory.valueOf(dbf.findByUuid(cmsg.getRootDiskOfferingUuid(), DiskOfferingVO.class)));
+        } else {
+            diskSize = cmsg.getRootDiskSize();
+        }
+
+        diskSize += diskOfferings.stream().mapToLong(DiskOfferingInventory::getDiskSize).sum();
+        amsg.setDiskOfferings(diskOfferings);
+        amsg.setDiskSize(diskSize);
+        amsg.setL3NetworkUuids(VmNicSpec.getL3UuidsOfSpec(cmsg.getL3NetworkUuids()));
+        amsg.setVmOperation(VmOperation.NewCreate.toString());
+        amsg.setAllocatorStrategy(HostAllocatorConstant.DESIGNATED_HOST_ALLOCATOR_STRATEGY_TYPE);
+
+        ImageBackupStorageSelector selector = new ImageBackupStorageSelector();
+        selector.setZoneUuid(cmsg.getZoneUuid());
+        selector.setImageUuid(image.getUuid());
+        amsg.setRequiredBackupStorageUuid(selector.select());
+
+        VmInstanceInventory vm = new VmInstanceInventory();
+        vm.setUuid(Platform.FAKE_UUID);
+        vm.setInstanceOfferingUuid(cmsg.getInstanceOfferingUuid());
+        vm.setImageUuid(image.getUuid());
+        vm.setCpuNum(cmsg.getCpuNum());
+        vm.setMemorySize(cmsg.getMemorySize());
+        vm.setDefaultL3NetworkUuid(cmsg.getDefaultL3NetworkUuid() == null ? amsg.getL3NetworkUuids().get(0) : cmsg.getDefaultL3NetworkUuid());
+        vm.setName("for-planning-placement-of-vms");
+        amsg.setVmInstance(vm);
+        return amsg;
+    }
+
+    private void planPlacement(APIBatchCreateVmInstanceMsg msg, CreateVmInstanceMsg cmsg, List<String> vmUuids, ReturnValueCompletion<Map<String, String>> completion) {
+        // VMs of a designated host, or not started, need no placement
+        if (cmsg.getHostUuid() != null || VmCreationStrategy.JustCreate == VmCreationStrategy.valueOf(cmsg.getStrategy())) {
+            completion.success(new HashMap<>());
+            return;
+        }
+
+        HostPlacementSpec spec = new HostPlacementSpec();
+        spec.setAllocation(makeAllocateHostMsgForPlacement(cmsg));
+        spec.setVmUuids(vmUuids);
+        if (msg.getSystemTags() != null && !msg.getSystemTags().isEmpty()) {
+            spec.getAllocation().setSystemTags(new ArrayList<>(msg.getSystemTags()));
+        }
+
+        PlanHostPlacementMsg pmsg = new PlanHostPlacementMsg();
+        pmsg.addSpec(spec);
+        pmsg.setPlacementStrategy(msg.getPlacementStrategy());
+        bus.makeLocalServiceId(pmsg, HostAllocatorConstant.SERVICE_ID);
+        bus.send(pmsg, new CloudBusCallBack(completion) {
+            @Override
+            public void run(MessageReply reply) {
+                if (reply.isSuccess()) {
+                    completion.success(((PlanHostPlacementReply) reply).getPlacements());
+                } else {
+                    completion.fail(reply.getError());
+                }
+            }
+        });
+    }
+
+    private void handle(final APIBatchCreateVmInstanceMsg msg) {
+        APIBatchCreateVmInstanceEvent evt = new APIBatchCreateVmInstanceEvent(msg.getId());
+
+        List<String> vmUuids = new ArrayList<>();
+        for (int i = 0; i < msg.getCount(); i++) {
+            vmUuids.add(Platform.getUuid());
+        }
+
+        planPlacement(msg, fromAPICreateVmInstanceMsg(msg), vmUuids, new ReturnValueCompletion<Map<String, String>>(msg) {
+            @Override
+            public void success(Map<String, String> placements) {
+                batchCreateVmInstances(msg, vmUuids, placements, evt);
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                // VMs are still allocated one by one
+                logger.warn(String.format("failed to plan placement of VMs%s, %s", vmUuids, errorCode));
+                batchCreateVmInstances(msg, vmUuids, new HashMap<>(), evt);
+            }
+        });
+    }
+
+    private void batchCreateVmInstances(APIBatchCreateVmInstanceMsg msg, List<String> vmUuids, Map<String, String> placements, APIBatchCreateVmInstanceEvent evt) {
+        List<BatchCreateVmResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        new While<>(vmUuids).step((vmUuid, completion) -> {
+            CreateVmInstanceMsg cmsg = fromAPICreateVmInstanceMsg(msg);
+            cmsg.setResourceUuid(vmUuid);
+            if (placements.containsKey(vmUuid)) {
+                cmsg.setHostUuid(placements.get(vmUuid));
+            }
+
+            try {
+                doCreateVmInstance(cmsg, msg, new ReturnValueCompletion<VmInstanceInventory>(completion) {
+                    @Override
+                    public void success(VmInstanceInventory inv) {
+                        results.add(new BatchCreateVmResult(inv, null));
+                        completion.done();
+                    }
+
+                    @Override
+                    public void fail(ErrorCode errorCode) {
+                        results.add(new BatchCreateVmResult(null, errorCode));
+                        completion.done();
+                    }
+                });
+            } catch (Exception e) {
+                logger.warn(String.format("failed to create the VM[uuid:%s] in the batch", vmUuid), e);
+                results.add(new BatchCreateVmResult(null, operr("failed to create the VM[uuid:%s], %s", vmUuid, e.getMessage())));
+                completion.done();
+            }
+        }, VmGlobalConfig.BATCH_CREATE_PARALLELISM_DEGREE.value(Integer.class)).run(new NoErrorCompletion(msg) {
+            @Override
+            public void done() {
+                evt.setResults(new ArrayList<>(results));
+                if (results.stream().noneMatch(BatchCreateVmResult::isSuccess)) {
+                    evt.setError(results.get(0).getError());
+                }
+
+                bus.publish(evt);
+            }
+        });
+    }
+
     private void doDeleteVmNic(VmNicInventory nic, Completion completion) {
         thdf.chainSubmit(new ChainTask(completion) {
             @Override
@@ -2062,6 +2211,7 @@ public class VmInstanceManagerImpl extends AbstractService implements
         quota.addPair(p);
 
         quota.addMessageNeedValidation(APICreateVmInstanceMsg.class);
+        quota.addMessageNeedValidation(APIBatchCreateVmInstanceMsg.class);
         quota.addMessageNeedValidation(APIRecoverVmInstanceMsg.class);
         quota.addMessageNeedValidation(APICreateDataVolumeMsg.class);
         quota.addMessageNeedValidation(APIRecoverDataVolumeMsg.class);
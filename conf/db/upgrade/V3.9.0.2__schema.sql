@@ -0,0 +1,2 @@
+ALTER TABLE `zstack`.`JobQueueEntryVO` ADD COLUMN `version` int unsigned NOT NULL DEFAULT 0;
+ALTER TABLE `zstack`.`JobQueueEntryVO` ADD INDEX idxJobQueueEntryVOJobQueueIdState (`jobQueueId`, `state`);
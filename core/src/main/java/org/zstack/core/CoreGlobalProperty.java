@@ -12,6 +12,7 @@ public class CoreGlobalProperty {
     public static String BEAN_REF_CONTEXT_CONF;
     @GlobalProperty(name = "vmTracerOn", defaultValue = "true")
     public static boolean VM_TRACER_ON;
+    // logs the latency of every flow, the latency is recorded in SimpleFlowChain.getStatistics() either way
     @GlobalProperty(name = "profiler.workflow", defaultValue = "false")
     public static boolean PROFILER_WORKFLOW;
     @GlobalProperty(name = "profiler.httpCall", defaultValue = "false")
@@ -38,6 +39,20 @@ public class CoreGlobalProperty {
     public static int REST_FACADE_CONNECT_TIMEOUT;
     @GlobalProperty(name = "RESTFacade.echoTimeout", defaultValue = "60")
     public static int REST_FACADE_ECHO_TIMEOUT;
+    @GlobalProperty(name = "RESTFacade.async.ioThreadNum", defaultValue = "0")
+    public static int REST_FACADE_ASYNC_IO_THREAD_NUM;
+    @GlobalProperty(name = "RESTFacade.async.maxConnectionsPerDestination", defaultValue = "20")
+    public static int REST_FACADE_ASYNC_MAX_CONNECTIONS_PER_DESTINATION;
+    @GlobalProperty(name = "RESTFacade.async.maxConnections", defaultValue = "4000")
+    public static int REST_FACADE_ASYNC_MAX_CONNECTIONS;
+    @GlobalProperty(name = "RESTFacade.async.maxInFlightPerDestination", defaultValue = "100")
+    public static int REST_FACADE_ASYNC_MAX_IN_FLIGHT_PER_DESTINATION;
+    @GlobalProperty(name = "RESTFacade.async.idleConnectionTimeout", defaultValue = "60")
+    public static int REST_FACADE_ASYNC_IDLE_CONNECTION_TIMEOUT;
+    @GlobalProperty(name = "RESTFacade.async.maxRetries", defaultValue = "5")
+    public static int REST_FACADE_ASYNC_MAX_RETRIES;
+    @GlobalProperty(name = "RESTFacade.async.retryInterval", defaultValue = "1")
+    public static int REST_FACADE_ASYNC_RETRY_INTERVAL;
     @GlobalProperty(name = "upgradeStartOn", defaultValue = "false")
     public static boolean IS_UPGRADE_START;
     @GlobalProperty(name = "shadowEntityOn", defaultValue = "false")
@@ -8,7 +8,9 @@ import org.zstack.header.exception.CloudConfigureFailException;
 import org.zstack.header.message.*;
 
 import javax.servlet.http.HttpServletResponse;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public interface CloudBus extends Component {
@@ -88,6 +90,23 @@ public interface CloudBus extends Component {
         throw new AbstractMethodError("not supported");
     }
 
+    /**
+     *  this method should be inherited by implementations supporting the binary transport
+     * @param body
+     * @param rsp
+     */
+    default void handleBinaryHttpRequest(byte[] body, HttpServletResponse rsp) {
+        throw new AbstractMethodError("not supported");
+    }
+
+    default void handleHttpEventsRequest(HttpEntity<String> e, HttpServletResponse rsp) {
+        throw new AbstractMethodError("not supported");
+    }
+
+    default void handleBinaryHttpEventsRequest(byte[] body, HttpServletResponse rsp) {
+        throw new AbstractMethodError("not supported");
+    }
+
     String HEADER_NO_NEED_REPLY_MSG = "noReply";
     String HEADER_CORRELATION_ID = "correlationId";
     String HEADER_REPLY_TO = "replyTo";
@@ -101,4 +120,8 @@ public interface CloudBus extends Component {
     default int getEnvelopeSize() {
         return 0;
     }
+
+    default Map<String, EventOutboxStatistic> getEventOutboxStatistics() {
+        return new HashMap<>();
+    }
 }
@@ -0,0 +1,187 @@
+package org.zstack.core.cloudbus;
+
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.message.Message;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compact binary frame for messages travelling between management nodes.
+ *
+ * layout:
+ *   int     magic
+ *   byte    version
+ *   byte    flags, FLAG_DEFLATED if the body is deflated
+ *   utf     class name of the message
+ *   int     length of the body
+ *   bytes   body, fields of the message encoded by CloudBusGson
+ *
+ * Unlike the JSON transport, the class name is carried out of band so the receiver
+ * deserializes the body directly into the message class without a wrapper object.
+ *
+ * A batch of messages is framed as:
+ *   int     batch magic
+ *   byte    version
+ *   int     count of frames
+ *   repeated count times:
+ *     int   length of the frame
+ *     bytes the frame described above
+ */
+public class CloudBusBinaryCodec {
+    static final int MAGIC = 0x5A53424E;
+    static final int BATCH_MAGIC = 0x5A534242;
+    static final byte VERSION = 1;
+    private static final byte FLAG_DEFLATED = 1;
+
+    private static final Map<String, Class<? extends Message>> messageClasses = new ConcurrentHashMap<>();
+
+    public static class DecodedMessage {
+        private final Message message;
+        private final String body;
+
+        DecodedMessage(Message message, String body) {
+            this.message = message;
+            this.body = body;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    public static byte[] encode(Message msg) throws IOException {
+        byte[] body = CloudBusGson.toJsonBody(msg).getBytes(StandardCharsets.UTF_8);
+        boolean deflate = body.length >= CloudBusGlobalProperty.BINARY_TRANSPORT_COMPRESS_THRESHOLD;
+        if (deflate) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(body.length / 4);
+            try (DeflaterOutputStream dout = new DeflaterOutputStream(bout, new Deflater(Deflater.BEST_SPEED))) {
+                dout.write(body);
+            }
+            body = bout.toByteArray();
+        }
+
+        String className = msg.getClass().getName();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + className.length() + 16);
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC);
+        dout.writeByte(VERSION);
+        dout.writeByte(deflate ? FLAG_DEFLATED : 0);
+        dout.writeUTF(className);
+        dout.writeInt(body.length);
+        dout.write(body);
+        dout.flush();
+        return out.toByteArray();
+    }
+
+    public static DecodedMessage decode(byte[] data) throws IOException {
+        DataInputStream din = new DataInputStream(new ByteArrayInputStream(data));
+        int magic = din.readInt();
+        if (magic != MAGIC) {
+            throw new CloudRuntimeException(String.format("not a cloudbus binary frame, magic[0x%x]", magic));
+        }
+
+        byte version = din.readByte();
+        if (version != VERSION) {
+            throw new CloudRuntimeException(String.format("unsupported cloudbus binary frame version[%s]", version));
+        }
+
+        byte flags = din.readByte();
+        Class<? extends Message> clz = getMessageClass(din.readUTF());
+        byte[] body = new byte[din.readInt()];
+        din.readFully(body);
+
+        if ((flags & FLAG_DEFLATED) != 0) {
+            body = inflate(body);
+        }
+
+        String json = new String(body, StandardCharsets.UTF_8);
+        return new DecodedMessage(CloudBusGson.fromJsonBody(json, clz), json);
+    }
+
+    public static byte[] encodeBatch(List<? extends Message> msgs) throws IOException {
+        List<byte[]> frames = new ArrayList<>(msgs.size());
+        for (Message msg : msgs) {
+            frames.add(encode(msg));
+        }
+        return encodeFrames(frames);
+    }
+
+    public static byte[] encodeFrames(List<byte[]> frames) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(BATCH_MAGIC);
+        dout.writeByte(VERSION);
+        dout.writeInt(frames.size());
+        for (byte[] frame : frames) {
+            dout.writeInt(frame.length);
+            dout.write(frame);
+        }
+        dout.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * splits a batch into its frames without decoding them, so a frame that can't be
+     * decoded fails alone
+     */
+    public static List<byte[]> decodeBatch(byte[] data) throws IOException {
+        DataInputStream din = new DataInputStream(new ByteArrayInputStream(data));
+        int magic = din.readInt();
+        if (magic != BATCH_MAGIC) {
+            throw new CloudRuntimeException(String.format("not a cloudbus binary batch, magic[0x%x]", magic));
+        }
+
+        byte version = din.readByte();
+        if (version != VERSION) {
+            throw new CloudRuntimeException(String.format("unsupported cloudbus binary batch version[%s]", version));
+        }
+
+        int count = din.readInt();
+        List<byte[]> ret = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] frame = new byte[din.readInt()];
+            din.readFully(frame);
+            ret.add(frame);
+        }
+        return ret;
+    }
+
+    private static byte[] inflate(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(body))) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Class<? extends Message> getMessageClass(String className) {
+        return messageClasses.computeIfAbsent(className, name -> {
+            try {
+                Class clz = Class.forName(name);
+                if (!Message.class.isAssignableFrom(clz)) {
+                    throw new CloudRuntimeException(String.format("%s is not a message class", name));
+                }
+
+                return clz;
+            } catch (ClassNotFoundException e) {
+                throw new CloudRuntimeException(String.format("unable to deserialize class[%s]", name), e);
+            }
+        });
+    }
+}
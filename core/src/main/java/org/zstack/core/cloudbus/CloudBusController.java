@@ -1,5 +1,6 @@
 package org.zstack.core.cloudbus;
 
+import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -49,4 +50,28 @@ public class CloudBusController {
         //Platform.getComponentLoader().getComponent(CloudBusImpl3.class).handleHttpRequest(entity, response);
         bus.handleHttpRequest(entity, response);
     }
+
+    @RequestMapping(value = CloudBusImpl3.HTTP_EVENTS_URL, method = RequestMethod.POST)
+    public void handleEvents(HttpServletRequest request, HttpServletResponse response) {
+        bus.handleHttpEventsRequest(toHttpEntity(request), response);
+    }
+
+    private byte[] toBytes(HttpServletRequest req) {
+        try {
+            return IOUtils.toByteArray(req.getInputStream());
+        } catch (Exception e) {
+            logger.warn(e.getMessage(), e);
+            throw new CloudRuntimeException(e);
+        }
+    }
+
+    @RequestMapping(value = CloudBusImpl3.HTTP_BINARY_URL, method = RequestMethod.POST)
+    public void handleBinary(HttpServletRequest request, HttpServletResponse response) {
+        bus.handleBinaryHttpRequest(toBytes(request), response);
+    }
+
+    @RequestMapping(value = CloudBusImpl3.HTTP_BINARY_EVENTS_URL, method = RequestMethod.POST)
+    public void handleBinaryEvents(HttpServletRequest request, HttpServletResponse response) {
+        bus.handleBinaryHttpEventsRequest(toBytes(request), response);
+    }
 }
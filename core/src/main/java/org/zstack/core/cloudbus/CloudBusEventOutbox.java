@@ -0,0 +1,156 @@
+package org.zstack.core.cloudbus;
+
+import org.zstack.core.Platform;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.message.Event;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans events out to other management nodes without blocking the publisher.
+ *
+ * Every peer node has a bounded outbox; events arriving within
+ * CloudBus.eventOutbox.coalesceWindow are delivered in one batch. A peer has at
+ * most one batch in flight, so events to the same peer keep their order while a
+ * slow or dead peer only delays its own outbox. Events are dropped when the
+ * outbox is full.
+ */
+class CloudBusEventOutbox {
+    private static final CLogger logger = Utils.getLogger(CloudBusEventOutbox.class);
+
+    private final ThreadFacade thdf;
+    private final ResourceDestinationMaker destMaker;
+    private final CloudBusTransport transport;
+
+    private final Map<String, PeerOutbox> outboxes = new ConcurrentHashMap<>();
+
+    CloudBusEventOutbox(ThreadFacade thdf, ResourceDestinationMaker destMaker, CloudBusTransport transport) {
+        this.thdf = thdf;
+        this.destMaker = destMaker;
+        this.transport = transport;
+    }
+
+    private static class PendingEvent {
+        final Event event;
+        final long enqueueTime = System.currentTimeMillis();
+
+        PendingEvent(Event event) {
+            this.event = event;
+        }
+    }
+
+    private class PeerOutbox {
+        final String nodeUuid;
+        volatile String nodeIp;
+        final BlockingQueue<PendingEvent> queue = new LinkedBlockingQueue<>(CloudBusGlobalProperty.EVENT_OUTBOX_QUEUE_SIZE);
+        final AtomicBoolean flushing = new AtomicBoolean(false);
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        volatile long lastDeliveryLatency;
+
+        PeerOutbox(String nodeUuid) {
+            this.nodeUuid = nodeUuid;
+        }
+
+        void offer(Event evt, String ip) {
+            nodeIp = ip;
+
+            if (!queue.offer(new PendingEvent(evt))) {
+                // don't flood the log when a peer is stuck
+                if (dropped.getAndIncrement() % 1000 == 0) {
+                    logger.warn(String.format("the event outbox of management node[uuid:%s, ip:%s] is full, dropped %s events so far",
+                            nodeUuid, nodeIp, dropped.get()));
+                }
+                return;
+            }
+
+            scheduleFlush();
+        }
+
+        void scheduleFlush() {
+            if (flushing.compareAndSet(false, true)) {
+                thdf.submitTimeoutTask(this::flush, TimeUnit.MILLISECONDS, CloudBusGlobalProperty.EVENT_OUTBOX_COALESCE_WINDOW);
+            }
+        }
+
+        void flush() {
+            try {
+                try {
+                    nodeIp = destMaker.getNodeInfo(nodeUuid).getNodeIP();
+                } catch (ManagementNodeNotFoundException e) {
+                    drop();
+                    return;
+                }
+
+                List<PendingEvent> batch = new ArrayList<>();
+                while (queue.drainTo(batch, CloudBusGlobalProperty.EVENT_OUTBOX_MAX_BATCH_SIZE) > 0) {
+                    deliver(batch);
+                    batch = new ArrayList<>();
+                }
+            } finally {
+                flushing.set(false);
+
+                // events may arrive after the last drain but before the flag is reset
+                if (!queue.isEmpty() && outboxes.get(nodeUuid) == this) {
+                    scheduleFlush();
+                }
+            }
+        }
+
+        void drop() {
+            outboxes.remove(nodeUuid, this);
+            int n = queue.size();
+            queue.clear();
+            dropped.addAndGet(n);
+            logger.debug(String.format("management node[uuid:%s] has gone, drop %s events in its outbox", nodeUuid, n));
+        }
+
+        void deliver(List<PendingEvent> batch) {
+            List<Event> events = new ArrayList<>(batch.size());
+            batch.forEach(p -> events.add(p.event));
+
+            try {
+                transport.sendEvents(nodeIp, events);
+                sent.addAndGet(events.size());
+                lastDeliveryLatency = System.currentTimeMillis() - batch.get(0).enqueueTime;
+            } catch (Throwable t) {
+                failed.addAndGet(events.size());
+                logger.warn(String.format("failed to deliver %s events to management node[uuid:%s, ip:%s]",
+                        events.size(), nodeUuid, nodeIp), t);
+            }
+        }
+
+        EventOutboxStatistic getStatistic() {
+            PendingEvent head = queue.peek();
+            long lag = head == null ? 0 : System.currentTimeMillis() - head.enqueueTime;
+            return new EventOutboxStatistic(nodeUuid, nodeIp, queue.size(), lag, lastDeliveryLatency,
+                    sent.get(), dropped.get(), failed.get());
+        }
+    }
+
+    void publish(Event evt) {
+        destMaker.getAllNodeInfo().forEach(node -> {
+            if (!node.getNodeUuid().equals(Platform.getManagementServerId())) {
+                outboxes.computeIfAbsent(node.getNodeUuid(), PeerOutbox::new).offer(evt, node.getNodeIP());
+            }
+        });
+    }
+
+    Map<String, EventOutboxStatistic> getStatistics() {
+        Map<String, EventOutboxStatistic> ret = new HashMap<>();
+        outboxes.forEach((uuid, outbox) -> ret.put(uuid, outbox.getStatistic()));
+        return ret;
+    }
+}
@@ -51,4 +51,23 @@ public class CloudBusGlobalProperty {
     public static boolean HTTP_ALWAYS;
     @GlobalProperty(name="CloudBus.httpContextPath", defaultValue = "/zstack")
     public static String HTTP_CONTEXT_PATH;
+    /**
+     * transport between management nodes, "http" for the JSON over HTTP transport,
+     * "binary" for the binary codec over persistent connections
+     */
+    @GlobalProperty(name="CloudBus.transport", defaultValue = "http")
+    public static String TRANSPORT;
+    @GlobalProperty(name="CloudBus.binaryTransport.maxConnectionsPerNode", defaultValue = "20")
+    public static int BINARY_TRANSPORT_MAX_CONNECTIONS_PER_NODE;
+    @GlobalProperty(name="CloudBus.binaryTransport.idleConnectionTimeout", defaultValue = "60")
+    public static int BINARY_TRANSPORT_IDLE_CONNECTION_TIMEOUT;
+    @GlobalProperty(name="CloudBus.binaryTransport.compressThreshold", defaultValue = "8192")
+    public static int BINARY_TRANSPORT_COMPRESS_THRESHOLD;
+    @GlobalProperty(name="CloudBus.eventOutbox.queueSize", defaultValue = "10000")
+    public static int EVENT_OUTBOX_QUEUE_SIZE;
+    // in milliseconds
+    @GlobalProperty(name="CloudBus.eventOutbox.coalesceWindow", defaultValue = "10")
+    public static long EVENT_OUTBOX_COALESCE_WINDOW;
+    @GlobalProperty(name="CloudBus.eventOutbox.maxBatchSize", defaultValue = "200")
+    public static int EVENT_OUTBOX_MAX_BATCH_SIZE;
 }
@@ -128,10 +128,26 @@ public class CloudBusGson {
         return gson.fromJson(json, Message.class);
     }
 
+    public static Message fromJson(JsonElement json) {
+        return gson.fromJson(json, Message.class);
+    }
+
     public static String toJson(Message msg) {
         return gson.toJson(msg, Message.class);
     }
 
+    /**
+     * serialize fields of the message without the class name wrapper,
+     * used by codecs which carry the class name out of band
+     */
+    public static String toJsonBody(Message msg) {
+        return gson.toJson(msg);
+    }
+
+    public static <T extends Message> T fromJsonBody(String json, Class<T> clazz) {
+        return gson.fromJson(json, clazz);
+    }
+
     public static String toLogSafeJson(Message msg) {
         return logSafeGson.toJson(msg, Message.class);
     }
@@ -1,18 +1,17 @@
 package org.zstack.core.cloudbus;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import org.apache.logging.log4j.ThreadContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestClientException;
 import org.zstack.core.CoreGlobalProperty;
 import org.zstack.core.MessageCommandRecorder;
 import org.zstack.core.Platform;
 import org.zstack.core.asyncbatch.While;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.errorcode.ErrorFacade;
-import org.zstack.core.retry.Retry;
-import org.zstack.core.retry.RetryCondition;
 import org.zstack.core.thread.AsyncThread;
 import org.zstack.core.thread.SyncTask;
 import org.zstack.core.thread.ThreadFacade;
@@ -32,9 +31,7 @@ import org.zstack.header.errorcode.SysErrors;
 import org.zstack.header.exception.CloudConfigureFailException;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.message.*;
-import org.zstack.header.rest.RESTFacade;
 import org.zstack.header.rest.RestAPIExtensionPoint;
-import org.zstack.header.rest.TimeoutRestTemplate;
 import org.zstack.header.search.APISearchMessage;
 import org.zstack.header.search.APISearchReply;
 import org.zstack.utils.DebugUtils;
@@ -44,12 +41,12 @@ import org.zstack.utils.gson.JSONObjectUtil;
 import org.zstack.utils.logging.CLogger;
 
 import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.zstack.core.Platform.*;
 import static org.zstack.utils.BeanUtils.getProperty;
@@ -103,9 +100,13 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
     private Map<String, EndPoint> endPoints = new HashMap<>();
     private Map<String, Envelope> envelopes = new ConcurrentHashMap<>();
     private Map<String, java.util.function.Consumer> messageConsumers = new ConcurrentHashMap<>();
-    private static TimeoutRestTemplate http = RESTFacade.createRestTemplate(CoreGlobalProperty.REST_FACADE_READ_TIMEOUT, CoreGlobalProperty.REST_FACADE_CONNECT_TIMEOUT);
+    private CloudBusTransport transport;
+    private CloudBusEventOutbox eventOutbox;
 
     public static final String HTTP_BASE_URL = "/cloudbus";
+    public static final String HTTP_EVENTS_URL = "/cloudbus/events";
+    public static final String HTTP_BINARY_URL = "/cloudbus/binary";
+    public static final String HTTP_BINARY_EVENTS_URL = "/cloudbus/binary/events";
 
     {
         if (CloudBusGlobalProperty.MESSAGE_LOG != null) {
@@ -121,6 +122,12 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
         }
     }
 
+    static String makeHttpUrl(String ip, String path) {
+        return CloudBusGlobalProperty.HTTP_CONTEXT_PATH.isEmpty() ? String.format("http://%s:%s%s",
+                ip, CloudBusGlobalProperty.HTTP_PORT, path) : String.format("http://%s:%s/%s/%s",
+                ip, CloudBusGlobalProperty.HTTP_PORT, CloudBusGlobalProperty.HTTP_CONTEXT_PATH, path);
+    }
+
     public static String getManagementNodeUUIDFromServiceID(String serviceID) {
         String[] ss = serviceID.split(SERVICE_ID_SPLITTER);
         if (ss.length != 2) {
@@ -524,28 +531,8 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
         }
 
         private void httpSend(String ip) {
-            String url = CloudBusGlobalProperty.HTTP_CONTEXT_PATH.isEmpty() ? String.format("http://%s:%s%s",
-                    ip, CloudBusGlobalProperty.HTTP_PORT, HTTP_BASE_URL) : String.format("http://%s:%s/%s/%s",
-                    ip, CloudBusGlobalProperty.HTTP_PORT, CloudBusGlobalProperty.HTTP_CONTEXT_PATH, HTTP_BASE_URL);
-
-            HttpHeaders headers = new HttpHeaders();
-            HttpEntity<String> req = new HttpEntity<>(CloudBusGson.toJson(msg), headers);
             try {
-                ResponseEntity<String> rsp = new Retry<ResponseEntity<String>>() {
-                    {
-                        interval = 2;
-                    }
-
-                    @Override
-                    @RetryCondition(onExceptions = {IOException.class, RestClientException.class, HttpClientErrorException.class})
-                    protected ResponseEntity<String> call() {
-                        return http.exchange(url, HttpMethod.POST, req, String.class);
-                    }
-                }.run();
-
-                if (!rsp.getStatusCode().is2xxSuccessful()) {
-                    replyErrorIfNeeded(operr("HTTP ERROR, status code: %s, body: %s", rsp.getStatusCode(), rsp.getBody()));
-                }
+                transport.send(ip, msg);
             } catch (OperationFailureException e) {
                 replyErrorIfNeeded(e.getErrorCode());
             } catch (Throwable e) {
@@ -573,11 +560,7 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
         private void eventSend() {
             buildSchema(msg);
             localSend();
-            destMaker.getAllNodeInfo().forEach(node -> {
-                if (!node.getNodeUuid().equals(Platform.getManagementServerId())) {
-                    httpSend(node.getNodeIP());
-                }
-            });
+            eventOutbox.publish((Event) msg);
         }
 
         private void localSend() {
@@ -1089,8 +1072,24 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
         }
     }
 
+    private CloudBusTransport createTransport() {
+        CloudBusTransport json = new HttpJsonCloudBusTransport();
+        if (CloudBusGlobalProperty.TRANSPORT == null || HttpJsonCloudBusTransport.NAME.equals(CloudBusGlobalProperty.TRANSPORT)) {
+            return json;
+        } else if (HttpBinaryCloudBusTransport.NAME.equals(CloudBusGlobalProperty.TRANSPORT)) {
+            return new HttpBinaryCloudBusTransport(json);
+        }
+
+        throw new CloudRuntimeException(String.format("unknown CloudBus.transport[%s], valid values are [%s, %s]",
+                CloudBusGlobalProperty.TRANSPORT, HttpJsonCloudBusTransport.NAME, HttpBinaryCloudBusTransport.NAME));
+    }
+
     @Override
     public boolean start() {
+        transport = createTransport();
+        eventOutbox = new CloudBusEventOutbox(thdf, destMaker, transport);
+        logger.debug(String.format("CloudBus uses the %s transport between management nodes", transport.getName()));
+
         on(SERVICE_ID, messageConsumer);
         on(EVENT_ID, eventConsumer);
 
@@ -1167,13 +1166,14 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
         doSendAndCallExtensions(msg);
     }
 
-    private void restoreFromSchema(Message msg, Map raw) throws ClassNotFoundException {
+    private void restoreFromSchema(Message msg, Supplier<Map> rawGetter) throws ClassNotFoundException {
         Map<String, String> schema = msg.getHeaderEntry("schema");
         if (schema == null || schema.isEmpty()) {
             return;
         }
 
-        raw = (Map) raw.values().iterator().next();
+        // only parse the raw body if there is anything to restore
+        Map raw = rawGetter.get();
         List<String> paths = new ArrayList<>();
         paths.addAll(schema.keySet());
 
@@ -1194,9 +1194,11 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
     public void handleHttpRequest(HttpEntity<String> e, HttpServletResponse rsp) {
         try {
             Message msg = CloudBusGson.fromJson(e.getBody());
-            Map raw = JSONObjectUtil.toObject(e.getBody(), LinkedHashMap.class);
             try {
-                restoreFromSchema(msg, raw);
+                restoreFromSchema(msg, () -> {
+                    Map raw = JSONObjectUtil.toObject(e.getBody(), LinkedHashMap.class);
+                    return (Map) raw.values().iterator().next();
+                });
             } catch (ClassNotFoundException e1) {
                 throw new CloudRuntimeException(e1);
             }
@@ -1208,8 +1210,93 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
         }
     }
 
+    @Override
+    @AsyncThread
+    public void handleHttpEventsRequest(HttpEntity<String> e, HttpServletResponse rsp) {
+        JsonArray events;
+        try {
+            events = new JsonParser().parse(e.getBody()).getAsJsonArray();
+        } catch (Throwable t) {
+            logger.warn(String.format("unable to parse events received from HTTP. HTTP body: %s", e.getBody()), t);
+            return;
+        }
+
+        // events are independent of each other, a bad one doesn't stop delivering the rest
+        for (JsonElement element : events) {
+            try {
+                Message msg = CloudBusGson.fromJson(element);
+                restoreFromSchema(msg, () -> {
+                    Map raw = JSONObjectUtil.toObject(element.toString(), LinkedHashMap.class);
+                    return (Map) raw.values().iterator().next();
+                });
+
+                new MessageSender(msg).localSend();
+            } catch (Throwable t) {
+                logger.warn(String.format("unable to deliver an event received from HTTP. event: %s", element), t);
+            }
+        }
+
+        rsp.setStatus(HttpStatus.OK.value());
+    }
+
+    @Override
+    @AsyncThread
+    public void handleBinaryHttpEventsRequest(byte[] body, HttpServletResponse rsp) {
+        List<byte[]> frames;
+        try {
+            frames = CloudBusBinaryCodec.decodeBatch(body);
+        } catch (Throwable t) {
+            logger.warn(String.format("unable to parse %s bytes of events received from the binary transport", body.length), t);
+            return;
+        }
+
+        // events are independent of each other, a bad one doesn't stop delivering the rest
+        for (byte[] frame : frames) {
+            CloudBusBinaryCodec.DecodedMessage decoded = null;
+            try {
+                decoded = CloudBusBinaryCodec.decode(frame);
+                Message msg = decoded.getMessage();
+                String json = decoded.getBody();
+                restoreFromSchema(msg, () -> JSONObjectUtil.toObject(json, LinkedHashMap.class));
+                new MessageSender(msg).localSend();
+            } catch (Throwable t) {
+                logger.warn(String.format("unable to deliver an event received from the binary transport. event: %s",
+                        decoded == null ? String.format("%s bytes", frame.length) : decoded.getBody()), t);
+            }
+        }
+
+        rsp.setStatus(HttpStatus.OK.value());
+    }
+
+    @Override
+    @AsyncThread
+    public void handleBinaryHttpRequest(byte[] body, HttpServletResponse rsp) {
+        CloudBusBinaryCodec.DecodedMessage decoded = null;
+        try {
+            decoded = CloudBusBinaryCodec.decode(body);
+            Message msg = decoded.getMessage();
+            String json = decoded.getBody();
+            try {
+                restoreFromSchema(msg, () -> JSONObjectUtil.toObject(json, LinkedHashMap.class));
+            } catch (ClassNotFoundException e1) {
+                throw new CloudRuntimeException(e1);
+            }
+
+            new MessageSender(msg).localSend();
+            rsp.setStatus(HttpStatus.OK.value());
+        } catch (Throwable t) {
+            logger.warn(String.format("unable to deliver a message received from the binary transport. body: %s",
+                    decoded == null ? String.format("%s bytes", body.length) : decoded.getBody()), t);
+        }
+    }
+
     @Override
     public int getEnvelopeSize() {
         return envelopes.size();
     }
+
+    @Override
+    public Map<String, EventOutboxStatistic> getEventOutboxStatistics() {
+        return eventOutbox == null ? new HashMap<>() : eventOutbox.getStatistics();
+    }
 }
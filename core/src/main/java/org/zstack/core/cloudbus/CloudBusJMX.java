@@ -198,4 +198,9 @@ public class CloudBusJMX implements Component, BeforeSendMessageInterceptor,
                 longest
         );
     }
+
+    @Override
+    public Map<String, EventOutboxStatistic> getEventOutboxStatistics() {
+        return bus.getEventOutboxStatistics();
+    }
 }
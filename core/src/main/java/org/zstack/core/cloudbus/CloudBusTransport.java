@@ -0,0 +1,23 @@
+package org.zstack.core.cloudbus;
+
+import org.zstack.header.message.Event;
+import org.zstack.header.message.Message;
+
+import java.util.List;
+
+/**
+ * Delivers a message to the CloudBus of another management node.
+ *
+ * Implementations throw OperationFailureException if the peer rejects the message,
+ * other exceptions are treated as transport failures by the caller.
+ */
+public interface CloudBusTransport {
+    String getName();
+
+    void send(String ip, Message msg);
+
+    /**
+     * deliver a batch of events in one request, the order of events is kept
+     */
+    void sendEvents(String ip, List<Event> events);
+}
@@ -5,23 +5,28 @@ import org.zstack.core.Platform;
 import org.zstack.core.db.Q;
 import org.zstack.core.thread.AsyncThread;
 import org.zstack.core.webhook.WebhookCaller;
+import org.zstack.core.webhook.WebhookGlobalProperty;
 import org.zstack.header.core.webhooks.WebhookVO_;
 import org.zstack.header.Component;
 import org.zstack.header.apimediator.ApiMessageInterceptionException;
 import org.zstack.header.apimediator.GlobalApiMessageInterceptor;
 import org.zstack.header.core.webhooks.APICreateWebhookMsg;
+import org.zstack.header.core.webhooks.WebhookCanonicalEvents;
 import org.zstack.header.core.webhooks.WebhookInventory;
 import org.zstack.header.core.webhooks.WebhookVO;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.Event;
+import org.zstack.utils.Utils;
 import org.zstack.utils.gson.JSONObjectUtil;
+import org.zstack.utils.logging.CLogger;
 
 import static org.zstack.core.Platform.argerr;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static java.util.Arrays.asList;
 
@@ -32,11 +37,27 @@ import static java.util.Arrays.asList;
  * To change this template use File | Settings | File Templates.
  */
 public class EventFacadeImpl implements EventFacade, CloudBusEventListener, Component, GlobalApiMessageInterceptor {
+    private static final CLogger logger = Utils.getLogger(EventFacadeImpl.class);
+
     @Autowired
     private CloudBus bus;
 
-    private final Map<String, CallbackWrapper> global = new ConcurrentHashMap<>();
-    private final Map<String, CallbackWrapper> local =  new ConcurrentHashMap<>();
+    private final EventPathRouter<CallbackWrapper> global = new EventPathRouter<>();
+    private final EventPathRouter<CallbackWrapper> local = new EventPathRouter<>();
+
+    // canonical event webhooks indexed by their paths, loaded from the database on demand,
+    // dropped when any management node changes webhooks and reloaded after Webhook.index.ttl
+    // in case the change event from a peer is lost
+    private volatile WebhookIndex webhookIndex;
+    private long webhookIndexVersion;
+
+    // opaques made of these characters only are matched literally by the trie
+    private static final Pattern LITERAL_WEBHOOK_PATH = Pattern.compile("(/[\\w\\-]+)+");
+
+    private static class WebhookIndex {
+        final EventPathRouter<WebhookInventory> router = new EventPathRouter<>();
+        final long expiredAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(WebhookGlobalProperty.INDEX_TTL);
+    }
 
     private EventSubscriberReceipt unsubscriber;
 
@@ -70,34 +91,21 @@ public class EventFacadeImpl implements EventFacade, CloudBusEventListener, Comp
     }
 
     private class CallbackWrapper {
-        String path;
-        String glob;
         AbstractEventFacadeCallback callback;
         AtomicBoolean hasRun;
 
-        CallbackWrapper(String path, AbstractEventFacadeCallback callback) {
-            this.path = path;
-            this.glob = createRegexFromGlob(path.replaceAll("\\{.*\\}", ".*"));
+        CallbackWrapper(AbstractEventFacadeCallback callback) {
             this.callback = callback;
             if (callback instanceof AutoOffEventCallback) {
                 hasRun = new AtomicBoolean(false);
             }
         }
 
-        Object getIdentity() {
-            return callback;
-        }
-
-        public String getGlob() {
-            return glob;
-        }
-
         @AsyncThread
-        void call(CanonicalEvent e) {
+        void call(CanonicalEvent e, Map<String, String> tokens) {
             if (callback instanceof EventRunnable) {
                 ((EventRunnable) callback).run();
             } else {
-                Map<String, String> tokens = tokenize(e.getPath(), path);
                 tokens.put(EventFacade.META_DATA_MANAGEMENT_NODE_ID, e.getManagementNodeId());
                 tokens.put(EventFacade.META_DATA_PATH, e.getPath());
                 Object data = null;
@@ -124,82 +132,40 @@ public class EventFacadeImpl implements EventFacade, CloudBusEventListener, Comp
         }
     }
 
-    public String createRegexFromGlob(String glob) {
-        String out = "^";
-        for(int i = 0; i < glob.length(); ++i) {
-            final char c = glob.charAt(i);
-            switch(c) {
-                case '*': out += ".*"; break;
-                case '?': out += '.'; break;
-                case '\\': out += "\\\\"; break;
-                default: out += c;
-            }
-        }
-        out += '$';
-        return out;
-    }
-
-    private Map<String, String> tokenize(String str1, String str2) {
-        StringTokenizer token = new StringTokenizer(str1, "/");
-        List<String> origins =  new ArrayList<String>();
-        while (token.hasMoreElements()) {
-            origins.add(token.nextToken());
-        }
-
-        token = new StringTokenizer(str2, "/");
-        List<String> t = new ArrayList<String>();
-        while (token.hasMoreElements()) {
-            t.add(token.nextToken());
-        }
-
-        Map ret = new HashMap();
-        for (int i=0;i<t.size(); i++) {
-            String key = t.get(i);
-            if (!key.startsWith("{") || !key.endsWith("}")) {
-                continue;
-            }
-
-            key = key.replaceAll("\\{", "").replaceAll("\\}", "");
-            ret.put(key, origins.get(i));
-        }
-
-        return ret;
-    }
-
     @Override
     public void on(String path, AutoOffEventCallback cb) {
-        global.put(cb.uniqueIdentity, new CallbackWrapper(path, cb));
+        global.subscribe(cb.uniqueIdentity, path, new CallbackWrapper(cb));
     }
 
     @Override
     public void on(String path, final EventCallback cb) {
-        global.put(cb.uniqueIdentity, new CallbackWrapper(path, cb));
+        global.subscribe(cb.uniqueIdentity, path, new CallbackWrapper(cb));
     }
 
     @Override
     public void on(String path, EventRunnable cb) {
-        global.put(cb.uniqueIdentity, new CallbackWrapper(path, cb));
+        global.subscribe(cb.uniqueIdentity, path, new CallbackWrapper(cb));
     }
 
     @Override
     public void off(AbstractEventFacadeCallback cb) {
-        global.remove(cb.uniqueIdentity);
-        local.remove(cb.uniqueIdentity);
+        global.unsubscribe(cb.uniqueIdentity);
+        local.unsubscribe(cb.uniqueIdentity);
     }
 
     @Override
     public void onLocal(String path, AutoOffEventCallback cb) {
-        local.put(cb.uniqueIdentity, new CallbackWrapper(path, cb));
+        local.subscribe(cb.uniqueIdentity, path, new CallbackWrapper(cb));
     }
 
     @Override
     public void onLocal(String path, EventCallback cb) {
-        local.put(cb.uniqueIdentity, new CallbackWrapper(path, cb));
+        local.subscribe(cb.uniqueIdentity, path, new CallbackWrapper(cb));
     }
 
     @Override
     public void onLocal(String path, EventRunnable cb) {
-        local.put(cb.uniqueIdentity, new CallbackWrapper(path, cb));
+        local.subscribe(cb.uniqueIdentity, path, new CallbackWrapper(cb));
     }
 
     @Override
@@ -218,6 +184,11 @@ public class EventFacadeImpl implements EventFacade, CloudBusEventListener, Comp
             evt.setContent(data);
         }
         
+        if (WebhookCanonicalEvents.WEBHOOK_CHANGED_PATH.equals(path)) {
+            // the change must be visible on this node before the API returns
+            invalidateWebhookIndex();
+        }
+
         fireLocal(evt);
 
         callWebhooks(evt);
@@ -225,32 +196,91 @@ public class EventFacadeImpl implements EventFacade, CloudBusEventListener, Comp
         bus.publish(evt);
     }
 
+    /**
+     * webhooks keep their original matching: a {token} matches any characters including '/',
+     * and '*' and '?' are globs over the whole path
+     */
+    static String createWebhookRegex(String opaque) {
+        String glob = opaque.replaceAll("\\{.*\\}", ".*");
+        StringBuilder out = new StringBuilder("^");
+        for (int i = 0; i < glob.length(); ++i) {
+            final char c = glob.charAt(i);
+            switch (c) {
+                case '*': out.append(".*"); break;
+                case '?': out.append('.'); break;
+                case '\\': out.append("\\\\"); break;
+                default: out.append(c);
+            }
+        }
+        out.append('$');
+        return out.toString();
+    }
+
+    private EventPathRouter<WebhookInventory> getWebhookIndex() {
+        WebhookIndex index = webhookIndex;
+        if (index != null && System.currentTimeMillis() < index.expiredAt) {
+            return index.router;
+        }
+
+        long version;
+        synchronized (this) {
+            version = webhookIndexVersion;
+        }
+
+        index = new WebhookIndex();
+        List<WebhookVO> vos = Q.New(WebhookVO.class).eq(WebhookVO_.type, EventFacade.WEBHOOK_TYPE).list();
+        for (WebhookVO vo : vos) {
+            String opaque = vo.getOpaque();
+            if (opaque == null) {
+                continue;
+            }
+
+            if (LITERAL_WEBHOOK_PATH.matcher(opaque).matches()) {
+                index.router.subscribe(vo.getUuid(), opaque, WebhookInventory.valueOf(vo));
+                continue;
+            }
+
+            try {
+                index.router.subscribe(vo.getUuid(), opaque, WebhookInventory.valueOf(vo), Pattern.compile(createWebhookRegex(opaque)));
+            } catch (PatternSyntaxException e) {
+                logger.warn(String.format("skip the webhook[uuid:%s] whose opaque[%s] is not a valid path pattern, %s",
+                        vo.getUuid(), opaque, e.getMessage()));
+            }
+        }
+
+        synchronized (this) {
+            // don't cache the result if webhooks were changed while loading
+            if (version == webhookIndexVersion) {
+                webhookIndex = index;
+            }
+        }
+
+        return index.router;
+    }
+
+    private synchronized void invalidateWebhookIndex() {
+        webhookIndexVersion++;
+        webhookIndex = null;
+    }
+
     private void callWebhooks(CanonicalEvent event) {
+        List<WebhookInventory> hooks = new ArrayList<>();
+        getWebhookIndex().route(event.getPath(), (hook, tokens) -> hooks.add(hook));
+        if (hooks.isEmpty()) {
+            return;
+        }
+
+        String body = JSONObjectUtil.toJsonString(event);
         new WebhookCaller() {
             @Override
             public void call() {
-                List<WebhookVO> vos = Q.New(WebhookVO.class).eq(WebhookVO_.type, EventFacade.WEBHOOK_TYPE).list();
-                vos = vos.stream().filter(
-                        vo -> event.getPath().matches(
-                                createRegexFromGlob(vo.getOpaque().replaceAll("\\{.*\\}", ".*"))
-                        )).collect(Collectors.toList());
-
-                if (!vos.isEmpty()) {
-                    postToWebhooks(WebhookInventory.valueOf(vos), JSONObjectUtil.toJsonString(event));
-                }
+                postToWebhooks(hooks, body);
             }
         }.call();
     }
 
     private void fireLocal(CanonicalEvent cevt) {
-        Map<String, CallbackWrapper> wrappers = new HashMap<>();
-        wrappers.putAll(local);
-
-        for (CallbackWrapper w : wrappers.values()) {
-            if (cevt.getPath().matches(w.getGlob())) {
-                w.call(cevt);
-            }
-        }
+        local.route(cevt.getPath(), (w, tokens) -> w.call(cevt, tokens));
     }
 
     @Override
@@ -265,14 +295,13 @@ public class EventFacadeImpl implements EventFacade, CloudBusEventListener, Comp
         }
 
         CanonicalEvent cevt = (CanonicalEvent)evt;
-        Map<String, CallbackWrapper> wrappers = new HashMap<>();
-        wrappers.putAll(global);
-        for (CallbackWrapper w : wrappers.values()) {
-            if (cevt.getPath().matches(w.getGlob())) {
-                w.call(cevt);
-            }
+        if (WebhookCanonicalEvents.WEBHOOK_CHANGED_PATH.equals(cevt.getPath())
+                && !Platform.getManagementServerId().equals(cevt.getManagementNodeId())) {
+            invalidateWebhookIndex();
         }
 
+        global.route(cevt.getPath(), (w, tokens) -> w.call(cevt, tokens));
+
         return false;
     }
 
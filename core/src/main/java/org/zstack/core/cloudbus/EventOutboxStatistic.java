@@ -0,0 +1,65 @@
+package org.zstack.core.cloudbus;
+
+import java.beans.ConstructorProperties;
+
+/**
+ */
+public class EventOutboxStatistic {
+    private String nodeUuid;
+    private String nodeIp;
+    private int queued;
+    private long lag;
+    private long lastDeliveryLatency;
+    private long sent;
+    private long dropped;
+    private long failed;
+
+    @ConstructorProperties({"nodeUuid", "nodeIp", "queued", "lag", "lastDeliveryLatency", "sent", "dropped", "failed"})
+    public EventOutboxStatistic(String nodeUuid, String nodeIp, int queued, long lag, long lastDeliveryLatency, long sent, long dropped, long failed) {
+        this.nodeUuid = nodeUuid;
+        this.nodeIp = nodeIp;
+        this.queued = queued;
+        this.lag = lag;
+        this.lastDeliveryLatency = lastDeliveryLatency;
+        this.sent = sent;
+        this.dropped = dropped;
+        this.failed = failed;
+    }
+
+    public String getNodeUuid() {
+        return nodeUuid;
+    }
+
+    public String getNodeIp() {
+        return nodeIp;
+    }
+
+    // events waiting in the outbox
+    public int getQueued() {
+        return queued;
+    }
+
+    // milliseconds the oldest queued event has been waiting
+    public long getLag() {
+        return lag;
+    }
+
+    // milliseconds between enqueueing and delivering of the last batch
+    public long getLastDeliveryLatency() {
+        return lastDeliveryLatency;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    // events dropped because the outbox was full or the node has gone
+    public long getDropped() {
+        return dropped;
+    }
+
+    // events failed to deliver after the transport gave up retrying
+    public long getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,276 @@
+package org.zstack.core.cloudbus;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Routes canonical event paths to subscribers.
+ *
+ * Subscription paths made of literal segments and {token} placeholders are kept in a
+ * segment trie, so routing a path costs one map lookup per segment instead of one
+ * regex match per subscriber. Paths using glob characters ('*' or '?') are compiled
+ * into a regex once when subscribing and checked one by one.
+ *
+ * The trie and the glob list are immutable snapshots. Subscribing and unsubscribing
+ * copy the nodes on the changed path and swap the root, routing never takes a lock.
+ */
+class EventPathRouter<T> {
+    private static final String SEPARATOR = "/";
+
+    static class Subscription<T> {
+        final Object key;
+        final String path;
+        final T target;
+        // token name at each segment index, null for segments not being a {token}
+        final String[] tokenNames;
+        final boolean hasTokens;
+        // only for glob paths and paths subscribed with their own pattern
+        final Pattern pattern;
+
+        private Subscription(Object key, String path, T target, String[] segments, Pattern pattern) {
+            this.key = key;
+            this.path = path;
+            this.target = target;
+
+            tokenNames = new String[segments.length];
+            boolean tokens = false;
+            for (int i = 0; i < segments.length; i++) {
+                if (isToken(segments[i])) {
+                    tokenNames[i] = segments[i].substring(1, segments[i].length() - 1);
+                    tokens = true;
+                }
+            }
+            hasTokens = tokens;
+            this.pattern = pattern;
+        }
+
+        Map<String, String> tokens(String[] segments) {
+            Map<String, String> ret = new HashMap<>();
+            if (!hasTokens) {
+                return ret;
+            }
+
+            for (int i = 0; i < tokenNames.length && i < segments.length; i++) {
+                if (tokenNames[i] != null) {
+                    ret.put(tokenNames[i], segments[i]);
+                }
+            }
+            return ret;
+        }
+    }
+
+    private static class Node<T> {
+        final Map<String, Node<T>> literals;
+        final Node<T> token;
+        final Map<Object, Subscription<T>> subscriptions;
+
+        Node(Map<String, Node<T>> literals, Node<T> token, Map<Object, Subscription<T>> subscriptions) {
+            this.literals = literals;
+            this.token = token;
+            this.subscriptions = subscriptions;
+        }
+
+        boolean isEmpty() {
+            return literals.isEmpty() && token == null && subscriptions.isEmpty();
+        }
+
+        Node<T> withLiteral(String segment, Node<T> child) {
+            Map<String, Node<T>> m = new HashMap<>(literals);
+            if (child == null || child.isEmpty()) {
+                m.remove(segment);
+            } else {
+                m.put(segment, child);
+            }
+            return new Node<>(m, token, subscriptions);
+        }
+
+        Node<T> withToken(Node<T> child) {
+            return new Node<>(literals, child == null || child.isEmpty() ? null : child, subscriptions);
+        }
+
+        Node<T> withSubscription(Subscription<T> sub) {
+            Map<Object, Subscription<T>> m = new LinkedHashMap<>(subscriptions);
+            m.put(sub.key, sub);
+            return new Node<>(literals, token, m);
+        }
+
+        Node<T> withoutSubscription(Object key) {
+            Map<Object, Subscription<T>> m = new LinkedHashMap<>(subscriptions);
+            m.remove(key);
+            return new Node<>(literals, token, m);
+        }
+    }
+
+    private static <T> Node<T> emptyNode() {
+        return new Node<>(Collections.emptyMap(), null, Collections.emptyMap());
+    }
+
+    private volatile Node<T> root = emptyNode();
+    private volatile Map<Object, Subscription<T>> globs = Collections.emptyMap();
+    // guarded by this
+    private final Map<Object, Subscription<T>> subscriptions = new HashMap<>();
+
+    static String[] split(String path) {
+        StringTokenizer tokenizer = new StringTokenizer(path, SEPARATOR);
+        String[] ret = new String[tokenizer.countTokens()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = tokenizer.nextToken();
+        }
+        return ret;
+    }
+
+    private static boolean isToken(String segment) {
+        return segment.length() > 1 && segment.startsWith("{") && segment.endsWith("}");
+    }
+
+    private static boolean isGlob(String segment) {
+        return !isToken(segment) && (segment.contains("*") || segment.contains("?"));
+    }
+
+    static String createRegexFromGlob(String glob) {
+        StringBuilder out = new StringBuilder("^");
+        for (int i = 0; i < glob.length(); ++i) {
+            final char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    out.append(".*");
+                    break;
+                case '?':
+                    out.append('.');
+                    break;
+                case '{':
+                    int end = glob.indexOf('}', i);
+                    if (end == -1) {
+                        out.append("\\{");
+                    } else {
+                        out.append("[^/]*");
+                        i = end;
+                    }
+                    break;
+                default:
+                    if ("\\.[]()^$+|".indexOf(c) != -1) {
+                        out.append('\\');
+                    }
+                    out.append(c);
+            }
+        }
+        out.append('$');
+        return out.toString();
+    }
+
+    synchronized void subscribe(Object key, String path, T target) {
+        unsubscribe(key);
+
+        String[] segments = split(path);
+        boolean glob = Arrays.stream(segments).anyMatch(EventPathRouter::isGlob);
+        if (glob) {
+            addGlob(new Subscription<>(key, path, target, segments, Pattern.compile(createRegexFromGlob(path))));
+        } else {
+            Subscription<T> sub = new Subscription<>(key, path, target, segments, null);
+            subscriptions.put(key, sub);
+            root = insert(root, segments, 0, sub);
+        }
+    }
+
+    /**
+     * subscribe a path matched by the given pattern instead of by its segments
+     */
+    synchronized void subscribe(Object key, String path, T target, Pattern pattern) {
+        unsubscribe(key);
+        addGlob(new Subscription<>(key, path, target, split(path), pattern));
+    }
+
+    private void addGlob(Subscription<T> sub) {
+        subscriptions.put(sub.key, sub);
+        Map<Object, Subscription<T>> m = new LinkedHashMap<>(globs);
+        m.put(sub.key, sub);
+        globs = m;
+    }
+
+    synchronized void unsubscribe(Object key) {
+        Subscription<T> sub = subscriptions.remove(key);
+        if (sub == null) {
+            return;
+        }
+
+        if (sub.pattern != null) {
+            Map<Object, Subscription<T>> m = new LinkedHashMap<>(globs);
+            m.remove(key);
+            globs = m;
+        } else {
+            Node<T> r = remove(root, split(sub.path), 0, key);
+            root = r == null ? emptyNode() : r;
+        }
+    }
+
+    private Node<T> insert(Node<T> node, String[] segments, int index, Subscription<T> sub) {
+        if (node == null) {
+            node = emptyNode();
+        }
+
+        if (index == segments.length) {
+            return node.withSubscription(sub);
+        }
+
+        String segment = segments[index];
+        if (isToken(segment)) {
+            return node.withToken(insert(node.token, segments, index + 1, sub));
+        } else {
+            return node.withLiteral(segment, insert(node.literals.get(segment), segments, index + 1, sub));
+        }
+    }
+
+    private Node<T> remove(Node<T> node, String[] segments, int index, Object key) {
+        if (node == null) {
+            return null;
+        }
+
+        if (index == segments.length) {
+            return node.withoutSubscription(key);
+        }
+
+        String segment = segments[index];
+        if (isToken(segment)) {
+            return node.withToken(remove(node.token, segments, index + 1, key));
+        } else {
+            return node.withLiteral(segment, remove(node.literals.get(segment), segments, index + 1, key));
+        }
+    }
+
+    /**
+     * call the consumer with every subscriber matching the path and the tokens extracted from the path
+     */
+    void route(String path, BiConsumer<T, Map<String, String>> consumer) {
+        String[] segments = split(path);
+        route(root, segments, 0, consumer);
+
+        for (Subscription<T> sub : globs.values()) {
+            if (sub.pattern.matcher(path).matches()) {
+                consumer.accept(sub.target, sub.tokens(segments));
+            }
+        }
+    }
+
+    private void route(Node<T> node, String[] segments, int index, BiConsumer<T, Map<String, String>> consumer) {
+        if (index == segments.length) {
+            for (Subscription<T> sub : node.subscriptions.values()) {
+                consumer.accept(sub.target, sub.tokens(segments));
+            }
+            return;
+        }
+
+        Node<T> child = node.literals.get(segments[index]);
+        if (child != null) {
+            route(child, segments, index + 1, consumer);
+        }
+
+        if (node.token != null) {
+            route(node.token, segments, index + 1, consumer);
+        }
+    }
+
+    synchronized int size() {
+        return subscriptions.size();
+    }
+}
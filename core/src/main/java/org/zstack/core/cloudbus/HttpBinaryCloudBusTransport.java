@@ -0,0 +1,161 @@
+package org.zstack.core.cloudbus;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.retry.Retry;
+import org.zstack.core.retry.RetryCondition;
+import org.zstack.header.errorcode.OperationFailureException;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.message.Event;
+import org.zstack.header.message.Message;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.zstack.core.Platform.operr;
+
+/**
+ * CloudBus transport sending messages encoded by CloudBusBinaryCodec over
+ * persistent keep-alive connections, pooled per peer management node so that
+ * concurrent messages to the same node are multiplexed on the pool instead of
+ * setting up a new connection each time.
+ *
+ * Peers not serving the binary endpoint (e.g. during a rolling upgrade) are
+ * remembered and served by the fallback transport.
+ */
+public class HttpBinaryCloudBusTransport implements CloudBusTransport {
+    private static final CLogger logger = Utils.getLogger(HttpBinaryCloudBusTransport.class);
+
+    public static final String NAME = "binary";
+    public static final String CONTENT_TYPE = "application/x-zstack-cloudbus";
+
+    private static final ContentType contentType = ContentType.create(CONTENT_TYPE);
+
+    private final CloudBusTransport fallback;
+    private final Set<String> fallbackNodes = ConcurrentHashMap.newKeySet();
+    private final CloseableHttpClient client;
+
+    public HttpBinaryCloudBusTransport(CloudBusTransport fallback) {
+        this.fallback = fallback;
+
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setDefaultMaxPerRoute(CloudBusGlobalProperty.BINARY_TRANSPORT_MAX_CONNECTIONS_PER_NODE);
+        cm.setMaxTotal(CloudBusGlobalProperty.BINARY_TRANSPORT_MAX_CONNECTIONS_PER_NODE * 8);
+
+        client = HttpClients.custom()
+                .setConnectionManager(cm)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(CoreGlobalProperty.REST_FACADE_CONNECT_TIMEOUT)
+                        .setSocketTimeout(CoreGlobalProperty.REST_FACADE_READ_TIMEOUT)
+                        .build())
+                .evictIdleConnections(CloudBusGlobalProperty.BINARY_TRANSPORT_IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void send(String ip, Message msg) {
+        if (fallbackNodes.contains(ip)) {
+            fallback.send(ip, msg);
+            return;
+        }
+
+        byte[] data;
+        try {
+            data = CloudBusBinaryCodec.encode(msg);
+        } catch (IOException e) {
+            throw new CloudRuntimeException(e);
+        }
+
+        int status = postWithRetry(ip, CloudBusImpl3.HTTP_BINARY_URL, data, msg.getClass().getName());
+        if (status == HttpStatus.SC_NOT_FOUND) {
+            fallback(ip);
+            fallback.send(ip, msg);
+            return;
+        }
+
+        checkStatus(status);
+    }
+
+    @Override
+    public void sendEvents(String ip, List<Event> events) {
+        if (fallbackNodes.contains(ip)) {
+            fallback.sendEvents(ip, events);
+            return;
+        }
+
+        byte[] data;
+        try {
+            data = CloudBusBinaryCodec.encodeBatch(events);
+        } catch (IOException e) {
+            throw new CloudRuntimeException(e);
+        }
+
+        int status = postWithRetry(ip, CloudBusImpl3.HTTP_BINARY_EVENTS_URL, data, String.format("%s events", events.size()));
+        if (status == HttpStatus.SC_NOT_FOUND) {
+            fallback(ip);
+            fallback.sendEvents(ip, events);
+            return;
+        }
+
+        checkStatus(status);
+    }
+
+    private void fallback(String ip) {
+        logger.warn(String.format("management node[ip:%s] doesn't serve the binary CloudBus endpoint," +
+                " fall back to the %s transport", ip, fallback.getName()));
+        fallbackNodes.add(ip);
+    }
+
+    private void checkStatus(int status) {
+        if (status < 200 || status >= 300) {
+            throw new OperationFailureException(operr("HTTP ERROR, status code: %s", status));
+        }
+    }
+
+    private int postWithRetry(String ip, String path, byte[] data, String what) {
+        String url = CloudBusImpl3.makeHttpUrl(ip, path);
+        return new Retry<Integer>() {
+            {
+                __name__ = String.format("send %s to management node[ip:%s]", what, ip);
+            }
+
+            @Override
+            @RetryCondition(onExceptions = {Retry.RetryException.class})
+            protected Integer call() {
+                return post(url, data);
+            }
+        }.run();
+    }
+
+    private int post(String url, byte[] data) {
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new ByteArrayEntity(data, contentType));
+
+        try (CloseableHttpResponse rsp = client.execute(post)) {
+            // consume the entity so the connection goes back to the pool
+            EntityUtils.consume(rsp.getEntity());
+            return rsp.getStatusLine().getStatusCode();
+        } catch (IOException e) {
+            throw new Retry.RetryException(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.zstack.core.cloudbus;
+
+import org.springframework.http.*;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.retry.Retry;
+import org.zstack.core.retry.RetryCondition;
+import org.zstack.header.errorcode.OperationFailureException;
+import org.zstack.header.message.Event;
+import org.zstack.header.message.Message;
+import org.zstack.header.rest.RESTFacade;
+import org.zstack.header.rest.TimeoutRestTemplate;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.zstack.core.Platform.operr;
+
+/**
+ * the original CloudBus transport, a one-shot HTTP POST carrying the message in JSON
+ */
+public class HttpJsonCloudBusTransport implements CloudBusTransport {
+    private static final CLogger logger = Utils.getLogger(HttpJsonCloudBusTransport.class);
+
+    public static final String NAME = "http";
+
+    // peers not serving the batched event endpoint, events are sent one by one to them
+    private final Set<String> noBatchNodes = ConcurrentHashMap.newKeySet();
+
+    private static TimeoutRestTemplate http = RESTFacade.createRestTemplate(CoreGlobalProperty.REST_FACADE_READ_TIMEOUT, CoreGlobalProperty.REST_FACADE_CONNECT_TIMEOUT);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void send(String ip, Message msg) {
+        String url = CloudBusImpl3.makeHttpUrl(ip, CloudBusImpl3.HTTP_BASE_URL);
+
+        HttpHeaders headers = new HttpHeaders();
+        HttpEntity<String> req = new HttpEntity<>(CloudBusGson.toJson(msg), headers);
+        ResponseEntity<String> rsp = new Retry<ResponseEntity<String>>() {
+            {
+                interval = 2;
+            }
+
+            @Override
+            @RetryCondition(onExceptions = {IOException.class, RestClientException.class, HttpClientErrorException.class})
+            protected ResponseEntity<String> call() {
+                return http.exchange(url, HttpMethod.POST, req, String.class);
+            }
+        }.run();
+
+        if (!rsp.getStatusCode().is2xxSuccessful()) {
+            throw new OperationFailureException(operr("HTTP ERROR, status code: %s, body: %s", rsp.getStatusCode(), rsp.getBody()));
+        }
+    }
+
+    @Override
+    public void sendEvents(String ip, List<Event> events) {
+        if (noBatchNodes.contains(ip)) {
+            events.forEach(e -> send(ip, e));
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("[");
+        for (Event e : events) {
+            if (sb.length() > 1) {
+                sb.append(",");
+            }
+            sb.append(CloudBusGson.toJson(e));
+        }
+        sb.append("]");
+
+        String url = CloudBusImpl3.makeHttpUrl(ip, CloudBusImpl3.HTTP_EVENTS_URL);
+        HttpEntity<String> req = new HttpEntity<>(sb.toString(), new HttpHeaders());
+        ResponseEntity<String> rsp;
+        try {
+            rsp = new Retry<ResponseEntity<String>>() {
+                @Override
+                @RetryCondition(onExceptions = {IOException.class, ResourceAccessException.class})
+                protected ResponseEntity<String> call() {
+                    return http.exchange(url, HttpMethod.POST, req, String.class);
+                }
+            }.run();
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+                throw e;
+            }
+
+            logger.warn(String.format("management node[ip:%s] doesn't serve the batched event endpoint, send events one by one", ip));
+            noBatchNodes.add(ip);
+            events.forEach(evt -> send(ip, evt));
+            return;
+        }
+
+        if (!rsp.getStatusCode().is2xxSuccessful()) {
+            throw new OperationFailureException(operr("HTTP ERROR, status code: %s, body: %s", rsp.getStatusCode(), rsp.getBody()));
+        }
+    }
+}
@@ -50,19 +50,29 @@ public class DBGraph {
         public EntityVertex previous;
 
         public String toSQL(String field, SimpleQuery.Op op, String value) {
-            return makeSQL(this, field, op, value);
+            return makeSQL(this, field, op, value, false);
         }
 
-        private static String makeSQL(EntityVertex vertex, String field, SimpleQuery.Op op, String val) {
+        /**
+         * @return a SQL selecting pairs of the field of the source entity and the key of the
+         * destination entity, for the source entities whose field is in the parameter :values
+         */
+        public String toPairSQL(String field) {
+            return makeSQL(this, field, SimpleQuery.Op.IN, "(:values)", true);
+        }
+
+        private static String makeSQL(EntityVertex vertex, String field, SimpleQuery.Op op, String val, boolean selectSourceField) {
             List<String> from = new ArrayList<>();
             List<String> conditions = new ArrayList<>();
+            String sourceField = null;
             while (true) {
                 String entity = String.format("%s_", vertex.entityClass.getSimpleName());
                 String vo = vertex.entityClass.getSimpleName();
                 from.add(vo + " " + entity);
 
                 if (vertex.previous == null) {
-                    conditions.add(String.format("%s.%s %s %s", entity, field, op.toString(), val));
+                    sourceField = String.format("%s.%s", entity, field);
+                    conditions.add(String.format("%s %s %s", sourceField, op.toString(), val));
                 } else {
                     conditions.add(String.format("%s.%s = %s.%s",
                             String.format("%s_", vertex.previous.entityClass.getSimpleName()), vertex.previous.srcKey,
@@ -75,7 +85,7 @@ public class DBGraph {
                 }
 
                 String primaryKey = vertex.previous != null ? vertex.previous.dstKey : EntityMetadata.getPrimaryKeyField(vertex.entityClass).getName();
-                return String.format("select %s.%s from %s where %s", entity, primaryKey,
+                return String.format("select %s%s.%s from %s where %s", selectSourceField ? sourceField + ", " : "", entity, primaryKey,
                         StringUtils.join(from, ", "),
                         StringUtils.join(conditions, " and "));
             }
@@ -0,0 +1,5 @@
+package org.zstack.core.job;
+
+public class JobQueueConstant {
+    public static final String SERVICE_ID = "jobQueue";
+}
@@ -48,6 +48,9 @@ public class JobQueueEntryVO {
     @Column
     private boolean restartable;
 
+    @Column
+    private int version;
+
     public JobQueueEntryVO() {
         this.state = JobState.Pending;
     }
@@ -139,4 +142,12 @@ public class JobQueueEntryVO {
     public void setRestartable(boolean restartable) {
         this.restartable = restartable;
     }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
 }
@@ -13,6 +13,7 @@ public class JobQueueEntryVO_ {
     public static volatile SingularAttribute<JobQueueEntryVO, JobState> state;
     public static volatile SingularAttribute<JobQueueEntryVO, String> owner;
     public static volatile SingularAttribute<JobQueueEntryVO, Boolean> restartable;
+    public static volatile SingularAttribute<JobQueueEntryVO, Integer> version;
     public static volatile SingularAttribute<JobQueueEntryVO, String> issuerManagementNodeId;
     public static volatile SingularAttribute<JobQueueEntryVO, String> name;
     public static volatile SingularAttribute<JobQueueEntryVO, String> errText;
@@ -0,0 +1,681 @@
+package org.zstack.core.job;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusEventListener;
+import org.zstack.core.cloudbus.EventSubscriberReceipt;
+import org.zstack.core.cloudbus.MessageSafe;
+import org.zstack.core.cloudbus.ResourceDestinationMaker;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.Q;
+import org.zstack.core.db.SQL;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.core.thread.AsyncThread;
+import org.zstack.header.AbstractService;
+import org.zstack.header.core.Completion;
+import org.zstack.header.core.NopeCompletion;
+import org.zstack.header.core.ReturnValueCompletion;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.errorcode.SysErrors;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.managementnode.ManagementNodeChangeListener;
+import org.zstack.header.managementnode.ManagementNodeInventory;
+import org.zstack.header.message.Event;
+import org.zstack.header.message.Message;
+import org.zstack.utils.JsonWrapper;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+import org.zstack.utils.serializable.SerializableHelper;
+
+import javax.management.MXBean;
+import javax.persistence.Tuple;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.zstack.core.Platform.err;
+import static org.zstack.core.Platform.inerr;
+
+/**
+ * runs jobs of a queue one by one without global locks: every queue is worked on by one
+ * management node at a time, the node claims the queue and then its jobs by conditional
+ * updates, a job is only claimed from Pending with the version read, so a job is never
+ * run twice even if two nodes consider themselves the worker of a queue.
+ *
+ * An idle queue is owned by the management node the queue name hashes to, a job added
+ * on another node kicks the worker or the owner by a message. Jobs added on the worker
+ * itself are run from memory without loading their context from the database.
+ *
+ * When a node leaves, Processing jobs of its queues are restarted or failed by the new owner
+ * only after the owner claims the queue, and only between two jobs of its own.
+ */
+@MXBean
+public class JobQueueFacadeImpl3 extends AbstractService implements JobQueueFacade, CloudBusEventListener,
+        ManagementNodeChangeListener, JobQueueFacadeMXBean {
+    private static final CLogger logger = Utils.getLogger(JobQueueFacadeImpl3.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private CloudBus bus;
+    @Autowired
+    private ResourceDestinationMaker destMaker;
+    @Autowired
+    private JmxFacade jmxf;
+
+    private final Map<Long, JobWrapper> wrappers = new ConcurrentHashMap<>();
+    // jobs issued by this node, not yet claimed by any worker
+    private final Map<Long, Job> localJobs = new ConcurrentHashMap<>();
+    // queue id -> the queue this node has worked on
+    private final Map<Long, WorkingQueue> queues = new ConcurrentHashMap<>();
+
+    private final LongAdder processedJobNumber = new LongAdder();
+    private final LongAdder jobWaitTime = new LongAdder();
+    private final AtomicLong maxJobWaitTime = new AtomicLong();
+
+    private volatile boolean stopped = false;
+    private EventSubscriberReceipt unsubscriber;
+
+    private interface JobWrapper {
+        void success(Object ret);
+
+        void fail(ErrorCode err);
+    }
+
+    private static class ClaimedJob {
+        long id;
+        String name;
+        int version;
+        Job job;
+    }
+
+    private class WorkingQueue {
+        final long id;
+        final String name;
+        // ids of pending jobs learned from kicks, the database is checked when it's empty
+        final ConcurrentSkipListSet<Long> pendingJobIds = new ConcurrentSkipListSet<>();
+        // ids of left management nodes whose Processing jobs in this queue wait to be taken over
+        final Queue<String> leftNodeIds = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean running = new AtomicBoolean(false);
+
+        WorkingQueue(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        void kick(Long jobId) {
+            if (jobId != null) {
+                pendingJobIds.add(jobId);
+            }
+
+            if (!running.compareAndSet(false, true)) {
+                // the running worker takes the job when done with the current one
+                return;
+            }
+
+            if (!claimQueue(id)) {
+                logger.debug(String.format("[JobQueue Skipped] queue[id:%s, name:%s] is worked on by another management node", id, name));
+                pendingJobIds.clear();
+                leftNodeIds.clear();
+                running.set(false);
+                return;
+            }
+
+            process();
+        }
+
+        void takeOver(String mgmtId) {
+            leftNodeIds.add(mgmtId);
+            kick(null);
+        }
+
+        private ClaimedJob takeJob() {
+            while (true) {
+                Long jobId = pendingJobIds.pollFirst();
+                if (jobId == null) {
+                    jobId = findPendingJob(id);
+                }
+
+                if (jobId == null) {
+                    return null;
+                }
+
+                ClaimedJob cj = claimJob(jobId);
+                if (cj == null) {
+                    continue;
+                }
+
+                cj.job = localJobs.remove(cj.id);
+                if (cj.job != null) {
+                    return cj;
+                }
+
+                try {
+                    byte[] context = Q.New(JobQueueEntryVO.class).select(JobQueueEntryVO_.context)
+                            .eq(JobQueueEntryVO_.id, cj.id).findValue();
+                    JobContextObject ctx = SerializableHelper.readObject(context);
+                    cj.job = ctx.load();
+                    return cj;
+                } catch (Exception e) {
+                    ErrorCode ierr = inerr("[Job de-serialize failed, the job will be marked as Error] queue name: %s, job id: %s, %s",
+                            name, cj.id, e.getMessage());
+                    jobFail(cj, ierr);
+                    logger.warn(ierr.getDetails(), e);
+                }
+            }
+        }
+
+        private void release() {
+            SQL.New(JobQueueVO.class).eq(JobQueueVO_.id, id)
+                    .eq(JobQueueVO_.workerManagementNodeId, Platform.getManagementServerId())
+                    .set(JobQueueVO_.workerManagementNodeId, null)
+                    .update();
+            running.set(false);
+            logger.debug(String.format("[JobQueue released] no pending job in queue[id:%s, name:%s]", id, name));
+
+            // a job may be added after the queue is found empty and before it's released
+            if (!pendingJobIds.isEmpty() || !leftNodeIds.isEmpty() || findPendingJob(id) != null) {
+                kick(null);
+            }
+        }
+
+        @AsyncThread
+        private void process() {
+            if (stopped) {
+                logger.warn("[Job Facade Stopped]: stop processing job");
+                running.set(false);
+                return;
+            }
+
+            // the queue is claimed and no job of this node is Processing between two jobs,
+            // so every Processing job found now belongs to a left node
+            String leftNodeId;
+            while ((leftNodeId = leftNodeIds.poll()) != null) {
+                try {
+                    restartJobs(id, leftNodeId);
+                } catch (Throwable t) {
+                    logger.warn(String.format("failed to take over jobs of management node[id:%s] in queue[id:%s, name:%s]",
+                            leftNodeId, id, name), t);
+                }
+            }
+
+            ClaimedJob cj = takeJob();
+            if (cj == null) {
+                release();
+                return;
+            }
+
+            logger.debug(String.format("[Job Start] start executing job[id:%s, name:%s]", cj.id, cj.name));
+            cj.job.run(new ReturnValueCompletion<Object>(null) {
+                @Override
+                public void success(Object returnValue) {
+                    try {
+                        jobDone(cj, returnValue);
+                        logger.debug(String.format("[Job Success] job[id:%s, name:%s] succeed", cj.id, cj.name));
+                    } catch (Throwable t) {
+                        logger.warn(String.format("unhandled exception happened when calling %s", cj.job.getClass().getName()), t);
+                        jobFail(cj, inerr(t.getMessage()));
+                    } finally {
+                        process();
+                    }
+                }
+
+                @Override
+                public void fail(ErrorCode errorCode) {
+                    try {
+                        jobFail(cj, errorCode);
+                        logger.debug(String.format("[Job Failure] job[id:%s, name:%s] failed", cj.id, cj.name));
+                    } catch (Throwable t) {
+                        logger.warn(String.format("unhandled exception happened when calling %s", cj.job.getClass().getName()), t);
+                        jobFail(cj, inerr(t.getMessage()));
+                    } finally {
+                        process();
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean claimQueue(long queueId) {
+        return SQL.New("update JobQueueVO q set q.workerManagementNodeId = :mgmtId, q.takenDate = :now" +
+                " where q.id = :id and (q.workerManagementNodeId is null or q.workerManagementNodeId = :mgmtId)")
+                .param("mgmtId", Platform.getManagementServerId())
+                .param("now", new Timestamp(System.currentTimeMillis()))
+                .param("id", queueId)
+                .execute() > 0;
+    }
+
+    private Long findPendingJob(long queueId) {
+        return Q.New(JobQueueEntryVO.class).select(JobQueueEntryVO_.id)
+                .eq(JobQueueEntryVO_.jobQueueId, queueId)
+                .eq(JobQueueEntryVO_.state, JobState.Pending)
+                .orderBy(JobQueueEntryVO_.id, SimpleQuery.Od.ASC)
+                .limit(1)
+                .findValue();
+    }
+
+    private ClaimedJob claimJob(long jobId) {
+        Tuple t = Q.New(JobQueueEntryVO.class)
+                .select(JobQueueEntryVO_.name, JobQueueEntryVO_.state, JobQueueEntryVO_.version, JobQueueEntryVO_.inDate)
+                .eq(JobQueueEntryVO_.id, jobId)
+                .findTuple();
+        if (t == null || t.get(1, JobState.class) != JobState.Pending) {
+            return null;
+        }
+
+        int version = t.get(2, Integer.class);
+        int count = SQL.New("update JobQueueEntryVO e set e.state = :processing, e.version = :newVersion" +
+                " where e.id = :id and e.state = :pending and e.version = :version")
+                .param("processing", JobState.Processing)
+                .param("pending", JobState.Pending)
+                .param("newVersion", version + 1)
+                .param("version", version)
+                .param("id", jobId)
+                .execute();
+        if (count == 0) {
+            return null;
+        }
+
+        Date inDate = t.get(3, Date.class);
+        if (inDate != null) {
+            long wait = Math.max(0, System.currentTimeMillis() - inDate.getTime());
+            jobWaitTime.add(wait);
+            maxJobWaitTime.accumulateAndGet(wait, Math::max);
+        }
+        processedJobNumber.increment();
+
+        ClaimedJob cj = new ClaimedJob();
+        cj.id = jobId;
+        cj.name = t.get(0, String.class);
+        cj.version = version + 1;
+        return cj;
+    }
+
+    private boolean finishJob(ClaimedJob cj, JobState state, String errText) {
+        int count = SQL.New("update JobQueueEntryVO e set e.state = :state, e.doneDate = :now, e.errText = :errText" +
+                " where e.id = :id and e.version = :version")
+                .param("state", state)
+                .param("now", new Timestamp(System.currentTimeMillis()))
+                .param("errText", errText)
+                .param("id", cj.id)
+                .param("version", cj.version)
+                .execute();
+        if (count == 0) {
+            logger.warn(String.format("[Job Taken Over] job[id:%s, name:%s] has been restarted or removed by another management node," +
+                    " drop its result", cj.id, cj.name));
+        }
+
+        return count > 0;
+    }
+
+    private void jobFail(ClaimedJob cj, ErrorCode err) {
+        if (!finishJob(cj, JobState.Error, err == null ? null : err.getDetails())) {
+            return;
+        }
+
+        JobEvent evt = new JobEvent();
+        evt.setJobId(cj.id);
+        evt.setErrorCode(err);
+        bus.publish(evt);
+    }
+
+    private void jobDone(ClaimedJob cj, Object ret) {
+        if (!finishJob(cj, JobState.Completed, null)) {
+            return;
+        }
+
+        JobEvent evt = new JobEvent();
+        evt.setJobId(cj.id);
+        if (ret != null) {
+            evt.setReturnValue(JsonWrapper.wrap(ret));
+        }
+        bus.publish(evt);
+    }
+
+    private Long getOrCreateQueue(String queueName, String owner) {
+        Long id = Q.New(JobQueueVO.class).select(JobQueueVO_.id).eq(JobQueueVO_.name, queueName).findValue();
+        if (id != null) {
+            return id;
+        }
+
+        try {
+            JobQueueVO qvo = new JobQueueVO();
+            qvo.setName(queueName);
+            qvo.setOwner(owner);
+            qvo = dbf.persistAndRefresh(qvo);
+            logger.debug(String.format("[JobQueue created] id: %s, owner: %s, queue name: %s", qvo.getId(), owner, queueName));
+            return qvo.getId();
+        } catch (RuntimeException e) {
+            // the queue is created by another management node at the same time
+            id = Q.New(JobQueueVO.class).select(JobQueueVO_.id).eq(JobQueueVO_.name, queueName).findValue();
+            if (id == null) {
+                throw e;
+            }
+
+            return id;
+        }
+    }
+
+    private WorkingQueue getWorkingQueue(long queueId, String queueName) {
+        return queues.computeIfAbsent(queueId, id -> new WorkingQueue(id, queueName));
+    }
+
+    private void kick(long queueId, String queueName, Long jobId) {
+        String worker = Q.New(JobQueueVO.class).select(JobQueueVO_.workerManagementNodeId)
+                .eq(JobQueueVO_.id, queueId).findValue();
+        String target = worker != null ? worker : destMaker.makeDestination(queueName);
+        if (Platform.getManagementServerId().equals(target)) {
+            getWorkingQueue(queueId, queueName).kick(jobId);
+            return;
+        }
+
+        KickJobQueueMsg msg = new KickJobQueueMsg();
+        msg.setJobQueueId(queueId);
+        msg.setJobQueueName(queueName);
+        msg.setJobId(jobId);
+        bus.makeServiceIdByManagementNodeId(msg, JobQueueConstant.SERVICE_ID, target);
+        bus.send(msg);
+    }
+
+    @Override
+    @MessageSafe
+    public void handleMessage(Message msg) {
+        if (msg instanceof KickJobQueueMsg) {
+            handle((KickJobQueueMsg) msg);
+        } else {
+            bus.dealWithUnknownMessage(msg);
+        }
+    }
+
+    private void handle(KickJobQueueMsg msg) {
+        getWorkingQueue(msg.getJobQueueId(), msg.getJobQueueName()).kick(msg.getJobId());
+    }
+
+    @Override
+    public String getId() {
+        return bus.makeLocalServiceId(JobQueueConstant.SERVICE_ID);
+    }
+
+    @Override
+    public boolean handleEvent(Event e) {
+        if (!(e instanceof JobEvent)) {
+            return false;
+        }
+
+        JobEvent je = (JobEvent) e;
+        JobWrapper jw = wrappers.remove(je.getJobId());
+        if (jw == null) {
+            return false;
+        }
+
+        localJobs.remove(je.getJobId());
+        if (je.isSuccess()) {
+            Object ret = je.getReturnValue() != null ? je.getReturnValue().get() : null;
+            jw.success(ret);
+        } else {
+            jw.fail(je.getErrorCode());
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean start() {
+        unsubscriber = bus.subscribeEvent(this, new JobEvent());
+        stopped = false;
+        jmxf.registerBean("JobQueueFacade", this);
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        stopped = true;
+        if (unsubscriber != null) {
+            unsubscriber.unsubscribeAll();
+        }
+        return true;
+    }
+
+    private void restartJobs(long queueId, String mgmtId) {
+        List<Tuple> ts = Q.New(JobQueueEntryVO.class).select(JobQueueEntryVO_.id, JobQueueEntryVO_.name)
+                .eq(JobQueueEntryVO_.jobQueueId, queueId)
+                .isNull(JobQueueEntryVO_.issuerManagementNodeId)
+                .in(JobQueueEntryVO_.state, Arrays.asList(JobState.Pending, JobState.Processing))
+                .listTuple();
+        for (Tuple t : ts) {
+            logger.debug(String.format("[Job Removed]: job[id:%s, name:%s] because its issuer management node[id:%s] became unavailable",
+                    t.get(0), t.get(1), mgmtId));
+            SQL.New(JobQueueEntryVO.class).eq(JobQueueEntryVO_.id, t.get(0, Long.class)).hardDelete();
+        }
+
+        ts = Q.New(JobQueueEntryVO.class)
+                .select(JobQueueEntryVO_.id, JobQueueEntryVO_.name, JobQueueEntryVO_.restartable, JobQueueEntryVO_.version)
+                .eq(JobQueueEntryVO_.jobQueueId, queueId)
+                .eq(JobQueueEntryVO_.state, JobState.Processing)
+                .listTuple();
+        for (Tuple t : ts) {
+            ClaimedJob cj = new ClaimedJob();
+            cj.id = t.get(0, Long.class);
+            cj.name = t.get(1, String.class);
+            cj.version = t.get(3, Integer.class);
+
+            if (!t.get(2, Boolean.class)) {
+                jobFail(cj, err(SysErrors.MANAGEMENT_NODE_UNAVAILABLE_ERROR,
+                        "management node[id:%s] becomes unavailable, job[name:%s, id:%s] is not restartable", mgmtId, cj.name, cj.id));
+                logger.debug(String.format("[Job Failed]: job[id:%s, name:%s] because it's not restartable", cj.id, cj.name));
+                continue;
+            }
+
+            int count = SQL.New("update JobQueueEntryVO e set e.state = :pending, e.version = :newVersion" +
+                    " where e.id = :id and e.state = :processing and e.version = :version")
+                    .param("pending", JobState.Pending)
+                    .param("processing", JobState.Processing)
+                    .param("newVersion", cj.version + 1)
+                    .param("version", cj.version)
+                    .param("id", cj.id)
+                    .execute();
+            if (count > 0) {
+                logger.debug(String.format("[Job Restart]: job[id:%s, name:%s] in queue[id:%s] is restarting as its previous worker node[id:%s] became unavailable",
+                        cj.id, cj.name, queueId, mgmtId));
+            }
+        }
+    }
+
+    private void takeOverJobs(String mgmtId) {
+        // queues of the left node are released by the foreign key, and taken over by their new owners,
+        // which claim a queue before touching its Processing jobs
+        List<Tuple> ts = Q.New(JobQueueVO.class).select(JobQueueVO_.id, JobQueueVO_.name)
+                .isNull(JobQueueVO_.workerManagementNodeId)
+                .listTuple();
+
+        int count = 0;
+        for (Tuple t : ts) {
+            String name = t.get(1, String.class);
+            if (!destMaker.isManagedByUs(name)) {
+                continue;
+            }
+
+            count++;
+            getWorkingQueue(t.get(0, Long.class), name).takeOver(mgmtId);
+        }
+
+        logger.debug(String.format("[Orphan Queue found]: management node[id:%s] took over %s orphan queues after management node[id:%s] left",
+                Platform.getManagementServerId(), count, mgmtId));
+    }
+
+    @Override
+    public void nodeJoin(ManagementNodeInventory inv) {
+    }
+
+    @Override
+    public void nodeLeft(ManagementNodeInventory inv) {
+        takeOverJobs(inv.getUuid());
+    }
+
+    @Override
+    public void iAmDead(ManagementNodeInventory inv) {
+    }
+
+    @Override
+    public void iJoin(ManagementNodeInventory inv) {
+    }
+
+    @Override
+    public void execute(String queueName, String owner, Job job) {
+        execute(queueName, owner, job, new NopeCompletion());
+    }
+
+    @Override
+    public <T> void execute(final String queueName, final String owner, final Job job, final ReturnValueCompletion<T> completion, final Class<? extends T> returnType) {
+        if (stopped) {
+            logger.warn(String.format("[Job Facade Stopped]: skip to run job[queueName:%s, owner:%s, name:%s]",
+                    queueName, owner, job.getClass().getName()));
+            return;
+        }
+
+        JobQueueEntryVO e = new JobQueueEntryVO();
+        try {
+            e.setContext(SerializableHelper.writeObject(new JobContextObject(job)));
+        } catch (IOException e1) {
+            throw new CloudRuntimeException(String.format("unable to serialize job: %s", job.getClass().getName()), e1);
+        }
+
+        long queueId = getOrCreateQueue(queueName, owner);
+        e.setRestartable(job.getClass().isAnnotationPresent(RestartableJob.class));
+        e.setName(job.getClass().getName());
+        e.setOwner(owner);
+        e.setJobQueueId(queueId);
+        e.setIssuerManagementNodeId(Platform.getManagementServerId());
+        e.setState(JobState.Pending);
+        e.setInDate(new Timestamp(System.currentTimeMillis()));
+        e = dbf.persistAndRefresh(e);
+        logger.debug(String.format("[Job added] job queue name: %s, job class name: %s, job id: %s", queueName, e.getName(), e.getId()));
+
+        wrappers.put(e.getId(), new JobWrapper() {
+            @Override
+            public void success(Object ret) {
+                completion.success((T) ret);
+            }
+
+            @Override
+            public void fail(ErrorCode err) {
+                completion.fail(err);
+            }
+        });
+        localJobs.put(e.getId(), job);
+
+        kick(queueId, queueName, e.getId());
+    }
+
+    @Override
+    public void execute(String queueName, String owner, Job job, final Completion completion) {
+        execute(queueName, owner, job, new ReturnValueCompletion<Object>(completion) {
+            @Override
+            public void success(Object returnValue) {
+                completion.success();
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                completion.fail(errorCode);
+            }
+        }, null);
+    }
+
+    @Override
+    public void deleteJobQueue(String queueName) {
+
+    }
+
+    @Override
+    public void evictOwner(String owner) {
+
+    }
+
+    @Override
+    public List<String> listAllQueue() {
+        return Q.New(JobQueueVO.class).select(JobQueueVO_.name).listValues();
+    }
+
+    @Override
+    public List<String> listQueue(String namePattern) {
+        return Q.New(JobQueueVO.class).select(JobQueueVO_.name).like(JobQueueVO_.name, namePattern).listValues();
+    }
+
+    @Override
+    public long getPendingJobNumber(String queueName) {
+        Long count = SQL.New("select count(e) from JobQueueEntryVO e, JobQueueVO q" +
+                " where e.jobQueueId = q.id and q.name = :name and e.state = :pending", Long.class)
+                .param("name", queueName)
+                .param("pending", JobState.Pending)
+                .find();
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public List<String> listQueueHasPendingJob() {
+        return SQL.New("select distinct q.name from JobQueueEntryVO e, JobQueueVO q" +
+                " where e.jobQueueId = q.id and e.state = :pending", String.class)
+                .param("pending", JobState.Pending)
+                .list();
+    }
+
+    @Override
+    public boolean startQueueIfPendingJob(String queueName, String owner) {
+        Long queueId = Q.New(JobQueueVO.class).select(JobQueueVO_.id).eq(JobQueueVO_.name, queueName).findValue();
+        if (queueId == null || findPendingJob(queueId) == null) {
+            return false;
+        }
+
+        kick(queueId, queueName, null);
+        return true;
+    }
+
+    @Override
+    public boolean startQueueIfPendingJob(String queueName, String owner, boolean newThread) {
+        // queues are always processed in their own threads
+        return startQueueIfPendingJob(queueName, owner);
+    }
+
+    @Override
+    public int getWorkingQueueNumber() {
+        return (int) queues.values().stream().filter(q -> q.running.get()).count();
+    }
+
+    @Override
+    public Map<String, Long> getWorkingQueueDepths() {
+        Map<String, Long> ret = new HashMap<>();
+        List<Tuple> ts = SQL.New("select q.name, count(e) from JobQueueEntryVO e, JobQueueVO q" +
+                " where e.jobQueueId = q.id and q.workerManagementNodeId = :mgmtId and e.state = :pending" +
+                " group by q.name", Tuple.class)
+                .param("mgmtId", Platform.getManagementServerId())
+                .param("pending", JobState.Pending)
+                .list();
+        ts.forEach(t -> ret.put(t.get(0, String.class), t.get(1, Long.class)));
+        return ret;
+    }
+
+    @Override
+    public long getProcessedJobNumber() {
+        return processedJobNumber.sum();
+    }
+
+    @Override
+    public long getAverageJobWaitTimeInMillis() {
+        long count = processedJobNumber.sum();
+        return count == 0 ? 0 : jobWaitTime.sum() / count;
+    }
+
+    @Override
+    public long getMaxJobWaitTimeInMillis() {
+        return maxJobWaitTime.get();
+    }
+}
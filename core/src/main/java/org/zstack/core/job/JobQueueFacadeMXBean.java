@@ -0,0 +1,17 @@
+package org.zstack.core.job;
+
+import java.util.Map;
+
+/**
+ */
+public interface JobQueueFacadeMXBean {
+    int getWorkingQueueNumber();
+
+    Map<String, Long> getWorkingQueueDepths();
+
+    long getProcessedJobNumber();
+
+    long getAverageJobWaitTimeInMillis();
+
+    long getMaxJobWaitTimeInMillis();
+}
@@ -0,0 +1,36 @@
+package org.zstack.core.job;
+
+import org.zstack.header.message.Message;
+
+/**
+ * sent to the management node working on, or owning, a job queue when a job is added to the queue
+ */
+public class KickJobQueueMsg extends Message {
+    private long jobQueueId;
+    private String jobQueueName;
+    private Long jobId;
+
+    public long getJobQueueId() {
+        return jobQueueId;
+    }
+
+    public void setJobQueueId(long jobQueueId) {
+        this.jobQueueId = jobQueueId;
+    }
+
+    public String getJobQueueName() {
+        return jobQueueName;
+    }
+
+    public void setJobQueueName(String jobQueueName) {
+        this.jobQueueName = jobQueueName;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+}
@@ -0,0 +1,303 @@
+package org.zstack.core.rest;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.springframework.http.HttpMethod;
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.Task;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.rest.DefaultSSLVerifier;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The HTTP engine behind RESTFacade.asyncJson.
+ *
+ * Requests are sent by an NIO client so no thread waits on a socket: connections are
+ * pooled and kept alive per destination(scheme://host:port of an agent), a destination
+ * has at most RESTFacade.async.maxInFlightPerDestination requests in flight and queues
+ * the rest, and failed requests are retried by the timer instead of sleeping in a
+ * thread. Callbacks are called in the thread pool, never in the I/O reactor threads.
+ */
+class AsyncHttpEngine {
+    private static final CLogger logger = Utils.getSafeLogger(AsyncHttpEngine.class);
+
+    interface ResponseCallback {
+        // called when the destination responds, or when it keeps responding a non-2xx status after all retries
+        void response(int statusCode, String body);
+
+        // called when the request cannot be sent or no response is received after all retries
+        void error(Exception e);
+    }
+
+    private final ThreadFacade thdf;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient client;
+    private final Map<String, Destination> destinations = new ConcurrentHashMap<>();
+
+    private class Call {
+        final String url;
+        final HttpMethod method;
+        final String body;
+        final Map<String, String> headers;
+        final int timeout;
+        final int maxRetries;
+        final BooleanSupplier isDone;
+        final ResponseCallback callback;
+        int attempts;
+
+        Call(String url, HttpMethod method, String body, Map<String, String> headers, long timeout,
+             int maxRetries, BooleanSupplier isDone, ResponseCallback callback) {
+            this.url = url;
+            this.method = method;
+            this.body = body;
+            this.headers = headers;
+            this.timeout = (int) Math.min(timeout, Integer.MAX_VALUE);
+            this.maxRetries = maxRetries;
+            this.isDone = isDone;
+            this.callback = callback;
+        }
+
+        HttpUriRequest toRequest() {
+            RequestBuilder rb = RequestBuilder.create(method.name()).setUri(url)
+                    .setConfig(RequestConfig.custom()
+                            .setConnectTimeout(timeout)
+                            .setSocketTimeout(timeout)
+                            .setConnectionRequestTimeout(timeout)
+                            .build());
+
+            if (body != null) {
+                rb.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+            }
+
+            if (headers != null) {
+                headers.forEach((k, v) -> {
+                    // the entity decides the length and the type
+                    if (!"Content-Length".equalsIgnoreCase(k) && !"Content-Type".equalsIgnoreCase(k)) {
+                        rb.setHeader(k, v);
+                    }
+                });
+            }
+
+            return rb.build();
+        }
+    }
+
+    private class Destination {
+        final String name;
+        final Queue<Call> waiting = new ArrayDeque<>();
+        int inFlight;
+
+        Destination(String name) {
+            this.name = name;
+        }
+
+        void submit(Call call) {
+            synchronized (this) {
+                if (inFlight >= CoreGlobalProperty.REST_FACADE_ASYNC_MAX_IN_FLIGHT_PER_DESTINATION) {
+                    waiting.offer(call);
+                    return;
+                }
+
+                inFlight++;
+            }
+
+            send(this, call);
+        }
+
+        void release() {
+            Call next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+
+            // hand the slot to the next waiting call
+            send(this, next);
+        }
+    }
+
+    AsyncHttpEngine(ThreadFacade thdf) {
+        this.thdf = thdf;
+
+        RegistryBuilder<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE);
+        SSLContext sslContext = DefaultSSLVerifier.getSSLContext(DefaultSSLVerifier.trustAllCerts);
+        if (sslContext != null) {
+            registry.register("https", new SSLIOSessionStrategy(sslContext, new NoopHostnameVerifier()));
+        }
+
+        IOReactorConfig.Builder reactorConfig = IOReactorConfig.custom().setSoKeepAlive(true);
+        if (CoreGlobalProperty.REST_FACADE_ASYNC_IO_THREAD_NUM > 0) {
+            reactorConfig.setIoThreadCount(CoreGlobalProperty.REST_FACADE_ASYNC_IO_THREAD_NUM);
+        }
+
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(reactorConfig.build()), registry.build());
+        } catch (IOReactorException e) {
+            throw new CloudRuntimeException(e);
+        }
+
+        connectionManager.setDefaultMaxPerRoute(CoreGlobalProperty.REST_FACADE_ASYNC_MAX_CONNECTIONS_PER_DESTINATION);
+        connectionManager.setMaxTotal(CoreGlobalProperty.REST_FACADE_ASYNC_MAX_CONNECTIONS);
+
+        client = HttpAsyncClients.custom().setConnectionManager(connectionManager).build();
+        client.start();
+
+        thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return CoreGlobalProperty.REST_FACADE_ASYNC_IDLE_CONNECTION_TIMEOUT;
+            }
+
+            @Override
+            public String getName() {
+                return "async-http-engine-close-idle-connections";
+            }
+
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(CoreGlobalProperty.REST_FACADE_ASYNC_IDLE_CONNECTION_TIMEOUT, TimeUnit.SECONDS);
+            }
+        });
+    }
+
+    /**
+     * @param timeout   connect and read timeout of each attempt, in milliseconds
+     * @param isDone    stops further retries once it returns true, e.g. the caller has timed out
+     */
+    void execute(String url, HttpMethod method, String body, Map<String, String> headers, long timeout,
+                 int maxRetries, BooleanSupplier isDone, ResponseCallback callback) {
+        URI uri = URI.create(url);
+        String name = String.format("%s://%s:%s", uri.getScheme(), uri.getHost(), uri.getPort());
+        destinations.computeIfAbsent(name, Destination::new)
+                .submit(new Call(url, method, body, headers, timeout, maxRetries, isDone, callback));
+    }
+
+    private void send(Destination dest, Call call) {
+        call.attempts++;
+
+        HttpUriRequest request;
+        try {
+            request = call.toRequest();
+        } catch (Throwable t) {
+            dest.release();
+            callback(() -> call.callback.error(new IllegalArgumentException(t.getMessage(), t)));
+            return;
+        }
+
+        client.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse rsp) {
+                dest.release();
+
+                int status = rsp.getStatusLine().getStatusCode();
+                String rspBody;
+                try {
+                    rspBody = rsp.getEntity() == null ? null : EntityUtils.toString(rsp.getEntity(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    retryOrFail(dest, call, e);
+                    return;
+                }
+
+                boolean success = status >= 200 && status < 300;
+                if (success || !retry(dest, call)) {
+                    final String body = rspBody;
+                    callback(() -> call.callback.response(status, body));
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                dest.release();
+                retryOrFail(dest, call, e);
+            }
+
+            @Override
+            public void cancelled() {
+                dest.release();
+                callback(() -> call.callback.error(new CancellationException(String.format("request to %s is cancelled", call.url))));
+            }
+        });
+    }
+
+    private void retryOrFail(Destination dest, Call call, Exception e) {
+        if (!retry(dest, call)) {
+            callback(() -> call.callback.error(e));
+        }
+    }
+
+    private boolean retry(Destination dest, Call call) {
+        if (call.attempts > call.maxRetries || call.isDone.getAsBoolean()) {
+            return false;
+        }
+
+        logger.debug(String.format("failed to %s %s, retry %s/%s later", call.method, call.url, call.attempts, call.maxRetries));
+        thdf.submitTimeoutTask(() -> dest.submit(call), TimeUnit.SECONDS, CoreGlobalProperty.REST_FACADE_ASYNC_RETRY_INTERVAL);
+        return true;
+    }
+
+    private void callback(Runnable runnable) {
+        thdf.submit(new Task<Void>() {
+            @Override
+            public Void call() {
+                runnable.run();
+                return null;
+            }
+
+            @Override
+            public String getName() {
+                return "async-http-engine-callback";
+            }
+        });
+    }
+
+    void stop() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.warn(e.getMessage(), e);
+        }
+    }
+}
@@ -22,7 +22,6 @@ import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.header.errorcode.SysErrors;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.rest.*;
-import org.zstack.utils.ExceptionDSL;
 import org.zstack.utils.IptablesUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.gson.JSONObjectUtil;
@@ -34,6 +33,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -57,6 +57,7 @@ public class RESTFacadeImpl implements RESTFacade {
     private String path;
     private String callbackUrl;
     private TimeoutRestTemplate template;
+    private AsyncHttpEngine asyncHttpEngine;
     private String baseUrl;
     private String sendCommandUrl;
     private String callbackHostName;
@@ -109,6 +110,13 @@ public class RESTFacadeImpl implements RESTFacade {
 
         logger.debug(String.format("RESTFacade built callback url: %s", callbackUrl));
         template = RESTFacade.createRestTemplate(CoreGlobalProperty.REST_FACADE_READ_TIMEOUT, CoreGlobalProperty.REST_FACADE_CONNECT_TIMEOUT);
+        asyncHttpEngine = new AsyncHttpEngine(thdf);
+    }
+
+    void destroy() {
+        if (asyncHttpEngine != null) {
+            asyncHttpEngine.stop();
+        }
     }
 
     void notifyCallback(HttpServletRequest req, HttpServletResponse rsp) {
@@ -244,31 +252,15 @@ public class RESTFacadeImpl implements RESTFacade {
         final String taskUuid = Platform.getUuid();
         final long finalStime = stime;
 
-        HttpHeaders requestHeaders = new HttpHeaders();
-        requestHeaders.setContentLength(body.length());
-        requestHeaders.set(RESTConstant.TASK_UUID, taskUuid);
-        requestHeaders.set(RESTConstant.CALLBACK_URL, callbackUrl);
-        MediaType JSON = MediaType.parseMediaType("application/json; charset=utf-8");
-        requestHeaders.setContentType(JSON);
+        Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put(RESTConstant.TASK_UUID, taskUuid);
+        requestHeaders.put(RESTConstant.CALLBACK_URL, callbackUrl);
         if (headers != null) {
-            for (Map.Entry<String, String> e : headers.entrySet()) {
-                requestHeaders.set(e.getKey(), e.getValue());
-            }
+            requestHeaders.putAll(headers);
         }
 
-        HttpEntity<String> req = new HttpEntity<String>(body, requestHeaders);
-
-        Retry<ResponseEntity<String>> retry = new Retry<ResponseEntity<String>>() {
-            @Override
-            @RetryCondition(onExceptions = {ResourceAccessException.class, RestClientException.class, HttpClientErrorException.class})
-            protected ResponseEntity<String> call() {
-                return template.exchange(url, method, req, String.class, taskUuid, unit.toMillis(timeout), unit.toMillis(timeout));
-            }
-        };
-
+        final AtomicBoolean called = new AtomicBoolean(false);
         AsyncHttpWrapper wrapper = new AsyncHttpWrapper() {
-            final AtomicBoolean called = new AtomicBoolean(false);
-
             final AsyncHttpWrapper self = this;
             final TimeoutTaskReceipt timeoutTaskReceipt = thdf.submitTimeoutTask(new Runnable() {
                 @Override
@@ -285,7 +277,6 @@ public class RESTFacadeImpl implements RESTFacade {
             }
 
             public void fail(ErrorCode err) {
-                retry.stop();
                 if (!called.compareAndSet(false, true)) {
                     logger.warn(String.format("Failed callback many times, taskId=%s, currentTimeMillis=%s", taskUuid, System.currentTimeMillis()));
                     return;
@@ -352,30 +343,29 @@ public class RESTFacadeImpl implements RESTFacade {
             wrappers.put(taskUuid, wrapper);
 
             if (logger.isTraceEnabled()) {
-                logger.trace(String.format("json %s [%s], %s", method.toString(), url, req.toString()));
+                logger.trace(String.format("json %s [%s], headers: %s, body: %s", method.toString(), url, requestHeaders, body));
             }
 
-            ResponseEntity<String> rsp;
-
-            try {
-                if (CoreGlobalProperty.UNIT_TEST_ON && !CoreGlobalProperty.SIMULATORS_ON) {
-                    rsp = template.exchange(url, HttpMethod.POST, req, String.class);
-                } else {
-                    rsp = retry.run();
+            // the agent acknowledges the request here and calls back the callback url when the command completes
+            int maxRetries = CoreGlobalProperty.UNIT_TEST_ON && !CoreGlobalProperty.SIMULATORS_ON ? 0 : CoreGlobalProperty.REST_FACADE_ASYNC_MAX_RETRIES;
+            asyncHttpEngine.execute(url, method, body, requestHeaders, unit.toMillis(timeout), maxRetries, called::get, new AsyncHttpEngine.ResponseCallback() {
+                @Override
+                public void response(int statusCode, String rspBody) {
+                    if (statusCode != HttpStatus.SC_OK) {
+                        logger.warn(String.format("http status: %s, response body:%s", statusCode, rspBody));
+                        wrapper.fail(err(SysErrors.HTTP_ERROR, "http status: %s, response body:%s", statusCode, rspBody));
+                    }
                 }
-            } catch (HttpClientErrorException e) {
-                wrapper.fail(err(SysErrors.HTTP_ERROR, "http status: %s, response body:%s", e.getStatusCode(), e.getResponseBodyAsString()));
-                return;
-            }
 
-            if (rsp.getStatusCode() != org.springframework.http.HttpStatus.OK) {
-                String err = String.format("http status: %s, response body:%s", rsp.getStatusCode().toString(), rsp.getBody());
-                logger.warn(err);
-                wrapper.fail(err(SysErrors.HTTP_ERROR, "http status: %s, response body:%s", rsp.getStatusCode().toString(), rsp.getBody()));
-            }
+                @Override
+                public void error(Exception e) {
+                    logger.warn(String.format("Unable to post to %s", url), e);
+                    wrapper.fail(e instanceof IOException ? err(SysErrors.IO_ERROR, e.getMessage()) : inerr(e.getMessage()));
+                }
+            });
         } catch (Throwable e) {
             logger.warn(String.format("Unable to post to %s", url), e);
-            wrapper.fail(ExceptionDSL.isCausedBy(e, ResourceAccessException.class) ? err(SysErrors.IO_ERROR, e.getMessage()) : inerr(e.getMessage()));
+            wrapper.fail(inerr(e.getMessage()));
         }
     }
 
@@ -32,8 +32,10 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
     @Autowired
     ThreadFacade _threadFacade;
 
-    private final HashMap<String, SyncTaskQueueWrapper> syncTasks = new HashMap<String, SyncTaskQueueWrapper>();
-    private final Map<String, ChainTaskQueueWrapper> chainTasks = Collections.synchronizedMap(new HashMap<>());
+    // queues are created, fed and removed inside compute() of their signature, so tasks of
+    // different signatures never contend on the same lock
+    private final Map<String, SyncTaskQueueWrapper> syncTasks = new ConcurrentHashMap<>();
+    private final Map<String, ChainTaskQueueWrapper> chainTasks = new ConcurrentHashMap<>();
     private final Map<String, Set<String>> apiRunningSignature = new ConcurrentHashMap<>();
     private static final CLogger _logger = CLoggerImpl.getLogger(DispatchQueueImpl.class);
 
@@ -45,26 +47,22 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
         sb.append(String.format("\nTASK QUEUE NUMBER: %s\n", chainTasks.size()));
         List<String> asyncTasks = new ArrayList<>();
         long now = System.currentTimeMillis();
-        synchronized (chainTasks) {
-            for (Map.Entry<String, ChainTaskQueueWrapper> e : chainTasks.entrySet()) {
-                StringBuilder tb = new StringBuilder(String.format("\nQUEUE SYNC SIGNATURE: %s", e.getKey()));
-                ChainTaskQueueWrapper w = e.getValue();
-                tb.append(String.format("\nRUNNING TASK NUMBER: %s", w.runningQueue.size()));
-                tb.append(String.format("\nPENDING TASK NUMBER: %s", w.pendingQueue.size()));
-                tb.append(String.format("\nASYNC LEVEL: %s", w.maxThreadNum));
-
-                int index = 0;
-                for (Object obj : w.runningQueue) {
-                    ChainFuture cf = (ChainFuture) obj;
-                    tb.append(TaskInfoBuilder.buildRunningTaskInfo(cf, now, index++));
-                }
+        for (Map.Entry<String, ChainTaskQueueWrapper> e : chainTasks.entrySet()) {
+            StringBuilder tb = new StringBuilder(String.format("\nQUEUE SYNC SIGNATURE: %s", e.getKey()));
+            ChainTaskQueueWrapper w = e.getValue();
+            tb.append(String.format("\nRUNNING TASK NUMBER: %s", w.runningQueue.size()));
+            tb.append(String.format("\nPENDING TASK NUMBER: %s", w.pendingQueue.size()));
+            tb.append(String.format("\nASYNC LEVEL: %s", w.maxThreadNum));
 
-                for (Object obj : w.pendingQueue) {
-                    ChainFuture cf = (ChainFuture) obj;
-                    tb.append(TaskInfoBuilder.buildPendingTaskInfo(cf, now, index++));
-                }
-                asyncTasks.add(tb.toString());
+            int index = 0;
+            for (ChainFuture cf : w.runningQueue) {
+                tb.append(TaskInfoBuilder.buildRunningTaskInfo(cf, now, index++));
             }
+
+            for (ChainFuture cf : w.pendingQueue) {
+                tb.append(TaskInfoBuilder.buildPendingTaskInfo(cf, now, index++));
+            }
+            asyncTasks.add(tb.toString());
         }
 
         sb.append(StringUtils.join(asyncTasks, "\n"));
@@ -76,25 +74,21 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
     @Override
     public ChainInfo getChainTaskInfo(String signature) {
         long now = System.currentTimeMillis();
-        synchronized (chainTasks) {
-            ChainInfo info = new ChainInfo();
-            ChainTaskQueueWrapper w = chainTasks.get(signature);
-            if (w == null) {
-                return info;
-            }
+        ChainInfo info = new ChainInfo();
+        ChainTaskQueueWrapper w = chainTasks.get(signature);
+        if (w == null) {
+            return info;
+        }
 
-            int index = 0;
-            for (Object obj : w.runningQueue) {
-                ChainFuture cf = (ChainFuture) obj;
-                info.addRunningTask(TaskInfoBuilder.buildRunningTaskInfo(cf, now, index++));
-            }
+        int index = 0;
+        for (ChainFuture cf : w.runningQueue) {
+            info.addRunningTask(TaskInfoBuilder.buildRunningTaskInfo(cf, now, index++));
+        }
 
-            for (Object obj : w.pendingQueue) {
-                ChainFuture cf = (ChainFuture) obj;
-                info.addPendingTask(TaskInfoBuilder.buildPendingTaskInfo(cf, now, index++));
-            }
-            return info;
+        for (ChainFuture cf : w.pendingQueue) {
+            info.addPendingTask(TaskInfoBuilder.buildPendingTaskInfo(cf, now, index++));
         }
+        return info;
     }
 
     @Override
@@ -151,11 +145,12 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
     }
 
     private class SyncTaskQueueWrapper {
-        ConcurrentLinkedQueue queue = new ConcurrentLinkedQueue();
-        AtomicInteger counter = new AtomicInteger(0);
-        int maxThreadNum = -1;
-        String syncSignature;
+        final ConcurrentLinkedQueue<SyncTaskFuture> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger counter = new AtomicInteger(0);
+        volatile int maxThreadNum = -1;
+        volatile String syncSignature;
 
+        // called inside syncTasks.compute()
         void addTask(SyncTaskFuture task) {
             queue.offer(task);
             if (maxThreadNum == -1) {
@@ -166,12 +161,31 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
             }
         }
 
-        void startThreadIfNeeded() {
+        // called inside syncTasks.compute()
+        boolean reserveThread() {
             if (counter.get() >= maxThreadNum) {
-                return;
+                return false;
             }
 
             counter.incrementAndGet();
+            return true;
+        }
+
+        boolean quitIfIdle() {
+            boolean[] quit = {true};
+            syncTasks.computeIfPresent(syncSignature, (k, w) -> {
+                if (!queue.isEmpty()) {
+                    quit[0] = false;
+                    return w;
+                }
+
+                return counter.decrementAndGet() == 0 ? null : w;
+            });
+
+            return quit[0];
+        }
+
+        void startThread() {
             _threadFacade.submitSyncPool(new Task<Void>() {
                 @Override
                 public String getName() {
@@ -181,18 +195,12 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
                 void run() {
                     SyncTaskFuture stask;
                     while (true) {
-                        while ((stask = (SyncTaskFuture) queue.poll()) != null) {
+                        while ((stask = queue.poll()) != null) {
                             stask.run();
                         }
 
-                        synchronized (syncTasks) {
-                            if (queue.isEmpty()) {
-                                if (counter.decrementAndGet() == 0) {
-                                    syncTasks.remove(syncSignature);
-                                }
-
-                                break;
-                            }
+                        if (quitIfIdle()) {
+                            break;
                         }
                     }
 
@@ -210,16 +218,23 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
     private <T> Future<T> doSyncSubmit(final SyncTask<T> syncTask) {
         assert syncTask.getSyncSignature() != null : "How can you submit a sync task without sync signature ???";
 
-        SyncTaskFuture f;
-        synchronized (syncTasks) {
-            SyncTaskQueueWrapper wrapper = syncTasks.get(syncTask.getSyncSignature());
+        SyncTaskFuture f = new SyncTaskFuture(syncTask);
+        SyncTaskQueueWrapper[] toStart = {null};
+        syncTasks.compute(syncTask.getSyncSignature(), (k, wrapper) -> {
             if (wrapper == null) {
                 wrapper = new SyncTaskQueueWrapper();
-                syncTasks.put(syncTask.getSyncSignature(), wrapper);
             }
-            f = new SyncTaskFuture(syncTask);
+
             wrapper.addTask(f);
-            wrapper.startThreadIfNeeded();
+            if (wrapper.reserveThread()) {
+                toStart[0] = wrapper;
+            }
+
+            return wrapper;
+        });
+
+        if (toStart[0] != null) {
+            toStart[0].startThread();
         }
 
         return f;
@@ -312,12 +327,12 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
     }
 
     private class ChainTaskQueueWrapper {
-        LinkedList pendingQueue = new LinkedList();
+        final ConcurrentLinkedQueue<ChainFuture> pendingQueue = new ConcurrentLinkedQueue<>();
         final Map<String, AtomicInteger> subPendingMap = new ConcurrentHashMap<>();
-        final LinkedList runningQueue = new LinkedList();
-        AtomicInteger counter = new AtomicInteger(0);
-        int maxThreadNum = -1;
-        String syncSignature;
+        final ConcurrentLinkedQueue<ChainFuture> runningQueue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger counter = new AtomicInteger(0);
+        volatile int maxThreadNum = -1;
+        volatile String syncSignature;
 
         int addSubPending(String deduplicateStr) {
             subPendingMap.compute(deduplicateStr, (k, v) -> {
@@ -358,18 +373,15 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
             removeSubPending(task.getTask().getDeduplicateString(), true);
         }
 
+        // called inside chainTasks.compute()
         boolean addTask(ChainFuture task, int length) {
             if (length != -1 && CoreGlobalProperty.CHAIN_TASK_QOS) {
                 DebugUtils.Assert(task.getTask().getDeduplicateString() != null, "deduplicate String must be set if max pending string has been set!");
                 AtomicInteger r = subPendingMap.get(task.getTask().getDeduplicateString());
                 int queueLength = addSubPending(task.getTask().getDeduplicateString());
-                if (queueLength > length) {
-                    synchronized (runningQueue) {
-                        if (length != 0 || queueLength != 1 || r != null) {
-                            warningAndRemove(task, length, queueLength);
-                            return false;
-                        }
-                    }
+                if (queueLength > length && (length != 0 || queueLength != 1 || r != null)) {
+                    warningAndRemove(task, length, queueLength);
+                    return false;
                 }
             }
             pendingQueue.offer(task);
@@ -387,13 +399,33 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
             return true;
         }
 
-        void startThreadIfNeeded() {
+        // called inside chainTasks.compute()
+        boolean reserveThread() {
             if (counter.get() >= maxThreadNum) {
                 logger.debug(String.format("syncSignature: %s is arrived maxThreadNum: %s, it would be thrown!", syncSignature, maxThreadNum));
-                return;
+                return false;
             }
 
             counter.incrementAndGet();
+            return true;
+        }
+
+        // remove a task from the pending queue, or release the thread if nothing is pending
+        ChainFuture pollOrQuit() {
+            ChainFuture[] cf = {null};
+            chainTasks.computeIfPresent(syncSignature, (k, w) -> {
+                cf[0] = pendingQueue.poll();
+                if (cf[0] == null && counter.decrementAndGet() == 0) {
+                    return null;
+                }
+
+                return w;
+            });
+
+            return cf[0];
+        }
+
+        void startThread() {
             _threadFacade.submit(new Task<Void>() {
                 @Override
                 public String getName() {
@@ -403,51 +435,44 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
                 // start a new thread every time to avoid stack overflow
                 @AsyncThread
                 private void runQueue() {
-                    ChainFuture cf;
-                    synchronized (chainTasks) {
-                        // remove from pending queue and add to running queue later
-                        cf = (ChainFuture) pendingQueue.poll();
-
-                        if (cf == null) {
-                            if (counter.decrementAndGet() == 0) {
-                                chainTasks.remove(syncSignature);
-                            }
-
-                            return;
-                        }
+                    // remove from pending queue and add to running queue later
+                    ChainFuture cf = pollOrQuit();
+                    if (cf == null) {
+                        return;
                     }
 
-                    synchronized (runningQueue) {
-                        processTimeoutTask(cf);
-                        cf.startExecutionTimeInMills = System.currentTimeMillis();
-                        // add to running queue
-                        logger.debug(String.format("Start executing runningQueue: %s, task name: %s", syncSignature, cf.getTask().getName()));
-                        runningQueue.offer(cf);
-                        Optional.ofNullable(getApiId(cf))
-                                .ifPresent(apiId -> apiRunningSignature.computeIfAbsent(apiId,
-                                        k -> new HashSet<>()).add(syncSignature));
-                    }
+                    processTimeoutTask(cf);
+                    cf.startExecutionTimeInMills = System.currentTimeMillis();
+                    // add to running queue
+                    logger.debug(String.format("Start executing runningQueue: %s, task name: %s", syncSignature, cf.getTask().getName()));
+                    runningQueue.offer(cf);
+                    Optional.ofNullable(getApiId(cf))
+                            .ifPresent(apiId -> apiRunningSignature.compute(apiId, (k, sigs) -> {
+                                if (sigs == null) {
+                                    sigs = ConcurrentHashMap.newKeySet();
+                                }
+
+                                sigs.add(syncSignature);
+                                return sigs;
+                            }));
 
                     if (cf.getTask().getDeduplicateString() != null) {
                         removeSubPending(cf.getTask().getDeduplicateString(), false);
                     }
 
                     cf.run(() -> {
-                        synchronized (runningQueue) {
-                            Optional.ofNullable(getApiId(cf))
-                                    .ifPresent(apiId -> apiRunningSignature.computeIfPresent(apiId, (k, sigs) -> {
-                                        sigs.remove(syncSignature);
-                                        return sigs.isEmpty() ? null : sigs;
-                                    }));
-                            runningQueue.remove(cf);
-                            logger.debug(String.format("Finish executing runningQueue: %s, task name: %s", syncSignature, cf.getTask().getName()));
-
-                            if (cf.getTask().getDeduplicateString() != null) {
-                                removeSubPendingZero(cf.getTask().getDeduplicateString());
-                            }
+                        Optional.ofNullable(getApiId(cf))
+                                .ifPresent(apiId -> apiRunningSignature.computeIfPresent(apiId, (k, sigs) -> {
+                                    sigs.remove(syncSignature);
+                                    return sigs.isEmpty() ? null : sigs;
+                                }));
+                        runningQueue.remove(cf);
+                        logger.debug(String.format("Finish executing runningQueue: %s, task name: %s", syncSignature, cf.getTask().getName()));
+
+                        if (cf.getTask().getDeduplicateString() != null) {
+                            removeSubPendingZero(cf.getTask().getDeduplicateString());
                         }
 
-
                         runQueue();
                     });
                 }
@@ -496,25 +521,32 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
         assert task.getSyncSignature() != null : "How can you submit a chain task without sync signature ???";
         DebugUtils.Assert(task.getSyncLevel() >= 1, "getSyncLevel() must return 1 at least ");
 
-        synchronized (chainTasks) {
-            final String signature = task.getSyncSignature();
-            ChainTaskQueueWrapper wrapper = chainTasks.get(signature);
+        ChainFuture cf = new ChainFuture(task);
+        boolean[] succeed = {false};
+        ChainTaskQueueWrapper[] toStart = {null};
+        chainTasks.compute(task.getSyncSignature(), (k, wrapper) -> {
             if (wrapper == null) {
                 wrapper = new ChainTaskQueueWrapper();
-                chainTasks.put(signature, wrapper);
             }
 
-            ChainFuture cf = new ChainFuture(task);
-            boolean succeed = wrapper.addTask(cf, task.getMaxPendingTasks());
-            if (!succeed) {
-                cf.cancel();
-                logger.debug(String.format("Pending queue[%s] exceed max size, task name: %s, start execute callback", task.getSyncSignature(), task.getName()));
-                task.exceedMaxPendingCallback();
-            } else {
-                wrapper.startThreadIfNeeded();
+            succeed[0] = wrapper.addTask(cf, task.getMaxPendingTasks());
+            if (succeed[0] && wrapper.reserveThread()) {
+                toStart[0] = wrapper;
             }
-            return cf;
+
+            // a queue rejecting its first task has no thread to remove it later
+            return wrapper.counter.get() == 0 && wrapper.pendingQueue.isEmpty() ? null : wrapper;
+        });
+
+        if (!succeed[0]) {
+            cf.cancel();
+            logger.debug(String.format("Pending queue[%s] exceed max size, task name: %s, start execute callback", task.getSyncSignature(), task.getName()));
+            task.exceedMaxPendingCallback();
+        } else if (toStart[0] != null) {
+            toStart[0].startThread();
         }
+
+        return cf;
     }
 
 
@@ -558,8 +590,6 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
 
     @Override
     public boolean isChainTaskRunning(String signature) {
-        synchronized (chainTasks) {
-            return chainTasks.containsKey(signature);
-        }
+        return chainTasks.containsKey(signature);
     }
 }
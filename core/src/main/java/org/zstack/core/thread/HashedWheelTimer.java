@@ -0,0 +1,268 @@
+package org.zstack.core.thread;
+
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A timer scheduling and cancelling tasks in O(1).
+ *
+ * Time is divided into ticks of tickDuration milliseconds and timeouts are hashed into
+ * a wheel of wheelSize buckets by their deadline tick; a timeout farther than one round
+ * of the wheel stays in its bucket with a remaining round count. One thread advances the
+ * wheel every tick and expires the timeouts of the current bucket, so a timeout fires
+ * at most one tick later than its deadline.
+ *
+ * Callers never touch the buckets: new and cancelled timeouts are handed to the wheel
+ * thread through lock-free queues and cancelled timeouts are unlinked in the next tick,
+ * instead of staying in a heap until a purge like java.util.Timer does.
+ *
+ * Tasks run on the wheel thread and must be short, hand long work to a thread pool.
+ */
+public class HashedWheelTimer {
+    private static final CLogger logger = Utils.getLogger(HashedWheelTimer.class);
+
+    // bounds the work of one tick when timeouts are added faster than the wheel turns
+    private static final int MAX_TIMEOUTS_TRANSFERRED_PER_TICK = 100000;
+
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread workerThread;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    private volatile long startTime;
+    private volatile boolean stopped;
+    // only accessed by the wheel thread
+    private long tick;
+
+    public class Timeout implements ThreadFacadeImpl.TimeoutTaskReceipt {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // following fields are only accessed by the wheel thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+
+            pending.decrementAndGet();
+            cancelled.incrementAndGet();
+            cancelledTimeouts.offer(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+
+            pending.decrementAndGet();
+            expired.incrementAndGet();
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.warn(String.format("unhandled exception happened when running %s", task.getClass().getName()), t);
+            }
+        }
+    }
+
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+
+        void expire(long now) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                if (timeout.isCancelled()) {
+                    timeout = remove(timeout);
+                } else if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                    Timeout next = remove(timeout);
+                    timeout.expire();
+                    timeout = next;
+                } else {
+                    if (timeout.remainingRounds > 0) {
+                        timeout.remainingRounds--;
+                    }
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException(String.format("tickDuration must be greater than 0, but got %s", tickDuration));
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException(String.format("wheelSize must be in (0, 2^30], but got %s", wheelSize));
+        }
+
+        this.tickDuration = unit.toMillis(tickDuration) == 0 ? 1 : unit.toMillis(tickDuration);
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+
+        workerThread = new Thread(this::work, name);
+        workerThread.setDaemon(true);
+        startTime = System.currentTimeMillis();
+        workerThread.start();
+    }
+
+    public Timeout schedule(Runnable task, TimeUnit unit, long delay) {
+        Timeout timeout = new Timeout(task, System.currentTimeMillis() + Math.max(unit.toMillis(delay), 0));
+        pending.incrementAndGet();
+        newTimeouts.offer(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        stopped = true;
+        workerThread.interrupt();
+    }
+
+    private void work() {
+        while (!stopped) {
+            long deadline = (tick + 1) * tickDuration;
+            long sleep = deadline - (System.currentTimeMillis() - startTime);
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        break;
+                    }
+                }
+                continue;
+            }
+
+            removeCancelledTimeouts();
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expire(System.currentTimeMillis());
+            tick++;
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        for (int i = 0; i < MAX_TIMEOUTS_TRANSFERRED_PER_TICK; i++) {
+            Timeout timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+
+            if (timeout.isCancelled()) {
+                continue;
+            }
+
+            long calculated = (timeout.deadline - startTime) / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // deadlines in the past go to the current bucket
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    public long getPendingTimeouts() {
+        return pending.get();
+    }
+
+    public long getExpiredTimeouts() {
+        return expired.get();
+    }
+
+    public long getCancelledTimeouts() {
+        return cancelled.get();
+    }
+}
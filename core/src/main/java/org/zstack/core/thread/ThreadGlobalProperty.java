@@ -9,4 +9,8 @@ import org.zstack.core.GlobalPropertyDefinition;
 public class ThreadGlobalProperty {
     @GlobalProperty(name="ThreadFacade.maxThreadNum", defaultValue = "150")
     public static int MAX_THREAD_NUM;
+    @GlobalProperty(name="ThreadFacade.timer.tickDuration", defaultValue = "10")
+    public static long TIMER_TICK_DURATION;
+    @GlobalProperty(name="ThreadFacade.timer.wheelSize", defaultValue = "512")
+    public static int TIMER_WHEEL_SIZE;
 }
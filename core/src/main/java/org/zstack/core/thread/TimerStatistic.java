@@ -0,0 +1,42 @@
+package org.zstack.core.thread;
+
+import java.beans.ConstructorProperties;
+
+/**
+ */
+public class TimerStatistic {
+    private long tickDuration;
+    private int wheelSize;
+    private long pendingTimeoutNum;
+    private long expiredTimeoutNum;
+    private long cancelledTimeoutNum;
+
+    @ConstructorProperties({"tickDuration", "wheelSize", "pendingTimeoutNum", "expiredTimeoutNum", "cancelledTimeoutNum"})
+    public TimerStatistic(long tickDuration, int wheelSize, long pendingTimeoutNum, long expiredTimeoutNum, long cancelledTimeoutNum) {
+        this.tickDuration = tickDuration;
+        this.wheelSize = wheelSize;
+        this.pendingTimeoutNum = pendingTimeoutNum;
+        this.expiredTimeoutNum = expiredTimeoutNum;
+        this.cancelledTimeoutNum = cancelledTimeoutNum;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public int getWheelSize() {
+        return wheelSize;
+    }
+
+    public long getPendingTimeoutNum() {
+        return pendingTimeoutNum;
+    }
+
+    public long getExpiredTimeoutNum() {
+        return expiredTimeoutNum;
+    }
+
+    public long getCancelledTimeoutNum() {
+        return cancelledTimeoutNum;
+    }
+}
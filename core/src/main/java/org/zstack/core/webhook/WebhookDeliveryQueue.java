@@ -0,0 +1,169 @@
+package org.zstack.core.webhook;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.*;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.zstack.core.thread.Task;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.core.webhooks.WebhookInventory;
+import org.zstack.header.rest.RESTConstant;
+import org.zstack.header.rest.RESTFacade;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Posts webhooks in the background.
+ *
+ * Every endpoint(url) has a bounded queue drained by at most
+ * Webhook.delivery.concurrencyPerEndpoint workers, each worker posts up to
+ * Webhook.delivery.batchSize requests before giving its thread back, so a slow
+ * endpoint neither blocks the caller nor occupies the whole thread pool. Failed
+ * posts are re-queued by a timer with a growing interval instead of sleeping in
+ * the worker.
+ */
+public class WebhookDeliveryQueue {
+    private static final CLogger logger = Utils.getLogger(WebhookDeliveryQueue.class);
+
+    @Autowired
+    private ThreadFacade thdf;
+
+    private final RestTemplate restTemplate = RESTFacade.createRestTemplate(
+            (int) TimeUnit.SECONDS.toMillis(WebhookGlobalProperty.DELIVERY_TIMEOUT),
+            (int) TimeUnit.SECONDS.toMillis(WebhookGlobalProperty.DELIVERY_TIMEOUT)
+    );
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private static class Delivery {
+        final WebhookInventory hook;
+        final String body;
+        int attempts;
+
+        Delivery(WebhookInventory hook, String body) {
+            this.hook = hook;
+            this.body = body;
+        }
+    }
+
+    private class Endpoint {
+        final String url;
+        final Queue<Delivery> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicInteger workers = new AtomicInteger();
+        final AtomicInteger dropped = new AtomicInteger();
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+
+        void offer(Delivery d) {
+            if (size.incrementAndGet() > WebhookGlobalProperty.DELIVERY_QUEUE_SIZE) {
+                size.decrementAndGet();
+                // don't flood the log when an endpoint is stuck
+                if (dropped.getAndIncrement() % 100 == 0) {
+                    logger.warn(String.format("the delivery queue of webhook endpoint[url:%s] is full, dropped %s requests so far",
+                            url, dropped.get()));
+                }
+                return;
+            }
+
+            queue.offer(d);
+            startWorkers();
+        }
+
+        void startWorkers() {
+            while (!queue.isEmpty()) {
+                int w = workers.get();
+                if (w >= WebhookGlobalProperty.DELIVERY_CONCURRENCY_PER_ENDPOINT) {
+                    return;
+                }
+
+                if (workers.compareAndSet(w, w + 1)) {
+                    submitWorker();
+                }
+            }
+        }
+
+        void submitWorker() {
+            thdf.submit(new Task<Void>() {
+                @Override
+                public Void call() {
+                    work();
+                    return null;
+                }
+
+                @Override
+                public String getName() {
+                    return String.format("webhook-delivery-%s", url);
+                }
+            });
+        }
+
+        void work() {
+            try {
+                for (int i = 0; i < WebhookGlobalProperty.DELIVERY_BATCH_SIZE; i++) {
+                    Delivery d = queue.poll();
+                    if (d == null) {
+                        break;
+                    }
+
+                    size.decrementAndGet();
+                    post(this, d);
+                }
+            } finally {
+                workers.decrementAndGet();
+                // requests may arrive after the last poll but before the counter is decreased
+                startWorkers();
+            }
+        }
+    }
+
+    private void post(Endpoint endpoint, Delivery d) {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setContentType(MediaType.valueOf(RESTConstant.APP_JSON_UTF8));
+        requestHeaders.setContentLength(d.body.length());
+        HttpEntity<String> req = new HttpEntity<>(d.body, requestHeaders);
+
+        WebhookInventory hook = d.hook;
+        d.attempts++;
+
+        try {
+            ResponseEntity<String> rsp = restTemplate.exchange(hook.getUrl(), HttpMethod.POST, req, String.class);
+            if (!rsp.getStatusCode().is2xxSuccessful()) {
+                logger.warn(String.format("unable to call the webhook[uuid:%s, name:%s, url:%s], status code: %s, body: %s",
+                        hook.getUuid(), hook.getName(), hook.getUrl(), rsp.getStatusCode(), rsp.getBody()));
+            }
+        } catch (HttpClientErrorException e) {
+            // the endpoint rejects the request, retrying won't help
+            logger.warn(String.format("unable to call the webhook[uuid:%s, name:%s, url:%s], status code: %s, body: %s",
+                    hook.getUuid(), hook.getName(), hook.getUrl(), e.getStatusCode(), e.getResponseBodyAsString()));
+        } catch (RestClientException e) {
+            if (d.attempts > WebhookGlobalProperty.DELIVERY_MAX_RETRIES) {
+                logger.warn(String.format("unable to call the webhook[uuid:%s, name:%s, url:%s] after %s attempts, give up",
+                        hook.getUuid(), hook.getName(), hook.getUrl(), d.attempts), e);
+                return;
+            }
+
+            logger.debug(String.format("unable to call the webhook[uuid:%s, name:%s, url:%s], %s, retry later",
+                    hook.getUuid(), hook.getName(), hook.getUrl(), e.getMessage()));
+            thdf.submitTimeoutTask(() -> endpoint.offer(d), TimeUnit.SECONDS,
+                    (long) WebhookGlobalProperty.DELIVERY_RETRY_INTERVAL * d.attempts);
+        }
+    }
+
+    public void deliver(List<WebhookInventory> hooks, String body) {
+        for (WebhookInventory hook : hooks) {
+            endpoints.computeIfAbsent(hook.getUrl(), Endpoint::new).offer(new Delivery(hook, body));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.zstack.core.webhook;
+
+import org.zstack.core.GlobalProperty;
+import org.zstack.core.GlobalPropertyDefinition;
+
+/**
+ */
+@GlobalPropertyDefinition
+public class WebhookGlobalProperty {
+    @GlobalProperty(name = "Webhook.delivery.queueSize", defaultValue = "1000")
+    public static int DELIVERY_QUEUE_SIZE;
+    @GlobalProperty(name = "Webhook.delivery.concurrencyPerEndpoint", defaultValue = "2")
+    public static int DELIVERY_CONCURRENCY_PER_ENDPOINT;
+    @GlobalProperty(name = "Webhook.delivery.batchSize", defaultValue = "50")
+    public static int DELIVERY_BATCH_SIZE;
+    @GlobalProperty(name = "Webhook.delivery.maxRetries", defaultValue = "5")
+    public static int DELIVERY_MAX_RETRIES;
+    @GlobalProperty(name = "Webhook.delivery.retryInterval", defaultValue = "1")
+    public static int DELIVERY_RETRY_INTERVAL;
+    @GlobalProperty(name = "Webhook.delivery.timeout", defaultValue = "30")
+    public static int DELIVERY_TIMEOUT;
+    @GlobalProperty(name = "Webhook.index.ttl", defaultValue = "60")
+    public static int INDEX_TTL;
+}
@@ -3,6 +3,7 @@ package org.zstack.core.webhook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.zstack.core.Platform;
 import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.EventFacade;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.db.SQL;
@@ -22,6 +23,8 @@ public class WebhookManagerImpl extends AbstractService implements WebhookManage
     private DatabaseFacade dbf;
     @Autowired
     private CloudBus bus;
+    @Autowired
+    private EventFacade evtf;
 
     @Override
     public boolean start() {
@@ -59,6 +62,11 @@ public class WebhookManagerImpl extends AbstractService implements WebhookManage
         }
     }
 
+    private void fireWebhookChanged(String uuid) {
+        // let every management node drop its cached webhooks
+        evtf.fire(WebhookCanonicalEvents.WEBHOOK_CHANGED_PATH, uuid);
+    }
+
     private void handle(APIUpdateWebhookMsg msg) {
         WebhookVO vo = new SQLBatchWithReturn<WebhookVO>() {
             @Override
@@ -96,6 +104,8 @@ public class WebhookManagerImpl extends AbstractService implements WebhookManage
             }
         }.execute();
 
+        fireWebhookChanged(vo.getUuid());
+
         APIUpdateWebhookEvent evt = new APIUpdateWebhookEvent(msg.getId());
         evt.setInventory(WebhookInventory.valueOf(vo));
         bus.publish(evt);
@@ -104,6 +114,7 @@ public class WebhookManagerImpl extends AbstractService implements WebhookManage
     private void handle(APIDeleteWebhookMsg msg) {
         APIDeleteWebhookEvent evt = new APIDeleteWebhookEvent(msg.getId());
         SQL.New(WebhookVO.class).eq(WebhookVO_.uuid, msg.getUuid()).hardDelete();
+        fireWebhookChanged(msg.getUuid());
         bus.publish(evt);
     }
 
@@ -116,6 +127,7 @@ public class WebhookManagerImpl extends AbstractService implements WebhookManage
         vo.setType(msg.getType());
         vo.setOpaque(msg.getOpaque());
         vo = dbf.persistAndRefresh(vo);
+        fireWebhookChanged(vo.getUuid());
 
         APICreateWebhookEvent evt = new APICreateWebhookEvent(msg.getId());
         evt.setInventory(WebhookInventory.valueOf(vo));
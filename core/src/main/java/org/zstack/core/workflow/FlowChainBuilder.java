@@ -24,8 +24,8 @@ public class FlowChainBuilder {
                 for (Object name : flowClassNames) {
                     String className = (String) name;
                     Class<Flow> clazz = (Class<Flow>) Class.forName(className);
-                    Flow flow = clazz.newInstance();
-                    flows.add(flow);
+                    // resolves the flow metadata when the builder is constructed rather than when the chain first runs
+                    flows.add(FlowMetadata.of(clazz).newInstance());
                 }
             }
             isConstructed = true;
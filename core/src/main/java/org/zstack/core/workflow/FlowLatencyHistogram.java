@@ -0,0 +1,84 @@
+package org.zstack.core.workflow;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution time of a flow, kept in power-of-two buckets of milliseconds.
+ *
+ * Recording is a few LongAdder increments without locking, so it's always on; percentiles
+ * are approximated by the upper bound of the bucket they fall in.
+ */
+class FlowLatencyHistogram {
+    // bucket 0 is [0, 1ms), bucket i is [2^(i-1), 2^i) ms, the last bucket takes the rest
+    private static final int BUCKET_NUM = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_NUM];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final LongAccumulator maxTime = new LongAccumulator(Long::max, 0);
+
+    FlowLatencyHistogram() {
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(Math.max(nanos, 0));
+        int index = ms == 0 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(ms), BUCKET_NUM - 1);
+        buckets[index].increment();
+        count.increment();
+        totalTime.add(ms);
+        maxTime.accumulate(ms);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param quantile in (0, 1]
+     * @return the upper bound in milliseconds of the bucket the quantile falls in
+     */
+    long getPercentile(double quantile) {
+        long[] snapshot = new long[BUCKET_NUM];
+        long total = 0;
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            snapshot[i] = buckets[i].sum();
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        long max = maxTime.get();
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(1L << i, max);
+            }
+        }
+
+        return max;
+    }
+
+    WorkFlowStatistic toStatistic(String name) {
+        WorkFlowStatistic stat = new WorkFlowStatistic();
+        stat.setName(name);
+
+        long c = count.sum();
+        long total = totalTime.sum();
+        stat.setCount(c);
+        stat.setTotalTime(total);
+        stat.setAverageTime(c == 0 ? 0 : total / c);
+        stat.setMaxTime(maxTime.get());
+        stat.setP50Time(getPercentile(0.5));
+        stat.setP99Time(getPercentile(0.99));
+        return stat;
+    }
+}
@@ -0,0 +1,176 @@
+package org.zstack.core.workflow;
+
+import org.zstack.header.core.workflow.AfterDone;
+import org.zstack.header.core.workflow.AfterError;
+import org.zstack.header.core.workflow.AfterFinal;
+import org.zstack.header.core.workflow.Flow;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.utils.FieldUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * What flow chains need to know about a flow class, resolved once per class.
+ *
+ * The __name__ field and the @AfterDone/@AfterError/@AfterFinal fields are looked up by
+ * reflection the first time a class is seen and read by method handles afterwards.
+ *
+ * Latency histograms are kept per flow name rather than per class, so anonymous and inner
+ * flows that set __name__ get their own entries. Many names embed resource uuids, e.g.
+ * stop-vm-{uuid}, the uuids are replaced by a placeholder so such flows share one entry; the
+ * number of entries is capped too, flows of new names fall back to their class once it's hit.
+ */
+class FlowMetadata {
+    private static final Map<Class<?>, FlowMetadata> registry = new ConcurrentHashMap<>();
+    private static final Map<String, FlowLatencyHistogram> histograms = new ConcurrentHashMap<>();
+    static final int MAX_HISTOGRAM_NUM = 4096;
+    private static final Pattern UUID_IN_NAME = Pattern.compile(
+            "[0-9a-fA-F]{8}-?[0-9a-fA-F]{4}-?[0-9a-fA-F]{4}-?[0-9a-fA-F]{4}-?[0-9a-fA-F]{12}");
+    private static final String UUID_PLACEHOLDER = "{uuid}";
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<?> flowClass;
+    private final MethodHandle nameGetter;
+    private final String defaultName;
+    // the name used in trace logs, e.g. VmInstanceBase.java:start-vm
+    private final String traceNamePrefix;
+    private final MethodHandle[] afterDoneGetters;
+    private final MethodHandle[] afterErrorGetters;
+    private final MethodHandle[] afterFinalGetters;
+    private volatile MethodHandle constructor;
+
+    static FlowMetadata of(Class<?> clazz) {
+        FlowMetadata meta = registry.get(clazz);
+        return meta != null ? meta : registry.computeIfAbsent(clazz, FlowMetadata::new);
+    }
+
+    static FlowMetadata of(Flow flow) {
+        return of(flow.getClass());
+    }
+
+    static String normalizeFlowName(String flowName) {
+        // the shortest uuid is 32 characters
+        if (flowName.length() < 32) {
+            return flowName;
+        }
+
+        return UUID_IN_NAME.matcher(flowName).replaceAll(UUID_PLACEHOLDER);
+    }
+
+    void recordLatency(Flow flow, long nanos) {
+        String key = normalizeFlowName(getFlowName(flow, false));
+        FlowLatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            if (histograms.size() >= MAX_HISTOGRAM_NUM) {
+                key = flowClass.getName();
+            }
+
+            histogram = histograms.computeIfAbsent(key, k -> new FlowLatencyHistogram());
+        }
+
+        histogram.record(nanos);
+    }
+
+    static int getHistogramNum() {
+        return histograms.size();
+    }
+
+    static Map<String, WorkFlowStatistic> getStatistics() {
+        Map<String, WorkFlowStatistic> ret = new ConcurrentHashMap<>();
+        histograms.forEach((flowName, histogram) -> ret.put(flowName, histogram.toStatistic(flowName)));
+        return ret;
+    }
+
+    private FlowMetadata(Class<?> clazz) {
+        flowClass = clazz;
+
+        Field nameField = FieldUtils.getField("__name__", clazz);
+        nameGetter = nameField == null ? null : getter(nameField);
+
+        String simpleName = clazz.getSimpleName();
+        defaultName = simpleName.equals("") ? clazz.getName() : simpleName;
+
+        String className = clazz.getName();
+        String filename = className.substring(className.lastIndexOf('.') + 1);
+        if (filename.contains("$")) {
+            filename = filename.substring(0, filename.indexOf("$"));
+        }
+        traceNamePrefix = filename + ".java:";
+
+        afterDoneGetters = getters(AfterDone.class, clazz);
+        afterErrorGetters = getters(AfterError.class, clazz);
+        afterFinalGetters = getters(AfterFinal.class, clazz);
+    }
+
+    private static MethodHandle getter(Field f) {
+        try {
+            f.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(f).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new CloudRuntimeException(e);
+        }
+    }
+
+    private static MethodHandle[] getters(Class annotation, Class<?> clazz) {
+        List<Field> fields = FieldUtils.getAnnotatedFieldsOnThisClass(annotation, clazz);
+        return fields.stream().map(FlowMetadata::getter).toArray(MethodHandle[]::new);
+    }
+
+    private static Object get(MethodHandle getter, Flow flow) {
+        try {
+            return (Object) getter.invokeExact((Object) flow);
+        } catch (Throwable t) {
+            throw new CloudRuntimeException(t);
+        }
+    }
+
+    String getFlowName(Flow flow, boolean trace) {
+        String name = nameGetter == null ? null : (String) get(nameGetter, flow);
+        if (name == null) {
+            name = defaultName;
+        }
+
+        return trace ? traceNamePrefix + name : name;
+    }
+
+    private static void collect(MethodHandle[] getters, Flow flow, List<List<Runnable>> to) {
+        for (MethodHandle getter : getters) {
+            List lst = (List) get(getter, flow);
+            if (lst != null) {
+                to.add(lst);
+            }
+        }
+    }
+
+    void collectAfterRunnable(Flow flow, List<List<Runnable>> afterDone, List<List<Runnable>> afterError, List<List<Runnable>> afterFinal) {
+        collect(afterDoneGetters, flow, afterDone);
+        collect(afterErrorGetters, flow, afterError);
+        collect(afterFinalGetters, flow, afterFinal);
+    }
+
+    Flow newInstance() {
+        MethodHandle c = constructor;
+        if (c == null) {
+            try {
+                c = MethodHandles.lookup().findConstructor(flowClass, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new CloudRuntimeException(e);
+            }
+            constructor = c;
+        }
+
+        try {
+            return (Flow) (Object) c.invokeExact();
+        } catch (Throwable t) {
+            throw new CloudRuntimeException(t);
+        }
+    }
+}
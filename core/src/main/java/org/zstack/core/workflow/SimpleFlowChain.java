@@ -14,16 +14,14 @@ import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
-import org.zstack.utils.FieldUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.function.ForEachFunction;
 import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
 
-import java.lang.reflect.Field;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.zstack.core.Platform.inerr;
 
@@ -62,56 +60,15 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
 
     private boolean isFailCalled;
 
-    private static final Map<String, WorkFlowStatistic> statistics = new ConcurrentHashMap<>();
+    // when the current flow started running, in nanoseconds, 0 if it's not timed
+    private long currentFlowStartTime;
 
-    private class FlowStopWatch {
-        Map<String, Long> beginTime = new HashMap<>();
-        void start(Flow flow) {
-            long btime = System.currentTimeMillis();
-            if (currentFlow != null) {
-                String cname = getFlowName(currentFlow);
-                long stime = beginTime.get(cname);
-                WorkFlowStatistic stat = statistics.get(cname);
-                stat.addStatistic(btime - stime);
+    // the latency of every flow is always recorded, watching also logs it
+    private boolean allowWatch = CoreGlobalProperty.PROFILER_WORKFLOW;
 
-                logger.debug(String.format("[FlowChain(%s):%s, flow:%s] takes %sms to complete",
-                        id, name, cname, stat.getTotalTime()));
-            }
-
-            String fname = getFlowName(flow);
-            beginTime.put(fname, btime);
-            WorkFlowStatistic stat = statistics.get(fname);
-            if (stat == null) {
-                stat = new WorkFlowStatistic();
-                stat.setName(fname);
-                statistics.put(fname, stat);
-            }
-        }
-
-        void stop() {
-            long etime = System.currentTimeMillis();
-            if (currentFlow != null) {
-                String fname = getFlowName(currentFlow);
-                long stime = beginTime.get(fname);
-                WorkFlowStatistic stat = statistics.get(fname);
-                stat.addStatistic(etime - stime);
-            }
-        }
-    }
-
-    private FlowStopWatch stopWatch;
-    private boolean allowWatch = false;
+    @Override
     public void allowWatch() {
         this.allowWatch = true;
-        if (stopWatch == null) {
-            stopWatch = new FlowStopWatch();
-        }
-    }
-
-    {
-        if (CoreGlobalProperty.PROFILER_WORKFLOW) {
-            stopWatch = new FlowStopWatch();
-        }
     }
 
     @Autowired
@@ -264,32 +221,6 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
         return this;
     }
 
-    private void collectAfterRunnable(Flow flow) {
-        List<Field> ad = FieldUtils.getAnnotatedFieldsOnThisClass(AfterDone.class, flow.getClass());
-        for (Field f : ad) {
-            List lst = FieldUtils.getFieldValue(f.getName(), flow);
-            if (lst != null) {
-                afterDone.add(lst);
-            }
-        }
-
-        ad = FieldUtils.getAnnotatedFieldsOnThisClass(AfterError.class, flow.getClass());
-        for (Field f : ad) {
-            List lst = FieldUtils.getFieldValue(f.getName(), flow);
-            if (lst != null) {
-                afterError.add(lst);
-            }
-        }
-
-        ad = FieldUtils.getAnnotatedFieldsOnThisClass(AfterFinal.class, flow.getClass());
-        for (Field f : ad) {
-            List lst = FieldUtils.getFieldValue(f.getName(), flow);
-            if (lst != null) {
-                afterFinal.add(lst);
-            }
-        }
-    }
-
     private void runFlow(Flow flow) {
         try {
             if (TransactionSynchronizationManager.isActualTransactionActive()) {
@@ -317,16 +248,13 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
                 toRun = flow;
             }
 
-            if (CoreGlobalProperty.PROFILER_WORKFLOW || allowWatch) {
-                stopWatch.start(toRun);
-            }
-
             currentFlow = toRun;
 
-            String flowName = getFlowName(currentFlow);
+            FlowMetadata meta = FlowMetadata.of(toRun);
+            String flowName = meta.getFlowName(toRun, logger.isTraceEnabled());
             String info = String.format("[FlowChain(%s): %s] start executing flow[%s]", id, name, flowName);
             logger.debug(info);
-            collectAfterRunnable(toRun);
+            meta.collectAfterRunnable(toRun, afterDone, afterError, afterFinal);
 
             if (preCheck != null) {
                 logger.debug(String.format("[FlowChain(%s): %s] start executing pre-check for flow[%s]", id, name, flowName));
@@ -340,6 +268,7 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
             if (isSkipFlow(toRun)) {
                 this.next();
             } else {
+                currentFlowStartTime = System.nanoTime();
                 toRun.run(this, data);
             }
         } catch (OperationFailureException oe) {
@@ -403,27 +332,21 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
     }
 
     private String getFlowName(Flow flow) {
-        String name = FieldUtils.getFieldValue("__name__", flow);
-        if (name == null) {
-            name = flow.getClass().getSimpleName();
-            if (name.equals("")) {
-                name = flow.getClass().getName();
-            }
-        }
+        return FlowMetadata.of(flow).getFlowName(flow, logger.isTraceEnabled());
+    }
 
-        if (logger.isTraceEnabled()) {
-            String className = flow.getClass().getName();
-            String[] ff = className.split("\\.");
-            String filename = ff[ff.length-1];
-            if (filename.contains("$")) {
-                int index = filename.indexOf("$");
-                filename = filename.substring(0, index);
-            }
+    private void recordCurrentFlowLatency() {
+        if (currentFlowStartTime != 0 && currentFlow != null) {
+            long nanos = System.nanoTime() - currentFlowStartTime;
+            FlowMetadata.of(currentFlow).recordLatency(currentFlow, nanos);
 
-            name = String.format("%s.java:%s", filename, name);
+            if (allowWatch) {
+                logger.debug(String.format("[FlowChain(%s):%s, flow:%s] takes %sms to complete",
+                        id, name, getFlowName(currentFlow), TimeUnit.NANOSECONDS.toMillis(nanos)));
+            }
         }
 
-        return name;
+        currentFlowStartTime = 0;
     }
 
     @Override
@@ -507,10 +430,6 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
     }
 
     private void callDoneHandler() {
-        if (CoreGlobalProperty.PROFILER_WORKFLOW || allowWatch) {
-            stopWatch.stop();
-        }
-
         if (doneHandler != null) {
             try {
                 doneHandler.handle(this.data);
@@ -542,6 +461,7 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
 
     @Override
     public void fail(ErrorCode errorCode) {
+        recordCurrentFlowLatency();
         isFailCalled = true;
         setErrorCode(errorCode);
         rollBackFlows.push(currentFlow);
@@ -581,6 +501,7 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
                     String.format("[FlowChain(%s): %s] rollback has started, you can't call next()", id, name));
         }
 
+        recordCurrentFlowLatency();
         rollBackFlows.push(currentFlow);
 
         logger.debug(String.format("[FlowChain(%s): %s] successfully executed flow[%s]", id, name, getFlowName(currentFlow)));
@@ -646,7 +567,10 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
         this.errorCode = errorCode;
     }
 
+    /**
+     * @return latency statistics of flows that have run, keyed by flow name with uuids replaced by {uuid}
+     */
     public static Map<String, WorkFlowStatistic> getStatistics() {
-        return statistics;
+        return FlowMetadata.getStatistics();
     }
 }
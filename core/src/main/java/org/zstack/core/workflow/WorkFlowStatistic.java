@@ -8,6 +8,9 @@ public class WorkFlowStatistic {
     private volatile long totalTime;
     private volatile long count;
     private volatile long averageTime;
+    private volatile long maxTime;
+    private volatile long p50Time;
+    private volatile long p99Time;
     private String name;
 
     public String getName() {
@@ -42,6 +45,30 @@ public class WorkFlowStatistic {
         this.averageTime = averageTime;
     }
 
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(long maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    public long getP50Time() {
+        return p50Time;
+    }
+
+    public void setP50Time(long p50Time) {
+        this.p50Time = p50Time;
+    }
+
+    public long getP99Time() {
+        return p99Time;
+    }
+
+    public void setP99Time(long p99Time) {
+        this.p99Time = p99Time;
+    }
+
     public void addStatistic(long time) {
         totalTime += time;
         count ++;
@@ -50,10 +77,13 @@ public class WorkFlowStatistic {
 
     @Override
     public String toString() {
-        return String.format("Flow[%s]: total time: %s secs, total count: %s, average time: %s secs",
+        return String.format("Flow[%s]: total time: %s secs, total count: %s, average time: %s secs, p50: %sms, p99: %sms, max: %sms",
                 name,
                 TimeUnit.MILLISECONDS.toSeconds(totalTime),
                 count,
-                TimeUnit.MILLISECONDS.toSeconds(averageTime));
+                TimeUnit.MILLISECONDS.toSeconds(averageTime),
+                p50Time,
+                p99Time,
+                maxTime);
     }
 }
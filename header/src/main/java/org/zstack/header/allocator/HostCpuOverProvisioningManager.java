@@ -1,5 +1,6 @@
 package org.zstack.header.allocator;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -16,6 +17,11 @@ public interface HostCpuOverProvisioningManager {
 
     int getRatio(String hostUuid);
 
+    /**
+     * @return host uuid -> cpu ratio of each host, resolved for all hosts in one load
+     */
+    Map<String, Integer> getRatios(Collection<String> hostUuids);
+
     Map<String, Integer> getAllRatio();
 
     int calculateByRatio(String hostUuid, int cpuNum);
@@ -0,0 +1,28 @@
+package org.zstack.header.allocator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * VMs sharing one allocation, candidates of the allocation are found once for all of them
+ */
+public class HostPlacementSpec {
+    private AllocateHostMsg allocation;
+    private List<String> vmUuids = new ArrayList<>();
+
+    public AllocateHostMsg getAllocation() {
+        return allocation;
+    }
+
+    public void setAllocation(AllocateHostMsg allocation) {
+        this.allocation = allocation;
+    }
+
+    public List<String> getVmUuids() {
+        return vmUuids;
+    }
+
+    public void setVmUuids(List<String> vmUuids) {
+        this.vmUuids = vmUuids;
+    }
+}
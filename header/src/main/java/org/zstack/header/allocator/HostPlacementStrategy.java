@@ -0,0 +1,15 @@
+package org.zstack.header.allocator;
+
+/**
+ * objective of placing a batch of VMs on hosts
+ */
+public enum HostPlacementStrategy {
+    /**
+     * place VMs on as few hosts as possible, each VM goes to the host it fits best
+     */
+    Pack,
+    /**
+     * place VMs evenly, each VM goes to the host having the most free capacity
+     */
+    Spread
+}
@@ -0,0 +1,35 @@
+package org.zstack.header.allocator;
+
+import org.zstack.header.message.NeedReplyMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * plans hosts for a batch of VMs in one pass, capacities are not reserved, VMs still
+ * reserve capacity when allocated to the planned hosts
+ */
+public class PlanHostPlacementMsg extends NeedReplyMessage {
+    private List<HostPlacementSpec> specs = new ArrayList<>();
+    private String placementStrategy = HostPlacementStrategy.Pack.toString();
+
+    public List<HostPlacementSpec> getSpecs() {
+        return specs;
+    }
+
+    public void setSpecs(List<HostPlacementSpec> specs) {
+        this.specs = specs;
+    }
+
+    public void addSpec(HostPlacementSpec spec) {
+        specs.add(spec);
+    }
+
+    public String getPlacementStrategy() {
+        return placementStrategy;
+    }
+
+    public void setPlacementStrategy(String placementStrategy) {
+        this.placementStrategy = placementStrategy;
+    }
+}
@@ -0,0 +1,19 @@
+package org.zstack.header.allocator;
+
+import org.zstack.header.message.MessageReply;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PlanHostPlacementReply extends MessageReply {
+    // vm uuid -> host uuid, VMs can't be placed are not in the map
+    private Map<String, String> placements = new HashMap<>();
+
+    public Map<String, String> getPlacements() {
+        return placements;
+    }
+
+    public void setPlacements(Map<String, String> placements) {
+        this.placements = placements;
+    }
+}
@@ -0,0 +1,6 @@
+package org.zstack.header.core.webhooks;
+
+public class WebhookCanonicalEvents {
+    // fired when a webhook is created, updated or deleted, the content is the webhook uuid
+    public static final String WEBHOOK_CHANGED_PATH = "/webhook/changed";
+}
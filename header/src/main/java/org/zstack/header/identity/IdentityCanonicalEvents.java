@@ -12,6 +12,7 @@ public class IdentityCanonicalEvents {
     public static final String USER_DELETED_PATH = "/user/delete";
     public static final String ACCOUNT_LOGIN_PATH = "/account/login";
     public static final String SESSION_FORCE_LOGOUT_PATH = "/session/logout";
+    public static final String POLICIES_CHANGED_PATH = "/policy/changed";
 
     public static final String SESSION_FORCE_LOGOUT = "SessionForceLogout";
 
@@ -147,4 +148,17 @@ public class IdentityCanonicalEvents {
             this.userUuid = userUuid;
         }
     }
+
+    @NeedJsonSchema
+    public static class PoliciesChangedData {
+        private String accountUuid;
+
+        public String getAccountUuid() {
+            return accountUuid;
+        }
+
+        public void setAccountUuid(String accountUuid) {
+            this.accountUuid = accountUuid;
+        }
+    }
 }
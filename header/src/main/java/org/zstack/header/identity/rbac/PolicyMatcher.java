@@ -3,6 +3,7 @@ package org.zstack.header.identity.rbac;
 import org.springframework.util.AntPathMatcher;
 
 import java.util.Comparator;
+import java.util.function.Predicate;
 
 public class PolicyMatcher {
     private AntPathMatcher matcher = new AntPathMatcher();
@@ -13,6 +14,25 @@ public class PolicyMatcher {
         return matcher.match(policy, path) || path.endsWith(policy);
     }
 
+    /**
+     * compiles a policy to match many paths the same as match(), a policy without
+     * wildcards is matched by comparing strings rather than by the path matcher
+     */
+    public Predicate<String> compile(String policy) {
+        String p = policy.replace('.', '/');
+        if (!matcher.isPattern(p)) {
+            return path -> {
+                String pa = path.replace('.', '/');
+                return pa.equals(p) || pa.endsWith(p);
+            };
+        }
+
+        return path -> {
+            String pa = path.replace('.', '/');
+            return matcher.match(p, pa) || pa.endsWith(p);
+        };
+    }
+
     public String returnPrecisePattern(String path, String p1, String p2) {
         Comparator<String> c = matcher.getPatternComparator(path);
         int ret = c.compare(p1, p2);
@@ -10,6 +10,7 @@ import org.zstack.utils.logging.CLogger;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by xing5 on 2016/12/12.
@@ -21,25 +22,46 @@ public class JsonSchemaBuilder {
 
     private LinkedHashMap<String, String> schema = new LinkedHashMap<>();
 
+    // the reflective layout of a class never changes, walk it only once
+    private static final Map<Class, List<SchemaField>> schemaFields = new ConcurrentHashMap<>();
+
+    private static class SchemaField {
+        final Field field;
+        final Class genericType;
+
+        SchemaField(Field field) {
+            this.field = field;
+            field.setAccessible(true);
+            genericType = Collection.class.isAssignableFrom(field.getType()) || Map.class.isAssignableFrom(field.getType()) ?
+                    FieldUtils.getGenericType(field) : null;
+        }
+    }
+
     public JsonSchemaBuilder(Object object) {
         this.object = object;
     }
 
-    private boolean isSkip(Field f) {
+    private static boolean isSkip(Field f) {
         return f.isAnnotationPresent(NoJsonSchema.class) || Modifier.isStatic(f.getModifiers())
                 || f.isAnnotationPresent(GsonTransient.class);
     }
 
-    private void build(Object o, Stack<String> paths) throws IllegalAccessException {
-        List<Field> fields = FieldUtils.getAllFields(o.getClass());
-
-        for (Field f : fields) {
-            try {
-                if (isSkip(f)) {
-                    continue;
+    private static List<SchemaField> getSchemaFields(Class clz) {
+        return schemaFields.computeIfAbsent(clz, k -> {
+            List<SchemaField> ret = new ArrayList<>();
+            for (Field f : FieldUtils.getAllFields(k)) {
+                if (!isSkip(f)) {
+                    ret.add(new SchemaField(f));
                 }
+            }
+            return ret;
+        });
+    }
 
-                f.setAccessible(true);
+    private void build(Object o, Stack<String> paths) throws IllegalAccessException {
+        for (SchemaField sf : getSchemaFields(o.getClass())) {
+            Field f = sf.field;
+            try {
                 Object value = f.get(o);
                 if (value == null) {
                     // null value
@@ -56,7 +78,7 @@ public class JsonSchemaBuilder {
                     if (value instanceof Collection) {
                         Collection c = (Collection) value;
 
-                        Class gtype = FieldUtils.getGenericType(f);
+                        Class gtype = sf.genericType;
 
                         if (gtype != null && !gtype.getName().startsWith("java.")) {
                             int i = 0;
@@ -68,7 +90,7 @@ public class JsonSchemaBuilder {
                         }
 
                     } else if (value instanceof Map) {
-                        Class gtype = FieldUtils.getGenericType(f);
+                        Class gtype = sf.genericType;
 
                         if (gtype != null && !gtype.getName().startsWith("java.")) {
                             for (Object me : ((Map) value).entrySet()) {
@@ -0,0 +1,23 @@
+package org.zstack.header.tag;
+
+import org.zstack.header.message.NeedJsonSchema;
+
+import java.util.List;
+
+public class SystemTagCanonicalEvents {
+    public static final String SYSTEM_TAGS_CHANGED_PATH = "/systemTag/changed";
+
+    @NeedJsonSchema
+    public static class SystemTagsChangedData {
+        // null if system tags of any resource may be changed
+        private List<String> resourceUuids;
+
+        public List<String> getResourceUuids() {
+            return resourceUuids;
+        }
+
+        public void setResourceUuids(List<String> resourceUuids) {
+            this.resourceUuids = resourceUuids;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.zstack.header.vm;
+
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.message.APIEvent;
+import org.zstack.header.rest.RestResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * the event fails only if no VM is created, otherwise results tell VMs created and errors of the others
+ */
+@RestResponse(allTo = "results")
+public class APIBatchCreateVmInstanceEvent extends APIEvent {
+    private List<BatchCreateVmResult> results = new ArrayList<>();
+
+    public APIBatchCreateVmInstanceEvent() {
+        super(null);
+    }
+
+    public APIBatchCreateVmInstanceEvent(String apiId) {
+        super(apiId);
+    }
+
+    public List<BatchCreateVmResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<BatchCreateVmResult> results) {
+        this.results = results;
+    }
+
+    public static APIBatchCreateVmInstanceEvent __example__() {
+        APIBatchCreateVmInstanceEvent evt = new APIBatchCreateVmInstanceEvent();
+        VmInstanceInventory vm = APICreateVmInstanceEvent.__example__().getInventory();
+        evt.getResults().add(new BatchCreateVmResult(vm, null));
+        evt.getResults().add(new BatchCreateVmResult(null, new ErrorCode("HOST_ALLOCATION.1001", "no available host")));
+        return evt;
+    }
+}
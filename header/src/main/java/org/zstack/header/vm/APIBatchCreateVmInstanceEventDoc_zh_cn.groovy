@@ -0,0 +1,26 @@
+package org.zstack.header.vm
+
+import org.zstack.header.errorcode.ErrorCode
+import org.zstack.header.vm.BatchCreateVmResult
+
+doc {
+
+    title "批量创建云主机结果"
+
+    ref {
+        name "error"
+        path "org.zstack.header.vm.APIBatchCreateVmInstanceEvent.error"
+        desc "错误码，若不为null，则表示操作失败, 操作成功时该字段为null", false
+        type "ErrorCode"
+        since "3.9.0"
+        clz ErrorCode.class
+    }
+    ref {
+        name "results"
+        path "org.zstack.header.vm.APIBatchCreateVmInstanceEvent.results"
+        desc "创建结果，对应每一个云主机"
+        type "List"
+        since "3.9.0"
+        clz BatchCreateVmResult.class
+    }
+}
@@ -0,0 +1,94 @@
+package org.zstack.header.vm;
+
+import org.springframework.http.HttpMethod;
+import org.zstack.header.allocator.HostPlacementStrategy;
+import org.zstack.header.identity.Action;
+import org.zstack.header.message.APIEvent;
+import org.zstack.header.message.APIMessage;
+import org.zstack.header.message.APIParam;
+import org.zstack.header.message.DefaultTimeout;
+import org.zstack.header.other.APIAuditor;
+import org.zstack.header.other.APIMultiAuditor;
+import org.zstack.header.rest.RestRequest;
+import org.zstack.header.tag.TagResourceType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+
+/**
+ * creates count VMs of the same settings, hosts of the VMs are planned together
+ * by the placement strategy before the VMs are instantiated in parallel
+ *
+ * @summary 批量创建云主机
+ */
+@TagResourceType(VmInstanceVO.class)
+@Action(category = VmInstanceConstant.ACTION_CATEGORY)
+@RestRequest(
+        path = "/vm-instances/batch",
+        method = HttpMethod.POST,
+        responseClass = APIBatchCreateVmInstanceEvent.class,
+        parameterName = "params"
+)
+@DefaultTimeout(timeunit = TimeUnit.HOURS, value = 12)
+public class APIBatchCreateVmInstanceMsg extends APICreateVmInstanceMsg implements APIMultiAuditor {
+    @APIParam(numberRange = {1, 100})
+    private int count;
+
+    @APIParam(required = false, validValues = {"Pack", "Spread"})
+    private String placementStrategy = HostPlacementStrategy.Pack.toString();
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public String getPlacementStrategy() {
+        return placementStrategy;
+    }
+
+    public void setPlacementStrategy(String placementStrategy) {
+        this.placementStrategy = placementStrategy;
+    }
+
+    public static APIBatchCreateVmInstanceMsg __example__() {
+        APIBatchCreateVmInstanceMsg msg = new APIBatchCreateVmInstanceMsg();
+        msg.setName("vm1");
+        msg.setDescription("this is a vm");
+        msg.setClusterUuid(uuid());
+        msg.setDataDiskOfferingUuids(asList(uuid(), uuid()));
+        msg.setImageUuid(uuid());
+        msg.setInstanceOfferingUuid(uuid());
+        msg.setL3NetworkUuids(asList(uuid()));
+        msg.setCount(3);
+        msg.setPlacementStrategy(HostPlacementStrategy.Spread.toString());
+        return msg;
+    }
+
+    /**
+     * the batch is audited per VM by {@link #multiAudit(APIMessage, APIEvent)}, this only
+     * keeps the single-result audit inherited from APICreateVmInstanceMsg from failing on the batch event
+     */
+    @Override
+    public Result audit(APIMessage msg, APIEvent rsp) {
+        return multiAudit(msg, rsp).stream().findFirst().orElse(new Result("", VmInstanceVO.class));
+    }
+
+    @Override
+    public List<APIAuditor.Result> multiAudit(APIMessage msg, APIEvent rsp) {
+        if (!rsp.isSuccess()) {
+            return Collections.singletonList(new APIAuditor.Result("", VmInstanceVO.class));
+        }
+
+        return ((APIBatchCreateVmInstanceEvent) rsp).getResults().stream()
+                .filter(BatchCreateVmResult::isSuccess)
+                .map(r -> new APIAuditor.Result(r.getInventory().getUuid(), VmInstanceVO.class))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,46 @@
+package org.zstack.header.vm;
+
+import org.zstack.header.errorcode.ErrorCode;
+
+/**
+ * result of creating one VM in a batch
+ */
+public class BatchCreateVmResult {
+    private VmInstanceInventory inventory;
+    private boolean success = true;
+    private ErrorCode error;
+
+    public BatchCreateVmResult() {
+    }
+
+    public BatchCreateVmResult(VmInstanceInventory inventory, ErrorCode error) {
+        this.inventory = inventory;
+        this.success = error == null;
+        this.error = error;
+    }
+
+    public VmInstanceInventory getInventory() {
+        return inventory;
+    }
+
+    public void setInventory(VmInstanceInventory inventory) {
+        this.inventory = inventory;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public ErrorCode getError() {
+        return error;
+    }
+
+    public void setError(ErrorCode error) {
+        this.success = false;
+        this.error = error;
+    }
+}
@@ -0,0 +1,32 @@
+package org.zstack.header.vm
+
+import org.zstack.header.errorcode.ErrorCode
+import org.zstack.header.vm.VmInstanceInventory
+
+doc {
+
+	title "批量创建中单个云主机的结果"
+
+	ref {
+		name "inventory"
+		path "org.zstack.header.vm.BatchCreateVmResult.inventory"
+		desc "创建的云主机，失败则为NULL"
+		type "VmInstanceInventory"
+		since "3.9.0"
+		clz VmInstanceInventory.class
+	}
+	field {
+		name "success"
+		desc ""
+		type "boolean"
+		since "3.9.0"
+	}
+	ref {
+		name "error"
+		path "org.zstack.header.vm.BatchCreateVmResult.error"
+		desc "云主机的创建结果，成功则为NULL"
+		type "ErrorCode"
+		since "3.9.0"
+		clz ErrorCode.class
+	}
+}
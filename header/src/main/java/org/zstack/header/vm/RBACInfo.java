@@ -36,7 +36,7 @@ public class RBACInfo implements RBACDescription {
                 .uuid("d6b79564f9b641a4b8bb85ea249151c2")
                 .name("vm-operation-without-create-permission")
                 .permissionsByName("vm")
-                .excludeActions(APICreateVmInstanceMsg.class)
+                .excludeActions(APICreateVmInstanceMsg.class, APIBatchCreateVmInstanceMsg.class)
                 .build();
     }
 
@@ -2,8 +2,17 @@ package org.zstack.header.zql;
 
 import org.zstack.header.identity.SessionInventory;
 
+import java.util.function.Function;
+
 public interface ZQLExtensionContext {
     String getQueryTargetInventoryName();
 
     SessionInventory getAPISession();
+
+    /**
+     * binds a value of the API session as a parameter of the generated JPQL, returns the
+     * parameter name referred as :name. Compiled queries are shared by sessions, the value
+     * is computed from the session running the query rather than embedded in the JPQL.
+     */
+    String bindSessionParameter(Function<SessionInventory, Object> value);
 }
@@ -0,0 +1,14 @@
+package org.zstack.header.zql;
+
+import org.zstack.header.identity.SessionInventory;
+
+/**
+ * compiled ZQL plans are cached by the shape of the ZQL text, whether the API session has
+ * the admin permission and the customized ZQL context. Extensions changing the generated SQL
+ * according to anything else return that state here, so plans compiled under different state
+ * are not shared; return null if nothing to add. Values of the session used in the SQL should
+ * be bound by ZQLExtensionContext.bindSessionParameter() rather than returned here.
+ */
+public interface ZQLPlanCacheKeyExtensionPoint {
+    String zqlPlanCacheKey(SessionInventory session);
+}
@@ -30,6 +30,7 @@ import org.zstack.header.identity.role.RoleVO;
 import org.zstack.header.identity.role.RoleVO_;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.Message;
+import org.zstack.identity.rbac.RBACPolicyCache;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.ExceptionDSL;
@@ -350,6 +351,7 @@ public class AccountBase extends AbstractAccount {
         q.setParameter("puuids", msg.getPolicyUuids());
         q.setParameter("userUuid", msg.getUserUuid());
         q.executeUpdate();
+        RBACPolicyCache.policiesChanged(self.getUuid());
 
         APIDetachPoliciesFromUserEvent evt = new APIDetachPoliciesFromUserEvent(msg.getId());
         bus.publish(evt);
@@ -372,6 +374,7 @@ public class AccountBase extends AbstractAccount {
                 // the policy is already attached
             }
         }
+        RBACPolicyCache.policiesChanged(self.getUuid());
 
         APIAttachPoliciesToUserEvent evt = new APIAttachPoliciesToUserEvent(msg.getId());
         bus.publish(evt);
@@ -596,6 +599,7 @@ public class AccountBase extends AbstractAccount {
         UserGroupUserRefVO ref = q.find();
         if (ref != null) {
             dbf.remove(ref);
+            RBACPolicyCache.policiesChanged(self.getUuid());
         }
 
         bus.publish(new APIRemoveUserFromGroupEvent(msg.getId()));
@@ -608,6 +612,7 @@ public class AccountBase extends AbstractAccount {
         UserGroupPolicyRefVO ref = q.find();
         if (ref != null) {
             dbf.remove(ref);
+            RBACPolicyCache.policiesChanged(self.getUuid());
         }
 
         bus.publish(new APIDetachPolicyFromUserGroupEvent(msg.getId()));
@@ -620,6 +625,7 @@ public class AccountBase extends AbstractAccount {
         UserPolicyRefVO ref = q.find();
         if (ref != null) {
             dbf.remove(ref);
+            RBACPolicyCache.policiesChanged(self.getUuid());
         }
 
         bus.publish(new APIDetachPolicyFromUserEvent(msg.getId()));
@@ -627,6 +633,7 @@ public class AccountBase extends AbstractAccount {
 
     private void handle(APIDeletePolicyMsg msg) {
         dbf.removeByPrimaryKey(msg.getUuid(), PolicyVO.class);
+        RBACPolicyCache.policiesChanged(self.getUuid());
         APIDeletePolicyEvent evt = new APIDeletePolicyEvent(msg.getId());
         bus.publish(evt);
     }
@@ -649,6 +656,7 @@ public class AccountBase extends AbstractAccount {
 
     private void handle(APIDeleteUserGroupMsg msg) {
         dbf.removeByPrimaryKey(msg.getUuid(), UserGroupVO.class);
+        RBACPolicyCache.policiesChanged(self.getUuid());
         APIDeleteUserGroupEvent evt = new APIDeleteUserGroupEvent(msg.getId());
         bus.publish(evt);
     }
@@ -658,6 +666,7 @@ public class AccountBase extends AbstractAccount {
         ugvo.setGroupUuid(msg.getGroupUuid());
         ugvo.setUserUuid(msg.getUserUuid());
         dbf.persist(ugvo);
+        RBACPolicyCache.policiesChanged(self.getUuid());
         APIAddUserToGroupEvent evt = new APIAddUserToGroupEvent(msg.getId());
         bus.publish(evt);
     }
@@ -676,6 +685,7 @@ public class AccountBase extends AbstractAccount {
 
             // the policy is already attached
         }
+        RBACPolicyCache.policiesChanged(self.getUuid());
 
         APIAttachPolicyToUserGroupEvent evt = new APIAttachPolicyToUserGroupEvent(msg.getId());
         bus.publish(evt);
@@ -721,6 +731,7 @@ public class AccountBase extends AbstractAccount {
 
             // the policy is already attached
         }
+        RBACPolicyCache.policiesChanged(self.getUuid());
 
         APIAttachPolicyToUserEvent evt = new APIAttachPolicyToUserEvent(msg.getId());
         bus.publish(evt);
@@ -5,6 +5,7 @@ import org.zstack.header.identity.Quota;
 import org.zstack.header.identity.SessionInventory;
 import org.zstack.header.message.APIMessage;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +16,11 @@ public interface AccountManager {
 
     List<String> getResourceUuidsCanAccessByAccount(String accountUuid, Class resourceType);
 
+    /**
+     * @return uuids among the resourceUuids that the account can access, null if the account is an admin
+     */
+    List<String> getResourceUuidsCanAccessByAccount(String accountUuid, Class resourceType, Collection<String> resourceUuids);
+
     Map<Class, List<Quota>> getMessageQuotaMap();
 
     List<Quota> getQuotas();
@@ -1001,6 +1001,12 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
     @Override
     @Transactional(readOnly = true)
     public List<String> getResourceUuidsCanAccessByAccount(String accountUuid, Class resourceType) {
+        return getResourceUuidsCanAccessByAccount(accountUuid, resourceType, null);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> getResourceUuidsCanAccessByAccount(String accountUuid, Class resourceType, Collection<String> resourceUuids) {
         String sql = "select a.type from AccountVO a where a.uuid = :auuid";
         TypedQuery<AccountType> q = dbf.getEntityManager().createQuery(sql, AccountType.class);
         q.setParameter("auuid", accountUuid);
@@ -1014,19 +1020,30 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
             return null;
         }
 
+        if (resourceUuids != null && resourceUuids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String uuidCondition = resourceUuids == null ? "" : " and r.resourceUuid in (:ruuids)";
         sql = "select r.resourceUuid from AccountResourceRefVO r where r.accountUuid = :auuid" +
-                " and r.resourceType = :rtype";
+                " and r.resourceType = :rtype" + uuidCondition;
         TypedQuery<String> rq = dbf.getEntityManager().createQuery(sql, String.class);
         rq.setParameter("auuid", accountUuid);
         rq.setParameter("rtype", resourceType.getSimpleName());
+        if (resourceUuids != null) {
+            rq.setParameter("ruuids", resourceUuids);
+        }
         List<String> ownResourceUuids = rq.getResultList();
 
         sql = "select r.resourceUuid from SharedResourceVO r where" +
-                " (r.toPublic = :toPublic or r.receiverAccountUuid = :auuid) and r.resourceType = :rtype";
+                " (r.toPublic = :toPublic or r.receiverAccountUuid = :auuid) and r.resourceType = :rtype" + uuidCondition;
         TypedQuery<String> srq = dbf.getEntityManager().createQuery(sql, String.class);
         srq.setParameter("toPublic", true);
         srq.setParameter("auuid", accountUuid);
         srq.setParameter("rtype", resourceType.getSimpleName());
+        if (resourceUuids != null) {
+            srq.setParameter("ruuids", resourceUuids);
+        }
         List<String> shared = srq.getResultList();
         shared.addAll(ownResourceUuids);
 
@@ -7,6 +7,11 @@ import org.zstack.core.GlobalPropertyDefinition;
 public class IdentityGlobalProperty {
     @GlobalProperty(name = "identity.authorizationBackend.session.cache.size", defaultValue = "500")
     public static int AUTHORIZATION_SESSION_CACHE_SIZE;
+    // compiled policies of users cached, 0 disables the cache
+    @GlobalProperty(name = "identity.rbac.policyCache.size", defaultValue = "2000")
+    public static int RBAC_POLICY_CACHE_SIZE;
+    @GlobalProperty(name = "identity.rbac.policyCache.expireSeconds", defaultValue = "600")
+    public static int RBAC_POLICY_CACHE_EXPIRE_SECONDS;
     @GlobalProperty(name = "identity.init.type", defaultValue = "IAM,IAM2")
     public static String IDENTITY_INIT_TYPE;
 }
@@ -9,14 +9,14 @@ import org.zstack.header.zql.ASTNode;
 import org.zstack.header.zql.MarshalZQLASTTreeExtensionPoint;
 import org.zstack.header.zql.RestrictByExprExtensionPoint;
 import org.zstack.header.zql.ZQLExtensionContext;
+import org.zstack.header.zql.ZQLPlanCacheKeyExtensionPoint;
 import org.zstack.zql.ZQLContext;
 import org.zstack.zql.ast.ZQLMetadata;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
-public class IdentityZQLExtension implements MarshalZQLASTTreeExtensionPoint, RestrictByExprExtensionPoint {
+public class IdentityZQLExtension implements MarshalZQLASTTreeExtensionPoint, RestrictByExprExtensionPoint, ZQLPlanCacheKeyExtensionPoint {
     private static final String ENTITY_NAME = "__ACCOUNT_FILTER__";
     private static final String ENTITY_FIELD = "__ACCOUNT_FILTER_FIELD__";
 
@@ -43,6 +43,23 @@ public class IdentityZQLExtension implements MarshalZQLASTTreeExtensionPoint, Re
         return null;
     }
 
+    @Override
+    public String zqlPlanCacheKey(SessionInventory session) {
+        if (session == null) {
+            return null;
+        }
+
+        // the accounts are bound as a parameter, only whether they are restricted changes the SQL
+        return getRestrictAccountUuids(session) == null ? null : "restricted";
+    }
+
+    private List<String> getFilterAccountUuids(SessionInventory session) {
+        List<String> restrictAccountUuids = getRestrictAccountUuids(session);
+        List<String> ret = restrictAccountUuids == null ? new ArrayList<>() : new ArrayList<>(restrictAccountUuids);
+        ret.add(session.getAccountUuid());
+        return ret;
+    }
+
     @Override
     public String restrictByExpr(ZQLExtensionContext context, ASTNode.RestrictExpr expr) {
         if (!ENTITY_NAME.equals(expr.getEntity()) || !ENTITY_FIELD.equals(expr.getField())) {
@@ -61,12 +78,6 @@ public class IdentityZQLExtension implements MarshalZQLASTTreeExtensionPoint, Re
             throw new SkipThisRestrictExprException();
         }
 
-        if (restrictAccountUuids == null) {
-            restrictAccountUuids = new ArrayList<>();
-        }
-
-        restrictAccountUuids.add(context.getAPISession().getAccountUuid());
-
         ZQLMetadata.InventoryMetadata src = ZQLMetadata.getInventoryMetadataByName(context.getQueryTargetInventoryName());
         if (!acntMgr.isResourceHavingAccountReference(src.inventoryAnnotation.mappingVOClass())) {
             throw new SkipThisRestrictExprException();
@@ -74,14 +85,12 @@ public class IdentityZQLExtension implements MarshalZQLASTTreeExtensionPoint, Re
 
         String primaryKey = EntityMetadata.getPrimaryKeyField(src.inventoryAnnotation.mappingVOClass()).getName();
 
-        String accountStr = restrictAccountUuids.stream()
-                .map(uuid -> String.format("'%s'", uuid))
-                .collect(Collectors.joining(","));
+        String accounts = context.bindSessionParameter(this::getFilterAccountUuids);
 
         return String.format("(%s.%s IN (SELECT accountresourcerefvo.resourceUuid FROM AccountResourceRefVO accountresourcerefvo WHERE" +
-                        "  accountresourcerefvo.ownerAccountUuid in (%s) OR (accountresourcerefvo.resourceUuid" +
+                        "  accountresourcerefvo.ownerAccountUuid in (:%s) OR (accountresourcerefvo.resourceUuid" +
                         " IN (SELECT sharedresourcevo.resourceUuid FROM SharedResourceVO sharedresourcevo WHERE" +
-                        " sharedresourcevo.receiverAccountUuid in (%s) OR sharedresourcevo.toPublic = 1))))",
-                src.simpleInventoryName(), primaryKey, accountStr, accountStr);
+                        " sharedresourcevo.receiverAccountUuid in (:%s) OR sharedresourcevo.toPublic = 1))))",
+                src.simpleInventoryName(), primaryKey, accounts, accounts);
     }
 }
@@ -0,0 +1,155 @@
+package org.zstack.identity.rbac;
+
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.identity.PolicyInventory;
+import org.zstack.header.identity.PolicyStatement;
+import org.zstack.header.identity.StatementEffect;
+import org.zstack.header.identity.rbac.PolicyMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * policies of a user or an account compiled to check many APIs: statements are split by
+ * effect, and their actions and principals are parsed with patterns compiled once.
+ */
+public class CompiledPolicySet {
+    private static final PolicyMatcher matcher = new PolicyMatcher();
+
+    public static class Principal {
+        public final String type;
+        public final Predicate<String> uuid;
+
+        Principal(String principal) {
+            String[] ss = principal.split(":", 2);
+            if (ss.length != 2) {
+                throw new CloudRuntimeException(String.format("invalid principal[%s], it must be in format of type:uuidPattern", principal));
+            }
+
+            type = ss[0];
+            uuid = matcher.compile(ss[1]);
+        }
+    }
+
+    public static class Action {
+        public final String action;
+        public final Predicate<String> api;
+        // the API pattern of the action read in the old format of policy:apiName
+        public final Predicate<String> oldFormatApi;
+        // API fields not permitted to set by a deny statement, null if the API is denied at all
+        public final List<String> deniedFields;
+
+        Action(String action) {
+            this.action = action;
+            api = matcher.compile(PolicyUtils.apiNamePatternFromAction(action));
+            oldFormatApi = matcher.compile(PolicyUtils.apiNamePatternFromAction(action, true));
+
+            String[] ss = action.split(":", 2);
+            deniedFields = ss.length > 1 ? Collections.unmodifiableList(Arrays.asList(ss[1].split(","))) : null;
+        }
+    }
+
+    public static class Statement {
+        public final PolicyInventory policy;
+        public final PolicyStatement statement;
+        // empty if the statement applies to all accounts and users
+        public final List<Principal> principals = new ArrayList<>();
+        public final List<Action> actions = new ArrayList<>();
+
+        Statement(PolicyInventory policy, PolicyStatement statement) {
+            this.policy = policy;
+            this.statement = statement;
+
+            if (statement.getPrincipals() != null) {
+                statement.getPrincipals().forEach(p -> principals.add(new Principal(p)));
+            }
+
+            if (statement.getActions() != null) {
+                statement.getActions().forEach(a -> actions.add(new Action(a)));
+            }
+        }
+    }
+
+    public static class DeniedResource {
+        public final Statement statement;
+        public final Pattern type;
+        // fields of the inventory denied, null if the whole inventory is denied
+        public final List<String> fields;
+
+        DeniedResource(Statement statement, String resource) {
+            this.statement = statement;
+
+            String[] ss = resource.split(":", 2);
+            type = Pattern.compile(ss[0]);
+            fields = ss.length > 1 ? Collections.unmodifiableList(Arrays.stream(ss[1].split(",")).map(String::trim).collect(Collectors.toList())) : null;
+        }
+    }
+
+    private final String accountUuid;
+    private final List<PolicyInventory> policies;
+    private final List<Statement> denyStatements = new ArrayList<>();
+    private final List<Statement> allowStatements = new ArrayList<>();
+    private final List<DeniedResource> deniedResources = new ArrayList<>();
+    // inventory type -> denied resources matching the type
+    private final Map<String, List<DeniedResource>> deniedResourcesByType = new ConcurrentHashMap<>();
+
+    CompiledPolicySet(String accountUuid, List<PolicyInventory> policies) {
+        this.accountUuid = accountUuid;
+        this.policies = Collections.unmodifiableList(policies);
+
+        policies.forEach(p -> p.getStatements().forEach(s -> {
+            if (s.getEffect() == StatementEffect.Deny) {
+                Statement st = new Statement(p, s);
+                denyStatements.add(st);
+                if (s.getResources() != null) {
+                    s.getResources().forEach(r -> deniedResources.add(new DeniedResource(st, r)));
+                }
+            } else if (s.getEffect() == StatementEffect.Allow) {
+                allowStatements.add(new Statement(p, s));
+            }
+        }));
+    }
+
+    public String getAccountUuid() {
+        return accountUuid;
+    }
+
+    public List<PolicyInventory> getPolicies() {
+        return policies;
+    }
+
+    public List<Statement> getDenyStatements() {
+        return denyStatements;
+    }
+
+    public List<Statement> getAllowStatements() {
+        return allowStatements;
+    }
+
+    /**
+     * @return resources denied to be seen of the inventory type in API responses
+     */
+    public List<DeniedResource> getDeniedResources(String inventoryType) {
+        if (deniedResources.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return deniedResourcesByType.computeIfAbsent(inventoryType, t -> deniedResources.stream()
+                .filter(r -> r.type.matcher(t).matches()).collect(Collectors.toList()));
+    }
+
+    public boolean isDenied(String apiName) {
+        return denyStatements.stream().anyMatch(s -> s.actions.stream().anyMatch(a -> a.api.test(apiName)));
+    }
+
+    public boolean isAllowed(String apiName) {
+        return allowStatements.stream().anyMatch(s -> s.actions.stream().anyMatch(a -> a.api.test(apiName)));
+    }
+}
@@ -19,6 +19,7 @@ import org.zstack.utils.logging.CLogger;
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
 
 import static org.zstack.core.Platform.getUuid;
 import static org.zstack.core.Platform.operr;
@@ -50,8 +51,8 @@ public class RBACAPIRequestChecker implements APIRequestChecker {
         return policyMatcher.match(ap, msgName);
     }
 
-    protected List<PolicyInventory> getPoliciesForAPI() {
-        return RBACManager.getPoliciesByAPI(rbacEntity.getApiMessage());
+    protected CompiledPolicySet getPoliciesForAPI() {
+        return RBACPolicyCache.getPolicies(rbacEntity.getApiMessage().getSession());
     }
 
     /**
@@ -61,13 +62,11 @@ public class RBACAPIRequestChecker implements APIRequestChecker {
      * 5. then deny by default
      */
     protected void check() {
-        List<PolicyInventory> polices = getPoliciesForAPI();
-        Map<PolicyInventory, List<PolicyStatement>> denyStatements = RBACManager.collectDenyStatements(polices);
-        Map<PolicyInventory, List<PolicyStatement>> allowStatements = RBACManager.collectAllowedStatements(polices);
+        CompiledPolicySet polices = getPoliciesForAPI();
 
-        evalDenyStatements(denyStatements);
+        evalDenyStatements(polices.getDenyStatements());
 
-        if (evalAllowStatements(allowStatements)) {
+        if (evalAllowStatements(polices.getAllowStatements())) {
             // allowed
             return;
         }
@@ -84,28 +83,26 @@ public class RBACAPIRequestChecker implements APIRequestChecker {
         return CloudBusGson.toLogSafeJson(rbacEntity.getApiMessage());
     }
 
-    protected boolean evalAllowStatements(Map<PolicyInventory, List<PolicyStatement>> policies) {
+    protected boolean evalAllowStatements(List<CompiledPolicySet.Statement> statements) {
         Set<String> apiNeedToCheck = new HashSet<>();
         apiNeedToCheck.add(rbacEntity.getApiName());
         apiNeedToCheck.addAll(rbacEntity.getAdditionalApisToCheck());
 
-        for (Map.Entry<PolicyInventory, List<PolicyStatement>> e : policies.entrySet()) {
-            PolicyInventory policy = e.getKey();
-            for (PolicyStatement statement : e.getValue()) {
-                if (!isPrincipalMatched(statement.getPrincipals())) {
-                    continue;
-                }
+        for (CompiledPolicySet.Statement statement : statements) {
+            PolicyInventory policy = statement.policy;
+            if (!isPrincipalMatched(statement.principals)) {
+                continue;
+            }
 
-                for (String as : statement.getActions()) {
-                    apiNeedToCheck.removeIf(api -> evalAllowStatement(as, api));
+            for (CompiledPolicySet.Action as : statement.actions) {
+                apiNeedToCheck.removeIf(api -> evalAllowStatement(as, api));
 
-                    if (apiNeedToCheck.isEmpty()) {
-                        if (logger.isTraceEnabled()) {
-                            logger.trace(String.format("[RBAC] policy[name:%s, uuid:%s]'s statement[%s] allows the API:\n%s", policy.getName(),
-                                    policy.getUuid(), as, jsonMessage()));
-                        }
-                        return true;
+                if (apiNeedToCheck.isEmpty()) {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace(String.format("[RBAC] policy[name:%s, uuid:%s]'s statement[%s] allows the API:\n%s", policy.getName(),
+                                policy.getUuid(), as.action, jsonMessage()));
                     }
+                    return true;
                 }
             }
         }
@@ -113,19 +110,17 @@ public class RBACAPIRequestChecker implements APIRequestChecker {
         return false;
     }
 
-    protected boolean evalAllowStatement(String as, String targetApiName) {
-        String ap = PolicyUtils.apiNamePatternFromAction(as, true);
-        return RBAC.checkAPIPermission(rbacEntity.getApiMessage(), policyMatcher.match(ap, targetApiName));
+    protected boolean evalAllowStatement(CompiledPolicySet.Action as, String targetApiName) {
+        return RBAC.checkAPIPermission(rbacEntity.getApiMessage(), as.oldFormatApi.test(targetApiName));
     }
 
-    protected boolean isPrincipalMatched(List<String> principals) {
+    protected boolean isPrincipalMatched(List<CompiledPolicySet.Principal> principals) {
         // if not principals specified, means the statement applies for all accounts/users
         // if principals specified, check if they matches current account/user
-        if (principals != null && !principals.isEmpty()) {
-            for (String s : principals) {
-                String[] ss = s.split(":", 2);
-                String principal = ss[0];
-                String uuidRegex = ss[1];
+        if (!principals.isEmpty()) {
+            for (CompiledPolicySet.Principal s : principals) {
+                String principal = s.type;
+                Predicate<String> uuidRegex = s.uuid;
 
                 if (rbacEntity.getApiMessage().getSession().isAccountSession() && AccountConstant.PRINCIPAL_ACCOUNT.equals(principal)) {
                     if (checkAccountPrincipal(uuidRegex)) {
@@ -150,27 +145,24 @@ public class RBACAPIRequestChecker implements APIRequestChecker {
         }
     }
 
-    private boolean additionalApiMatch(String apiName) {
-        return rbacEntity.getAdditionalApisToCheck().stream().anyMatch(api -> policyMatcher.match(apiName, api));
+    private boolean additionalApiMatch(Predicate<String> apiName) {
+        return rbacEntity.getAdditionalApisToCheck().stream().anyMatch(apiName);
     }
 
-    protected void evalDenyStatements(Map<PolicyInventory, List<PolicyStatement>> denyPolices) {
+    protected void evalDenyStatements(List<CompiledPolicySet.Statement> denyStatements) {
         // action string format is:
         // api-full-name:optional-api-field-list-split-by-comma
-        denyPolices.forEach((p, sts)-> sts.forEach(st-> {
-            if (!isPrincipalMatched(st.getPrincipals())) {
+        denyStatements.forEach(st -> {
+            PolicyInventory p = st.policy;
+            if (!isPrincipalMatched(st.principals)) {
                 return;
             }
 
-            st.getActions().forEach(statement-> {
-                String[] ss = statement.split(":",2);
-                String apiName = ss[0];
-                String apiFields = null;
-                if (ss.length > 1) {
-                    apiFields = ss[1];
-                }
+            st.actions.forEach(action -> {
+                String statement = action.action;
+                List<String> apiFields = action.deniedFields;
 
-                if (!policyMatcher.match(apiName, rbacEntity.getApiName()) && !additionalApiMatch(apiName)) {
+                if (!action.api.test(rbacEntity.getApiName()) && !additionalApiMatch(action.api)) {
                     // the statement not matching this API and not additional api need to check
                     return;
                 }
@@ -189,7 +181,7 @@ public class RBACAPIRequestChecker implements APIRequestChecker {
 
                 Entity entity = Entity.getEntity(rbacEntity.getApiMessage().getClass());
 
-                for (String fname : apiFields.split(",")) {
+                for (String fname : apiFields) {
                     Field field = entity.getFields().get(fname);
                     try {
                         if (field != null && field.get(rbacEntity.getApiMessage()) != null) {
@@ -204,47 +196,27 @@ public class RBACAPIRequestChecker implements APIRequestChecker {
                     }
                 }
             });
-        }));
+        });
     }
 
-    protected boolean checkUserPrincipal(String uuidRegex) {
-        return policyMatcher.match(uuidRegex, rbacEntity.getApiMessage().getSession().getUserUuid());
+    protected boolean checkUserPrincipal(Predicate<String> uuidRegex) {
+        return uuidRegex.test(rbacEntity.getApiMessage().getSession().getUserUuid());
     }
 
-    protected boolean checkAccountPrincipal(String uuidRegex) {
-        return policyMatcher.match(uuidRegex, rbacEntity.getApiMessage().getSession().getAccountUuid());
+    protected boolean checkAccountPrincipal(Predicate<String> uuidRegex) {
+        return uuidRegex.test(rbacEntity.getApiMessage().getSession().getAccountUuid());
     }
 
     public Map<String, Boolean> evalAPIPermission(List<Class> classes, SessionInventory session) {
-        List<PolicyInventory> policies = RBACManager.getPoliciesBySession(session);
-        Map<PolicyInventory, List<PolicyStatement>> denyStatements = RBACManager.collectDenyStatements(policies);
-        Map<PolicyInventory, List<PolicyStatement>> allowStatements = RBACManager.collectAllowedStatements(policies);
+        CompiledPolicySet policies = RBACPolicyCache.getPolicies(session);
 
         Map<String, Boolean> ret = new HashMap<>();
         classes.forEach(clz -> {
-            for (List<PolicyStatement> dss : denyStatements.values()) {
-                for (PolicyStatement ds : dss) {
-                    for (String as : ds.getActions()) {
-                        if (evalStatement(as, clz.getName())) {
-                            ret.put(clz.getName(), false);
-                            return;
-                        }
-                    }
-                }
-            }
-
-            for (List<PolicyStatement> ass : allowStatements.values()) {
-                for (PolicyStatement as : ass) {
-                    for (String a : as.getActions()) {
-                        if (evalStatement(a, clz.getName())) {
-                            ret.put(clz.getName(), true);
-                            return;
-                        }
-                    }
-                }
+            if (policies.isDenied(clz.getName())) {
+                ret.put(clz.getName(), false);
+            } else {
+                ret.put(clz.getName(), policies.isAllowed(clz.getName()));
             }
-
-            ret.put(clz.getName(), false);
         });
 
         return ret;
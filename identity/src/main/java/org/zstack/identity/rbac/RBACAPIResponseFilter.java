@@ -1,7 +1,5 @@
 package org.zstack.identity.rbac;
 
-import org.zstack.header.identity.PolicyInventory;
-import org.zstack.header.identity.PolicyStatement;
 import org.zstack.header.message.APIEvent;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.APIReply;
@@ -11,8 +9,7 @@ import org.zstack.utils.BeanUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,67 +38,68 @@ public class RBACAPIResponseFilter implements APIResponseFilter {
         return response;
     }
 
+    private static final Pattern LIST_ELEMENT_PATH = Pattern.compile("(.*)\\[(\\d+)\\]$");
+
     private void filter() {
         Map<String, String> schema = (Map<String, String>) response.getHeaders().get("schema");
         if (schema == null || schema.isEmpty()) {
             return;
         }
 
-        Map<PolicyInventory, List<PolicyStatement>> denyPolices = RBACManager.collectDenyStatements(RBACManager.getPoliciesByAPI(request));
-        denyPolices.forEach((p, sts)-> sts.forEach(s -> s.getResources().forEach(statement -> {
-            schema.forEach((path, type)-> {
-                String[] ss = statement.split(":", 2);
-                String resourceName = ss[0];
-                String fieldList = null;
-                if (ss.length > 1) {
-                    fieldList = ss[1];
-                }
-
-                Pattern pattern = Pattern.compile(resourceName);
-                if (!pattern.matcher(type).matches()) {
-                    // the statement not matching this inventory
-                    return;
-                }
+        long start = System.nanoTime();
 
-                if (fieldList == null) {
+        CompiledPolicySet policies = RBACPolicyCache.getPolicies(request.getSession());
+        // paths of inventories denied at all, removed after fields are masked
+        List<String> deniedInventories = new ArrayList<>();
+        schema.forEach((path, type) -> {
+            for (CompiledPolicySet.DeniedResource r : policies.getDeniedResources(type)) {
+                if (r.fields == null) {
                     // the whole inventory is denied
                     if (logger.isTraceEnabled()) {
                         logger.trace(String.format("[RBAC] denied inventory[%s] at %s", type, path));
                     }
-                    denyTheInventory(path);
-                } else {
-                    if (logger.isTraceEnabled()) {
-                        logger.trace(String.format("[RBAC] denied fields[%s] of inventory[%s] at %s", fieldList, type, path));
-                    }
-                    denyFieldsOfTheInventory(path, fieldList);
+                    deniedInventories.add(path);
+                    return;
                 }
-            });
-        })));
+
+                if (logger.isTraceEnabled()) {
+                    logger.trace(String.format("[RBAC] denied fields%s of inventory[%s] at %s", r.fields, type, path));
+                }
+                denyFieldsOfTheInventory(path, r.fields);
+            }
+        });
+
+        denyTheInventories(deniedInventories);
+
+        RBACPolicyCache.recordResponseFiltered(System.nanoTime() - start);
     }
 
-    private void denyFieldsOfTheInventory(String path, String fieldList) {
-        String[] fields = fieldList.split(",");
+    private void denyFieldsOfTheInventory(String path, List<String> fields) {
         Object bean = BeanUtils.getProperty(response, path);
         for (String field : fields) {
-            field = field.trim();
             BeanUtils.setProperty(bean, field, null);
         }
     }
 
-    private void denyTheInventory(String path) {
-        Pattern p = Pattern.compile("(.*)\\[(\\d+)\\]$");
-        Matcher m = p.matcher(path);
-
-        if (m.matches()) {
-            // this is a list
-            String listPath = m.group(1);
-            String index = m.group(2);
-
-            List cl = (List) BeanUtils.getProperty(response, listPath);
-            cl.remove(Integer.valueOf(index));
-        } else {
-            // not a list
-            BeanUtils.setProperty(response, path, null);
-        }
+    private void denyTheInventories(List<String> paths) {
+        // a path is longer than paths of inventories containing it and not shorter than paths of elements
+        // before it in the same list, denying from the longest and the last keeps paths not denied yet valid
+        paths.sort(Comparator.comparing(String::length).thenComparing(Comparator.naturalOrder()));
+        Collections.reverse(paths);
+
+        paths.forEach(path -> {
+            Matcher m = LIST_ELEMENT_PATH.matcher(path);
+            if (m.matches()) {
+                // this is a list
+                String listPath = m.group(1);
+                int index = Integer.parseInt(m.group(2));
+
+                List cl = (List) BeanUtils.getProperty(response, listPath);
+                cl.remove(index);
+            } else {
+                // not a list
+                BeanUtils.setProperty(response, path, null);
+            }
+        });
     }
 }
@@ -27,7 +27,6 @@ import org.zstack.utils.logging.CLogger;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 public class RBACManagerImpl extends AbstractService implements RBACManager, Component, IdentityResourceGenerateExtensionPoint {
@@ -105,14 +104,12 @@ public class RBACManagerImpl extends AbstractService implements RBACManager, Com
 
         List<RBAC.Permission> permissions = RBAC.permissions.stream().filter(p -> p.getTargetResources().stream().anyMatch(resource -> resource.getSimpleName().equals(msg.getResourceType()))).collect(Collectors.toList());
 
-        List<PolicyInventory> policies = RBACManager.getPoliciesByAPI(msg);
-        Map<PolicyInventory, List<PolicyStatement>> denyStatements = RBACManager.collectDenyStatements(policies);
-        Map<PolicyInventory, List<PolicyStatement>> allowStatements = RBACManager.collectAllowedStatements(policies);
+        CompiledPolicySet policies = RBACPolicyCache.getPolicies(msg.getSession());
 
         List<String> apis = new ArrayList<>();
         APIMessage.apiMessageClasses.forEach(apiClz -> {
-            boolean deny = denyStatements.values().stream().anyMatch(states -> states.stream().anyMatch(s -> s.getActions().stream().anyMatch(action -> matcher.match(PolicyUtils.apiNamePatternFromAction(action), apiClz.getName()))));
-            boolean allow = allowStatements.values().stream().anyMatch(states -> states.stream().anyMatch(s -> s.getActions().stream().anyMatch(action -> matcher.match(PolicyUtils.apiNamePatternFromAction(action), apiClz.getName()))));
+            boolean deny = policies.isDenied(apiClz.getName());
+            boolean allow = policies.isAllowed(apiClz.getName());
 
             boolean matched = permissions.stream().anyMatch(p -> p.getNormalAPIs().stream().anyMatch(api -> matcher.match(api, apiClz.getName())));
 
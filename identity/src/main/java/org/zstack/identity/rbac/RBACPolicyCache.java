@@ -0,0 +1,206 @@
+package org.zstack.identity.rbac;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.header.Component;
+import org.zstack.header.identity.AccountConstant;
+import org.zstack.header.identity.IdentityCanonicalEvents;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.identity.IdentityGlobalProperty;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.management.MXBean;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * caches compiled policies of users, and of accounts which share the internal policies,
+ * so checking an API doesn't load policies from the database.
+ *
+ * A change to policies, user groups or their attachments must call policiesChanged(),
+ * which invalidates the policies of the account on all management nodes; entries also
+ * expire in case of changes made behind the APIs.
+ */
+@MXBean
+public class RBACPolicyCache implements Component, RBACPolicyCacheMXBean {
+    private static final CLogger logger = Utils.getLogger(RBACPolicyCache.class);
+
+    // accounts and the admin don't have user policies, they share one set
+    private static final String INTERNAL_POLICIES_KEY = "internal";
+
+    @Autowired
+    private EventFacade evtf;
+    @Autowired
+    private JmxFacade jmxf;
+
+    private static volatile Cache<String, CompiledPolicySet> cache = newCache();
+    // increased by every invalidation, a set loaded across an invalidation is not cached
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final LongAdder filteredResponseCount = new LongAdder();
+    private static final LongAdder responseFilterTime = new LongAdder();
+
+    private static Cache<String, CompiledPolicySet> newCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(IdentityGlobalProperty.RBAC_POLICY_CACHE_SIZE)
+                .expireAfterWrite(IdentityGlobalProperty.RBAC_POLICY_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    private static boolean isUserSession(SessionInventory session) {
+        return !session.getAccountUuid().equals(AccountConstant.INITIAL_SYSTEM_ADMIN_UUID) && !session.isAccountSession();
+    }
+
+    public static CompiledPolicySet getPolicies(SessionInventory session) {
+        if (IdentityGlobalProperty.RBAC_POLICY_CACHE_SIZE <= 0) {
+            return new CompiledPolicySet(session.getAccountUuid(), RBACManager.getPoliciesBySession(session));
+        }
+
+        String key = isUserSession(session) ? session.getUserUuid() : INTERNAL_POLICIES_KEY;
+        CompiledPolicySet ret = cache.getIfPresent(key);
+        if (ret != null) {
+            return ret;
+        }
+
+        long gen = generation.get();
+        ret = new CompiledPolicySet(isUserSession(session) ? session.getAccountUuid() : null, RBACManager.getPoliciesBySession(session));
+        if (gen == generation.get()) {
+            cache.put(key, ret);
+        }
+
+        return ret;
+    }
+
+    static void recordResponseFiltered(long nanos) {
+        filteredResponseCount.increment();
+        responseFilterTime.add(nanos);
+    }
+
+    private static void invalidate(String accountUuid) {
+        generation.incrementAndGet();
+
+        if (accountUuid == null) {
+            cache.invalidateAll();
+        } else {
+            cache.asMap().values().removeIf(s -> accountUuid.equals(s.getAccountUuid()));
+        }
+    }
+
+    /**
+     * @param accountUuid the account whose policies, user groups or their attachments are
+     *                    changed, null for changes of all accounts
+     */
+    public static void policiesChanged(String accountUuid) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            notifyPoliciesChanged(accountUuid);
+            return;
+        }
+
+        // policies loaded before the change is committed would be cached otherwise
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                notifyPoliciesChanged(accountUuid);
+            }
+        });
+    }
+
+    private static void notifyPoliciesChanged(String accountUuid) {
+        invalidate(accountUuid);
+
+        IdentityCanonicalEvents.PoliciesChangedData d = new IdentityCanonicalEvents.PoliciesChangedData();
+        d.setAccountUuid(accountUuid);
+        Platform.getComponentLoader().getComponent(EventFacade.class).fire(IdentityCanonicalEvents.POLICIES_CHANGED_PATH, d);
+    }
+
+    private void setupCanonicalEvents() {
+        evtf.on(IdentityCanonicalEvents.POLICIES_CHANGED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                if (evtf.isFromThisManagementNode(tokens)) {
+                    // invalidated when fired
+                    return;
+                }
+
+                IdentityCanonicalEvents.PoliciesChangedData d = (IdentityCanonicalEvents.PoliciesChangedData) data;
+                invalidate(d.getAccountUuid());
+                logger.debug(String.format("invalidated cached policies of the account[uuid:%s] changed on another management node", d.getAccountUuid()));
+            }
+        });
+
+        evtf.on(IdentityCanonicalEvents.ACCOUNT_DELETED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                invalidate(((IdentityCanonicalEvents.AccountDeletedData) data).getAccountUuid());
+            }
+        });
+
+        evtf.on(IdentityCanonicalEvents.USER_DELETED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                generation.incrementAndGet();
+                cache.invalidate(((IdentityCanonicalEvents.UserDeletedData) data).getUserUuid());
+            }
+        });
+    }
+
+    @Override
+    public boolean start() {
+        cache = newCache();
+        setupCanonicalEvents();
+        jmxf.registerBean("RBACPolicyCache", this);
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    @Override
+    public long getFilteredResponseCount() {
+        return filteredResponseCount.sum();
+    }
+
+    @Override
+    public long getAverageResponseFilterTimeInMicros() {
+        long count = filteredResponseCount.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(responseFilterTime.sum() / count);
+    }
+
+    @Override
+    public void invalidateAll() {
+        invalidate(null);
+    }
+}
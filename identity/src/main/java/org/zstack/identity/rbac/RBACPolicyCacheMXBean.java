@@ -0,0 +1,19 @@
+package org.zstack.identity.rbac;
+
+/**
+ */
+public interface RBACPolicyCacheMXBean {
+    long getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getFilteredResponseCount();
+
+    long getAverageResponseFilterTimeInMicros();
+
+    void invalidateAll();
+}
@@ -15,6 +15,7 @@ import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.network.IPv6NetworkUtils;
 import org.zstack.utils.network.NetworkUtils;
 
+import java.util.Collections;
 import java.util.List;
 
 import static org.zstack.core.Platform.err;
@@ -32,6 +33,50 @@ public abstract class AbstractIpAllocatorStrategy implements IpAllocatorStrategy
     protected ErrorFacade errf;
     @Autowired
     private PluginRegistry pluginRgty;
+    @Autowired
+    protected UsedIpv4Bitmaps usedIpBitmaps;
+
+    /**
+     * allocates an IPv4 address from the ranges in turn by their bitmaps of used addresses
+     *
+     * @return null if no range has an address available
+     */
+    protected UsedIpInventory allocateIpv4(List<IpRangeVO> ranges, IpAllocateMessage msg, boolean randomly) {
+        Long excludedIp = msg.getExcludedIp() == null ? null : NetworkUtils.ipv4StringToLong(msg.getExcludedIp());
+
+        do {
+            Long ip = null;
+            IpRangeVO tr = null;
+
+            for (IpRangeVO r : ranges) {
+                ip = usedIpBitmaps.take(r, excludedIp, randomly);
+                if (ip != null) {
+                    tr = r;
+                    break;
+                }
+
+                logger.debug(String.format("ip range[uuid:%s, name: %s] is exhausted, try next one", r.getUuid(), r.getName()));
+            }
+
+            if (ip == null) {
+                /* No available ip in ranges */
+                return null;
+            }
+
+            UsedIpInventory inv;
+            try {
+                inv = l3NwMgr.reserveIp(tr, NetworkUtils.longToIpv4String(ip), msg.isDuplicatedIpAllowed());
+            } catch (RuntimeException e) {
+                usedIpBitmaps.release(tr.getUuid(), Collections.singletonList(ip));
+                throw e;
+            }
+
+            /* the ip has been allocated by others when inv is null, it's kept used in the bitmap */
+            if (inv != null) {
+                return inv;
+            }
+        } while (true);
+    }
 
     protected UsedIpInventory allocateRequiredIp(IpAllocateMessage msg) {
         List<IpRangeVO> iprs;
@@ -36,6 +36,8 @@ import org.zstack.utils.function.ForEachFunction;
 import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.network.IPv6Constants;
+import org.zstack.utils.network.IpIntervals;
+import org.zstack.utils.network.LongSortedSet;
 import org.zstack.utils.network.NetworkUtils;
 
 import javax.persistence.Tuple;
@@ -71,6 +73,8 @@ public class L3BasicNetwork implements L3Network {
     protected PluginRegistry pluginRgty;
     @Autowired
     private ThreadFacade thdf;
+    @Autowired
+    private UsedIpv4Bitmaps usedIpBitmaps;
 
     private L3NetworkVO self;
 
@@ -177,6 +181,7 @@ public class L3BasicNetwork implements L3Network {
 
 
                 dbf.remove(iprvo);
+                usedIpBitmaps.invalidate(iprvo.getUuid());
 
                 CollectionUtils.safeForEach(exts, new ForEachFunction<IpRangeDeletionExtensionPoint>() {
                     @Override
@@ -201,6 +206,7 @@ public class L3BasicNetwork implements L3Network {
         L3NetworkInventory inv = L3NetworkInventory.valueOf(self);
         extpEmitter.beforeDelete(inv);
         deleteHook();
+        self.getIpRanges().forEach(r -> usedIpBitmaps.invalidate(r.getUuid()));
         extpEmitter.afterDelete(inv);
 
         L3NetworkDeletionReply reply = new L3NetworkDeletionReply();
@@ -209,6 +215,7 @@ public class L3BasicNetwork implements L3Network {
 
     private void handle(ReturnIpMsg msg) {
         ReturnIpReply reply = new ReturnIpReply();
+        UsedIpVO ipvo = dbf.findByUuid(msg.getUsedIpUuid(), UsedIpVO.class);
         new Retry<Void>() {
             String __name__ = String.format("return-ip-%s-for-l3-%s", msg.getUsedIpUuid(), msg.getL3NetworkUuid());
 
@@ -219,6 +226,12 @@ public class L3BasicNetwork implements L3Network {
                 return null;
             }
         }.run();
+
+        // a duplicated address is still used by others
+        if (ipvo != null && NetworkUtils.isIpv4Address(ipvo.getIp()) && !Q.New(UsedIpVO.class)
+                .eq(UsedIpVO_.ipRangeUuid, ipvo.getIpRangeUuid()).eq(UsedIpVO_.ipInLong, ipvo.getIpInLong()).isExists()) {
+            usedIpBitmaps.release(ipvo.getIpRangeUuid(), Collections.singletonList(ipvo.getIpInLong()));
+        }
         logger.debug(String.format("Successfully released used ip[%s]", msg.getUsedIpUuid()));
         bus.reply(msg, reply);
     }
@@ -433,19 +446,38 @@ public class L3BasicNetwork implements L3Network {
         bus.publish(evt);
     }
 
-    private List<FreeIpInventory> getFreeIp(final IpRangeVO ipr, int limit, String start) {
-        SimpleQuery<UsedIpVO> q = dbf.createQuery(UsedIpVO.class);
-        q.select(UsedIpVO_.ip);
-        q.add(UsedIpVO_.ipRangeUuid, Op.EQ, ipr.getUuid());
+    private List<String> getFreeIpv4(IpRangeVO ipr, int limit, String start) {
+        long cursor = Math.max(NetworkUtils.ipv4StringToLong(ipr.getStartIp()), NetworkUtils.ipv4StringToLong(start));
+        long end = NetworkUtils.ipv4StringToLong(ipr.getEndIp());
+        // used ips are loaded in batches from the start, until the page is filled by the gaps between them
+        int batch = Math.max(limit, 256);
+
+        List<Long> free = new ArrayList<>();
+        while (free.size() < limit && cursor <= end) {
+            List<Long> used = SQL.New("select distinct u.ipInLong from UsedIpVO u where u.ipRangeUuid = :uuid" +
+                    " and u.ipInLong >= :cursor and u.ipInLong <= :end order by u.ipInLong", Long.class)
+                    .param("uuid", ipr.getUuid())
+                    .param("cursor", cursor)
+                    .param("end", end)
+                    .limit(batch)
+                    .list();
+
+            long batchEnd = used.size() < batch ? end : used.get(used.size() - 1);
+            free.addAll(IpIntervals.free(cursor, batchEnd, new LongSortedSet(used), limit - free.size()));
+            cursor = batchEnd + 1;
+        }
 
-        List<String> used = q.listValue();
-        used = used.stream().distinct().collect(Collectors.toList());
+        return free.stream().map(NetworkUtils::longToIpv4String).collect(Collectors.toList());
+    }
 
+    private List<FreeIpInventory> getFreeIp(final IpRangeVO ipr, int limit, String start) {
         List<String> spareIps = new ArrayList<>();
         if (ipr.getIpVersion() == IPv6Constants.IPv6) {
+            List<String> used = Q.New(UsedIpVO.class).select(UsedIpVO_.ip)
+                    .eq(UsedIpVO_.ipRangeUuid, ipr.getUuid()).listValues();
             spareIps.addAll(NetworkUtils.getFreeIpv6InRange(ipr.getStartIp(), ipr.getEndIp(), used, limit, start));
         } else {
-            spareIps.addAll(NetworkUtils.getFreeIpInRange(ipr.getStartIp(), ipr.getEndIp(), used, limit, start));
+            spareIps.addAll(getFreeIpv4(ipr, limit, start));
         }
         return CollectionUtils.transformToList(spareIps, new Function<FreeIpInventory, String>() {
             @Override
@@ -491,7 +523,7 @@ public class L3BasicNetwork implements L3Network {
                 if (res.size() >= msg.getLimit()) {
                     break;
                 }
-                limit -= res.size();
+                limit = msg.getLimit() - res.size();
             }
             reply.setInventories(res);
         }
@@ -74,6 +74,8 @@ public class L3NetworkManagerImpl extends AbstractService implements L3NetworkMa
     private ErrorFacade errf;
     @Autowired
     private TagManager tagMgr;
+    @Autowired
+    private UsedIpv4Bitmaps usedIpBitmaps;
 
     private Map<String, IpRangeFactory> ipRangeFactories = Collections.synchronizedMap(new HashMap<String, IpRangeFactory>());
     private Map<String, L3NetworkFactory> l3NetworkFactories = Collections.synchronizedMap(new HashMap<String, L3NetworkFactory>());
@@ -498,23 +500,28 @@ public class L3NetworkManagerImpl extends AbstractService implements L3NetworkMa
         }
     }
 
+    private UsedIpVO makeUsedIpv4VO(IpRangeVO ipRange, String ip, boolean allowDuplicatedAddress) {
+        UsedIpVO vo = new UsedIpVO(ipRange.getUuid(), ip);
+        vo.setIpInLong(NetworkUtils.ipv4StringToLong(ip));
+        String uuid;
+        if (allowDuplicatedAddress) {
+            uuid = Platform.getUuid();
+        } else {
+            uuid = ipRange.getUuid() + ip;
+            uuid = UUID.nameUUIDFromBytes(uuid.getBytes()).toString().replaceAll("-", "");
+        }
+        vo.setUuid(uuid);
+        vo.setL3NetworkUuid(ipRange.getL3NetworkUuid());
+        vo.setNetmask(ipRange.getNetmask());
+        vo.setGateway(ipRange.getGateway());
+        vo.setIpVersion(IPv6Constants.IPv4);
+        return vo;
+    }
+
     private UsedIpInventory reserveIpv4(IpRangeVO ipRange, String ip, boolean allowDuplicatedAddress) {
         try {
-            UsedIpVO vo = new UsedIpVO(ipRange.getUuid(), ip);
-            vo.setIpInLong(NetworkUtils.ipv4StringToLong(ip));
-            String uuid;
-            if (allowDuplicatedAddress) {
-                uuid = Platform.getUuid();
-            } else {
-                uuid = ipRange.getUuid() + ip;
-                uuid = UUID.nameUUIDFromBytes(uuid.getBytes()).toString().replaceAll("-", "");
-            }
-            vo.setUuid(uuid);
-            vo.setL3NetworkUuid(ipRange.getL3NetworkUuid());
-            vo.setNetmask(ipRange.getNetmask());
-            vo.setGateway(ipRange.getGateway());
-            vo.setIpVersion(IPv6Constants.IPv4);
-            vo = dbf.persistAndRefresh(vo);
+            UsedIpVO vo = dbf.persistAndRefresh(makeUsedIpv4VO(ipRange, ip, allowDuplicatedAddress));
+            usedIpBitmaps.markUsed(ipRange.getUuid(), vo.getIpInLong());
             return UsedIpInventory.valueOf(vo);
         } catch (JpaSystemException e) {
             if (e.getRootCause() instanceof MySQLIntegrityConstraintViolationException) {
@@ -523,6 +530,7 @@ public class L3NetworkManagerImpl extends AbstractService implements L3NetworkMa
                         "The error[Duplicate entry] printed by jdbc.spi.SqlExceptionHelper is no harm, " +
                         "we will try finding another ip", ip, ipRange.getUuid()));
                 logger.trace("", e);
+                usedIpBitmaps.markUsed(ipRange.getUuid(), NetworkUtils.ipv4StringToLong(ip));
             } else {
                 throw e;
             }
@@ -15,4 +15,8 @@ public class NetworkGlobalProperty {
 
     @GlobalProperty(name = "bridge.disable.iptables", defaultValue = "false")
     public static boolean BRIDGE_DISABLE_IPTABLES;
+
+    // in seconds, how long used IPv4 addresses of ip ranges are kept in bitmaps, 0 disables the bitmaps
+    @GlobalProperty(name = "usedIpBitmap.expireSeconds", defaultValue = "300")
+    public static long USED_IP_BITMAP_EXPIRE_SECONDS;
 }
@@ -0,0 +1,206 @@
+package org.zstack.network.l3;
+
+import org.zstack.core.db.HardDeleteEntityExtensionPoint;
+import org.zstack.core.db.Q;
+import org.zstack.header.network.l3.IpRangeAO;
+import org.zstack.header.network.l3.UsedIpInventory;
+import org.zstack.header.network.l3.UsedIpVO;
+import org.zstack.header.network.l3.UsedIpVO_;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.header.vm.VmJustAfterDeleteFromDbExtensionPoint;
+import org.zstack.header.vm.VmNicVO;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+import org.zstack.utils.network.Ipv4RangeBitmap;
+import org.zstack.utils.network.NetworkUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * keeps used IPv4 addresses of ip ranges in bitmaps, so allocations find free addresses
+ * in memory instead of probing UsedIpVO with queries.
+ *
+ * A bitmap is loaded from UsedIpVO when a range is first allocated from, addresses are marked
+ * used when taken for an allocation and marked free when returned. The database always decides:
+ * an address taken but already used by another management node fails on the unique key of
+ * UsedIpVO, and is then kept used. Addresses returned on other management nodes become free
+ * when the bitmap expires, or is reloaded as it looks full.
+ *
+ * Addresses deleted from UsedIpVO without ReturnIpMsg drop bitmaps instead: the ranges of a
+ * VM deleted from the database, and all ranges when UsedIpVO or VmNicVO are deleted through
+ * DatabaseFacade, as the deleted rows don't tell their ranges.
+ */
+public class UsedIpv4Bitmaps implements HardDeleteEntityExtensionPoint, VmJustAfterDeleteFromDbExtensionPoint {
+    private static final CLogger logger = Utils.getLogger(UsedIpv4Bitmaps.class);
+
+    private static class Entry {
+        final Ipv4RangeBitmap bitmap;
+        final long loadTime = System.currentTimeMillis();
+
+        Entry(Ipv4RangeBitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        boolean isExpired(long now) {
+            return now - loadTime > TimeUnit.SECONDS.toMillis(NetworkGlobalProperty.USED_IP_BITMAP_EXPIRE_SECONDS);
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // increased by every release, bitmaps loaded across a release are not kept
+    private final AtomicLong generation = new AtomicLong();
+    private final Random random = new Random();
+
+    public boolean isEnabled() {
+        return NetworkGlobalProperty.USED_IP_BITMAP_EXPIRE_SECONDS > 0;
+    }
+
+    private Entry load(IpRangeAO range) {
+        long gen = generation.get();
+        Ipv4RangeBitmap bitmap = new Ipv4RangeBitmap(NetworkUtils.ipv4StringToLong(range.getStartIp()),
+                NetworkUtils.ipv4StringToLong(range.getEndIp()));
+        List<Long> used = Q.New(UsedIpVO.class).select(UsedIpVO_.ipInLong)
+                .eq(UsedIpVO_.ipRangeUuid, range.getUuid()).listValues();
+        used.stream().filter(bitmap::contains).forEach(bitmap::setUsed);
+
+        Entry e = new Entry(bitmap);
+        if (isEnabled() && gen == generation.get()) {
+            entries.put(range.getUuid(), e);
+        }
+
+        return e;
+    }
+
+    private List<Long> take(Entry e, int num, Long excludedIp, boolean randomly) {
+        List<Long> ret = new ArrayList<>();
+        Ipv4RangeBitmap bitmap = e.bitmap;
+        synchronized (bitmap) {
+            boolean excluded = excludedIp != null && bitmap.contains(excludedIp) && bitmap.setUsed(excludedIp);
+            while (ret.size() < num) {
+                long ip = randomly ? bitmap.randomFree(random) : bitmap.firstFree();
+                if (ip == -1) {
+                    break;
+                }
+
+                bitmap.setUsed(ip);
+                ret.add(ip);
+            }
+
+            if (excluded) {
+                bitmap.setFree(excludedIp);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * takes free addresses of the range and marks them used, the caller reserves them in
+     * UsedIpVO and calls release() for addresses it doesn't reserve
+     *
+     * @return addresses in long, fewer than the num if the range doesn't have enough free addresses
+     */
+    public List<Long> take(IpRangeAO range, int num, Long excludedIp, boolean randomly) {
+        if (!isEnabled()) {
+            return take(load(range), num, excludedIp, randomly);
+        }
+
+        Entry e = entries.get(range.getUuid());
+        if (e == null || e.isExpired(System.currentTimeMillis())) {
+            return take(load(range), num, excludedIp, randomly);
+        }
+
+        List<Long> ret = take(e, num, excludedIp, randomly);
+        if (ret.size() < num) {
+            // the bitmap may be behind addresses returned on other management nodes
+            logger.debug(String.format("ip range[uuid:%s] looks full in memory, reload it", range.getUuid()));
+            release(range.getUuid(), ret);
+            invalidate(range.getUuid());
+            ret = take(load(range), num, excludedIp, randomly);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return the address in long, or null if the range doesn't have a free address
+     */
+    public Long take(IpRangeAO range, Long excludedIp, boolean randomly) {
+        List<Long> ret = take(range, 1, excludedIp, randomly);
+        return ret.isEmpty() ? null : ret.get(0);
+    }
+
+    /**
+     * marks an address used, called when an address is reserved in UsedIpVO
+     */
+    public void markUsed(String rangeUuid, long ip) {
+        Entry e = entries.get(rangeUuid);
+        if (e == null) {
+            return;
+        }
+
+        synchronized (e.bitmap) {
+            if (e.bitmap.contains(ip)) {
+                e.bitmap.setUsed(ip);
+            }
+        }
+    }
+
+    /**
+     * marks addresses free, called when addresses are deleted from UsedIpVO or not reserved
+     */
+    public void release(String rangeUuid, List<Long> ips) {
+        if (ips.isEmpty()) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        Entry e = entries.get(rangeUuid);
+        if (e == null) {
+            return;
+        }
+
+        synchronized (e.bitmap) {
+            ips.stream().filter(e.bitmap::contains).forEach(e.bitmap::setFree);
+        }
+    }
+
+    public void invalidate(String rangeUuid) {
+        generation.incrementAndGet();
+        entries.remove(rangeUuid);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    @Override
+    public List<Class> getEntityClassForHardDeleteEntityExtension() {
+        return Arrays.asList(UsedIpVO.class, VmNicVO.class);
+    }
+
+    @Override
+    public void postHardDelete(Collection entityIds, Class entityClass) {
+        logger.debug(String.format("%s %s deleted, drop bitmaps of all ip ranges", entityIds.size(), entityClass.getSimpleName()));
+        invalidateAll();
+    }
+
+    @Override
+    public void vmJustAfterDeleteFromDbExtensionPoint(VmInstanceInventory inv, String accountUuid) {
+        if (inv.getVmNics() == null) {
+            return;
+        }
+
+        Set<String> rangeUuids = inv.getVmNics().stream()
+                .filter(nic -> nic.getUsedIps() != null)
+                .flatMap(nic -> nic.getUsedIps().stream())
+                .map(UsedIpInventory::getIpRangeUuid)
+                .collect(Collectors.toSet());
+        rangeUuids.forEach(this::invalidate);
+    }
+}
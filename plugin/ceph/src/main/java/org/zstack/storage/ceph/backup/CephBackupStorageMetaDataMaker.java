@@ -26,6 +26,7 @@ import org.zstack.header.tag.TagType;
 import org.zstack.storage.ceph.CephConstants;
 import org.zstack.storage.ceph.CephGlobalProperty;
 import org.zstack.storage.ceph.MonStatus;
+import org.zstack.tag.SystemTagIndex;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.gson.JSONObjectUtil;
@@ -185,6 +186,7 @@ public class CephBackupStorageMetaDataMaker implements AddImageExtensionPoint, A
         dbf.persistCollection(imageVOs);
         dbf.persistCollection(backupStorageRefVOs);
         dbf.persistCollection(systemTagVOs);
+        SystemTagIndex.tagsChanged(systemTagVOs.stream().map(SystemTagVO::getResourceUuid).collect(Collectors.toSet()));
     }
 
     protected String getHostnameFromBackupStorage(CephBackupStorageInventory inv) {
@@ -377,8 +377,20 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         Set<String> ownedVms = new HashSet<>();
         Set<String> ownedVips = new HashSet<>();
         if (!isAdmin) {
-            ownedVms.addAll(acntMgr.getResourceUuidsCanAccessByAccount(msg.getSession().getAccountUuid(), VmInstanceVO.class));
-            ownedVips.addAll(acntMgr.getResourceUuidsCanAccessByAccount(msg.getSession().getAccountUuid(), VipVO.class));
+            // only resources of the page are checked, not all resources of the account
+            Set<String> pageVms = new HashSet<>();
+            Set<String> pageVips = new HashSet<>();
+            for (Object[] result : results) {
+                if (result[3] != null) {
+                    pageVms.add((String) result[3]);
+                }
+                if (result[1] != null) {
+                    pageVips.add((String) result[1]);
+                }
+            }
+
+            ownedVms.addAll(acntMgr.getResourceUuidsCanAccessByAccount(msg.getSession().getAccountUuid(), VmInstanceVO.class, pageVms));
+            ownedVips.addAll(acntMgr.getResourceUuidsCanAccessByAccount(msg.getSession().getAccountUuid(), VipVO.class, pageVips));
         }
 
         for (Object[] result : results) {
@@ -0,0 +1,20 @@
+package org.zstack.kvm;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Contributes fields to kvmHostAddons of commands sent to kvm agents.
+ *
+ * The writer is positioned inside the kvmHostAddons object, implementations write
+ * name/value pairs with it and must not close the object. Names must be unique among
+ * all implementations.
+ */
+public interface KVMAgentCommandAddonExtensionPoint {
+    /**
+     * @param cmd the command, null if the command was passed as a string
+     */
+    void writeKvmHostAddons(String path, KVMAgentCommands.AgentCommand cmd, Map<String, String> header, JsonWriter writer) throws IOException;
+}
@@ -0,0 +1,110 @@
+package org.zstack.kvm;
+
+import com.google.gson.stream.JsonWriter;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.utils.Utils;
+import org.zstack.utils.gson.JSONObjectUtil;
+import org.zstack.utils.logging.CLogger;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes an agent command and its kvmHostAddons in one pass.
+ *
+ * The command is written into a per-thread buffer, its closing brace is replaced by
+ * the kvmHostAddons field and addon extensions write their fields straight into the
+ * same buffer, so the command is neither parsed back nor copied by string surgery.
+ * Deprecated KVMBeforeAsyncJsonPostExtensionPoint run through
+ * KVMBeforeAsyncJsonPostAddonAdapter after the addon extensions; only then is the command
+ * copied and parsed into a map. With only those extensions the output is the same as
+ * serializing the command and splicing the addons in with a regex.
+ */
+class KVMAgentCommandWriter {
+    private static final CLogger logger = Utils.getLogger(KVMAgentCommandWriter.class);
+
+    // buffers larger than this are not kept for reuse
+    private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<StringWriter> buffers = ThreadLocal.withInitial(() -> new StringWriter(8192));
+
+    private final List<KVMAgentCommandAddonExtensionPoint> addonExts;
+    private final List<KVMBeforeAsyncJsonPostExtensionPoint> legacyExts;
+
+    KVMAgentCommandWriter(List<KVMAgentCommandAddonExtensionPoint> addonExts, List<KVMBeforeAsyncJsonPostExtensionPoint> legacyExts) {
+        this.addonExts = addonExts;
+        this.legacyExts = legacyExts;
+    }
+
+    /**
+     * @param cmd           the command to serialize, ignored if commandStr is not null
+     * @param commandStr    the command already serialized
+     * @return the command with kvmHostAddons, or null if the command is empty
+     */
+    String write(String path, KVMAgentCommands.AgentCommand cmd, String commandStr, Map<String, String> header) {
+        // take the buffer away from the thread in case an extension sends a command in the same thread
+        StringWriter buf = buffers.get();
+        buffers.remove();
+        StringBuffer sb = buf.getBuffer();
+        sb.setLength(0);
+
+        try {
+            if (commandStr != null) {
+                sb.append(commandStr);
+            } else {
+                JSONObjectUtil.toJson(cmd, buf);
+            }
+
+            int end = sb.length();
+            while (end > 0 && Character.isWhitespace(sb.charAt(end - 1))) {
+                end--;
+            }
+
+            if (end == 0) {
+                return null;
+            }
+
+            if (sb.charAt(end - 1) != '}') {
+                logger.warn(String.format("command to %s is not a json object, send it without %s", path, KVMConstant.KVM_HOST_ADDONS));
+                return sb.toString();
+            }
+
+            KVMAgentCommandAddonExtensionPoint legacy = legacyExts.isEmpty() ? null :
+                    new KVMBeforeAsyncJsonPostAddonAdapter(legacyExts, sb.substring(0, end));
+
+            int last = end - 2;
+            while (last >= 0 && Character.isWhitespace(sb.charAt(last))) {
+                last--;
+            }
+            boolean emptyObject = last >= 0 && sb.charAt(last) == '{';
+
+            sb.setLength(end - 1);
+            if (!emptyObject) {
+                sb.append(',');
+            }
+            sb.append('"').append(KVMConstant.KVM_HOST_ADDONS).append("\":");
+
+            JsonWriter writer = JSONObjectUtil.newJsonWriter(buf);
+            writer.beginObject();
+            for (KVMAgentCommandAddonExtensionPoint ext : addonExts) {
+                ext.writeKvmHostAddons(path, cmd, header, writer);
+            }
+            if (legacy != null) {
+                legacy.writeKvmHostAddons(path, cmd, header, writer);
+            }
+            writer.endObject();
+            writer.flush();
+
+            sb.append('}');
+            return sb.toString();
+        } catch (IOException e) {
+            throw new CloudRuntimeException(e);
+        } finally {
+            if (sb.capacity() <= MAX_REUSED_BUFFER_SIZE) {
+                buffers.set(buf);
+            }
+        }
+    }
+}
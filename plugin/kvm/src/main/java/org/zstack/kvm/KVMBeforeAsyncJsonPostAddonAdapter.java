@@ -0,0 +1,51 @@
+package org.zstack.kvm;
+
+import com.google.gson.stream.JsonWriter;
+import org.zstack.utils.gson.JSONObjectUtil;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs deprecated KVMBeforeAsyncJsonPostExtensionPoint as an addon extension.
+ *
+ * They take the command as a map, so the command text is parsed once for all of them and
+ * their addons are merged the way they used to be, a later extension overriding the keys
+ * of an earlier one.
+ */
+@SuppressWarnings("deprecation")
+class KVMBeforeAsyncJsonPostAddonAdapter implements KVMAgentCommandAddonExtensionPoint {
+    private final List<KVMBeforeAsyncJsonPostExtensionPoint> exts;
+    private final String command;
+
+    /**
+     * @param command the serialized command, without kvmHostAddons
+     */
+    KVMBeforeAsyncJsonPostAddonAdapter(List<KVMBeforeAsyncJsonPostExtensionPoint> exts, String command) {
+        this.exts = exts;
+        this.command = command;
+    }
+
+    @Override
+    public void writeKvmHostAddons(String path, KVMAgentCommands.AgentCommand cmd, Map<String, String> header, JsonWriter writer) throws IOException {
+        LinkedHashMap commandMap = JSONObjectUtil.toObject(command, LinkedHashMap.class);
+        LinkedHashMap kvmHostAddon = new LinkedHashMap();
+        for (KVMBeforeAsyncJsonPostExtensionPoint extp : exts) {
+            LinkedHashMap tmpHashMap = extp.kvmBeforeAsyncJsonPostExtensionPoint(path, commandMap, header);
+
+            if (tmpHashMap != null && !tmpHashMap.isEmpty()) {
+                tmpHashMap.keySet().stream().forEachOrdered((key -> {
+                    kvmHostAddon.put(key, tmpHashMap.get(key));
+                }));
+            }
+        }
+
+        for (Object o : kvmHostAddon.entrySet()) {
+            Map.Entry e = (Map.Entry) o;
+            writer.name(e.getKey().toString());
+            JSONObjectUtil.toJson(e.getValue(), writer);
+        }
+    }
+}
@@ -5,7 +5,10 @@ import java.util.Map;
 
 /**
  * Create by weiwang at 2018/6/4
+ *
+ * @deprecated the command is parsed into a map for every call, use {@link KVMAgentCommandAddonExtensionPoint}
  */
+@Deprecated
 public interface KVMBeforeAsyncJsonPostExtensionPoint {
     LinkedHashMap kvmBeforeAsyncJsonPostExtensionPoint(String path, LinkedHashMap commandMap, Map header);
 }
@@ -64,7 +64,6 @@ import org.zstack.tag.SystemTag;
 import org.zstack.tag.SystemTagCreator;
 import org.zstack.tag.TagManager;
 import org.zstack.utils.*;
-import org.zstack.utils.gson.JSONObjectUtil;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.network.NetworkUtils;
 import org.zstack.utils.path.PathUtil;
@@ -375,34 +374,17 @@ public class KVMHost extends HostBase implements Host {
         }
 
         void runBeforeAsyncJsonPostExts(Map<String, String> header) {
-            if (commandStr == null) {
-                commandStr = JSONObjectUtil.toJsonString(cmd);
-            }
+            String str = new KVMAgentCommandWriter(
+                    pluginRegistry.getExtensionList(KVMAgentCommandAddonExtensionPoint.class),
+                    pluginRegistry.getExtensionList(KVMBeforeAsyncJsonPostExtensionPoint.class)
+            ).write(path, cmd, commandStr, header);
 
-            if (commandStr == null || commandStr.isEmpty()) {
+            if (str == null) {
                 logger.warn(String.format("commandStr is empty, path: %s, header: %s", path, header));
                 return;
             }
 
-            LinkedHashMap commandMap = JSONObjectUtil.toObject(commandStr, LinkedHashMap.class);
-            LinkedHashMap kvmHostAddon = new LinkedHashMap();
-            for (KVMBeforeAsyncJsonPostExtensionPoint extp : pluginRegistry.getExtensionList(KVMBeforeAsyncJsonPostExtensionPoint.class)) {
-                LinkedHashMap tmpHashMap = extp.kvmBeforeAsyncJsonPostExtensionPoint(path, commandMap, header);
-
-                if (tmpHashMap != null && !tmpHashMap.isEmpty()) {
-                    tmpHashMap.keySet().stream().forEachOrdered((key -> {
-                        kvmHostAddon.put(key, tmpHashMap.get(key));
-                    }));
-                }
-            }
-
-            if (commandStr.equals("{}")) {
-                commandStr = commandStr.replaceAll("\\}$",
-                        String.format("\"%s\":%s}", KVMConstant.KVM_HOST_ADDONS, JSONObjectUtil.toJsonString(kvmHostAddon)));
-            } else {
-                commandStr = commandStr.replaceAll("\\}$",
-                        String.format(",\"%s\":%s}", KVMConstant.KVM_HOST_ADDONS, JSONObjectUtil.toJsonString(kvmHostAddon)));
-            }
+            commandStr = str;
         }
     }
 
@@ -27,6 +27,7 @@ import org.zstack.header.tag.SystemTagInventory;
 import org.zstack.header.tag.SystemTagVO;
 import org.zstack.header.tag.SystemTagVO_;
 import org.zstack.header.tag.TagType;
+import org.zstack.tag.SystemTagIndex;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.gson.JSONObjectUtil;
@@ -194,6 +195,7 @@ public class SftpBackupStorageMetaDataMaker implements AddImageExtensionPoint, A
         dbf.persistCollection(imageVOs);
         dbf.persistCollection(backupStorageRefVOs);
         dbf.persistCollection(systemTagVOs);
+        SystemTagIndex.tagsChanged(systemTagVOs.stream().map(SystemTagVO::getResourceUuid).collect(Collectors.toSet()));
     }
 
 
@@ -77,6 +77,7 @@ import org.zstack.network.service.virtualrouter.vyos.VyosConstants;
 import org.zstack.network.service.virtualrouter.vyos.VyosVersionCheckResult;
 import org.zstack.network.service.virtualrouter.vyos.VyosVersionManager;
 import org.zstack.tag.SystemTagCreator;
+import org.zstack.tag.SystemTagIndex;
 import org.zstack.tag.TagManager;
 import org.zstack.utils.*;
 import org.zstack.utils.function.Function;
@@ -640,6 +641,8 @@ public class VirtualRouterManagerImpl extends AbstractService implements Virtual
                         map(e(VirtualRouterSystemTags.VIRTUAL_ROUTER_OFFERING_TOKEN, resourceUuid))))).collect(Collectors.toList());
 
                 SQL.New(SystemTagVO.class).in(SystemTagVO_.tag, tags).delete();
+                // the tags are of L3 networks not known here
+                SystemTagIndex.tagsChanged((Collection<String>) null);
             }
         }
 
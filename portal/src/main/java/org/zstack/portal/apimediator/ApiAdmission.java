@@ -0,0 +1,239 @@
+package org.zstack.portal.apimediator;
+
+import org.zstack.core.thread.Task;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.apimediator.APIIsReadyToGoMsg;
+import org.zstack.header.longjob.APISubmitLongJobMsg;
+import org.zstack.header.longjob.LongJobFor;
+import org.zstack.header.managementnode.APIGetCurrentTimeMsg;
+import org.zstack.header.managementnode.APIGetVersionMsg;
+import org.zstack.header.message.APIMessage;
+import org.zstack.header.message.APISyncCallMessage;
+import org.zstack.header.message.Message;
+import org.zstack.portal.managementnode.PortalGlobalProperty;
+import org.zstack.utils.BeanUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.management.MXBean;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * admits API messages to API workers through lanes, so expensive mutating or long-running
+ * APIs don't delay queries and health checks. Every lane has its own workers, pending APIs
+ * of a lane are queued per account and taken from the accounts in turn, so one account
+ * can't occupy a lane by a burst of APIs. An API is rejected when the lane, or the queue of
+ * its account, has too many pending APIs; health checks are never rejected.
+ */
+@MXBean
+public class ApiAdmission implements ApiAdmissionMXBean {
+    private static final CLogger logger = Utils.getLogger(ApiAdmission.class);
+
+    public enum LaneType {
+        Query,
+        Mutating,
+        LongRunning
+    }
+
+    private static final Set<Class> healthCheckApis = new HashSet<>(Arrays.asList(
+            APIIsReadyToGoMsg.class, APIGetVersionMsg.class, APIGetCurrentTimeMsg.class
+    ));
+
+    private final ThreadFacade thdf;
+    private final Map<LaneType, Lane> lanes = new EnumMap<>(LaneType.class);
+    private final Set<Class> longRunningApis = new HashSet<>();
+
+    private static class PendingApi {
+        final Runnable runnable;
+        final long inTime = System.nanoTime();
+
+        PendingApi(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+
+    private class Lane {
+        final LaneType type;
+        final int workerNum;
+        // account -> pending APIs of the account, in the order accounts take turns
+        final LinkedHashMap<String, Deque<PendingApi>> queues = new LinkedHashMap<>();
+        int running;
+        int pending;
+
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder waitTime = new LongAdder();
+
+        Lane(LaneType type, int workerNum) {
+            this.type = type;
+            this.workerNum = Math.max(1, workerNum);
+        }
+
+        synchronized boolean offer(String account, PendingApi api, boolean force) {
+            Deque<PendingApi> q = queues.get(account);
+            if (!force && (exceeds(pending, PortalGlobalProperty.API_MAX_PENDING_PER_LANE)
+                    || exceeds(q == null ? 0 : q.size(), PortalGlobalProperty.API_MAX_PENDING_PER_ACCOUNT))) {
+                return false;
+            }
+
+            if (q == null) {
+                q = new ArrayDeque<>();
+                queues.put(account, q);
+            }
+
+            q.add(api);
+            pending++;
+            return true;
+        }
+
+        private boolean exceeds(int num, int max) {
+            return max > 0 && num >= max;
+        }
+
+        private synchronized PendingApi poll() {
+            if (running >= workerNum || queues.isEmpty()) {
+                return null;
+            }
+
+            // the account at the head takes its turn, then goes to the tail
+            Iterator<Map.Entry<String, Deque<PendingApi>>> it = queues.entrySet().iterator();
+            Map.Entry<String, Deque<PendingApi>> e = it.next();
+            it.remove();
+
+            PendingApi api = e.getValue().poll();
+            if (!e.getValue().isEmpty()) {
+                queues.put(e.getKey(), e.getValue());
+            }
+
+            pending--;
+            running++;
+            return api;
+        }
+
+        private synchronized void done() {
+            running--;
+        }
+
+        void schedule() {
+            PendingApi api;
+            while ((api = poll()) != null) {
+                run(api);
+            }
+        }
+
+        private void run(PendingApi api) {
+            thdf.submit(new Task<Void>() {
+                @Override
+                public String getName() {
+                    return "api.worker";
+                }
+
+                @Override
+                public Void call() {
+                    admitted.increment();
+                    waitTime.add(System.nanoTime() - api.inTime);
+
+                    try {
+                        api.runnable.run();
+                    } finally {
+                        done();
+                        schedule();
+                    }
+
+                    return null;
+                }
+            });
+        }
+    }
+
+    ApiAdmission(ThreadFacade thdf, int mutatingWorkerNum) {
+        this.thdf = thdf;
+        lanes.put(LaneType.Query, new Lane(LaneType.Query, PortalGlobalProperty.API_QUERY_WORKER_NUM));
+        lanes.put(LaneType.Mutating, new Lane(LaneType.Mutating, mutatingWorkerNum));
+        lanes.put(LaneType.LongRunning, new Lane(LaneType.LongRunning, PortalGlobalProperty.API_LONG_RUNNING_WORKER_NUM));
+
+        longRunningApis.add(APISubmitLongJobMsg.class);
+        BeanUtils.reflections.getTypesAnnotatedWith(LongJobFor.class)
+                .forEach(clz -> longRunningApis.add(clz.getAnnotation(LongJobFor.class).value()));
+    }
+
+    LaneType getLaneType(Message msg) {
+        if (msg instanceof APISyncCallMessage || !(msg instanceof APIMessage)) {
+            return LaneType.Query;
+        } else if (longRunningApis.contains(msg.getClass())) {
+            return LaneType.LongRunning;
+        } else {
+            return LaneType.Mutating;
+        }
+    }
+
+    private String getAccount(Message msg) {
+        if (!(msg instanceof APIMessage) || ((APIMessage) msg).getSession() == null) {
+            return "";
+        }
+
+        // the session is not validated yet, APIs of a session without its account are queued by the session
+        APIMessage amsg = (APIMessage) msg;
+        return amsg.getSession().getAccountUuid() != null ? amsg.getSession().getAccountUuid() : amsg.getSession().getUuid();
+    }
+
+    /**
+     * @return false if the message is rejected as its lane is saturated
+     */
+    boolean submit(Message msg, Runnable runnable) {
+        LaneType type = getLaneType(msg);
+        Lane lane = lanes.get(type);
+        if (!lane.offer(getAccount(msg), new PendingApi(runnable), healthCheckApis.contains(msg.getClass()))) {
+            lane.rejected.increment();
+            logger.warn(String.format("rejected API[%s] as the %s lane has too many pending APIs", msg.getClass().getName(), type));
+            return false;
+        }
+
+        lane.schedule();
+        return true;
+    }
+
+    private <T> Map<String, T> collect(Function<Lane, T> getter) {
+        return lanes.values().stream().collect(Collectors.toMap(l -> l.type.toString(), getter));
+    }
+
+    @Override
+    public Map<String, Integer> getRunningApis() {
+        return collect(l -> {
+            synchronized (l) {
+                return l.running;
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Integer> getPendingApis() {
+        return collect(l -> {
+            synchronized (l) {
+                return l.pending;
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Long> getAdmittedApis() {
+        return collect(l -> l.admitted.sum());
+    }
+
+    @Override
+    public Map<String, Long> getRejectedApis() {
+        return collect(l -> l.rejected.sum());
+    }
+
+    @Override
+    public Map<String, Long> getAverageWaitTimeInMillis() {
+        return collect(l -> {
+            long count = l.admitted.sum();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(l.waitTime.sum() / count);
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package org.zstack.portal.apimediator;
+
+import java.util.Map;
+
+/**
+ */
+public interface ApiAdmissionMXBean {
+    Map<String, Integer> getRunningApis();
+
+    Map<String, Integer> getPendingApis();
+
+    Map<String, Long> getAdmittedApis();
+
+    Map<String, Long> getRejectedApis();
+
+    Map<String, Long> getAverageWaitTimeInMillis();
+}
@@ -8,7 +8,7 @@ import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.DatabaseFacade;
-import org.zstack.core.thread.SyncTask;
+import org.zstack.core.jmx.JmxFacade;
 import org.zstack.core.thread.ThreadFacade;
 import org.zstack.header.AbstractService;
 import org.zstack.header.apimediator.*;
@@ -42,6 +42,8 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
     private DatabaseFacade dbf;
     @Autowired
     private PluginRegistry pluginRgty;
+    @Autowired
+    private JmxFacade jmxf;
     private List<RestAPIExtensionPoint> apiExts = new ArrayList<>();
 
 
@@ -49,6 +51,7 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
 
     private List<String> serviceConfigFolders;
     private int apiWorkerNum = 5;
+    private ApiAdmission admission;
 
     private void dispatchMessage(APIMessage msg) {
         ApiMessageDescriptor desc = processor.getApiMessageDescriptor(msg);
@@ -102,43 +105,25 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
     @Override
     public void handleMessage(final Message msg) {
         apiExts.forEach(e -> e.afterAPIRequest(msg));
-        thdf.syncSubmit(new SyncTask<Object>() {
-            @Override
-            public String getSyncSignature() {
-                return "api.worker";
-            }
-
-            @Override
-            public int getSyncLevel() {
-                return apiWorkerNum;
-            }
-
-            @Override
-            public String getName() {
-                return "api.worker";
-            }
-
-            @MessageSafe
-            void handleMessage(Message msg) {
-                if (msg instanceof APIIsReadyToGoMsg) {
-                    handle((APIIsReadyToGoMsg) msg);
-                } else if (msg instanceof APIGetVersionMsg) {
-                    handle((APIGetVersionMsg) msg);
-                } else if (msg instanceof APIGetCurrentTimeMsg) {
-                    handle((APIGetCurrentTimeMsg) msg);
-                } else if (msg instanceof APIMessage) {
-                    dispatchMessage((APIMessage) msg);
-                } else {
-                    logger.debug("Not an APIMessage.Message ID is " + msg.getId());
-                }
-            }
+        if (!admission.submit(msg, () -> doHandleMessage(msg))) {
+            bus.replyErrorByMessageType(msg, err(PortalErrors.TOO_MANY_REQUESTS,
+                    "too many APIs are pending on the management node, please retry later"));
+        }
+    }
 
-            @Override
-            public Object call() {
-                handleMessage(msg);
-                return null;
-            }
-        });
+    @MessageSafe
+    private void doHandleMessage(Message msg) {
+        if (msg instanceof APIIsReadyToGoMsg) {
+            handle((APIIsReadyToGoMsg) msg);
+        } else if (msg instanceof APIGetVersionMsg) {
+            handle((APIGetVersionMsg) msg);
+        } else if (msg instanceof APIGetCurrentTimeMsg) {
+            handle((APIGetCurrentTimeMsg) msg);
+        } else if (msg instanceof APIMessage) {
+            dispatchMessage((APIMessage) msg);
+        } else {
+            logger.debug("Not an APIMessage.Message ID is " + msg.getId());
+        }
     }
 
     @Transactional(readOnly = true)
@@ -214,6 +199,8 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
         Map<String, Object> config = new HashMap<>();
         config.put("serviceConfigFolders", serviceConfigFolders);
         processor = new ApiMessageProcessorImpl(config);
+        admission = new ApiAdmission(thdf, apiWorkerNum);
+        jmxf.registerBean("ApiAdmission", admission);
         bus.registerService(this);
         apiExts = pluginRgty.getExtensionList(RestAPIExtensionPoint.class);
 
@@ -12,4 +12,12 @@ public class PortalGlobalProperty {
     public static int MAX_HEARTBEAT_FAILURE;
     @GlobalProperty(name = "ManagementNode.heartbeat.jdbcNetworkTimeout", defaultValue = "5")
     public static int HEART_BEAT_QUERY_TIMEOUT;
+    @GlobalProperty(name = "ApiMediator.queryWorkerNum", defaultValue = "10")
+    public static int API_QUERY_WORKER_NUM;
+    @GlobalProperty(name = "ApiMediator.longRunningWorkerNum", defaultValue = "2")
+    public static int API_LONG_RUNNING_WORKER_NUM;
+    @GlobalProperty(name = "ApiMediator.maxPendingApisPerLane", defaultValue = "2000")
+    public static int API_MAX_PENDING_PER_LANE;
+    @GlobalProperty(name = "ApiMediator.maxPendingApisPerAccount", defaultValue = "500")
+    public static int API_MAX_PENDING_PER_ACCOUNT;
 }
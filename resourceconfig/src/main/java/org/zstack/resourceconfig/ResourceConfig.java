@@ -17,7 +17,11 @@ import org.zstack.utils.TypeUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
+import javax.persistence.Tuple;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.zstack.core.Platform.operr;
 import static org.zstack.utils.CollectionDSL.e;
@@ -48,6 +52,13 @@ public class ResourceConfig {
     private List<ResourceConfigDeleteExtensionPoint> deleteExtensions = new ArrayList<>();
     private List<ResourceConfigValidatorExtensionPoint> validatorExtensions = new ArrayList<>();
 
+    // resource type -> resource uuid -> value set to the resource, kept in line with the database
+    // by changes of this management node and the canonical events of others
+    private volatile Map<String, Map<String, String>> values = new ConcurrentHashMap<>();
+    private volatile long valuesLoadedAt;
+    // increased by every change of values, values loaded across a change are not used
+    private final AtomicLong valuesGeneration = new AtomicLong();
+
     public static ResourceConfig valueOf(GlobalConfig globalConfig, BindResourceConfig bindInfo) {
         ResourceConfig result = new ResourceConfig();
         result.globalConfig = globalConfig;
@@ -94,9 +105,77 @@ public class ResourceConfig {
         return TypeUtils.stringToValue(value, clz);
     }
 
+    /**
+     * resolves values of many resources in a few queries, for resources of which most have
+     * no value set, no query is made at all.
+     *
+     * @return resource uuid -> value, values of resources not found are the global config value
+     */
+    public <T> Map<String, T> getResourceConfigValues(Collection<String> resourceUuids, Class<T> clz) {
+        Map<String, T> ret = new HashMap<>();
+        getResourceConfigValues(resourceUuids).forEach((uuid, v) -> ret.put(uuid, TypeUtils.stringToValue(v, clz)));
+        return ret;
+    }
+
     void init() {
         installEventTrigger();
         initResourceConfigNodes();
+        reloadValues();
+    }
+
+    private void reloadValues() {
+        long gen = valuesGeneration.get();
+        Map<String, Map<String, String>> vals = new ConcurrentHashMap<>();
+        List<Tuple> ts = Q.New(ResourceConfigVO.class)
+                .select(ResourceConfigVO_.resourceType, ResourceConfigVO_.resourceUuid, ResourceConfigVO_.value)
+                .eq(ResourceConfigVO_.category, globalConfig.getCategory())
+                .eq(ResourceConfigVO_.name, globalConfig.getName())
+                .listTuple();
+        ts.forEach(t -> vals.computeIfAbsent(t.get(0, String.class), k -> new ConcurrentHashMap<>())
+                .put(t.get(1, String.class), t.get(2, String.class)));
+
+        synchronized (valuesGeneration) {
+            if (gen == valuesGeneration.get()) {
+                values = vals;
+            }
+            valuesLoadedAt = System.currentTimeMillis();
+        }
+    }
+
+    private boolean isValuesExpired() {
+        return System.currentTimeMillis() - valuesLoadedAt > TimeUnit.SECONDS.toMillis(ResourceConfigGlobalProperty.VALUE_RELOAD_INTERVAL_SECONDS);
+    }
+
+    private Map<String, Map<String, String>> getValues() {
+        if (isValuesExpired()) {
+            synchronized (this) {
+                // reloaded by another thread while waiting
+                if (isValuesExpired()) {
+                    reloadValues();
+                }
+            }
+        }
+
+        return values;
+    }
+
+    private void setValue(String resourceUuid, String resourceType, String value) {
+        synchronized (valuesGeneration) {
+            valuesGeneration.incrementAndGet();
+            if (value == null) {
+                values.getOrDefault(resourceType, Collections.emptyMap()).remove(resourceUuid);
+            } else {
+                values.computeIfAbsent(resourceType, k -> new ConcurrentHashMap<>()).put(resourceUuid, value);
+            }
+        }
+    }
+
+    private String findValue(String resourceType, String resourceUuid) {
+        return getValues().getOrDefault(resourceType, Collections.emptyMap()).get(resourceUuid);
+    }
+
+    private boolean hasValues(String resourceType) {
+        return !getValues().getOrDefault(resourceType, Collections.emptyMap()).isEmpty();
     }
 
     private void installEventTrigger() {
@@ -118,7 +197,8 @@ public class ResourceConfig {
                         .eq(ResourceConfigVO_.name, globalConfig.getName())
                         .findValue();
 
-                updateValue(evt.getResourceUuid(), evt.getResourceType(), newValue, false);
+                String resourceType = evt.getResourceType() != null ? evt.getResourceType() : ResourceConfigFacadeImpl.getResourceType(evt.getResourceUuid());
+                updateValue(evt.getResourceUuid(), resourceType, newValue, false);
                 logger.info(String.format("ResourceConfig [resourceUuid:%s, category:%s, name:%s] was updated in other" +
                                 " management node[uuid:%s], in line with that change, updated ours. %s --> %s",
                         evt.getResourceUuid(), globalConfig.getCategory(), globalConfig.getName(), nodeUuid, evt.getOldValue(), newValue));
@@ -137,7 +217,8 @@ public class ResourceConfig {
                 }
 
                 DeleteEvent evt = (DeleteEvent)data;
-                deleteValue(evt.getResourceUuid(), evt.getResourceType(), false);
+                String resourceType = evt.getResourceType() != null ? evt.getResourceType() : ResourceConfigFacadeImpl.getResourceType(evt.getResourceUuid());
+                deleteValue(evt.getResourceUuid(), resourceType, false);
                 logger.info(String.format("ResourceConfig[resourceUuid: %s category: %s, name: %s] was deleted from" +
                                 " other management node[uuid:%s], in line with that change, deleted ours.",
                         evt.getResourceUuid(), globalConfig.getCategory(), globalConfig.getName(), nodeUuid));
@@ -163,6 +244,11 @@ public class ResourceConfig {
                     it.validateGlobalConfig(globalConfig.getCategory(), globalConfig.getName(), oldValue, newValue));
             validatorExtensions.forEach(it -> it.validateResourceConfig(resourceUuid, oldValue, newValue));
             updateValueInDb(resourceUuid, resourceType, newValue);
+        }
+
+        setValue(resourceUuid, resourceType, newValue);
+
+        if (localUpdate) {
             localUpdateExtensions.forEach(it -> it.updateResourceConfig(this, resourceUuid, resourceType, oldValue, newValue));
         }
 
@@ -171,6 +257,7 @@ public class ResourceConfig {
         if (localUpdate) {
             UpdateEvent evt = new UpdateEvent();
             evt.setResourceUuid(resourceUuid);
+            evt.setResourceType(resourceType);
             evt.setOldValue(oldValue);
             evtf.fire(makeUpdateEventPath(), evt);
         }
@@ -185,6 +272,11 @@ public class ResourceConfig {
 
         if (localDelete) {
             deleteInDb(resourceUuid);
+        }
+
+        setValue(resourceUuid, resourceType, null);
+
+        if (localDelete) {
             localDeleteExtensions.forEach(it -> it.deleteResourceConfig(this, resourceUuid, resourceType, originValue));
         }
 
@@ -205,7 +297,11 @@ public class ResourceConfig {
 
     @Transactional(readOnly = true)
     protected String getResourceConfigValue(String resourceUuid) {
-        String resourceType = Q.New(ResourceVO.class).select(ResourceVO_.resourceType).eq(ResourceVO_.uuid, resourceUuid).findValue();
+        if (getValues().isEmpty()) {
+            return globalConfig.value();
+        }
+
+        String resourceType = ResourceConfigFacadeImpl.getResourceType(resourceUuid);
         if (resourceType == null) {
             logger.warn(String.format("no resource[uuid:%s] found, cannot get it's resource config," +
                     " use global config instead", resourceUuid));
@@ -222,6 +318,33 @@ public class ResourceConfig {
         return getter.getResourceConfigValue(resourceUuid);
     }
 
+    @Transactional(readOnly = true)
+    protected Map<String, String> getResourceConfigValues(Collection<String> resourceUuids) {
+        Map<String, String> ret = new HashMap<>();
+        if (getValues().isEmpty()) {
+            resourceUuids.forEach(uuid -> ret.put(uuid, globalConfig.value()));
+            return ret;
+        }
+
+        Map<String, String> resourceTypes = ResourceConfigFacadeImpl.getResourceTypes(resourceUuids);
+        Map<ResourceConfigGetter, List<String>> uuidsByGetter = new HashMap<>();
+        for (String resourceUuid : resourceUuids) {
+            String resourceType = resourceTypes.get(resourceUuid);
+            ResourceConfigGetter getter = resourceType == null ? null : configGetter.get(resourceType);
+            if (getter == null) {
+                logger.warn(String.format("resource[uuid:%s, type:%s] is not found or not bound to global config[category:%s, name:%s]," +
+                        " use global config instead", resourceUuid, resourceType, globalConfig.getCategory(), globalConfig.getName()));
+                ret.put(resourceUuid, globalConfig.value());
+                continue;
+            }
+
+            uuidsByGetter.computeIfAbsent(getter, k -> new ArrayList<>()).add(resourceUuid);
+        }
+
+        uuidsByGetter.forEach((getter, uuids) -> ret.putAll(getter.getResourceConfigValues(uuids)));
+        return ret;
+    }
+
     List<ResourceConfigInventory> getEffectiveResourceConfigs(String resourceUuid) {
         String resourceType = Q.New(ResourceVO.class).select(ResourceVO_.resourceType).eq(ResourceVO_.uuid, resourceUuid).findValue();
         if (resourceType == null) {
@@ -240,23 +363,35 @@ public class ResourceConfig {
         return getter.getConnectedResourceConfigs(resourceUuid);
     }
 
+    private static class ParentType {
+        String resourceType;
+        String sql;
+        String pairSql;
+    }
+
     private class ResourceConfigGetter {
         String resourceType;
         List<String> parentTypeSql = new ArrayList<>();
+        List<ParentType> parentTypes = new ArrayList<>();
 
         private String getResourceConfigValue(String resourceUuid) {
-            String v = loadConfigValue(resourceUuid);
+            String v = findValue(resourceType, resourceUuid);
             if (v != null) {
                 return v;
             }
 
-            for (String sql : parentTypeSql) {
-                String resUuid = SQL.New(String.format(sql, resourceUuid), String.class).find();
+            for (ParentType parent : parentTypes) {
+                // no need to find the parent if no resource of its type has a value
+                if (!hasValues(parent.resourceType)) {
+                    continue;
+                }
+
+                String resUuid = SQL.New(String.format(parent.sql, resourceUuid), String.class).find();
                 if (resUuid == null) {
                     continue;
                 }
 
-                v = loadConfigValue(resUuid);
+                v = findValue(parent.resourceType, resUuid);
                 if (v != null) {
                     return v;
                 }
@@ -265,6 +400,41 @@ public class ResourceConfig {
             return globalConfig.value();
         }
 
+        private Map<String, String> getResourceConfigValues(List<String> resourceUuids) {
+            Map<String, String> ret = new HashMap<>();
+            Set<String> unresolved = new HashSet<>();
+            resourceUuids.forEach(uuid -> {
+                String v = findValue(resourceType, uuid);
+                if (v != null) {
+                    ret.put(uuid, v);
+                } else {
+                    unresolved.add(uuid);
+                }
+            });
+
+            for (ParentType parent : parentTypes) {
+                if (unresolved.isEmpty()) {
+                    break;
+                }
+
+                if (!hasValues(parent.resourceType)) {
+                    continue;
+                }
+
+                List<Tuple> ts = SQL.New(parent.pairSql, Tuple.class).param("values", unresolved).list();
+                for (Tuple t : ts) {
+                    String v = findValue(parent.resourceType, t.get(1, String.class));
+                    if (v != null) {
+                        ret.put(t.get(0, String.class), v);
+                        unresolved.remove(t.get(0, String.class));
+                    }
+                }
+            }
+
+            unresolved.forEach(uuid -> ret.put(uuid, globalConfig.value()));
+            return ret;
+        }
+
         private List<ResourceConfigInventory> getConnectedResourceConfigs(String resourceUuid) {
             List<ResourceConfigInventory> results = new ArrayList<>();
             Optional.ofNullable(loadConfig(resourceUuid)).ifPresent(it ->
@@ -282,14 +452,19 @@ public class ResourceConfig {
         }
 
         private void init(List<Class> connectedClasses) {
-            ResourceConfigGetter getter = new ResourceConfigGetter();
             Class resourceClass = connectedClasses.get(0);
             for (Class parentClass : connectedClasses.subList(1, connectedClasses.size())) {
-                Optional.ofNullable(DBGraph.findVerticesWithSmallestWeight(resourceClass, parentClass)).ifPresent(vertex ->
-                        parentTypeSql.add(vertex.toSQL("uuid", SimpleQuery.Op.EQ, "'%s'")));
+                Optional.ofNullable(DBGraph.findVerticesWithSmallestWeight(resourceClass, parentClass)).ifPresent(vertex -> {
+                    ParentType parent = new ParentType();
+                    parent.resourceType = parentClass.getSimpleName();
+                    parent.sql = vertex.toSQL("uuid", SimpleQuery.Op.EQ, "'%s'");
+                    parent.pairSql = vertex.toPairSQL("uuid");
+                    parentTypes.add(parent);
+                    parentTypeSql.add(parent.sql);
+                });
             }
 
-            getter.resourceType = resourceClass.getSimpleName();
+            resourceType = resourceClass.getSimpleName();
         }
     }
 
@@ -321,7 +496,7 @@ public class ResourceConfig {
     }
 
     private String getResourceType(String resourceUuid) {
-        String resourceType = Q.New(ResourceVO.class).eq(ResourceVO_.uuid, resourceUuid).select(ResourceVO_.resourceType).findValue();
+        String resourceType = ResourceConfigFacadeImpl.getResourceType(resourceUuid);
         if (resourceType == null) {
             throw new OperationFailureException(operr("cannot find resource[uuid: %s]", resourceUuid));
         }
@@ -342,7 +517,7 @@ public class ResourceConfig {
     }
 
     private String makeDeleteEventPath() {
-        return s(ResourceConfigCanonicalEvents.UPDATE_EVENT_PATH).formatByMap(map(
+        return s(ResourceConfigCanonicalEvents.DELETE_EVENT_PATH).formatByMap(map(
                 e("nodeUuid", Platform.getManagementServerId()),
                 e("category", globalConfig.getCategory()),
                 e("name", globalConfig.getName())
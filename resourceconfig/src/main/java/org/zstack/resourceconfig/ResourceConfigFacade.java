@@ -2,10 +2,18 @@ package org.zstack.resourceconfig;
 
 import org.zstack.core.config.GlobalConfig;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface ResourceConfigFacade {
     String SERVICE_ID = ResourceConfigConstant.SERVICE_ID;
 
     ResourceConfig getResourceConfig(String identity);
 
     <T> T getResourceConfigValue(GlobalConfig gc, String resourceUuid, Class<T> clz);
+
+    /**
+     * @return resource uuid -> resolved value of each resource
+     */
+    <T> Map<String, T> getResourceConfigValues(GlobalConfig gc, Collection<String> resourceUuids, Class<T> clz);
 }
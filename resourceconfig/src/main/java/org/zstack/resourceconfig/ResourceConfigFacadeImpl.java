@@ -1,5 +1,7 @@
 package org.zstack.resourceconfig;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.MessageSafe;
@@ -11,10 +13,13 @@ import org.zstack.header.AbstractService;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.Message;
+import org.zstack.header.vo.ResourceVO;
+import org.zstack.header.vo.ResourceVO_;
 import org.zstack.utils.BeanUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
+import javax.persistence.Tuple;
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -31,6 +36,48 @@ public class ResourceConfigFacadeImpl extends AbstractService implements Resourc
 
     protected Map<String, ResourceConfig> resourceConfigs = new HashMap<>();
 
+    // a resource never changes its type, resolving a resource config doesn't need to query it again
+    private static volatile Cache<String, String> resourceTypes = newResourceTypeCache();
+
+    private static Cache<String, String> newResourceTypeCache() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(ResourceConfigGlobalProperty.RESOURCE_TYPE_CACHE_SIZE)
+                .build();
+    }
+
+    static String getResourceType(String resourceUuid) {
+        String resourceType = resourceTypes.getIfPresent(resourceUuid);
+        if (resourceType != null) {
+            return resourceType;
+        }
+
+        resourceType = Q.New(ResourceVO.class).select(ResourceVO_.resourceType).eq(ResourceVO_.uuid, resourceUuid).findValue();
+        if (resourceType != null) {
+            resourceTypes.put(resourceUuid, resourceType);
+        }
+
+        return resourceType;
+    }
+
+    /**
+     * @return resource uuid -> resource type, resources not found are absent
+     */
+    static Map<String, String> getResourceTypes(Collection<String> resourceUuids) {
+        Map<String, String> ret = new HashMap<>(resourceTypes.getAllPresent(resourceUuids));
+        List<String> uuids = resourceUuids.stream().filter(it -> !ret.containsKey(it)).distinct().collect(Collectors.toList());
+        if (uuids.isEmpty()) {
+            return ret;
+        }
+
+        List<Tuple> ts = Q.New(ResourceVO.class).select(ResourceVO_.uuid, ResourceVO_.resourceType).in(ResourceVO_.uuid, uuids).listTuple();
+        ts.forEach(t -> {
+            ret.put(t.get(0, String.class), t.get(1, String.class));
+            resourceTypes.put(t.get(0, String.class), t.get(1, String.class));
+        });
+
+        return ret;
+    }
+
     @Override
     @MessageSafe
     public void handleMessage(Message msg) {
@@ -104,6 +151,7 @@ public class ResourceConfigFacadeImpl extends AbstractService implements Resourc
 
     @Override
     public boolean start() {
+        resourceTypes = newResourceTypeCache();
         BeanUtils.reflections.getFieldsAnnotatedWith(BindResourceConfig.class).forEach(field -> {
             try {
                 buildResourceConfig(field);
@@ -137,6 +185,19 @@ public class ResourceConfigFacadeImpl extends AbstractService implements Resourc
         return rc.getResourceConfigValue(resourceUuid, clz);
     }
 
+    @Override
+    public <T> Map<String, T> getResourceConfigValues(GlobalConfig gc, Collection<String> resourceUuids, Class<T> clz) {
+        ResourceConfig rc = resourceConfigs.get(gc.getIdentity());
+        if (rc == null) {
+            logger.debug(String.format("resources are not bound to global config[category:%s, name:%s], use global config instead", gc.getCategory(), gc.getName()));
+            Map<String, T> ret = new HashMap<>();
+            resourceUuids.forEach(uuid -> ret.put(uuid, gc.value(clz)));
+            return ret;
+        }
+
+        return rc.getResourceConfigValues(resourceUuids, clz);
+    }
+
     protected void buildResourceConfig(Field field) throws Exception {
         BindResourceConfig at = field.getAnnotation(BindResourceConfig.class);
         GlobalConfig gc = (GlobalConfig) field.get(null);
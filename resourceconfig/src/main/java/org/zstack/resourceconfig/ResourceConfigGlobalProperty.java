@@ -0,0 +1,14 @@
+package org.zstack.resourceconfig;
+
+import org.zstack.core.GlobalProperty;
+import org.zstack.core.GlobalPropertyDefinition;
+
+@GlobalPropertyDefinition
+public class ResourceConfigGlobalProperty {
+    // types of resources cached to resolve resource configs, 0 queries them every time
+    @GlobalProperty(name = "resourceConfig.resourceTypeCacheSize", defaultValue = "20000")
+    public static long RESOURCE_TYPE_CACHE_SIZE;
+    // resource config values kept in memory are reloaded in this interval, in case of changes made behind the APIs
+    @GlobalProperty(name = "resourceConfig.valueReloadIntervalSeconds", defaultValue = "600")
+    public static long VALUE_RELOAD_INTERVAL_SECONDS;
+}
@@ -1,6 +1,7 @@
 package org.zstack.resourceconfig;
 
 import org.zstack.header.identity.AccountConstant;
+import org.zstack.header.identity.SessionInventory;
 import org.zstack.header.zql.ASTNode;
 import org.zstack.header.zql.MarshalZQLASTTreeExtensionPoint;
 import org.zstack.header.zql.RestrictByExprExtensionPoint;
@@ -40,7 +41,7 @@ public class ResourceConfigZQLExtension implements MarshalZQLASTTreeExtensionPoi
         ZQLMetadata.InventoryMetadata src = ZQLMetadata.getInventoryMetadataByName(context.getQueryTargetInventoryName());
         return String.format("%s.uuid in (select config.uuid from ResourceConfigVO config, AccountResourceRefVO ref" +
                         " where config.resourceUuid = ref.resourceUuid" +
-                        " and ref.accountUuid = '%s')",
-                src.simpleInventoryName(), context.getAPISession().getAccountUuid());
+                        " and ref.accountUuid = :%s)",
+                src.simpleInventoryName(), context.bindSessionParameter(SessionInventory::getAccountUuid));
     }
 }
@@ -28,6 +28,8 @@ import org.zstack.header.Component;
 import org.zstack.header.Constants;
 import org.zstack.header.MapField;
 import org.zstack.header.apimediator.ApiMediatorConstant;
+import org.zstack.header.apimediator.PortalErrors;
+import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.identity.IdentityByPassCheck;
 import org.zstack.header.identity.SessionInventory;
@@ -630,7 +632,7 @@ public class RestServer implements Component, CloudBusEventListener {
             sendResponse(HttpStatus.OK.value(), response, rsp);
         } else {
             response.setError(evt.getError());
-            sendResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), response, rsp);
+            sendResponse(getErrorStatus(evt.getError()), response, rsp);
         }
     }
 
@@ -1109,12 +1111,21 @@ public class RestServer implements Component, CloudBusEventListener {
         }
     }
 
+    private int getErrorStatus(ErrorCode err) {
+        // the API is rejected by the admission control of the API mediator
+        if (err != null && PortalErrors.TOO_MANY_REQUESTS.toString().equals(err.getCode())) {
+            return HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+
+        return HttpStatus.SERVICE_UNAVAILABLE.value();
+    }
+
     private void sendReplyResponse(MessageReply reply, Api api, HttpServletResponse rsp) throws IOException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
         ApiResponse response = new ApiResponse();
 
         if (!reply.isSuccess()) {
             response.setError(reply.getError());
-            sendResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), JSONObjectUtil.toJsonString(response), rsp);
+            sendResponse(getErrorStatus(reply.getError()), JSONObjectUtil.toJsonString(response), rsp);
             return;
         }
 
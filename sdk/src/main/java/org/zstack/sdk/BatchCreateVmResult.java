@@ -0,0 +1,32 @@
+package org.zstack.sdk;
+
+import org.zstack.sdk.VmInstanceInventory;
+import org.zstack.sdk.ErrorCode;
+
+public class BatchCreateVmResult  {
+
+    public VmInstanceInventory inventory;
+    public void setInventory(VmInstanceInventory inventory) {
+        this.inventory = inventory;
+    }
+    public VmInstanceInventory getInventory() {
+        return this.inventory;
+    }
+
+    public boolean success;
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+    public boolean getSuccess() {
+        return this.success;
+    }
+
+    public ErrorCode error;
+    public void setError(ErrorCode error) {
+        this.error = error;
+    }
+    public ErrorCode getError() {
+        return this.error;
+    }
+
+}
@@ -28,6 +28,12 @@ public class ZQLQueryAction extends AbstractAction {
     @Param(required = false)
     public java.lang.String zql;
 
+    @Param(required = false, nonempty = false, nullElements = false, emptyString = true, numberRange = {1L,10000L}, noTrim = false)
+    public java.lang.Integer pageSize;
+
+    @Param(required = false, nonempty = false, nullElements = false, emptyString = true, noTrim = false)
+    public java.lang.String cursor;
+
     @Param(required = false)
     public java.util.List systemTags;
 
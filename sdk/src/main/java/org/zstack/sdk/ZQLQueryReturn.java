@@ -44,4 +44,12 @@ public class ZQLQueryReturn  {
         return this.name;
     }
 
+    public java.lang.String nextCursor;
+    public void setNextCursor(java.lang.String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    public java.lang.String getNextCursor() {
+        return this.nextCursor;
+    }
+
 }
@@ -1,12 +1,18 @@
 package org.zstack.query;
 
 import org.springframework.http.HttpMethod;
+import org.zstack.header.message.APIParam;
 import org.zstack.header.message.APISyncCallMessage;
 import org.zstack.header.rest.RestRequest;
 
 @RestRequest(path = "/zql", method = HttpMethod.GET, responseClass = APIZQLQueryReply.class)
 public class APIZQLQueryMsg extends APISyncCallMessage {
     private String zql;
+    // page the result by the primary key, see ZQL.page()
+    @APIParam(required = false, numberRange = {1, 10000})
+    private Integer pageSize;
+    @APIParam(required = false)
+    private String cursor;
 
     public static APIZQLQueryMsg __example__() {
         APIZQLQueryMsg ret = new APIZQLQueryMsg();
@@ -20,4 +26,20 @@ public class APIZQLQueryMsg extends APISyncCallMessage {
     public void setZql(String zql) {
         this.zql = zql;
     }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
@@ -30,6 +30,26 @@ doc {
 					optional true
 					since "0.6"
 					
+				}
+				column {
+					name "pageSize"
+					enclosedIn ""
+					desc "按主键分页查询时每页返回的数量"
+					location "query"
+					type "Integer"
+					optional true
+					since "3.9.0"
+					
+				}
+				column {
+					name "cursor"
+					enclosedIn ""
+					desc "上一页返回的nextCursor，为空时返回第一页"
+					location "query"
+					type "String"
+					optional true
+					since "3.9.0"
+					
 				}
 				column {
 					name "systemTags"
@@ -209,7 +209,11 @@ public class QueryFacadeImpl extends AbstractService implements QueryFacade, Glo
             }
 
             private void doCall(ReturnValueCompletion<List<ZQLQueryReturn>> completion) {
-                completion.success(ZQL.fromString(msg.getZql()).getResultList());
+                ZQL zql = ZQL.fromString(msg.getZql());
+                if (msg.getPageSize() != null) {
+                    zql.page(msg.getCursor(), msg.getPageSize());
+                }
+                completion.success(zql.getResultList());
             }
 
             @Override
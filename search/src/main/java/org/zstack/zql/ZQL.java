@@ -11,6 +11,8 @@ import org.zstack.core.asyncbatch.While;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.EntityMetadata;
 import org.zstack.core.db.SQLBatch;
+import org.zstack.core.db.SQLBatchWithReturn;
+import org.zstack.core.thread.ThreadFacade;
 import org.zstack.header.core.FutureCompletion;
 import org.zstack.header.core.NoErrorCompletion;
 import org.zstack.header.core.ReturnValueCompletion;
@@ -38,17 +40,29 @@ import javax.persistence.Query;
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static org.zstack.core.Platform.argerr;
+
 @Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
 public class ZQL {
     private static final CLogger logger = Utils.getLogger(ZQL.class);
 
     private QueryResult astResult;
     private String text;
+    private ZQLLiterals literals;
+    private String cursor;
+    private Integer pageSize;
+    private Consumer<List> pageConsumer;
 
     @Autowired
     private PluginRegistry pluginRgty;
+    @Autowired
+    private ZQLPlanCache planCache;
+    @Autowired
+    private ThreadFacade thdf;
 
     static class ThrowingErrorListener extends BaseErrorListener {
         String text;
@@ -87,11 +101,41 @@ public class ZQL {
         return zql;
     }
 
-    private List entityVOtoInventories(List vos) {
+    /**
+     * pages the result by the primary key of the query target: up to pageSize inventories
+     * after the cursor are returned, with the cursor of the next page in
+     * ZQLQueryReturn.nextCursor which is null on the last page. A null cursor starts from
+     * the first page.
+     */
+    public ZQL page(String cursor, int pageSize) {
+        this.cursor = cursor;
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * runs a single query ZQL and passes its inventories to the consumer page by page rather
+     * than returning them, so an unbounded query never holds its whole result in memory. The
+     * pages are of zql.keysetPageSize, a query that can't be paged by the primary key passes
+     * its result in one page.
+     *
+     * @return the result of the query, its inventories are null as they are consumed
+     */
+    public ZQLQueryReturn forEachPage(Consumer<List> consumer) {
+        pageConsumer = consumer;
+        ZQLQueryReturn ret = getSingleResult();
+        if (ret.inventories != null) {
+            consumer.accept(ret.inventories);
+            ret.inventories = null;
+        }
+        return ret;
+    }
+
+    private static List entityVOtoInventories(QueryResult astResult, List vos) {
         List ret = new ArrayList();
         if (astResult.targetFieldNames != null && !astResult.targetFieldNames.isEmpty()) {
             vos.forEach(it -> {
-                ret.add(entityVOtoInventory(it));
+                ret.add(entityVOtoInventory(astResult, it));
             });
         } else {
             vos.forEach(it -> ret.add(ToInventory.toInventory(it)));
@@ -100,7 +144,7 @@ public class ZQL {
         return ret;
     }
 
-    private Object entityVOtoInventory(Object vo) {
+    private static Object entityVOtoInventory(QueryResult astResult, Object vo) {
         try {
             ZQLMetadata.InventoryMetadata inventoryMetadata = astResult.inventoryMetadata;
             Object inv = inventoryMetadata.selfInventoryClass.getConstructor().newInstance();
@@ -126,7 +170,7 @@ public class ZQL {
                 .forEach(it -> it.marshalZQLASTTree(node));
     }
 
-    private Runnable prepareZQLContext(ASTNode.Query node) {
+    private Runnable prepareZQLContext(ZQLPlan plan, ASTNode.Query node) {
         ZQLMetadata.InventoryMetadata inventory = ZQLMetadata.findInventoryMetadata(node.getTarget().getEntity());
         org.zstack.zql.ZQLContext.setQueryTargetInventoryName(inventory.fullInventoryName());
 
@@ -137,6 +181,7 @@ public class ZQL {
                 cleanUps.add(r);
             }
         });
+        plan.customized = !cleanUps.isEmpty();
 
         return () -> {
             cleanUps.forEach(Runnable::run);
@@ -202,146 +247,360 @@ public class ZQL {
     }
 
     public List<ZQLQueryReturn> getResultList() {
-        List<ZQLQueryReturn> rs = new ArrayList<>();
-
-        ZQLLexer l = new ZQLLexer(CharStreams.fromString(text));
-        ZQLParser p = new ZQLParser(new CommonTokenStream(l));
-        p.addErrorListener(new ThrowingErrorListener(text));
+        List<? extends Token> tokens = new ZQLLexer(CharStreams.fromString(text)).getAllTokens();
+        literals = new ZQLLiterals(tokens);
+        String shapeText = literals.getShape();
+        if (pageSize != null) {
+            // not a valid ZQL, won't be taken for another one
+            shapeText = String.format("%s page %s", shapeText, pageSize);
+        }
+        String shapeKey = planCache.isEnabled() ? planCache.makeKey(shapeText) : null;
 
         Map currentContext = ZQLContext.get();
-        p.zqls().zql().forEach(ctx -> {
-            ZQLContext.set(currentContext);
 
-            ZQLQueryReturn qr = new ZQLQueryReturn();
+        ZQLPlanCache.PlanShape shape = shapeKey == null ? null : planCache.getShape(shapeKey);
+        List<ZQLPlan> cached = shape == null || !shape.cacheable ? null : planCache.get(literals.makeKey(shapeKey, shape.parameters));
+        if (cached != null) {
+            try {
+                return executePlans(currentContext, cached);
+            } catch (RuntimeException e) {
+                if (ZQLParameters.findCause(e, ZQLParameters.InvalidLiteralException.class) == null) {
+                    throw e;
+                }
 
-            class Ret {
-                Long count;
-                List vos;
+                // the literal doesn't fit the type of its field, let the database judge it as it did
+                return compileAndExecute(tokens, currentContext, null, false);
             }
+        }
 
-            Ret ret = new Ret();
+        boolean parameterize = shape == null || !shape.literal;
+        try {
+            return compileAndExecute(tokens, currentContext, shapeKey, parameterize);
+        } catch (RuntimeException e) {
+            if (!parameterize) {
+                throw e;
+            }
 
-            if (ctx instanceof ZQLParser.CountGrammarContext) {
-                ASTNode.Query query = ((ZQLParser.CountGrammarContext)ctx).count().accept(new CountVisitor());
+            boolean unbound = ZQLParameters.findCause(e, ZQLParameters.UnboundLiteralException.class) != null;
+            if (!unbound && ZQLParameters.findCause(e, ZQLParameters.InvalidLiteralException.class) == null) {
+                throw e;
+            }
 
-                Runnable clean = prepareZQLContext(query);
+            literals.restore();
+            // a literal not used as a value makes the shape compile with literals, an invalid
+            // value is a matter of this ZQL only
+            return compileAndExecute(tokens, currentContext, unbound ? shapeKey : null, false);
+        }
+    }
+
+    private void checkSingleQuery(boolean singleQuery) {
+        if (singleQuery) {
+            return;
+        }
+
+        if (pageSize != null) {
+            throw new OperationFailureException(argerr("only a single query ZQL can be paged by cursor, but got %s", text));
+        }
+        if (pageConsumer != null) {
+            throw new OperationFailureException(argerr("only a single query ZQL can be consumed by pages, but got %s", text));
+        }
+    }
 
-                callExtensions(query);
+    private List<ZQLQueryReturn> executePlans(Map currentContext, List<ZQLPlan> plans) {
+        checkSingleQuery(plans.size() == 1 && plans.get(0).type == ZQLPlan.Type.Query);
+
+        ZQLQueryReturn[] rs = new ZQLQueryReturn[plans.size()];
+        List<Runnable> queries = new ArrayList<>();
+        for (int i = 0; i < plans.size(); i++) {
+            int index = i;
+            ZQLPlan plan = plans.get(i);
+            queries.add(inContext(currentContext, () -> {
+                ZQLContext.setQueryTargetInventoryName(plan.astResult.inventoryMetadata.fullInventoryName());
+                rs[index] = execute(plan);
+                ZQLContext.cleanQueryTargetInventoryName();
+            }));
+        }
 
-                astResult = (QueryResult) query.accept(new QueryVisitor(true));
+        ZQLParallelRunner.run(thdf, queries);
+        if (!plans.isEmpty()) {
+            astResult = plans.get(plans.size() - 1).astResult;
+        }
+        return Arrays.asList(rs);
+    }
 
-                if (logger.isTraceEnabled()) {
-                    logger.trace(String.format("ZQL query: %s", astResult.sql));
+    private List<ZQLQueryReturn> compileAndExecute(List<? extends Token> tokens, Map currentContext, String shapeKey, boolean parameterize) {
+        long parseStart = System.nanoTime();
+        ZQLParser p = new ZQLParser(new CommonTokenStream(new ListTokenSource(tokens)));
+        p.addErrorListener(new ThrowingErrorListener(text));
+        ZQLParser.ZqlsContext zqls = p.zqls();
+        BitSet parameters = parameterize ? literals.parameterize(zqls) : new BitSet();
+        List<ZQLParser.ZqlContext> ctxs = zqls.zql();
+        LongAdder parseTime = new LongAdder();
+        parseTime.add(System.nanoTime() - parseStart);
+
+        checkSingleQuery(ctxs.size() == 1 && ctxs.get(0) instanceof ZQLParser.QueryGrammarContext);
+        LongAdder planTime = new LongAdder();
+
+        // statements are independent of each other, each is compiled and executed in its own context
+        ZQLQueryReturn[] rs = new ZQLQueryReturn[ctxs.size()];
+        ZQLPlan[] plans = new ZQLPlan[ctxs.size()];
+        List<Runnable> queries = new ArrayList<>();
+        for (int i = 0; i < ctxs.size(); i++) {
+            int index = i;
+            ZQLParser.ZqlContext ctx = ctxs.get(i);
+            queries.add(inContext(currentContext, () -> {
+                long start = System.nanoTime();
+                ZQLPlan plan = new ZQLPlan();
+                ASTNode.Query query;
+                if (ctx instanceof ZQLParser.CountGrammarContext) {
+                    plan.type = ZQLPlan.Type.Count;
+                    query = ((ZQLParser.CountGrammarContext) ctx).count().accept(new CountVisitor());
+                } else if (ctx instanceof ZQLParser.QueryGrammarContext) {
+                    plan.type = ZQLPlan.Type.Query;
+                    query = ((ZQLParser.QueryGrammarContext) ctx).query().accept(new org.zstack.zql.ast.parser.visitors.QueryVisitor());
+                } else if (ctx instanceof ZQLParser.SumGrammarContext) {
+                    plan.type = ZQLPlan.Type.Sum;
+                    query = ((ZQLParser.SumGrammarContext) ctx).sum().accept(new SumVisitor());
+                } else {
+                    throw new CloudRuntimeException(String.format("should not be here, %s", ctx));
                 }
+                parseTime.add(System.nanoTime() - start);
 
-                beforeExecuteQuery(astResult, ZQLContext.getAPISession());
+                start = System.nanoTime();
+                Runnable clean = compile(plan, query);
+                planTime.add(System.nanoTime() - start);
 
-                new SQLBatch() {
-                    @Override
-                    protected void scripts() {
-                        Query q = astResult.createCountQuery.apply(databaseFacade.getEntityManager());
-                        List results = q.getResultList();
-                        if (results.size() == 1 && results.get(0) instanceof Long) {
-                            ret.count = (Long)results.get(0);
-                        } else {
-                            if (!results.isEmpty()) {
-                                /*
-                                    gson which enable ComplexMapKeySerialization will serialize the map to json array
-                                    when it is not empty or json object "{}" when it is empty.
-                                    null is better than a inconsistent json type.
-                                 */
-                                qr.inventoryCounts = new LinkedHashMap<>();
-                            }
-                            for (Object result : results) {
-                                Object[] fieldValues = (Object[]) result;
-                                int countIndex = fieldValues.length - 1;
-                                qr.inventoryCounts.put(entityVOtoInventory(fieldValues), (Long)fieldValues[countIndex]);
-                            }
-
-                            Query totalCountQuery = astResult.createSimpleCountQuery.apply(databaseFacade.getEntityManager());
-                            ret.count = (Long) totalCountQuery.getSingleResult();
-                        }
-                    }
-                }.execute();
+                try {
+                    rs[index] = execute(plan);
+                } finally {
+                    clean.run();
+                }
 
-                qr.name = query.getName();
+                plans[index] = plan;
+            }));
+        }
 
-                clean.run();
-            } else if (ctx instanceof ZQLParser.QueryGrammarContext) {
-                ASTNode.Query query = ((ZQLParser.QueryGrammarContext) ctx).query().accept(new org.zstack.zql.ast.parser.visitors.QueryVisitor());
-                ReturnWithQueryNodeWrapper wrapper = new ReturnWithQueryNodeWrapper(query);
+        ZQLParallelRunner.run(thdf, queries);
+        if (plans.length > 0) {
+            astResult = plans[plans.length - 1].astResult;
+        }
 
-                wrapper.addPrimaryKeyFieldToTargetFieldNamesWhenReturnWithEnabledAndIsFieldQuery();
+        planCache.recordCompilation(parseTime.sum(), planTime.sum());
+        if (shapeKey != null) {
+            if (Arrays.stream(plans).anyMatch(it -> it.customized)) {
+                planCache.putShape(shapeKey, new ZQLPlanCache.PlanShape(parameters, !parameterize, false));
+            } else {
+                planCache.putShape(shapeKey, new ZQLPlanCache.PlanShape(parameters, !parameterize, true));
+                planCache.put(literals.makeKey(shapeKey, parameters), Arrays.asList(plans));
+            }
+        }
 
-                Runnable clean = prepareZQLContext(query);
+        return Arrays.asList(rs);
+    }
 
-                callExtensions(query);
-                astResult = (QueryResult) query.accept(new QueryVisitor(false));
+    /**
+     * runs a query in a copy of the context of the caller, restoring the context of the
+     * running thread afterwards as the query may run in a thread of the thread pool
+     */
+    private static Runnable inContext(Map<String, Object> callerContext, Runnable query) {
+        Map<String, Object> context = ZQLContext.fork(callerContext);
+        return () -> {
+            Map previous = ZQLContext.get();
+            ZQLContext.set(context);
+            try {
+                query.run();
+            } finally {
+                ZQLContext.set(previous);
+            }
+        };
+    }
 
-                if (logger.isTraceEnabled()) {
-                    logger.trace(String.format("ZQL query: %s", astResult.sql));
-                }
+    private Runnable compile(ZQLPlan plan, ASTNode.Query query) {
+        ReturnWithQueryNodeWrapper wrapper = null;
+        if (plan.type == ZQLPlan.Type.Query) {
+            plan.keyset = pageSize != null ? ZQLKeyset.forCursor(query, pageSize) :
+                    ZQLKeyset.forUnboundedQuery(query, ZQLGlobalProperty.KEYSET_PAGE_SIZE);
+            if (plan.keyset != null) {
+                plan.keyset.apply(query);
+            }
 
-                beforeExecuteQuery(astResult, ZQLContext.getAPISession());
+            wrapper = new ReturnWithQueryNodeWrapper(query);
+            wrapper.addPrimaryKeyFieldToTargetFieldNamesWhenReturnWithEnabledAndIsFieldQuery();
+        }
 
-                new SQLBatch() {
-                    @Override
-                    protected void scripts() {
-                        Query q = astResult.createJPAQuery.apply(databaseFacade.getEntityManager());
-                        ret.vos = q.getResultList();
+        Runnable clean = prepareZQLContext(plan, query);
 
-                        if (astResult.createSimpleCountQuery != null) {
-                            q = astResult.createSimpleCountQuery.apply(databaseFacade.getEntityManager());
-                            ret.count = (Long) q.getSingleResult();
-                        }
-                    }
-                }.execute();
+        callExtensions(query);
 
-                qr.returnWith = callReturnWithExtensions(astResult, wrapper, ret.vos);
-                qr.name = query.getName();
+        ZQLContext.startSessionParameters();
+        try {
+            plan.astResult = (QueryResult) query.accept(new QueryVisitor(plan.type == ZQLPlan.Type.Count));
+        } finally {
+            plan.sessionParameters = ZQLContext.endSessionParameters();
+        }
+        plan.name = query.getName();
 
-                wrapper.removePrimaryKeyFieldFromTargetFieldNamesWhenReturnWithEnabledAndIsFieldQuery(astResult);
+        if (wrapper != null) {
+            plan.fieldsQuery = wrapper.isFieldsQuery();
+            if (plan.fieldsQuery) {
+                plan.primaryKeyFieldIndex = wrapper.primaryKeyFieldIndex();
+            }
 
-                clean.run();
+            wrapper.removePrimaryKeyFieldFromTargetFieldNamesWhenReturnWithEnabledAndIsFieldQuery(plan.astResult);
+        }
 
-                qr.inventories = ret.vos != null ? entityVOtoInventories(ret.vos) : null;
-            } else if (ctx instanceof ZQLParser.SumGrammarContext) {
-                ASTNode.Sum sum = ((ZQLParser.SumGrammarContext) ctx).sum().accept(new SumVisitor());
+        if (plan.keyset != null) {
+            plan.keyset.removePrimaryKeyFieldIfAdded(plan.astResult.targetFieldNames);
+        }
 
-                Runnable clean = prepareZQLContext(sum);
-                callExtensions(sum);
+        return clean;
+    }
 
-                astResult = (QueryResult) sum.accept(new QueryVisitor(false));
+    private ZQLQueryReturn execute(ZQLPlan plan) {
+        QueryResult astResult = plan.astResult;
 
-                if (logger.isTraceEnabled()) {
-                    logger.trace(String.format("ZQL query: %s", astResult.sql));
-                }
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("ZQL query: %s", astResult.sql));
+        }
+
+        // the queries may run in other threads, where the ZQL context is not set
+        SessionInventory session = ZQLContext.getAPISession();
+        beforeExecuteQuery(astResult, session);
+
+        ZQLQueryReturn qr = new ZQLQueryReturn();
+
+        class Ret {
+            Long count;
+            List vos;
+        }
+
+        Ret ret = new Ret();
 
-                beforeExecuteQuery(astResult, ZQLContext.getAPISession());
+        if (plan.type == ZQLPlan.Type.Count) {
+            new SQLBatch() {
+                @Override
+                protected void scripts() {
+                    Query q = bindParameters(plan, session, astResult.createCountQuery.apply(databaseFacade.getEntityManager()));
+                    List results = q.getResultList();
+                    if (results.size() == 1 && results.get(0) instanceof Long) {
+                        ret.count = (Long)results.get(0);
+                    } else {
+                        if (!results.isEmpty()) {
+                            /*
+                                gson which enable ComplexMapKeySerialization will serialize the map to json array
+                                when it is not empty or json object "{}" when it is empty.
+                                null is better than a inconsistent json type.
+                             */
+                            qr.inventoryCounts = new LinkedHashMap<>();
+                        }
+                        for (Object result : results) {
+                            Object[] fieldValues = (Object[]) result;
+                            int countIndex = fieldValues.length - 1;
+                            qr.inventoryCounts.put(entityVOtoInventory(astResult, fieldValues), (Long)fieldValues[countIndex]);
+                        }
+                        Query totalCountQuery = bindParameters(plan, session, astResult.createSimpleCountQuery.apply(databaseFacade.getEntityManager()));
+                        ret.count = (Long) totalCountQuery.getSingleResult();
+                    }
+                }
+            }.execute();
+        } else if (plan.type == ZQLPlan.Type.Query && plan.keyset != null && pageSize == null) {
+            // an unbounded query, loaded page by page so only one page of entities is
+            // in the persistence context at a time
+            Consumer<List> consumer = pageConsumer != null ? pageConsumer : collectPages(qr);
+            Object key = plan.keyset.firstKey();
+            while (key != null) {
+                List vos = loadPage(plan, session, key);
+                consumer.accept(entityVOtoInventories(astResult, vos));
+                key = plan.keyset.lastKey(vos);
+            }
+        } else if (plan.type == ZQLPlan.Type.Query && plan.keyset != null) {
+            Object key = plan.keyset.toKey(cursor);
+            new SQLBatch() {
+                @Override
+                protected void scripts() {
+                    Query q = bindParameters(plan, session, astResult.createJPAQuery.apply(databaseFacade.getEntityManager()));
+                    q.setParameter(ZQLKeyset.CURSOR_PARAMETER, key);
+                    ret.vos = q.getResultList();
+
+                    if (astResult.createSimpleCountQuery != null) {
+                        q = bindParameters(plan, session, astResult.createSimpleCountQuery.apply(databaseFacade.getEntityManager()));
+                        q.setParameter(ZQLKeyset.CURSOR_PARAMETER, plan.keyset.firstKey());
+                        ret.count = (Long) q.getSingleResult();
+                    }
+                }
+            }.execute();
+
+            Object lastKey = plan.keyset.lastKey(ret.vos);
+            qr.nextCursor = lastKey == null ? null : lastKey.toString();
+            qr.returnWith = callReturnWithExtensions(plan, ret.vos);
+            qr.inventories = entityVOtoInventories(astResult, ret.vos);
+        } else if (plan.type == ZQLPlan.Type.Query) {
+            List<Runnable> queries = new ArrayList<>();
+            queries.add(() -> ret.vos = new SQLBatchWithReturn<List>() {
+                @Override
+                protected List scripts() {
+                    return bindParameters(plan, session, astResult.createJPAQuery.apply(databaseFacade.getEntityManager())).getResultList();
+                }
+            }.execute());
 
-                new SQLBatch() {
+            // the total doesn't depend on the page, count it alongside
+            if (astResult.createSimpleCountQuery != null) {
+                queries.add(() -> ret.count = new SQLBatchWithReturn<Long>() {
                     @Override
-                    protected void scripts() {
-                        Query q = astResult.createJPAQuery.apply(databaseFacade.getEntityManager());
-                        ret.vos = q.getResultList();
+                    protected Long scripts() {
+                        return (Long) bindParameters(plan, session, astResult.createSimpleCountQuery.apply(databaseFacade.getEntityManager())).getSingleResult();
                     }
-                }.execute();
+                }.execute());
+            }
 
-                qr.inventories = (List) ret.vos.stream().map(vo -> Arrays.asList((Object[]) vo)).collect(Collectors.toList());
-                qr.name = sum.getName();
+            ZQLParallelRunner.run(thdf, queries);
 
-                clean.run();
-            } else {
-                throw new CloudRuntimeException(String.format("should not be here, %s", ctx));
-            }
+            qr.returnWith = callReturnWithExtensions(plan, ret.vos);
+            qr.inventories = ret.vos != null ? entityVOtoInventories(astResult, ret.vos) : null;
+        } else {
+            new SQLBatch() {
+                @Override
+                protected void scripts() {
+                    Query q = bindParameters(plan, session, astResult.createJPAQuery.apply(databaseFacade.getEntityManager()));
+                    ret.vos = q.getResultList();
+                }
+            }.execute();
 
+            qr.inventories = (List) ret.vos.stream().map(vo -> Arrays.asList((Object[]) vo)).collect(Collectors.toList());
+        }
 
-            qr.total = ret.count;
+        qr.name = plan.name;
+        qr.total = ret.count;
+        return qr;
+    }
 
-            rs.add(qr);
-        });
+    private Consumer<List> collectPages(ZQLQueryReturn qr) {
+        qr.inventories = new ArrayList();
+        return page -> {
+            int max = ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS;
+            if (max > 0 && qr.inventories.size() + page.size() > max) {
+                throw new OperationFailureException(argerr("the ZQL[%s] returns more than %s inventories, use limit, page it by cursor" +
+                        " or consume it by pages", text, max));
+            }
+
+            qr.inventories.addAll(page);
+        };
+    }
+
+    private List loadPage(ZQLPlan plan, SessionInventory session, Object key) {
+        return new SQLBatchWithReturn<List>() {
+            @Override
+            protected List scripts() {
+                Query q = bindParameters(plan, session, plan.astResult.createJPAQuery.apply(databaseFacade.getEntityManager()));
+                q.setParameter(ZQLKeyset.CURSOR_PARAMETER, key);
+                return q.getResultList();
+            }
+        }.execute();
+    }
 
-        return rs;
+    private Query bindParameters(ZQLPlan plan, SessionInventory session, Query q) {
+        ZQLParameters.bind(q, literals, plan.sessionParameters, session);
+        return q;
     }
 
     private void beforeExecuteQuery(QueryResult astResult, SessionInventory session) {
@@ -354,7 +613,8 @@ public class ZQL {
         }
     }
 
-    private Map callReturnWithExtensions(QueryResult astResult, ReturnWithQueryNodeWrapper wrapper, List vos) {
+    private Map callReturnWithExtensions(ZQLPlan plan, List vos) {
+        QueryResult astResult = plan.astResult;
         if (astResult.returnWith == null || astResult.returnWith.isEmpty()) {
             return null;
         }
@@ -373,9 +633,9 @@ public class ZQL {
 
             ReturnWithExtensionPoint.ReturnWithExtensionParam param = new ReturnWithExtensionPoint.ReturnWithExtensionParam();
             param.expression = r.expr;
-            param.isFieldsQuery = wrapper.isFieldsQuery();
+            param.isFieldsQuery = plan.fieldsQuery;
             if (param.isFieldsQuery) {
-                param.primaryKeyIndexInVOs = wrapper.primaryKeyFieldIndex();
+                param.primaryKeyIndexInVOs = plan.primaryKeyFieldIndex;
             }
             param.vos = vos;
             param.voClass = astResult.inventoryMetadata.inventoryAnnotation.mappingVOClass();
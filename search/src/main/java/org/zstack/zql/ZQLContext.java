@@ -4,9 +4,8 @@ import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.identity.SessionInventory;
 import org.zstack.header.zql.ZQLExtensionContext;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Stack;
+import java.util.*;
+import java.util.function.Function;
 
 public class ZQLContext {
     private static ThreadLocal<Map<String, Object>> local = new ThreadLocal<>();
@@ -61,6 +60,7 @@ public class ZQLContext {
     private static final String QUERY_TARGET_INVENTORY_NAME = "QUERY_TARGET_INVENTORY_NAME";
     private static final String QUERY_TARGET_INVENTORY_STACK = "QUERY_TARGET_INVENTORY_STACK";
     private static final String API_SESSION = "API_SESSION";
+    private static final String SESSION_PARAMETERS = "SESSION_PARAMETERS";
 
     public static String getQueryTargetInventoryName() {
         return (String) get(QUERY_TARGET_INVENTORY_NAME);
@@ -117,6 +117,27 @@ public class ZQLContext {
         public SessionInventory getAPISession() {
             return ZQLContext.getAPISession();
         }
+
+        @Override
+        public String bindSessionParameter(Function<SessionInventory, Object> value) {
+            List<Function<SessionInventory, Object>> params = (List<Function<SessionInventory, Object>>) get(SESSION_PARAMETERS);
+            if (params == null) {
+                throw new CloudRuntimeException("session parameters can only be bound when compiling a ZQL");
+            }
+
+            params.add(value);
+            return ZQLParameters.sessionParameterName(params.size() - 1);
+        }
+    }
+
+    static void startSessionParameters() {
+        put(SESSION_PARAMETERS, new ArrayList<Function<SessionInventory, Object>>());
+    }
+
+    static List<Function<SessionInventory, Object>> endSessionParameters() {
+        List<Function<SessionInventory, Object>> params = (List<Function<SessionInventory, Object>>) get(SESSION_PARAMETERS);
+        remove(SESSION_PARAMETERS);
+        return params;
     }
 
     public static ZQLExtensionContext createZQLExtensionContext() {
@@ -134,4 +155,34 @@ public class ZQLContext {
     public static void removeCustomizedContext(String key) {
         remove(key);
     }
+
+    /**
+     * a copy of the context to run a query of the same ZQL request in another thread
+     */
+    static Map<String, Object> fork(Map<String, Object> context) {
+        Map<String, Object> ret = new HashMap<>();
+        if (context != null) {
+            ret.putAll(context);
+            ret.remove(QUERY_TARGET_INVENTORY_NAME);
+            ret.remove(QUERY_TARGET_INVENTORY_STACK);
+            ret.remove(SESSION_PARAMETERS);
+        }
+        return ret;
+    }
+
+    static Map<String, Object> getCustomizedContexts() {
+        Map<String, Object> ret = new TreeMap<>();
+        Map<String, Object> map = local.get();
+        if (map == null) {
+            return ret;
+        }
+
+        map.forEach((k, v) -> {
+            if (!QUERY_TARGET_INVENTORY_NAME.equals(k) && !QUERY_TARGET_INVENTORY_STACK.equals(k) && !API_SESSION.equals(k)
+                    && !SESSION_PARAMETERS.equals(k)) {
+                ret.put(k, v);
+            }
+        });
+        return ret;
+    }
 }
@@ -7,4 +7,22 @@ import org.zstack.core.GlobalPropertyDefinition;
 public class ZQLGlobalProperty {
     @GlobalProperty(name = "zql.errorIfNoDBGraphRelation", defaultValue = "false")
     public static boolean ERROR_IF_NO_DB_GRAPH_RELATION;
+    // 0 disables the plan cache
+    @GlobalProperty(name = "zql.planCacheSize", defaultValue = "2000")
+    public static long PLAN_CACHE_SIZE;
+    @GlobalProperty(name = "zql.planCacheExpireSeconds", defaultValue = "600")
+    public static long PLAN_CACHE_EXPIRE_SECONDS;
+    // queries without limit are loaded by pages of this size, 0 loads them at once
+    @GlobalProperty(name = "zql.keysetPageSize", defaultValue = "1000")
+    public static int KEYSET_PAGE_SIZE;
+    // queries without limit loaded by pages fail when returning more inventories, 0 doesn't limit them;
+    // ZQL.forEachPage() consumes them by pages regardless
+    @GlobalProperty(name = "zql.maxUnboundedQueryResults", defaultValue = "100000")
+    public static int MAX_UNBOUNDED_QUERY_RESULTS;
+    // statements of a ZQL and their count queries run concurrently up to this number, 1 runs them in turn
+    @GlobalProperty(name = "zql.maxParallelQueriesPerRequest", defaultValue = "4")
+    public static int MAX_PARALLEL_QUERIES_PER_REQUEST;
+    // threads shared by all requests to run the concurrent queries
+    @GlobalProperty(name = "zql.parallelQueryThreads", defaultValue = "16")
+    public static int PARALLEL_QUERY_THREADS;
 }
@@ -0,0 +1,200 @@
+package org.zstack.zql;
+
+import org.zstack.core.db.EntityMetadata;
+import org.zstack.header.errorcode.OperationFailureException;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.zql.ASTNode;
+import org.zstack.zql.ast.ZQLMetadata;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.zstack.core.Platform.argerr;
+
+/**
+ * pages a query by the primary key of its target: the query is sorted by the primary key
+ * and restricted to the keys after a cursor passed as a JPQL parameter, so a plan serves
+ * all pages and a page is found by index rather than by skipping rows.
+ */
+class ZQLKeyset {
+    static final String CURSOR_PARAMETER = "zqlKeysetCursor";
+
+    final int pageSize;
+    private final Field primaryKey;
+    private Integer primaryKeyFieldIndex;
+    private boolean primaryKeyFieldAdded;
+
+    private ZQLKeyset(Field primaryKey, int pageSize) {
+        this.primaryKey = primaryKey;
+        this.pageSize = pageSize;
+    }
+
+    private static Field getPrimaryKey(ASTNode.Query query) {
+        ZQLMetadata.InventoryMetadata inventory = ZQLMetadata.findInventoryMetadata(query.getTarget().getEntity());
+        Field primaryKey;
+        try {
+            primaryKey = EntityMetadata.getPrimaryKeyField(inventory.inventoryAnnotation.mappingVOClass());
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        if (!inventory.hasInventoryField(primaryKey.getName())) {
+            return null;
+        }
+
+        Class type = primaryKey.getType();
+        if (type != String.class && type != Long.class && type != long.class && type != Integer.class && type != int.class) {
+            return null;
+        }
+
+        primaryKey.setAccessible(true);
+        return primaryKey;
+    }
+
+    private static boolean isPageable(ASTNode.Query query) {
+        return query.getOrderBy() == null && query.getLimit() == null && query.getOffset() == null
+                && query.getGroupBy() == null && query.getTarget().getFunction() == null;
+    }
+
+    /**
+     * @return the keyset to page the query by, or null if the query can't be paged or
+     * is not worth paging as it asks for a bounded or sorted result
+     */
+    static ZQLKeyset forUnboundedQuery(ASTNode.Query query, int pageSize) {
+        if (pageSize <= 0 || !isPageable(query) || query.getReturnWith() != null) {
+            return null;
+        }
+
+        Field primaryKey = getPrimaryKey(query);
+        return primaryKey == null ? null : new ZQLKeyset(primaryKey, pageSize);
+    }
+
+    static ZQLKeyset forCursor(ASTNode.Query query, int pageSize) {
+        if (!isPageable(query)) {
+            throw new OperationFailureException(argerr("a ZQL paged by cursor cannot have order by, group by, limit, offset or functions," +
+                    " the result is sorted by the primary key"));
+        }
+
+        Field primaryKey = getPrimaryKey(query);
+        if (primaryKey == null) {
+            throw new OperationFailureException(argerr("cannot page query target[%s] by cursor, it has no single primary key of string or integer",
+                    query.getTarget().getEntity()));
+        }
+
+        return new ZQLKeyset(primaryKey, pageSize);
+    }
+
+    void apply(ASTNode.Query query) {
+        String name = primaryKey.getName();
+
+        List<String> fields = query.getTarget().getFields();
+        if (fields != null && !fields.isEmpty()) {
+            if (!fields.contains(name)) {
+                fields.add(name);
+                primaryKeyFieldAdded = true;
+            }
+            primaryKeyFieldIndex = fields.indexOf(name);
+        }
+
+        ASTNode.PlainValue cursor = new ASTNode.PlainValue();
+        cursor.setText(":" + CURSOR_PARAMETER);
+        cursor.setType(primaryKey.getType());
+        cursor.setCtype(primaryKey.getType().getName());
+
+        ASTNode.Expr expr = new ASTNode.Expr();
+        expr.setLeft(new ArrayList<>(Collections.singletonList(name)));
+        expr.setOperator(">");
+        expr.setRight(cursor);
+
+        List<ASTNode.Condition> conditions = query.getConditions();
+        if (conditions == null || conditions.isEmpty()) {
+            query.setConditions(new ArrayList<>(Collections.singletonList(expr)));
+        } else {
+            ASTNode.Condition left = conditions.get(0);
+            for (ASTNode.Condition c : conditions.subList(1, conditions.size())) {
+                ASTNode.LogicalOperator and = new ASTNode.LogicalOperator();
+                and.setLeft(left);
+                and.setOperator("and");
+                and.setRight(c);
+                left = and;
+            }
+
+            ASTNode.LogicalOperator and = new ASTNode.LogicalOperator();
+            and.setLeft(left);
+            and.setOperator("and");
+            and.setRight(expr);
+            query.setConditions(new ArrayList<>(Collections.singletonList(and)));
+        }
+
+        ASTNode.OrderByExpr orderByExpr = new ASTNode.OrderByExpr();
+        orderByExpr.setField(name);
+        orderByExpr.setDirection("asc");
+        ASTNode.OrderBy orderBy = new ASTNode.OrderBy();
+        orderBy.setExprs(new ArrayList<>(Collections.singletonList(orderByExpr)));
+        query.setOrderBy(orderBy);
+
+        ASTNode.Limit limit = new ASTNode.Limit();
+        limit.setLimit(pageSize);
+        query.setLimit(limit);
+    }
+
+    void removePrimaryKeyFieldIfAdded(List<String> targetFieldNames) {
+        if (primaryKeyFieldAdded) {
+            targetFieldNames.remove(primaryKey.getName());
+        }
+    }
+
+    /**
+     * the key before all keys, for the first page and for counting all rows
+     */
+    Object firstKey() {
+        Class type = primaryKey.getType();
+        if (type == String.class) {
+            return "";
+        } else if (type == Long.class || type == long.class) {
+            return Long.MIN_VALUE;
+        } else {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    Object toKey(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return firstKey();
+        }
+
+        // bound as a parameter, no need to escape
+        Class type = primaryKey.getType();
+        if (type == String.class) {
+            return cursor;
+        }
+
+        try {
+            return type == Long.class || type == long.class ? (Object) Long.valueOf(cursor) : (Object) Integer.valueOf(cursor);
+        } catch (NumberFormatException e) {
+            throw new OperationFailureException(argerr("invalid ZQL cursor[%s]", cursor));
+        }
+    }
+
+    /**
+     * @return the key of the last row of a page, null if the page is the last one
+     */
+    Object lastKey(List rows) {
+        if (rows.size() < pageSize) {
+            return null;
+        }
+
+        Object row = rows.get(rows.size() - 1);
+        if (primaryKeyFieldIndex == null) {
+            try {
+                return primaryKey.get(row);
+            } catch (IllegalAccessException e) {
+                throw new CloudRuntimeException(e);
+            }
+        }
+
+        return row instanceof Object[] ? ((Object[]) row)[primaryKeyFieldIndex] : row;
+    }
+}
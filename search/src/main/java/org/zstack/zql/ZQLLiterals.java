@@ -0,0 +1,148 @@
+package org.zstack.zql;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.apache.commons.lang.ClassUtils;
+import org.zstack.zql.antlr4.ZQLLexer;
+import org.zstack.zql.antlr4.ZQLParser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * the literal tokens of a ZQL. The shape is the ZQL text with every literal replaced by '?',
+ * ZQLs of the same shape differ only in their literals.
+ */
+class ZQLLiterals {
+    private static final char KEY_SEPARATOR = '\0';
+
+    private final List<Token> tokens = new ArrayList<>();
+    private final Map<Token, Integer> ordinals = new IdentityHashMap<>();
+    private final String[] texts;
+    private final String shape;
+
+    ZQLLiterals(List<? extends Token> allTokens) {
+        StringJoiner joiner = new StringJoiner(" ");
+        for (Token t : allTokens) {
+            if (isLiteral(t)) {
+                ordinals.put(t, tokens.size());
+                tokens.add(t);
+                joiner.add("?");
+            } else {
+                joiner.add(t.getText());
+            }
+        }
+
+        shape = joiner.toString();
+        texts = tokens.stream().map(Token::getText).toArray(String[]::new);
+    }
+
+    private static boolean isLiteral(Token t) {
+        return t.getType() == ZQLLexer.STRING || t.getType() == ZQLLexer.INT || t.getType() == ZQLLexer.FLOAT;
+    }
+
+    String getShape() {
+        return shape;
+    }
+
+    /**
+     * replaces the literals used as values of conditions by placeholders, returns their
+     * ordinals. Other literals, e.g. limit, offset and the name of a query, stay in the text.
+     */
+    BitSet parameterize(ParseTree tree) {
+        BitSet parameters = new BitSet();
+        collectValues(tree, parameters);
+        parameters.stream().forEach(i -> ((WritableToken) tokens.get(i))
+                .setText(ZQLParameters.placeholder(i, tokens.get(i).getType() == ZQLLexer.STRING)));
+        return parameters;
+    }
+
+    private void collectValues(ParseTree node, BitSet parameters) {
+        for (int i = 0; i < node.getChildCount(); i++) {
+            ParseTree child = node.getChild(i);
+            if (node instanceof ZQLParser.ValueContext && child instanceof TerminalNode) {
+                Integer ordinal = ordinals.get(((TerminalNode) child).getSymbol());
+                if (ordinal != null) {
+                    parameters.set(ordinal);
+                }
+            } else {
+                collectValues(child, parameters);
+            }
+        }
+    }
+
+    void restore() {
+        for (int i = 0; i < tokens.size(); i++) {
+            ((WritableToken) tokens.get(i)).setText(texts[i]);
+        }
+    }
+
+    /**
+     * the key of plans compiled from the shape, the literals not bound as parameters are
+     * part of it
+     */
+    String makeKey(String shapeKey, BitSet parameters) {
+        StringBuilder sb = new StringBuilder(shapeKey);
+        for (int i = 0; i < texts.length; i++) {
+            if (!parameters.get(i)) {
+                sb.append(KEY_SEPARATOR).append(i).append('=').append(texts[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * the value of a literal as the type expected by the JPQL parameter, the database used to
+     * convert it when it was embedded in the JPQL
+     */
+    Object getValue(int ordinal, Class expectedType) {
+        String text = texts[ordinal];
+        int type = tokens.get(ordinal).getType();
+        if (type == ZQLLexer.STRING) {
+            text = text.substring(1, text.length() - 1);
+        }
+
+        try {
+            if (expectedType == null) {
+                return type == ZQLLexer.INT ? Long.valueOf(text) : type == ZQLLexer.FLOAT ? Double.valueOf(text) : text;
+            }
+
+            Class clz = expectedType.isPrimitive() ? ClassUtils.primitiveToWrapper(expectedType) : expectedType;
+            if (clz == String.class) {
+                return text;
+            } else if (clz.isEnum()) {
+                return Enum.valueOf(clz, text);
+            } else if (clz == Boolean.class) {
+                if (!"true".equalsIgnoreCase(text) && !"false".equalsIgnoreCase(text)) {
+                    throw new IllegalArgumentException(String.format("%s is not a boolean", text));
+                }
+                return Boolean.valueOf(text);
+            } else if (clz == Long.class) {
+                return Long.valueOf(text);
+            } else if (clz == Integer.class) {
+                return Integer.valueOf(text);
+            } else if (clz == Short.class) {
+                return Short.valueOf(text);
+            } else if (clz == Double.class) {
+                return Double.valueOf(text);
+            } else if (clz == Float.class) {
+                return Float.valueOf(text);
+            } else if (clz == BigDecimal.class) {
+                return new BigDecimal(text);
+            } else if (clz == BigInteger.class) {
+                return new BigInteger(text);
+            } else if (Date.class.isAssignableFrom(clz)) {
+                return Timestamp.valueOf(text);
+            }
+
+            throw new IllegalArgumentException(String.format("unsupported parameter type %s", clz.getName()));
+        } catch (IllegalArgumentException e) {
+            throw new ZQLParameters.InvalidLiteralException(String.format("cannot bind the literal %s as %s",
+                    texts[ordinal], expectedType == null ? "its own type" : expectedType.getName()), e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.zstack.zql;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.thread.SyncTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.exception.CloudRuntimeException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * runs independent queries of a ZQL request concurrently.
+ *
+ * The calling thread takes part in running the queries and helpers run in a bounded
+ * sync queue, so the queries of a request are done even if no helper gets a thread;
+ * a helper starting after all queries are taken exits at once. Queries called in a
+ * transaction run in turn on the calling thread to see what the transaction has written.
+ */
+class ZQLParallelRunner {
+    private static final String SYNC_SIGNATURE = "zql-parallel-query";
+
+    static void run(ThreadFacade thdf, List<Runnable> queries) {
+        int parallelism = Math.min(queries.size(), ZQLGlobalProperty.MAX_PARALLEL_QUERIES_PER_REQUEST);
+        if (parallelism <= 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            queries.forEach(Runnable::run);
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(queries.size());
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Runnable drain = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < queries.size()) {
+                try {
+                    // don't start more queries once one fails
+                    if (error.get() == null) {
+                        queries.get(i).run();
+                    }
+                } catch (Throwable t) {
+                    error.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        for (int i = 1; i < parallelism; i++) {
+            thdf.syncSubmit(new SyncTask<Void>() {
+                @Override
+                public Void call() {
+                    drain.run();
+                    return null;
+                }
+
+                @Override
+                public String getName() {
+                    return SYNC_SIGNATURE;
+                }
+
+                @Override
+                public String getSyncSignature() {
+                    return SYNC_SIGNATURE;
+                }
+
+                @Override
+                public int getSyncLevel() {
+                    return ZQLGlobalProperty.PARALLEL_QUERY_THREADS;
+                }
+            });
+        }
+
+        drain.run();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CloudRuntimeException(e);
+        }
+
+        Throwable t = error.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new CloudRuntimeException(t);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.zstack.zql;
+
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.identity.SessionInventory;
+
+import javax.persistence.Parameter;
+import javax.persistence.Query;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * values of ZQL conditions and values depending on the API session are bound as JPQL
+ * parameters instead of being embedded in the generated JPQL, so a compiled plan serves
+ * a ZQL whatever its literals are and whoever runs it.
+ *
+ * Literals are replaced by placeholders before compiling, the visitors carry them into
+ * the generated text as they do with any literal and toJPQL() turns them into named
+ * parameters. A placeholder left in the text means the literal was not used as a value,
+ * an UnboundLiteralException is thrown and the ZQL is compiled with its literals instead.
+ */
+public class ZQLParameters {
+    private static final char MARK = '\u0001';
+    // a placeholder is quoted as its string literal, or stands alone as a number or a string
+    // stripped of its quotes; one embedded in another literal is not a value
+    private static final Pattern PLACEHOLDER = Pattern.compile(
+            String.format("'%1$s(\\d+)%1$s'|(?<![^\\s(,=<>])%1$s(\\d+)%1$s(?![^\\s),])", MARK));
+
+    static final String LITERAL_PREFIX = "zqlp";
+    static final String SESSION_PREFIX = "zqls";
+
+    static class UnboundLiteralException extends CloudRuntimeException {
+        UnboundLiteralException(String msg) {
+            super(msg);
+        }
+    }
+
+    static class InvalidLiteralException extends CloudRuntimeException {
+        InvalidLiteralException(String msg, Throwable t) {
+            super(msg, t);
+        }
+    }
+
+    static String placeholder(int ordinal, boolean quoted) {
+        String p = String.format("%s%s%s", MARK, ordinal, MARK);
+        return quoted ? String.format("'%s'", p) : p;
+    }
+
+    public static String toJPQL(String text) {
+        if (text == null || text.indexOf(MARK) < 0) {
+            return text;
+        }
+
+        Matcher m = PLACEHOLDER.matcher(text);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String ordinal = m.group(1) != null ? m.group(1) : m.group(2);
+            m.appendReplacement(sb, String.format(":%s%s", LITERAL_PREFIX, ordinal));
+        }
+        m.appendTail(sb);
+
+        String jpql = sb.toString();
+        if (jpql.indexOf(MARK) >= 0) {
+            throw new UnboundLiteralException(String.format("a literal is not used as a value in %s", jpql.replace(MARK, '?')));
+        }
+
+        return jpql;
+    }
+
+    static String sessionParameterName(int index) {
+        return SESSION_PREFIX + index;
+    }
+
+    static void bind(Query q, ZQLLiterals literals, List<Function<SessionInventory, Object>> sessionParameters, SessionInventory session) {
+        for (Parameter<?> p : q.getParameters()) {
+            String name = p.getName();
+            if (name == null) {
+                continue;
+            }
+
+            if (name.startsWith(LITERAL_PREFIX)) {
+                int ordinal = Integer.parseInt(name.substring(LITERAL_PREFIX.length()));
+                q.setParameter(name, literals.getValue(ordinal, p.getParameterType()));
+            } else if (name.startsWith(SESSION_PREFIX)) {
+                int index = Integer.parseInt(name.substring(SESSION_PREFIX.length()));
+                q.setParameter(name, sessionParameters.get(index).apply(session));
+            }
+        }
+    }
+
+    static <T extends Throwable> T findCause(Throwable t, Class<T> clz) {
+        while (t != null) {
+            if (clz.isInstance(t)) {
+                return clz.cast(t);
+            }
+            t = t.getCause();
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package org.zstack.zql;
+
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.zql.ast.visitors.result.QueryResult;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * the compiled form of a ZQL statement, shared by threads once cached so never modified
+ * after being built
+ */
+class ZQLPlan {
+    enum Type {
+        Query,
+        Count,
+        Sum
+    }
+
+    Type type;
+    String name;
+    QueryResult astResult;
+    boolean fieldsQuery;
+    Integer primaryKeyFieldIndex;
+    ZQLKeyset keyset;
+    // values of the zqls parameters, computed from the session running the plan
+    List<Function<SessionInventory, Object>> sessionParameters;
+    // a ZQLCustomizeContextExtensionPoint rewrote the query
+    boolean customized;
+}
@@ -0,0 +1,179 @@
+package org.zstack.zql;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.componentloader.PluginRegistry;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.header.Component;
+import org.zstack.header.identity.AccountConstant;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.zql.ZQLPlanCacheKeyExtensionPoint;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.management.MXBean;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * caches compiled ZQL plans so a ZQL issued again skips parsing and SQL generation.
+ *
+ * Plans are looked up by the shape of the ZQL, its text with literals replaced by '?'. The
+ * shape records which literals the plans bind as JPQL parameters, literals that are not are
+ * part of the key of the plans. The API session contributes whether it has the admin
+ * permission only, the restrictions depending on its account are bound as parameters too.
+ *
+ * Plans of a query rewritten by a ZQLCustomizeContextExtensionPoint are not cached, as the
+ * extension decides after parsing; its shape is recorded not cacheable so later ZQLs of the
+ * same shape compile without looking up the plans.
+ */
+@MXBean
+public class ZQLPlanCache implements Component, ZQLPlanCacheMXBean {
+    private static final CLogger logger = Utils.getLogger(ZQLPlanCache.class);
+
+    private static final char KEY_SEPARATOR = '\0';
+
+    @Autowired
+    private PluginRegistry pluginRgty;
+    @Autowired
+    private JmxFacade jmxf;
+
+    private boolean enabled;
+    private List<ZQLPlanCacheKeyExtensionPoint> keyExtensions;
+
+    static class PlanShape {
+        // ordinals of literals bound as JPQL parameters
+        final BitSet parameters;
+        // some literal is not used as a value, plans embed all literals
+        final boolean literal;
+        final boolean cacheable;
+
+        PlanShape(BitSet parameters, boolean literal, boolean cacheable) {
+            this.parameters = parameters;
+            this.literal = literal;
+            this.cacheable = cacheable;
+        }
+    }
+
+    private Cache<String, PlanShape> shapes = CacheBuilder.newBuilder()
+            .maximumSize(ZQLGlobalProperty.PLAN_CACHE_SIZE)
+            .expireAfterWrite(ZQLGlobalProperty.PLAN_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    private Cache<String, List<ZQLPlan>> plans = CacheBuilder.newBuilder()
+            .maximumSize(ZQLGlobalProperty.PLAN_CACHE_SIZE)
+            .expireAfterWrite(ZQLGlobalProperty.PLAN_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    private LongAdder compiledCount = new LongAdder();
+    private LongAdder parseTime = new LongAdder();
+    private LongAdder planTime = new LongAdder();
+
+    @Override
+    public boolean start() {
+        keyExtensions = pluginRgty.getExtensionList(ZQLPlanCacheKeyExtensionPoint.class);
+
+        enabled = ZQLGlobalProperty.PLAN_CACHE_SIZE > 0;
+
+        jmxf.registerBean("ZQLPlanCache", this);
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    String makeKey(String shape) {
+        StringBuilder sb = new StringBuilder(shape);
+
+        SessionInventory session = ZQLContext.getAPISession();
+        if (session != null) {
+            sb.append(KEY_SEPARATOR).append(AccountConstant.isAdminPermission(session) ? "admin" : "account");
+        }
+
+        ZQLContext.getCustomizedContexts().forEach((k, v) -> sb.append(KEY_SEPARATOR).append(k).append('=').append(v));
+
+        for (ZQLPlanCacheKeyExtensionPoint ext : keyExtensions) {
+            String key = ext.zqlPlanCacheKey(session);
+            if (key != null) {
+                sb.append(KEY_SEPARATOR).append(ext.getClass().getName()).append('=').append(key);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    PlanShape getShape(String key) {
+        return shapes.getIfPresent(key);
+    }
+
+    void putShape(String key, PlanShape shape) {
+        shapes.put(key, shape);
+    }
+
+    List<ZQLPlan> get(String key) {
+        return plans.getIfPresent(key);
+    }
+
+    void put(String key, List<ZQLPlan> compiled) {
+        plans.put(key, compiled);
+    }
+
+    void recordCompilation(long parseTimeInNanos, long planTimeInNanos) {
+        compiledCount.increment();
+        parseTime.add(parseTimeInNanos);
+        planTime.add(planTimeInNanos);
+    }
+
+    @Override
+    public long getSize() {
+        return plans.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return plans.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return plans.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return plans.stats().hitRate();
+    }
+
+    @Override
+    public long getCompiledCount() {
+        return compiledCount.sum();
+    }
+
+    @Override
+    public long getAverageParseTimeInMicros() {
+        long count = compiledCount.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(parseTime.sum() / count);
+    }
+
+    @Override
+    public long getAveragePlanTimeInMicros() {
+        long count = compiledCount.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(planTime.sum() / count);
+    }
+
+    @Override
+    public void invalidateAll() {
+        shapes.invalidateAll();
+        plans.invalidateAll();
+    }
+}
@@ -0,0 +1,21 @@
+package org.zstack.zql;
+
+/**
+ */
+public interface ZQLPlanCacheMXBean {
+    long getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getCompiledCount();
+
+    long getAverageParseTimeInMicros();
+
+    long getAveragePlanTimeInMicros();
+
+    void invalidateAll();
+}
@@ -18,4 +18,10 @@ doc {
 		type "Long"
 		since "0.6"
 	}
+	field {
+		name "nextCursor"
+		desc "按主键分页查询时下一页的游标，最后一页时为空"
+		type "String"
+		since "3.9.0"
+	}
 }
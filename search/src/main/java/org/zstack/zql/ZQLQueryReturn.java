@@ -10,4 +10,5 @@ public class ZQLQueryReturn {
     public Long total;
     public Map returnWith;
     public String name;
+    public String nextCursor;
 }
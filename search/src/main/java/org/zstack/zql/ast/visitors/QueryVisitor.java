@@ -9,6 +9,7 @@ import org.zstack.utils.BeanUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.zql.ZQLContext;
+import org.zstack.zql.ZQLParameters;
 import org.zstack.zql.ast.ZQLMetadata;
 import org.zstack.zql.ast.visitors.plugin.QueryVisitorPlugin;
 import org.zstack.zql.ast.visitors.result.QueryResult;
@@ -132,8 +133,9 @@ public class QueryVisitor implements ASTVisitor<QueryResult, ASTNode.Query> {
 
         ZQLContext.popQueryTargetInventoryName();
 
-        st.sql = StringUtils.join(sqlClauses, " ");
-        st.jpql = StringUtils.join(jpqlClauses, " ");
+        // literals of conditions are bound as parameters, see ZQLParameters
+        st.sql = ZQLParameters.toJPQL(StringUtils.join(sqlClauses, " "));
+        st.jpql = ZQLParameters.toJPQL(StringUtils.join(jpqlClauses, " "));
         return st;
     }
 
@@ -154,10 +156,10 @@ public class QueryVisitor implements ASTVisitor<QueryResult, ASTNode.Query> {
         }
 
         if (countQuery || ret.returnWith != null && ret.returnWith.stream().anyMatch(it->it.name.equals("total"))) {
-            ret.createSimpleCountQuery = (EntityManager emgr) -> {
-                SQLText cst = makeSQL(node, QueryVisitorPlugin.ClauseType.SIMPLE_COUNT);
-                return emgr.createQuery(cst.jpql);
-            };
+            // generated here rather than when the query is created, the result may be cached and
+            // used by other threads
+            SQLText cst = makeSQL(node, QueryVisitorPlugin.ClauseType.SIMPLE_COUNT);
+            ret.createSimpleCountQuery = (EntityManager emgr) -> emgr.createQuery(cst.jpql);
         }
 
         if (countQuery) {
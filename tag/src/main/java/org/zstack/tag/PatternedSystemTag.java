@@ -12,6 +12,7 @@ import org.zstack.utils.TagUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.zstack.utils.StringDSL.s;
 
@@ -122,6 +123,11 @@ public class PatternedSystemTag extends SystemTag {
     }
 
     public SystemTagInventory getTagInventory(String resourceUuid) {
+        if (SystemTagIndex.isUsable()) {
+            List<SystemTagInventory> tags = getIndexedTags(resourceUuid, getResourceClass());
+            return tags.isEmpty() ? null : SystemTagIndex.copy(tags.get(0));
+        }
+
         SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
         q.add(SystemTagVO_.resourceUuid, Op.EQ, resourceUuid);
         q.add(SystemTagVO_.resourceType, Op.EQ, getResourceClass().getSimpleName());
@@ -131,6 +137,13 @@ public class PatternedSystemTag extends SystemTag {
     }
 
     public List<SystemTagInventory> getTagInventories(List<String> resourceUuids) {
+        if (SystemTagIndex.isUsable()) {
+            List<SystemTagInventory> ret = new ArrayList<>();
+            SystemTagIndex.getTags(resourceUuids).values().forEach(tags ->
+                    getIndexedTags(tags, getResourceClass()).forEach(t -> ret.add(SystemTagIndex.copy(t))));
+            return ret;
+        }
+
         SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
         q.add(SystemTagVO_.resourceUuid, Op.IN, resourceUuids);
         q.add(SystemTagVO_.resourceType, Op.EQ, getResourceClass().getSimpleName());
@@ -139,6 +152,10 @@ public class PatternedSystemTag extends SystemTag {
     }
 
     public List<SystemTagInventory> getTagInventories(String resourceUuid) {
+        if (SystemTagIndex.isUsable()) {
+            return getIndexedTags(resourceUuid, getResourceClass()).stream().map(SystemTagIndex::copy).collect(Collectors.toList());
+        }
+
         return SystemTagInventory.valueOf(Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceType, getResourceClass().getSimpleName()).
                 eq(SystemTagVO_.resourceUuid, resourceUuid).like(SystemTagVO_.tag, useTagFormat()).list());
     }
@@ -158,6 +175,7 @@ public class PatternedSystemTag extends SystemTag {
         svo.setResourceType(dstResourceClass.getSimpleName());
         svo.setTag(getTag(srcUuid, srcResourceClass));
         dbf.persistAndRefresh(svo);
+        SystemTagIndex.tagsChanged(dstUuid);
     }
 
     public boolean updateTagByToken(String resourceUuid, String tokenName, String newTag) {
@@ -174,6 +192,7 @@ public class PatternedSystemTag extends SystemTag {
 
         vo.setTag(vo.getTag().replace(oldTag, newTag));
         dbf.updateAndRefresh(vo);
+        SystemTagIndex.tagsChanged(resourceUuid);
 
         return true;
     }
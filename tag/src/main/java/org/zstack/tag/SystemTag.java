@@ -16,12 +16,16 @@ import org.zstack.core.db.SimpleQuery.Op;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.tag.*;
 import org.zstack.utils.DebugUtils;
+import org.zstack.utils.TagUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static java.util.Arrays.asList;
 
@@ -42,6 +46,8 @@ public class SystemTag {
     protected List<SystemTagValidator> validators = new ArrayList<>();
     protected List<SystemTagLifeCycleListener> lifeCycleListeners = new ArrayList<>();
     protected List<SystemTagOperationJudger> judgers = new ArrayList<>();
+    // matches indexed tags as the query by useOp() and useTagFormat() does, which is case-insensitive
+    private volatile Predicate<String> tagMatcher;
 
     public SystemTag(String tagFormat, Class resourceClass) {
         this.tagFormat = tagFormat;
@@ -112,7 +118,35 @@ public class SystemTag {
         return hasTag(resourceUuid, resourceClass);
     }
 
+    private Predicate<String> getTagMatcher() {
+        if (tagMatcher == null) {
+            String fmt = useTagFormat();
+            if (useOp() == Op.LIKE) {
+                Pattern p = Pattern.compile(TagUtils.sqlPatternToRegex(fmt), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+                tagMatcher = t -> p.matcher(t).matches();
+            } else {
+                tagMatcher = fmt::equalsIgnoreCase;
+            }
+        }
+
+        return tagMatcher;
+    }
+
+    protected List<SystemTagInventory> getIndexedTags(SystemTagIndex.ResourceTags tags, Class resourceClass) {
+        String resourceType = resourceClass.getSimpleName();
+        return tags.match(String.format("%s:%s:%s", resourceType, useOp(), useTagFormat()),
+                t -> resourceType.equals(t.getResourceType()) && getTagMatcher().test(t.getTag()));
+    }
+
+    protected List<SystemTagInventory> getIndexedTags(String resourceUuid, Class resourceClass) {
+        return getIndexedTags(SystemTagIndex.getTags(resourceUuid), resourceClass);
+    }
+
     public boolean hasTag(String resourceUuid, Class resourceClass) {
+        if (SystemTagIndex.isUsable()) {
+            return !getIndexedTags(resourceUuid, resourceClass).isEmpty();
+        }
+
         SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
         q.add(SystemTagVO_.resourceType, Op.EQ, resourceClass.getSimpleName());
         q.add(SystemTagVO_.resourceUuid, Op.EQ, resourceUuid);
@@ -125,6 +159,13 @@ public class SystemTag {
             return new ArrayList<>();
         }
 
+        if (SystemTagIndex.isUsable()) {
+            List<String> ret = new ArrayList<>();
+            SystemTagIndex.getTags(resourceUuids).values().forEach(tags ->
+                    getIndexedTags(tags, resourceClass).forEach(t -> ret.add(t.getResourceUuid())));
+            return ret;
+        }
+
         SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
         q.add(SystemTagVO_.resourceType, Op.EQ, resourceClass.getSimpleName());
         q.add(SystemTagVO_.resourceUuid, Op.IN, resourceUuids);
@@ -151,6 +192,10 @@ public class SystemTag {
     }
 
     public List<String> getTags(String resourceUuid, Class resourceClass) {
+        if (SystemTagIndex.isUsable()) {
+            return getIndexedTags(resourceUuid, resourceClass).stream().map(SystemTagInventory::getTag).collect(Collectors.toList());
+        }
+
         SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
         q.select(SystemTagVO_.tag);
         q.add(SystemTagVO_.resourceType, Op.EQ, resourceClass.getSimpleName());
@@ -176,6 +221,17 @@ public class SystemTag {
     }
 
     public Map<String, List<String>> getTags(Collection<String> resourceUuids, Class resourceClass) {
+        if (SystemTagIndex.isUsable()) {
+            Map<String, List<String>> ret = new HashMap<>();
+            SystemTagIndex.getTags(resourceUuids).forEach((uuid, tags) -> {
+                List<SystemTagInventory> matched = getIndexedTags(tags, resourceClass);
+                if (!matched.isEmpty()) {
+                    ret.put(uuid, matched.stream().map(SystemTagInventory::getTag).collect(Collectors.toList()));
+                }
+            });
+            return ret;
+        }
+
         SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
         q.select(SystemTagVO_.tag, SystemTagVO_.resourceUuid);
         q.add(SystemTagVO_.resourceType, Op.EQ, resourceClass.getSimpleName());
@@ -0,0 +1,188 @@
+package org.zstack.tag;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
+import org.zstack.core.db.Q;
+import org.zstack.header.Component;
+import org.zstack.header.tag.SystemTagCanonicalEvents;
+import org.zstack.header.tag.SystemTagInventory;
+import org.zstack.header.tag.SystemTagVO;
+import org.zstack.header.tag.SystemTagVO_;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * indexes system tags of resources in memory, so a system tag looks up tags of a resource
+ * without querying the database, and tags of many resources in one query.
+ *
+ * A change of system tags must call tagsChanged(), which is done by the tag manager for
+ * tags created, updated and deleted through it; the change is published to all management
+ * nodes when it is committed. Tags read in a transaction are not indexed as they may not
+ * be committed, entries also expire in case of changes made behind the tag manager.
+ */
+public class SystemTagIndex implements Component {
+    private static final CLogger logger = Utils.getLogger(SystemTagIndex.class);
+
+    @Autowired
+    private EventFacade evtf;
+
+    static class ResourceTags {
+        final List<SystemTagInventory> tags;
+        // matching key of a system tag -> tags of the resource matching it
+        private final Map<String, List<SystemTagInventory>> matched = new ConcurrentHashMap<>();
+
+        ResourceTags(List<SystemTagInventory> tags) {
+            this.tags = tags;
+        }
+
+        List<SystemTagInventory> match(String key, Predicate<SystemTagInventory> predicate) {
+            if (tags.isEmpty()) {
+                return tags;
+            }
+
+            return matched.computeIfAbsent(key, k -> Collections.unmodifiableList(
+                    tags.stream().filter(predicate).collect(Collectors.toList())));
+        }
+    }
+
+    private static volatile Cache<String, ResourceTags> index = newIndex();
+    // increased by every change, tags loaded across a change are not indexed
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static Cache<String, ResourceTags> newIndex() {
+        return CacheBuilder.newBuilder()
+                .maximumSize(TagGlobalProperty.SYSTEM_TAG_INDEX_SIZE)
+                .expireAfterWrite(TagGlobalProperty.SYSTEM_TAG_INDEX_EXPIRE_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    static boolean isUsable() {
+        return TagGlobalProperty.SYSTEM_TAG_INDEX_SIZE > 0 && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    static ResourceTags getTags(String resourceUuid) {
+        return getTags(Collections.singletonList(resourceUuid)).get(resourceUuid);
+    }
+
+    /**
+     * @return resource uuid -> system tags of the resource, for every resource uuid given
+     */
+    static Map<String, ResourceTags> getTags(Collection<String> resourceUuids) {
+        Map<String, ResourceTags> ret = new HashMap<>(index.getAllPresent(resourceUuids));
+        List<String> uuids = resourceUuids.stream().filter(it -> !ret.containsKey(it)).distinct().collect(Collectors.toList());
+        if (uuids.isEmpty()) {
+            return ret;
+        }
+
+        long gen = generation.get();
+        Map<String, List<SystemTagInventory>> tags = new HashMap<>();
+        uuids.forEach(uuid -> tags.put(uuid, new ArrayList<>()));
+        List<SystemTagVO> vos = Q.New(SystemTagVO.class).in(SystemTagVO_.resourceUuid, uuids).list();
+        vos.forEach(vo -> tags.get(vo.getResourceUuid()).add(SystemTagInventory.valueOf(vo)));
+
+        Map<String, ResourceTags> loaded = new HashMap<>();
+        tags.forEach((uuid, ts) -> loaded.put(uuid, new ResourceTags(Collections.unmodifiableList(ts))));
+        if (gen == generation.get()) {
+            index.putAll(loaded);
+        }
+
+        ret.putAll(loaded);
+        return ret;
+    }
+
+    static SystemTagInventory copy(SystemTagInventory tag) {
+        SystemTagInventory inv = new SystemTagInventory();
+        inv.setUuid(tag.getUuid());
+        inv.setResourceUuid(tag.getResourceUuid());
+        inv.setResourceType(tag.getResourceType());
+        inv.setTag(tag.getTag());
+        inv.setType(tag.getType());
+        inv.setInherent(tag.isInherent());
+        inv.setCreateDate(tag.getCreateDate());
+        inv.setLastOpDate(tag.getLastOpDate());
+        return inv;
+    }
+
+    private static void invalidate(Collection<String> resourceUuids) {
+        generation.incrementAndGet();
+
+        if (resourceUuids == null) {
+            index.invalidateAll();
+        } else {
+            index.invalidateAll(resourceUuids);
+        }
+    }
+
+    /**
+     * @param resourceUuids resources whose system tags are changed, null for changes of any resource
+     */
+    public static void tagsChanged(Collection<String> resourceUuids) {
+        List<String> uuids = resourceUuids == null ? null : new ArrayList<>(resourceUuids);
+        invalidate(uuids);
+
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            notifyTagsChanged(uuids);
+            return;
+        }
+
+        // tags loaded before the change is committed would be indexed otherwise
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                notifyTagsChanged(uuids);
+            }
+        });
+    }
+
+    public static void tagsChanged(String resourceUuid) {
+        tagsChanged(Collections.singletonList(resourceUuid));
+    }
+
+    private static void notifyTagsChanged(List<String> resourceUuids) {
+        invalidate(resourceUuids);
+
+        SystemTagCanonicalEvents.SystemTagsChangedData d = new SystemTagCanonicalEvents.SystemTagsChangedData();
+        d.setResourceUuids(resourceUuids);
+        Platform.getComponentLoader().getComponent(EventFacade.class).fire(SystemTagCanonicalEvents.SYSTEM_TAGS_CHANGED_PATH, d);
+    }
+
+    @Override
+    public boolean start() {
+        index = newIndex();
+
+        evtf.on(SystemTagCanonicalEvents.SYSTEM_TAGS_CHANGED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                if (evtf.isFromThisManagementNode(tokens)) {
+                    // invalidated when fired
+                    return;
+                }
+
+                SystemTagCanonicalEvents.SystemTagsChangedData d = (SystemTagCanonicalEvents.SystemTagsChangedData) data;
+                invalidate(d.getResourceUuids());
+                logger.trace(String.format("invalidated indexed system tags of resources%s changed on another management node",
+                        d.getResourceUuids() == null ? "" : d.getResourceUuids()));
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+}
@@ -0,0 +1,14 @@
+package org.zstack.tag;
+
+import org.zstack.core.GlobalProperty;
+import org.zstack.core.GlobalPropertyDefinition;
+
+@GlobalPropertyDefinition
+public class TagGlobalProperty {
+    // resources whose system tags are indexed in memory, 0 disables the index
+    @GlobalProperty(name = "tag.systemTagIndex.size", defaultValue = "20000")
+    public static long SYSTEM_TAG_INDEX_SIZE;
+    // system tags of a resource are reloaded after this time, in case of changes made behind the tag manager
+    @GlobalProperty(name = "tag.systemTagIndex.expireSeconds", defaultValue = "300")
+    public static long SYSTEM_TAG_INDEX_EXPIRE_SECONDS;
+}
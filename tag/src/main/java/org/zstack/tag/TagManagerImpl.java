@@ -369,6 +369,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
             ntag.setResourceUuid(dstResourceUuid);
             dbf.getEntityManager().persist(ntag);
         }
+
+        SystemTagIndex.tagsChanged(dstResourceUuid);
     }
 
     @Override
@@ -491,6 +493,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     }
 
     void fireTagDeleted(List<SystemTagInventory> tags) {
+        SystemTagIndex.tagsChanged(tags.stream().map(SystemTagInventory::getResourceUuid).collect(Collectors.toSet()));
+
         for (SystemTagInventory tag : tags) {
             List<SystemTagLifeCycleExtension> exts = lifeCycleExtensions.get(tag.getResourceType());
             if (exts != null) {
@@ -506,6 +510,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     }
 
     void fireTagCreated(List<SystemTagInventory> tags) {
+        SystemTagIndex.tagsChanged(tags.stream().map(SystemTagInventory::getResourceUuid).collect(Collectors.toSet()));
+
         for (SystemTagInventory tag : tags) {
             List<SystemTagLifeCycleExtension> exts = lifeCycleExtensions.get(tag.getResourceType());
             if (exts != null) {
@@ -521,6 +527,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     }
 
     private void fireTagUpdated(SystemTagInventory old, SystemTagInventory newTag) {
+        SystemTagIndex.tagsChanged(old.getResourceUuid());
+
         List<SystemTagLifeCycleExtension> exts = lifeCycleExtensions.get(old.getResourceType());
         if (exts != null) {
             for (SystemTagLifeCycleExtension ext : exts) {
@@ -741,6 +749,9 @@ public class TagManagerImpl extends AbstractService implements TagManager,
         q.setParameter("resourceTypes", rtypes);
         q.setParameter("resourceUuids", entityIds);
         q.executeUpdate();
+        List<String> resourceUuids = new ArrayList<>();
+        entityIds.forEach(it -> resourceUuids.add(String.valueOf(it)));
+        SystemTagIndex.tagsChanged(resourceUuids);
 
         sql = "delete from UserTagVO s" +
                 " where s.resourceType in (:resourceTypes)" +
@@ -0,0 +1,105 @@
+package org.zstack.test.integration.configuration.resourceConfig
+
+import org.zstack.kvm.KVMGlobalConfig
+import org.zstack.resourceconfig.ResourceConfigFacade
+import org.zstack.sdk.ClusterInventory
+import org.zstack.sdk.HostInventory
+import org.zstack.sdk.ZoneInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.test.integration.kvm.host.HostEnv
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+class ResourceConfigValuesCase extends SubCase {
+    EnvSpec env
+    ResourceConfigFacade rcf
+    HostInventory host1
+    HostInventory host2
+    ClusterInventory cluster
+    ZoneInventory zone
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = HostEnv.twoHostEnv()
+    }
+
+    @Override
+    void test() {
+        env.create {
+            rcf = bean(ResourceConfigFacade.class)
+            host1 = env.inventoryByName("kvm1") as HostInventory
+            host2 = env.inventoryByName("kvm2") as HostInventory
+            cluster = env.inventoryByName("cluster") as ClusterInventory
+            zone = env.inventoryByName("zone") as ZoneInventory
+
+            testValuesResolvedAlongParents()
+            testValuesDeleted()
+        }
+    }
+
+    private String getValue(String resourceUuid) {
+        return rcf.getResourceConfigValue(KVMGlobalConfig.RESERVED_MEMORY_CAPACITY, resourceUuid, String.class)
+    }
+
+    private Map<String, String> getValues() {
+        return rcf.getResourceConfigValues(KVMGlobalConfig.RESERVED_MEMORY_CAPACITY, [host1.uuid, host2.uuid, "not-exists"], String.class)
+    }
+
+    private void updateValue(String resUuid, String v) {
+        updateResourceConfig {
+            category = KVMGlobalConfig.CATEGORY
+            name = KVMGlobalConfig.RESERVED_MEMORY_CAPACITY.name
+            value = v
+            resourceUuid = resUuid
+        }
+    }
+
+    void testValuesResolvedAlongParents() {
+        String globalValue = KVMGlobalConfig.RESERVED_MEMORY_CAPACITY.value()
+        assert getValue(host1.uuid) == globalValue
+        assert getValues() == [(host1.uuid): globalValue, (host2.uuid): globalValue, "not-exists": globalValue]
+
+        updateValue(zone.uuid, "3G")
+        assert getValue(host1.uuid) == "3G"
+        assert getValues() == [(host1.uuid): "3G", (host2.uuid): "3G", "not-exists": globalValue]
+
+        updateValue(cluster.uuid, "2G")
+        assert getValue(host1.uuid) == "2G"
+        assert getValues() == [(host1.uuid): "2G", (host2.uuid): "2G", "not-exists": globalValue]
+
+        updateValue(host1.uuid, "1G")
+        assert getValue(host1.uuid) == "1G"
+        assert getValue(host2.uuid) == "2G"
+        assert getValues() == [(host1.uuid): "1G", (host2.uuid): "2G", "not-exists": globalValue]
+    }
+
+    void testValuesDeleted() {
+        deleteResourceConfig {
+            category = KVMGlobalConfig.CATEGORY
+            name = KVMGlobalConfig.RESERVED_MEMORY_CAPACITY.name
+            resourceUuid = cluster.uuid
+        }
+
+        assert getValue(host1.uuid) == "1G"
+        assert getValue(host2.uuid) == "3G"
+        assert getValues()[host2.uuid] == "3G"
+
+        deleteResourceConfig {
+            category = KVMGlobalConfig.CATEGORY
+            name = KVMGlobalConfig.RESERVED_MEMORY_CAPACITY.name
+            resourceUuid = host1.uuid
+        }
+
+        assert getValue(host1.uuid) == "3G"
+    }
+}
@@ -0,0 +1,89 @@
+package org.zstack.test.integration.configuration.systemTag
+
+import org.zstack.compute.zone.ZoneSystemTags
+import org.zstack.header.zone.ZoneVO
+import org.zstack.sdk.SystemTagInventory
+import org.zstack.sdk.ZoneInventory
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+class SystemTagIndexCase extends SubCase {
+    EnvSpec env
+    ZoneInventory zone1
+    ZoneInventory zone2
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            zone {
+                name = "zone1"
+            }
+
+            zone {
+                name = "zone2"
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            zone1 = env.inventoryByName("zone1") as ZoneInventory
+            zone2 = env.inventoryByName("zone2") as ZoneInventory
+
+            testTagsCreatedUpdatedAndDeleted()
+            testTagsOfManyResources()
+        }
+    }
+
+    void testTagsCreatedUpdatedAndDeleted() {
+        // indexed without tags
+        assert !ZoneSystemTags.HOST_RESERVED_CPU_CAPACITY.hasTag(zone1.uuid)
+
+        SystemTagInventory tag = createSystemTag {
+            resourceType = ZoneVO.class.simpleName
+            resourceUuid = zone1.uuid
+            tag = "host::reservedCpu::1"
+        } as SystemTagInventory
+
+        assert ZoneSystemTags.HOST_RESERVED_CPU_CAPACITY.hasTag(zone1.uuid)
+        assert ZoneSystemTags.HOST_RESERVED_CPU_CAPACITY.getTokenByResourceUuid(zone1.uuid, "capacity") == "1"
+        assert ZoneSystemTags.HOST_RESERVED_CPU_CAPACITY.getTagInventory(zone1.uuid).uuid == tag.uuid
+        assert !ZoneSystemTags.HOST_RESERVED_MEMORY_CAPACITY.hasTag(zone1.uuid)
+
+        updateSystemTag {
+            uuid = tag.uuid
+            tag = "host::reservedCpu::2"
+        }
+        assert ZoneSystemTags.HOST_RESERVED_CPU_CAPACITY.getTokenByResourceUuid(zone1.uuid, "capacity") == "2"
+
+        deleteTag {
+            uuid = tag.uuid
+        }
+        assert !ZoneSystemTags.HOST_RESERVED_CPU_CAPACITY.hasTag(zone1.uuid)
+        assert ZoneSystemTags.HOST_RESERVED_CPU_CAPACITY.getTokenByResourceUuid(zone1.uuid, "capacity") == null
+    }
+
+    void testTagsOfManyResources() {
+        createSystemTag {
+            resourceType = ZoneVO.class.simpleName
+            resourceUuid = zone2.uuid
+            tag = "host::reservedMemory::1G"
+        }
+
+        assert ZoneSystemTags.HOST_RESERVED_MEMORY_CAPACITY.getTags([zone1.uuid, zone2.uuid]) == [(zone2.uuid): ["host::reservedMemory::1G"]]
+        assert ZoneSystemTags.HOST_RESERVED_MEMORY_CAPACITY.filterResourceHasTag([zone1.uuid, zone2.uuid]) == [zone2.uuid]
+        assert ZoneSystemTags.HOST_RESERVED_MEMORY_CAPACITY.getTagInventories([zone1.uuid, zone2.uuid]).collect { it.resourceUuid } == [zone2.uuid]
+    }
+}
@@ -0,0 +1,64 @@
+package org.zstack.test.integration.core
+
+import org.zstack.core.thread.HashedWheelTimer
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class HashedWheelTimerCase extends SubCase {
+    HashedWheelTimer timer
+
+    @Override
+    void clean() {
+        timer?.stop()
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+        // a small wheel to make timeouts span several rounds
+        timer = new HashedWheelTimer("test-timer", 10L, TimeUnit.MILLISECONDS, 8)
+    }
+
+    void testExpire() {
+        AtomicInteger count = new AtomicInteger()
+        long start = System.currentTimeMillis()
+        long fired = 0
+
+        timer.schedule({ fired = System.currentTimeMillis(); count.incrementAndGet() }, TimeUnit.MILLISECONDS, 300)
+        timer.schedule({ count.incrementAndGet() }, TimeUnit.MILLISECONDS, 0)
+
+        retryInSecs {
+            assert count.get() == 2
+        }
+
+        assert fired - start >= 300
+        assert timer.pendingTimeouts == 0
+        assert timer.expiredTimeouts == 2
+    }
+
+    void testCancel() {
+        AtomicInteger count = new AtomicInteger()
+
+        HashedWheelTimer.Timeout timeout = timer.schedule({ count.incrementAndGet() }, TimeUnit.MILLISECONDS, 200)
+        assert timeout.cancel()
+        assert !timeout.cancel()
+        assert timer.cancelledTimeouts == 1
+
+        TimeUnit.MILLISECONDS.sleep(400)
+        assert count.get() == 0
+        assert timer.pendingTimeouts == 0
+        assert timeout.cancelled
+    }
+
+    @Override
+    void test() {
+        testExpire()
+        testCancel()
+    }
+}
@@ -1,178 +1,254 @@
-package org.zstack.test.integration.core.canonicalevent
-
-import org.springframework.http.HttpEntity
-import org.zstack.core.Platform
-import org.zstack.core.cloudbus.CanonicalEvent
-import org.zstack.core.cloudbus.EventFacade
-import org.zstack.sdk.WebhookInventory
-import org.zstack.testlib.EnvSpec
-import org.zstack.testlib.SubCase
-
-/**
- * Created by xing5 on 2017/5/8.
- */
-class CanonicalEventWebhookCase extends SubCase {
-    EnvSpec envSpec
-
-    @Override
-    void clean() {
-        envSpec.delete()
-    }
-
-    @Override
-    void setup() {
-        INCLUDE_CORE_SERVICES = false
-        spring {
-            include("webhook.xml")
-        }
-    }
-
-    String WEBHOOK_PATH = "/canonical-event-webhook"
-
-    void testErrorToCreateWebhookifOpaqueFieldMissing() {
-        expect(AssertionError.class) {
-            createWebhook {
-                name = "webhook1"
-                url = "http://127.0.0.1:8989$WEBHOOK_PATH"
-                type = EventFacade.WEBHOOK_TYPE
-            }
-        }
-    }
-
-    void testCanonicalEventWithVariableInPath() {
-        String path = "/test/{uuid}/event"
-
-        int count = 0
-        WebhookInventory hook1 = createWebhook {
-            name = "webhook1"
-            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
-            type = EventFacade.WEBHOOK_TYPE
-            opaque = path
-        }
-
-        // this webhook will not be called because path unmatching
-        WebhookInventory hook2 = createWebhook {
-            name = "webhook1"
-            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
-            type = EventFacade.WEBHOOK_TYPE
-            opaque = "/this-path-does-not-match"
-        }
-
-        CanonicalEvent evt
-        envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
-            evt = json(e.getBody(), CanonicalEvent.class)
-            count ++
-            return [:]
-        }
-
-        String content = "hello world"
-        String eventPath = "/test/${Platform.uuid}/event"
-        bean(EventFacade.class).fire(eventPath, content)
-
-        retryInSecs {
-            assert count == 1
-            assert evt != null
-            assert evt.path == eventPath
-            assert evt.content == content
-            assert evt.managementNodeId == Platform.getManagementServerId()
-        }
-    }
-
-    void testCanonicalEventUseWebhook() {
-        String path = "/test/event"
-
-        WebhookInventory hook1 = createWebhook {
-            name = "webhook1"
-            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
-            type = EventFacade.WEBHOOK_TYPE
-            opaque = path
-        }
-
-        WebhookInventory hook2 = createWebhook {
-            name = "webhook2"
-            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
-            type = EventFacade.WEBHOOK_TYPE
-            opaque = path
-        }
-
-        def testFireTwoEvents = {
-            List<CanonicalEvent> evts = []
-            envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
-                CanonicalEvent evt = json(e.getBody(), CanonicalEvent.class)
-                evts.add(evt)
-                return [:]
-            }
-
-            String content = "hello world"
-            bean(EventFacade.class).fire(path, content)
-
-            retryInSecs {
-                assert evts.size() == 2
-                CanonicalEvent evt1 = evts[0]
-                CanonicalEvent evt2 = evts[1]
-                assert evt1.path == path
-                assert evt1.content == content
-                assert evt1.managementNodeId == Platform.getManagementServerId()
-                assert evt2.path == path
-                assert evt2.content == content
-                assert evt2.managementNodeId == Platform.getManagementServerId()
-            }
-        }
-
-        def testOneEventsGetAfterDeleteOneHook = {
-            deleteWebhook { uuid = hook1.uuid }
-
-            List<CanonicalEvent> evts = []
-            envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
-                CanonicalEvent evt = json(e.getBody(), CanonicalEvent.class)
-                evts.add(evt)
-                return [:]
-            }
-
-            String content = "hello world"
-            bean(EventFacade.class).fire(path, content)
-
-            retryInSecs {
-                assert evts.size() == 1
-            }
-        }
-
-        def testNoEventGetAfterDeleteAllHooks = {
-            deleteWebhook { uuid = hook2.uuid }
-
-            List<CanonicalEvent> evts = []
-            envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
-                CanonicalEvent evt = json(e.getBody(), CanonicalEvent.class)
-                evts.add(evt)
-                return [:]
-            }
-
-            String content = "hello world"
-            bean(EventFacade.class).fire(path, content)
-
-            retryInSecs {
-                assert evts.size() == 0
-            }
-        }
-
-        testFireTwoEvents()
-        testOneEventsGetAfterDeleteOneHook()
-        testNoEventGetAfterDeleteAllHooks()
-    }
-
-    @Override
-    void environment() {
-        envSpec = env {
-            // nothing
-        }
-    }
-
-    @Override
-    void test() {
-        envSpec.create {
-            testCanonicalEventUseWebhook()
-            testCanonicalEventWithVariableInPath()
-            testErrorToCreateWebhookifOpaqueFieldMissing()
-        }
-    }
-}
+package org.zstack.test.integration.core.canonicalevent
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.Platform
+import org.zstack.core.cloudbus.CanonicalEvent
+import org.zstack.core.cloudbus.EventFacade
+import org.zstack.core.db.DatabaseFacade
+import org.zstack.core.webhook.WebhookGlobalProperty
+import org.zstack.header.core.webhooks.WebhookVO
+import org.zstack.sdk.WebhookInventory
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Created by xing5 on 2017/5/8.
+ */
+class CanonicalEventWebhookCase extends SubCase {
+    EnvSpec envSpec
+
+    @Override
+    void clean() {
+        envSpec.delete()
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+        spring {
+            include("webhook.xml")
+        }
+    }
+
+    String WEBHOOK_PATH = "/canonical-event-webhook"
+
+    void testErrorToCreateWebhookifOpaqueFieldMissing() {
+        expect(AssertionError.class) {
+            createWebhook {
+                name = "webhook1"
+                url = "http://127.0.0.1:8989$WEBHOOK_PATH"
+                type = EventFacade.WEBHOOK_TYPE
+            }
+        }
+    }
+
+    void testCanonicalEventWithVariableInPath() {
+        String path = "/test/{uuid}/event"
+
+        int count = 0
+        WebhookInventory hook1 = createWebhook {
+            name = "webhook1"
+            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
+            type = EventFacade.WEBHOOK_TYPE
+            opaque = path
+        }
+
+        // this webhook will not be called because path unmatching
+        WebhookInventory hook2 = createWebhook {
+            name = "webhook1"
+            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
+            type = EventFacade.WEBHOOK_TYPE
+            opaque = "/this-path-does-not-match"
+        }
+
+        CanonicalEvent evt
+        envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
+            evt = json(e.getBody(), CanonicalEvent.class)
+            count ++
+            return [:]
+        }
+
+        String content = "hello world"
+        String eventPath = "/test/${Platform.uuid}/event"
+        bean(EventFacade.class).fire(eventPath, content)
+
+        retryInSecs {
+            assert count == 1
+            assert evt != null
+            assert evt.path == eventPath
+            assert evt.content == content
+            assert evt.managementNodeId == Platform.getManagementServerId()
+        }
+    }
+
+    void testCanonicalEventUseWebhook() {
+        String path = "/test/event"
+
+        WebhookInventory hook1 = createWebhook {
+            name = "webhook1"
+            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
+            type = EventFacade.WEBHOOK_TYPE
+            opaque = path
+        }
+
+        WebhookInventory hook2 = createWebhook {
+            name = "webhook2"
+            url = "http://127.0.0.1:8989$WEBHOOK_PATH"
+            type = EventFacade.WEBHOOK_TYPE
+            opaque = path
+        }
+
+        def testFireTwoEvents = {
+            List<CanonicalEvent> evts = []
+            envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
+                CanonicalEvent evt = json(e.getBody(), CanonicalEvent.class)
+                evts.add(evt)
+                return [:]
+            }
+
+            String content = "hello world"
+            bean(EventFacade.class).fire(path, content)
+
+            retryInSecs {
+                assert evts.size() == 2
+                CanonicalEvent evt1 = evts[0]
+                CanonicalEvent evt2 = evts[1]
+                assert evt1.path == path
+                assert evt1.content == content
+                assert evt1.managementNodeId == Platform.getManagementServerId()
+                assert evt2.path == path
+                assert evt2.content == content
+                assert evt2.managementNodeId == Platform.getManagementServerId()
+            }
+        }
+
+        def testOneEventsGetAfterDeleteOneHook = {
+            deleteWebhook { uuid = hook1.uuid }
+
+            List<CanonicalEvent> evts = []
+            envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
+                CanonicalEvent evt = json(e.getBody(), CanonicalEvent.class)
+                evts.add(evt)
+                return [:]
+            }
+
+            String content = "hello world"
+            bean(EventFacade.class).fire(path, content)
+
+            retryInSecs {
+                assert evts.size() == 1
+            }
+        }
+
+        def testNoEventGetAfterDeleteAllHooks = {
+            deleteWebhook { uuid = hook2.uuid }
+
+            List<CanonicalEvent> evts = []
+            envSpec.simulator(WEBHOOK_PATH) { HttpEntity<String> e ->
+                CanonicalEvent evt = json(e.getBody(), CanonicalEvent.class)
+                evts.add(evt)
+                return [:]
+            }
+
+            String content = "hello world"
+            bean(EventFacade.class).fire(path, content)
+
+            retryInSecs {
+                assert evts.size() == 0
+            }
+        }
+
+        testFireTwoEvents()
+        testOneEventsGetAfterDeleteOneHook()
+        testNoEventGetAfterDeleteAllHooks()
+    }
+
+    void testTokenInWebhookMatchesNestedPath() {
+        String hookPath = "/canonical-event-webhook-nested"
+        WebhookInventory hook = createWebhook {
+            name = "webhook-nested"
+            url = "http://127.0.0.1:8989$hookPath"
+            type = EventFacade.WEBHOOK_TYPE
+            opaque = "/nested/{uuid}"
+        }
+
+        List<String> paths = Collections.synchronizedList([])
+        envSpec.simulator(hookPath) { HttpEntity<String> e ->
+            paths.add(json(e.getBody(), CanonicalEvent.class).path)
+            return [:]
+        }
+
+        String vmUuid = Platform.uuid
+        bean(EventFacade.class).fire("/nested/${vmUuid}", "content")
+        // webhooks created before a {token} matched one segment keep firing for deeper paths
+        bean(EventFacade.class).fire("/nested/${vmUuid}/state", "content")
+        bean(EventFacade.class).fire("/other/${vmUuid}", "content")
+
+        retryInSecs {
+            assert paths.toSet() == ["/nested/${vmUuid}".toString(), "/nested/${vmUuid}/state".toString()] as Set
+        }
+
+        deleteWebhook { uuid = hook.uuid }
+    }
+
+    void testWebhookIndexExpires() {
+        int ttl = WebhookGlobalProperty.INDEX_TTL
+        WebhookGlobalProperty.INDEX_TTL = 2
+
+        String hookPath = "/canonical-event-webhook-ttl"
+        String eventPath = "/ttl/event"
+        int count = 0
+        envSpec.simulator(hookPath) { HttpEntity<String> e ->
+            count ++
+            return [:]
+        }
+
+        try {
+            // load the index before the webhook exists
+            bean(EventFacade.class).fire(eventPath, "content")
+
+            // a webhook created on a peer whose change event is lost
+            WebhookVO vo = new WebhookVO()
+            vo.setUuid(Platform.uuid)
+            vo.setName("webhook-ttl")
+            vo.setUrl("http://127.0.0.1:8989$hookPath")
+            vo.setType(EventFacade.WEBHOOK_TYPE)
+            vo.setOpaque(eventPath)
+            bean(DatabaseFacade.class).persist(vo)
+
+            bean(EventFacade.class).fire(eventPath, "content")
+            TimeUnit.SECONDS.sleep(1)
+            assert count == 0
+
+            TimeUnit.SECONDS.sleep(2)
+            bean(EventFacade.class).fire(eventPath, "content")
+            retryInSecs {
+                assert count == 1
+            }
+
+            deleteWebhook { uuid = vo.uuid }
+        } finally {
+            WebhookGlobalProperty.INDEX_TTL = ttl
+        }
+    }
+
+    @Override
+    void environment() {
+        envSpec = env {
+            // nothing
+        }
+    }
+
+    @Override
+    void test() {
+        envSpec.create {
+            testCanonicalEventUseWebhook()
+            testCanonicalEventWithVariableInPath()
+            testErrorToCreateWebhookifOpaqueFieldMissing()
+            testTokenInWebhookMatchesNestedPath()
+            testWebhookIndexExpires()
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.zstack.test.integration.core.canonicalevent
+
+import org.zstack.core.cloudbus.EventPathRouter
+import org.zstack.testlib.SubCase
+
+class EventPathRouterCase extends SubCase {
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+    }
+
+    Map<String, Map<String, String>> route(EventPathRouter<String> router, String path) {
+        Map<String, Map<String, String>> ret = [:]
+        router.route(path) { String target, Map<String, String> tokens ->
+            ret[target] = tokens
+        }
+        return ret
+    }
+
+    void testLiteralAndTokens() {
+        EventPathRouter<String> router = new EventPathRouter<>()
+        router.subscribe("k1", "/test/event", "literal")
+        router.subscribe("k2", "/test/event/{uuid}", "token")
+        router.subscribe("k3", "/{greeting}/event/{uuid}", "tokens")
+
+        def ret = route(router, "/test/event")
+        assert ret.keySet() == ["literal"] as Set
+
+        ret = route(router, "/test/event/abc")
+        assert ret.keySet() == ["token", "tokens"] as Set
+        assert ret["token"] == [uuid: "abc"]
+        assert ret["tokens"] == [greeting: "test", uuid: "abc"]
+
+        assert route(router, "/test/event/abc/def").isEmpty()
+
+        router.unsubscribe("k2")
+        ret = route(router, "/test/event/abc")
+        assert ret.keySet() == ["tokens"] as Set
+
+        router.unsubscribe("k1")
+        router.unsubscribe("k3")
+        assert router.size() == 0
+        assert route(router, "/test/event").isEmpty()
+    }
+
+    void testGlob() {
+        EventPathRouter<String> router = new EventPathRouter<>()
+        router.subscribe("k1", "/*/event", "star")
+        router.subscribe("k2", "/?e?t/event", "question")
+        router.subscribe("k3", "/?e?t/*/{name}", "mixed")
+
+        def ret = route(router, "/test/event")
+        assert ret.keySet() == ["star", "question"] as Set
+
+        ret = route(router, "/test/event/xxx")
+        assert ret.keySet() == ["mixed"] as Set
+        assert ret["mixed"] == [name: "xxx"]
+
+        router.unsubscribe("k1")
+        assert route(router, "/test/event").keySet() == ["question"] as Set
+    }
+
+    void testResubscribe() {
+        EventPathRouter<String> router = new EventPathRouter<>()
+        router.subscribe("k1", "/a/b", "first")
+        router.subscribe("k1", "/a/c", "second")
+
+        assert route(router, "/a/b").isEmpty()
+        assert route(router, "/a/c").keySet() == ["second"] as Set
+        assert router.size() == 1
+    }
+
+    @Override
+    void test() {
+        testLiteralAndTokens()
+        testGlob()
+        testResubscribe()
+    }
+
+    @Override
+    void clean() {
+    }
+}
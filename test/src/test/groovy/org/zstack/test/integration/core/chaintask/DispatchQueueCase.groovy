@@ -0,0 +1,246 @@
+package org.zstack.test.integration.core.chaintask
+
+import org.zstack.core.CoreGlobalProperty
+import org.zstack.core.Platform
+import org.zstack.core.thread.ChainTask
+import org.zstack.core.thread.SyncTask
+import org.zstack.core.thread.SyncTaskChain
+import org.zstack.core.thread.ThreadFacade
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class DispatchQueueCase extends SubCase {
+    ThreadFacade thdf
+
+    boolean chainTaskQos = CoreGlobalProperty.CHAIN_TASK_QOS
+
+    @Override
+    void clean() {
+        CoreGlobalProperty.CHAIN_TASK_QOS = chainTaskQos
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+        thdf = bean(ThreadFacade.class)
+    }
+
+    void submit(String signature, String name, int maxPending, Closure runner, Closure rejected) {
+        thdf.chainSubmit(new ChainTask(null) {
+            @Override
+            String getSyncSignature() {
+                return signature
+            }
+
+            @Override
+            void run(SyncTaskChain chain) {
+                runner()
+                chain.next()
+            }
+
+            @Override
+            String getName() {
+                return name
+            }
+
+            @Override
+            protected int getMaxPendingTasks() {
+                return maxPending
+            }
+
+            @Override
+            protected String getDeduplicateString() {
+                return signature
+            }
+
+            @Override
+            protected void exceedMaxPendingCallback() {
+                rejected()
+            }
+        })
+    }
+
+    void testRejectedTaskDoesNotKeepQueue() {
+        CoreGlobalProperty.CHAIN_TASK_QOS = true
+        String signature = "dispatch-queue-reject-" + Platform.uuid
+
+        CountDownLatch running = new CountDownLatch(1)
+        CountDownLatch blocked = new CountDownLatch(1)
+        submit(signature, "blocker", 0, {
+            running.countDown()
+            blocked.await(30, TimeUnit.SECONDS)
+        }, {
+            assert false : "the first task of an idle queue must not be rejected"
+        })
+        assert running.await(10, TimeUnit.SECONDS)
+
+        AtomicBoolean rejectedRun = new AtomicBoolean(false)
+        AtomicBoolean rejected = new AtomicBoolean(false)
+        submit(signature, "rejected", 0, { rejectedRun.set(true) }, { rejected.set(true) })
+        assert rejected.get()
+        assert thdf.getChainTaskStatistics()[signature].pendingTaskNum == 0
+
+        blocked.countDown()
+        retryInSecs {
+            assert !thdf.isChainTaskRunning(signature)
+            assert !thdf.getChainTaskStatistics().containsKey(signature)
+        }
+        assert !rejectedRun.get()
+
+        // the rejection leaves no pending count behind, a new task of the signature runs
+        CountDownLatch done = new CountDownLatch(1)
+        submit(signature, "after", 0, { done.countDown() }, {
+            assert false : "the queue is empty, the task must not be rejected"
+        })
+        assert done.await(10, TimeUnit.SECONDS)
+        retryInSecs {
+            assert !thdf.isChainTaskRunning(signature)
+        }
+
+        CoreGlobalProperty.CHAIN_TASK_QOS = chainTaskQos
+    }
+
+    void testConcurrentSubmitKeepsOrder() {
+        String signature = "dispatch-queue-order-" + Platform.uuid
+        int threadNum = 8
+        int taskNum = 50
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        List<Integer> order = Collections.synchronizedList([])
+        CountDownLatch done = new CountDownLatch(threadNum * taskNum)
+        CountDownLatch start = new CountDownLatch(1)
+
+        List<Thread> threads = (0..<threadNum).collect { int t ->
+            Thread.start {
+                start.await()
+                (0..<taskNum).each { int i ->
+                    int seq = t * 1000 + i
+                    submit(signature, "task-$seq", -1, {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+                        order.add(seq)
+                        running.decrementAndGet()
+                        done.countDown()
+                    }, {})
+                }
+            }
+        }
+        start.countDown()
+        threads.each { it.join() }
+
+        assert done.await(30, TimeUnit.SECONDS)
+        assert maxRunning.get() == 1
+        assert order.size() == threadNum * taskNum
+        assert order.toSet().size() == threadNum * taskNum
+        // tasks submitted by one thread run in their submission order
+        (0..<threadNum).each { int t ->
+            List<Integer> seqs = order.findAll { it.intdiv(1000) == t }
+            assert seqs == seqs.sort(false)
+        }
+
+        retryInSecs {
+            assert !thdf.isChainTaskRunning(signature)
+        }
+    }
+
+    void testChainTaskSyncLevel() {
+        String signature = "dispatch-queue-chain-level-" + Platform.uuid
+        int level = 3
+        int taskNum = 30
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        CountDownLatch done = new CountDownLatch(taskNum)
+
+        (0..<taskNum).each {
+            thdf.chainSubmit(new ChainTask(null) {
+                @Override
+                String getSyncSignature() {
+                    return signature
+                }
+
+                @Override
+                void run(SyncTaskChain chain) {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+                    TimeUnit.MILLISECONDS.sleep(50)
+                    running.decrementAndGet()
+                    done.countDown()
+                    chain.next()
+                }
+
+                @Override
+                String getName() {
+                    return signature
+                }
+
+                @Override
+                protected int getSyncLevel() {
+                    return level
+                }
+            })
+        }
+
+        assert done.await(30, TimeUnit.SECONDS)
+        assert maxRunning.get() == level
+        retryInSecs {
+            assert !thdf.isChainTaskRunning(signature)
+        }
+    }
+
+    void testSyncTaskSyncLevel() {
+        String signature = "dispatch-queue-sync-level-" + Platform.uuid
+        int level = 2
+        int taskNum = 20
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        CountDownLatch done = new CountDownLatch(taskNum)
+
+        (0..<taskNum).each {
+            thdf.syncSubmit(new SyncTask<Void>() {
+                @Override
+                String getSyncSignature() {
+                    return signature
+                }
+
+                @Override
+                int getSyncLevel() {
+                    return level
+                }
+
+                @Override
+                String getName() {
+                    return signature
+                }
+
+                @Override
+                Void call() throws Exception {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+                    TimeUnit.MILLISECONDS.sleep(50)
+                    running.decrementAndGet()
+                    done.countDown()
+                    return null
+                }
+            })
+        }
+
+        assert done.await(30, TimeUnit.SECONDS)
+        assert maxRunning.get() == level
+        retryInSecs {
+            assert !thdf.getSyncTaskStatistics().containsKey(signature)
+        }
+    }
+
+    @Override
+    void test() {
+        testRejectedTaskDoesNotKeepQueue()
+        testConcurrentSubmitKeepsOrder()
+        testChainTaskSyncLevel()
+        testSyncTaskSyncLevel()
+    }
+}
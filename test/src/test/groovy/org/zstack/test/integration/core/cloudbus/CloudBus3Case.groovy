@@ -1,5 +1,7 @@
 package org.zstack.test.integration.core.cloudbus
 
+import org.springframework.http.HttpEntity
+import org.springframework.http.HttpStatus
 import org.zstack.core.Platform
 import org.zstack.core.cloudbus.*
 import org.zstack.core.db.DatabaseFacade
@@ -11,11 +13,14 @@ import org.zstack.header.managementnode.ManagementNodeState
 import org.zstack.header.managementnode.ManagementNodeVO
 import org.zstack.header.message.*
 import org.zstack.header.vm.APIQueryVmInstanceMsg
+import org.zstack.header.vm.APIStartVmInstanceEvent
 import org.zstack.header.vm.APIStartVmInstanceMsg
 import org.zstack.header.vm.StartVmInstanceMsg
 import org.zstack.test.integration.ZStackTest
 import org.zstack.testlib.SubCase
 
+import javax.servlet.http.HttpServletResponse
+
 import java.sql.Timestamp
 import java.time.LocalDateTime
 import java.util.concurrent.CountDownLatch
@@ -233,10 +238,54 @@ class CloudBus3Case extends SubCase {
         bus.unregisterService(service)
     }
 
+    void testPoisonedEventInBatch() {
+        CloudBus bus = bean(CloudBus.class)
+
+        List<String> apiIds = (1..3).collect { Platform.uuid }
+        Set<String> received = Collections.synchronizedSet(new HashSet<String>())
+        def receipt = bus.subscribeEvent({ Event e ->
+            String apiId = (e as APIEvent).apiId
+            if (apiIds.contains(apiId)) {
+                received.add(apiId)
+            }
+            return false
+        } as CloudBusEventListener, new APIStartVmInstanceEvent())
+
+        def events = apiIds.collect { new APIStartVmInstanceEvent(it) }
+        int status = 0
+        def rsp = [setStatus: { int s -> status = s }] as HttpServletResponse
+
+        try {
+            // the event in the middle can't be deserialized
+            String json = "[${CloudBusGson.toJson(events[0])},{\"org.zstack.NoSuchEvent\":{}},${CloudBusGson.toJson(events[2])}]"
+            bus.handleHttpEventsRequest(new HttpEntity<String>(json), rsp)
+            retryInSecs {
+                assert received == [apiIds[0], apiIds[2]] as Set
+                assert status == HttpStatus.OK.value()
+            }
+
+            received.clear()
+            status = 0
+            byte[] batch = CloudBusBinaryCodec.encodeFrames([
+                    CloudBusBinaryCodec.encode(events[0]),
+                    "poisoned".bytes,
+                    CloudBusBinaryCodec.encode(events[2])
+            ])
+            bus.handleBinaryHttpEventsRequest(batch, rsp)
+            retryInSecs {
+                assert received == [apiIds[0], apiIds[2]] as Set
+                assert status == HttpStatus.OK.value()
+            }
+        } finally {
+            receipt.unsubscribeAll()
+        }
+    }
+
     @Override
     void test() {
         testStepSend()
         testManagementNodeGone()
         testSendToMissingNode()
+        testPoisonedEventInBatch()
     }
 }
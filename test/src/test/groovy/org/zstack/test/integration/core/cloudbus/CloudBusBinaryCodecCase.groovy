@@ -0,0 +1,57 @@
+package org.zstack.test.integration.core.cloudbus
+
+import org.zstack.core.Platform
+import org.zstack.core.cloudbus.CloudBusBinaryCodec
+import org.zstack.core.cloudbus.CloudBusGlobalProperty
+import org.zstack.header.vm.StartVmInstanceMsg
+import org.zstack.testlib.SubCase
+
+class CloudBusBinaryCodecCase extends SubCase {
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+    }
+
+    void testRoundTrip(int compressThreshold) {
+        int threshold = CloudBusGlobalProperty.BINARY_TRANSPORT_COMPRESS_THRESHOLD
+        CloudBusGlobalProperty.BINARY_TRANSPORT_COMPRESS_THRESHOLD = compressThreshold
+
+        try {
+            StartVmInstanceMsg msg = new StartVmInstanceMsg(vmInstanceUuid: Platform.uuid, accountUuid: Platform.uuid)
+            msg.setServiceId("test:::service")
+            msg.putHeaderEntry("correlationId", msg.id)
+
+            CloudBusBinaryCodec.DecodedMessage decoded = CloudBusBinaryCodec.decode(CloudBusBinaryCodec.encode(msg))
+            assert decoded.message instanceof StartVmInstanceMsg
+            StartVmInstanceMsg m = decoded.message as StartVmInstanceMsg
+            assert m.id == msg.id
+            assert m.vmInstanceUuid == msg.vmInstanceUuid
+            assert m.accountUuid == msg.accountUuid
+            assert m.serviceId == msg.serviceId
+            assert m.getHeaderEntry("correlationId") == msg.id
+        } finally {
+            CloudBusGlobalProperty.BINARY_TRANSPORT_COMPRESS_THRESHOLD = threshold
+        }
+    }
+
+    void testDecodeGarbage() {
+        expect(Throwable.class) {
+            CloudBusBinaryCodec.decode("{}".bytes)
+        }
+    }
+
+    @Override
+    void test() {
+        testRoundTrip(Integer.MAX_VALUE)
+        testRoundTrip(0)
+        testDecodeGarbage()
+    }
+
+    @Override
+    void clean() {
+    }
+}
@@ -0,0 +1,304 @@
+package org.zstack.test.integration.core.cloudbus
+
+import org.zstack.core.Platform
+import org.zstack.core.cloudbus.CloudBusGlobalProperty
+import org.zstack.core.cloudbus.CloudBusTransport
+import org.zstack.core.cloudbus.EventOutboxStatistic
+import org.zstack.core.cloudbus.ManagementNodeNotFoundException
+import org.zstack.core.cloudbus.ResourceDestinationMaker
+import org.zstack.core.thread.ThreadFacade
+import org.zstack.header.managementnode.ManagementNodeInventory
+import org.zstack.header.message.APIEvent
+import org.zstack.header.message.Event
+import org.zstack.header.message.Message
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class CloudBusEventOutboxCase extends SubCase {
+    ThreadFacade thdf
+
+    int queueSize = CloudBusGlobalProperty.EVENT_OUTBOX_QUEUE_SIZE
+    long coalesceWindow = CloudBusGlobalProperty.EVENT_OUTBOX_COALESCE_WINDOW
+    int maxBatchSize = CloudBusGlobalProperty.EVENT_OUTBOX_MAX_BATCH_SIZE
+
+    @Override
+    void clean() {
+        resetProperties()
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+        thdf = bean(ThreadFacade.class)
+    }
+
+    void resetProperties() {
+        CloudBusGlobalProperty.EVENT_OUTBOX_QUEUE_SIZE = queueSize
+        CloudBusGlobalProperty.EVENT_OUTBOX_COALESCE_WINDOW = coalesceWindow
+        CloudBusGlobalProperty.EVENT_OUTBOX_MAX_BATCH_SIZE = maxBatchSize
+    }
+
+    // management nodes keyed by uuid, the value is the node ip
+    static class FakeDestinationMaker implements ResourceDestinationMaker {
+        Map<String, String> nodes = new ConcurrentHashMap<>()
+
+        static NodeInfo info(String uuid, String ip) {
+            return new NodeInfo(new ManagementNodeInventory(uuid: uuid, hostName: ip))
+        }
+
+        @Override
+        String makeDestination(String resourceUuid) {
+            return Platform.getManagementServerId()
+        }
+
+        @Override
+        boolean isManagedByUs(String resourceUuid) {
+            return true
+        }
+
+        @Override
+        Collection<String> getManagementNodesInHashRing() {
+            return nodes.keySet()
+        }
+
+        @Override
+        NodeInfo getNodeInfo(String nodeUuid) {
+            String ip = nodes[nodeUuid]
+            if (ip == null) {
+                throw new ManagementNodeNotFoundException(nodeUuid)
+            }
+
+            return info(nodeUuid, ip)
+        }
+
+        @Override
+        Collection<NodeInfo> getAllNodeInfo() {
+            return nodes.collect { uuid, ip -> info(uuid, ip) }
+        }
+
+        @Override
+        int getManagementNodeCount() {
+            return nodes.size()
+        }
+
+        @Override
+        boolean isNodeInCircle(String nodeId) {
+            return nodes.containsKey(nodeId)
+        }
+    }
+
+    // records delivered events per ip, a peer can be made to block or fail
+    static class FakeTransport implements CloudBusTransport {
+        Map<String, List<String>> delivered = new ConcurrentHashMap<>()
+        Map<String, List<Integer>> batches = new ConcurrentHashMap<>()
+        Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>()
+        Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>()
+        Map<String, CountDownLatch> blocked = new ConcurrentHashMap<>()
+        Map<String, CountDownLatch> entered = new ConcurrentHashMap<>()
+        Set<String> failing = ConcurrentHashMap.newKeySet()
+
+        @Override
+        String getName() {
+            return "fake"
+        }
+
+        @Override
+        void send(String ip, Message msg) {
+            throw new UnsupportedOperationException()
+        }
+
+        @Override
+        void sendEvents(String ip, List<Event> events) {
+            AtomicInteger running = inFlight.computeIfAbsent(ip, { new AtomicInteger() })
+            maxInFlight.computeIfAbsent(ip, { new AtomicInteger() }).accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+
+            try {
+                entered[ip]?.countDown()
+                blocked[ip]?.await(30, TimeUnit.SECONDS)
+
+                if (failing.contains(ip)) {
+                    throw new RuntimeException("on purpose")
+                }
+
+                batches.computeIfAbsent(ip, { Collections.synchronizedList([]) }).add(events.size())
+                delivered.computeIfAbsent(ip, { Collections.synchronizedList([]) }).addAll(events.collect { (it as APIEvent).apiId })
+            } finally {
+                running.decrementAndGet()
+            }
+        }
+
+        List<String> of(String ip) {
+            return delivered[ip] == null ? [] : new ArrayList<>(delivered[ip])
+        }
+    }
+
+    FakeDestinationMaker destMaker
+    FakeTransport transport
+    // CloudBusEventOutbox is package private
+    def outbox
+
+    void newOutbox(String... peerIps) {
+        destMaker = new FakeDestinationMaker()
+        destMaker.nodes[Platform.getManagementServerId()] = "127.0.0.1"
+        peerIps.each { destMaker.nodes[Platform.uuid] = it }
+        transport = new FakeTransport()
+        def cons = Class.forName("org.zstack.core.cloudbus.CloudBusEventOutbox")
+                .getDeclaredConstructor(ThreadFacade.class, ResourceDestinationMaker.class, CloudBusTransport.class)
+        cons.setAccessible(true)
+        outbox = cons.newInstance(thdf, destMaker, transport)
+    }
+
+    String uuidOf(String ip) {
+        return destMaker.nodes.find { it.value == ip }.key
+    }
+
+    void publish(int from, int to) {
+        (from..<to).each { outbox.publish(new APIEvent(it.toString())) }
+    }
+
+    static List<String> seqs(int from, int to) {
+        return (from..<to).collect { it.toString() }
+    }
+
+    void testOrderingPerPeer() {
+        resetProperties()
+        CloudBusGlobalProperty.EVENT_OUTBOX_MAX_BATCH_SIZE = 50
+        newOutbox("127.0.0.2", "127.0.0.3")
+
+        int num = 1000
+        List<Thread> publishers = (0..<4).collect { int t ->
+            Thread.start {
+                (0..<num.intdiv(4)).each { int i ->
+                    outbox.publish(new APIEvent((t * num + i).toString()))
+                }
+            }
+        }
+        publishers.each { it.join() }
+
+        retryInSecs {
+            assert transport.of("127.0.0.2").size() == num
+            assert transport.of("127.0.0.3").size() == num
+        }
+
+        ["127.0.0.2", "127.0.0.3"].each { String ip ->
+            List<Integer> received = transport.of(ip).collect { it as Integer }
+            // events of one publisher arrive in their publishing order
+            (0..<4).each { int t ->
+                List<Integer> s = received.findAll { it.intdiv(num) == t }
+                assert s.size() == num.intdiv(4)
+                assert s == s.sort(false)
+            }
+
+            // one batch in flight per peer, events are coalesced into bounded batches
+            assert transport.maxInFlight[ip].get() == 1
+            assert transport.batches[ip].every { it <= 50 }
+            assert transport.batches[ip].size() < num
+
+            EventOutboxStatistic s = outbox.getStatistics()[uuidOf(ip)]
+            assert s.sent == num
+            assert s.dropped == 0
+            assert s.queued == 0
+        }
+
+        // events are not sent to the node itself
+        assert transport.of("127.0.0.1").isEmpty()
+        assert !outbox.getStatistics().containsKey(Platform.getManagementServerId())
+    }
+
+    void testOverflowDropsNewEvents() {
+        resetProperties()
+        CloudBusGlobalProperty.EVENT_OUTBOX_QUEUE_SIZE = 5
+        newOutbox("127.0.0.2", "127.0.0.3")
+
+        CountDownLatch blocked = new CountDownLatch(1)
+        CountDownLatch entered = new CountDownLatch(1)
+        transport.blocked["127.0.0.2"] = blocked
+        transport.entered["127.0.0.2"] = entered
+
+        publish(0, 1)
+        assert entered.await(10, TimeUnit.SECONDS)
+
+        // the stuck peer keeps 5 events, the rest are dropped
+        publish(1, 21)
+        EventOutboxStatistic stuck = outbox.getStatistics()[uuidOf("127.0.0.2")]
+        assert stuck.queued == 5
+        assert stuck.dropped == 15
+
+        // the other peer is not delayed
+        retryInSecs {
+            assert transport.of("127.0.0.3") == seqs(0, 21)
+        }
+
+        blocked.countDown()
+        retryInSecs {
+            assert transport.of("127.0.0.2") == seqs(0, 6)
+        }
+
+        stuck = outbox.getStatistics()[uuidOf("127.0.0.2")]
+        assert stuck.sent == 6
+        assert stuck.dropped == 15
+        assert stuck.queued == 0
+    }
+
+    void testFailedDeliveryDoesNotStopOutbox() {
+        resetProperties()
+        newOutbox("127.0.0.2")
+        String uuid = uuidOf("127.0.0.2")
+
+        transport.failing.add("127.0.0.2")
+        publish(0, 10)
+        retryInSecs {
+            assert outbox.getStatistics()[uuid].failed == 10
+        }
+
+        transport.failing.remove("127.0.0.2")
+        publish(10, 20)
+        retryInSecs {
+            assert transport.of("127.0.0.2") == seqs(10, 20)
+        }
+        assert outbox.getStatistics()[uuid].sent == 10
+    }
+
+    void testPeerGoingAway() {
+        resetProperties()
+        CloudBusGlobalProperty.EVENT_OUTBOX_COALESCE_WINDOW = 500
+        newOutbox("127.0.0.2", "127.0.0.3")
+        String leaving = uuidOf("127.0.0.2")
+
+        publish(0, 10)
+        assert outbox.getStatistics()[leaving].queued == 10
+
+        // the node leaves before its outbox is flushed
+        destMaker.nodes.remove(leaving)
+
+        retryInSecs {
+            assert transport.of("127.0.0.3") == seqs(0, 10)
+            assert !outbox.getStatistics().containsKey(leaving)
+        }
+        assert transport.of("127.0.0.2").isEmpty()
+
+        // no outbox is created for the node once it has gone
+        publish(10, 20)
+        retryInSecs {
+            assert transport.of("127.0.0.3") == seqs(0, 20)
+        }
+        assert !outbox.getStatistics().containsKey(leaving)
+        assert transport.of("127.0.0.2").isEmpty()
+    }
+
+    @Override
+    void test() {
+        testOrderingPerPeer()
+        testOverflowDropsNewEvents()
+        testFailedDeliveryDoesNotStopOutbox()
+        testPeerGoingAway()
+    }
+}
@@ -0,0 +1,321 @@
+package org.zstack.test.integration.core.job
+
+import org.zstack.core.Platform
+import org.zstack.core.cloudbus.CloudBus
+import org.zstack.core.db.DatabaseFacade
+import org.zstack.core.db.Q
+import org.zstack.core.db.SQL
+import org.zstack.core.job.*
+import org.zstack.header.core.Completion
+import org.zstack.header.core.ReturnValueCompletion
+import org.zstack.header.errorcode.ErrorCode
+import org.zstack.header.managementnode.ManagementNodeInventory
+import org.zstack.header.managementnode.ManagementNodeState
+import org.zstack.header.managementnode.ManagementNodeVO
+import org.zstack.testlib.SubCase
+import org.zstack.utils.serializable.SerializableHelper
+
+import java.sql.Timestamp
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class JobQueueFacadeCase extends SubCase {
+    JobQueueFacade jobf
+    DatabaseFacade dbf
+    CloudBus bus
+
+    static class CountingJob implements Job {
+        static Map<String, AtomicInteger> runs = new ConcurrentHashMap<>()
+        static Set<Job> instances = ConcurrentHashMap.newKeySet()
+
+        @JobContext
+        String name
+
+        CountingJob() {
+        }
+
+        CountingJob(String name) {
+            this.name = name
+        }
+
+        @Override
+        void run(ReturnValueCompletion<Object> completion) {
+            runs.computeIfAbsent(name, { new AtomicInteger() }).incrementAndGet()
+            instances.add(this)
+            completion.success(null)
+        }
+    }
+
+    @RestartableJob
+    static class RestartableCountingJob extends CountingJob {
+        RestartableCountingJob() {
+        }
+
+        RestartableCountingJob(String name) {
+            super(name)
+        }
+    }
+
+    @Override
+    void clean() {
+        SQL.New(JobQueueVO.class).hardDelete()
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+        jobf = bean(JobQueueFacade.class)
+        dbf = bean(DatabaseFacade.class)
+        bus = bean(CloudBus.class)
+    }
+
+    static byte[] context(Job job) {
+        def cons = Class.forName("org.zstack.core.job.JobContextObject").getDeclaredConstructor(Job.class)
+        cons.setAccessible(true)
+        return SerializableHelper.writeObject(cons.newInstance(job))
+    }
+
+    long createQueue(String name, String worker) {
+        JobQueueVO q = new JobQueueVO()
+        q.setName(name)
+        q.setOwner(name)
+        q.setWorkerManagementNodeId(worker)
+        return dbf.persistAndRefresh(q).getId()
+    }
+
+    long addJob(long queueId, Job job, JobState state, String issuer) {
+        JobQueueEntryVO e = new JobQueueEntryVO()
+        e.setJobQueueId(queueId)
+        e.setName(job.getClass().getName())
+        e.setOwner("test")
+        e.setContext(context(job))
+        e.setRestartable(job.getClass().isAnnotationPresent(RestartableJob.class))
+        e.setIssuerManagementNodeId(issuer)
+        e.setState(state)
+        e.setInDate(new Timestamp(System.currentTimeMillis()))
+        return dbf.persistAndRefresh(e).getId()
+    }
+
+    JobState stateOf(long jobId) {
+        return Q.New(JobQueueEntryVO.class).select(JobQueueEntryVO_.state).eq(JobQueueEntryVO_.id, jobId).findValue()
+    }
+
+    String workerOf(long queueId) {
+        return Q.New(JobQueueVO.class).select(JobQueueVO_.workerManagementNodeId).eq(JobQueueVO_.id, queueId).findValue()
+    }
+
+    void kickLocally(long queueId, String queueName) {
+        KickJobQueueMsg msg = new KickJobQueueMsg()
+        msg.setJobQueueId(queueId)
+        msg.setJobQueueName(queueName)
+        bus.makeLocalServiceId(msg, JobQueueConstant.SERVICE_ID)
+        bus.send(msg)
+    }
+
+    void testLocalFastPath() {
+        CountingJob job = new CountingJob(Platform.uuid)
+        CountDownLatch latch = new CountDownLatch(1)
+        ErrorCode error = null
+
+        jobf.execute("local-queue", "test", job, new Completion(null) {
+            @Override
+            void success() {
+                latch.countDown()
+            }
+
+            @Override
+            void fail(ErrorCode errorCode) {
+                error = errorCode
+                latch.countDown()
+            }
+        })
+
+        assert latch.await(10, TimeUnit.SECONDS)
+        assert error == null
+        assert CountingJob.runs[job.name].get() == 1
+        // the issued instance runs, its context is not loaded from the database
+        assert CountingJob.instances.contains(job)
+
+        long queueId = Q.New(JobQueueVO.class).select(JobQueueVO_.id).eq(JobQueueVO_.name, "local-queue").findValue()
+        retryInSecs {
+            assert workerOf(queueId) == null
+        }
+    }
+
+    void testConcurrentJobsRunOneByOne() {
+        int num = 50
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        List<Integer> order = Collections.synchronizedList([])
+        CountDownLatch latch = new CountDownLatch(num)
+
+        List<Thread> threads = (0..<5).collect { int t ->
+            Thread.start {
+                (0..<num.intdiv(5)).each { int i ->
+                    int seq = t * 100 + i
+                    jobf.execute("concurrent-queue", "test", new Job() {
+                        @Override
+                        void run(ReturnValueCompletion<Object> completion) {
+                            maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+                            TimeUnit.MILLISECONDS.sleep(5)
+                            order.add(seq)
+                            running.decrementAndGet()
+                            completion.success(null)
+                        }
+                    }, new Completion(null) {
+                        @Override
+                        void success() {
+                            latch.countDown()
+                        }
+
+                        @Override
+                        void fail(ErrorCode errorCode) {
+                        }
+                    })
+                }
+            }
+        }
+        threads.each { it.join() }
+
+        assert latch.await(30, TimeUnit.SECONDS)
+        assert maxRunning.get() == 1
+        assert order.size() == num
+        assert order.toSet().size() == num
+        // jobs of one issuing thread run in their issuing order
+        (0..<5).each { int t ->
+            List<Integer> seqs = order.findAll { it.intdiv(100) == t }
+            assert seqs == seqs.sort(false)
+        }
+
+        long queueId = Q.New(JobQueueVO.class).select(JobQueueVO_.id).eq(JobQueueVO_.name, "concurrent-queue").findValue()
+        assert Q.New(JobQueueEntryVO.class).eq(JobQueueEntryVO_.jobQueueId, queueId)
+                .eq(JobQueueEntryVO_.state, JobState.Completed).count() == num
+        retryInSecs {
+            // released when empty, and not left claimed by a job added while releasing
+            assert workerOf(queueId) == null
+        }
+    }
+
+    void testQueueClaimedByAnotherNode() {
+        ManagementNodeVO node = new ManagementNodeVO(
+                hostName: "127.0.0.10",
+                heartBeat: new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)).toTimestamp(),
+                uuid: Platform.uuid,
+                port: 8989,
+                state: ManagementNodeState.RUNNING
+        )
+        dbf.persist(node)
+
+        String queueName = "claimed-queue"
+        long queueId = createQueue(queueName, node.uuid)
+        CountingJob job = new CountingJob(Platform.uuid)
+        long jobId = addJob(queueId, job, JobState.Pending, Platform.getManagementServerId())
+
+        kickLocally(queueId, queueName)
+        TimeUnit.SECONDS.sleep(1)
+        // the claim fails, the job is left to the worker
+        assert stateOf(jobId) == JobState.Pending
+        assert workerOf(queueId) == node.uuid
+        assert CountingJob.runs[job.name] == null
+
+        // the other node releases the queue
+        SQL.New(JobQueueVO.class).eq(JobQueueVO_.id, queueId).set(JobQueueVO_.workerManagementNodeId, null).update()
+        kickLocally(queueId, queueName)
+
+        retryInSecs {
+            assert stateOf(jobId) == JobState.Completed
+            assert workerOf(queueId) == null
+        }
+        assert CountingJob.runs[job.name].get() == 1
+
+        dbf.removeByPrimaryKey(node.uuid, ManagementNodeVO.class)
+    }
+
+    void testTakeOverAfterNodeLeft() {
+        String leftNodeId = Platform.uuid
+        String myId = Platform.getManagementServerId()
+        long queueId = createQueue("orphan-queue", null)
+
+        CountingJob restartable = new RestartableCountingJob(Platform.uuid)
+        CountingJob notRestartable = new CountingJob(Platform.uuid)
+        CountingJob orphan = new CountingJob(Platform.uuid)
+        long restartableId = addJob(queueId, restartable, JobState.Processing, myId)
+        long notRestartableId = addJob(queueId, notRestartable, JobState.Processing, myId)
+        // issued by the left node, its issuer is cleared by the foreign key
+        long orphanId = addJob(queueId, orphan, JobState.Pending, null)
+
+        jobf.nodeLeft(new ManagementNodeInventory(uuid: leftNodeId))
+
+        retryInSecs {
+            assert stateOf(restartableId) == JobState.Completed
+            assert stateOf(notRestartableId) == JobState.Error
+            assert !Q.New(JobQueueEntryVO.class).eq(JobQueueEntryVO_.id, orphanId).isExists()
+            assert workerOf(queueId) == null
+        }
+
+        assert CountingJob.runs[restartable.name].get() == 1
+        assert CountingJob.runs[notRestartable.name] == null
+        assert CountingJob.runs[orphan.name] == null
+    }
+
+    void testTakeOverDoesNotTouchRunningJob() {
+        String queueName = "busy-queue"
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch proceed = new CountDownLatch(1)
+        CountDownLatch done = new CountDownLatch(1)
+        ErrorCode error = null
+
+        jobf.execute(queueName, "test", new Job() {
+            @Override
+            void run(ReturnValueCompletion<Object> completion) {
+                started.countDown()
+                proceed.await(30, TimeUnit.SECONDS)
+                completion.success(null)
+            }
+        }, new Completion(null) {
+            @Override
+            void success() {
+                done.countDown()
+            }
+
+            @Override
+            void fail(ErrorCode errorCode) {
+                error = errorCode
+                done.countDown()
+            }
+        })
+
+        assert started.await(10, TimeUnit.SECONDS)
+        long queueId = Q.New(JobQueueVO.class).select(JobQueueVO_.id).eq(JobQueueVO_.name, queueName).findValue()
+        long jobId = Q.New(JobQueueEntryVO.class).select(JobQueueEntryVO_.id).eq(JobQueueEntryVO_.jobQueueId, queueId).findValue()
+        int version = Q.New(JobQueueEntryVO.class).select(JobQueueEntryVO_.version).eq(JobQueueEntryVO_.id, jobId).findValue()
+
+        // the queue looks unowned to the take-over, while this node is running a job in it
+        SQL.New(JobQueueVO.class).eq(JobQueueVO_.id, queueId).set(JobQueueVO_.workerManagementNodeId, null).update()
+        jobf.nodeLeft(new ManagementNodeInventory(uuid: Platform.uuid))
+        TimeUnit.SECONDS.sleep(1)
+
+        assert stateOf(jobId) == JobState.Processing
+        assert Q.New(JobQueueEntryVO.class).select(JobQueueEntryVO_.version).eq(JobQueueEntryVO_.id, jobId).findValue() == version
+
+        proceed.countDown()
+        assert done.await(10, TimeUnit.SECONDS)
+        assert error == null
+        assert stateOf(jobId) == JobState.Completed
+    }
+
+    @Override
+    void test() {
+        testLocalFastPath()
+        testConcurrentJobsRunOneByOne()
+        testQueueClaimedByAnotherNode()
+        testTakeOverAfterNodeLeft()
+        testTakeOverDoesNotTouchRunningJob()
+    }
+}
@@ -0,0 +1,267 @@
+package org.zstack.test.integration.core.rest
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.CoreGlobalProperty
+import org.zstack.header.errorcode.ErrorCode
+import org.zstack.header.errorcode.SysErrors
+import org.zstack.header.rest.AsyncRESTCallback
+import org.zstack.header.rest.RESTFacade
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.HttpError
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class AsyncHttpEngineCase extends SubCase {
+    EnvSpec envSpec
+    RESTFacade restf
+
+    boolean simulatorsOn = CoreGlobalProperty.SIMULATORS_ON
+    int maxRetries = CoreGlobalProperty.REST_FACADE_ASYNC_MAX_RETRIES
+    int retryInterval = CoreGlobalProperty.REST_FACADE_ASYNC_RETRY_INTERVAL
+    int maxInFlight = CoreGlobalProperty.REST_FACADE_ASYNC_MAX_IN_FLIGHT_PER_DESTINATION
+
+    @Override
+    void clean() {
+        restoreProperties()
+        envSpec.delete()
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+        envSpec = env {
+            // nothing
+        }
+    }
+
+    void restoreProperties() {
+        CoreGlobalProperty.SIMULATORS_ON = simulatorsOn
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_RETRIES = maxRetries
+        CoreGlobalProperty.REST_FACADE_ASYNC_RETRY_INTERVAL = retryInterval
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_IN_FLIGHT_PER_DESTINATION = maxInFlight
+    }
+
+    void resetProperties() {
+        restoreProperties()
+        // requests are not retried in unit tests unless simulators are on
+        CoreGlobalProperty.SIMULATORS_ON = true
+        CoreGlobalProperty.REST_FACADE_ASYNC_RETRY_INTERVAL = 1
+    }
+
+    static class Result {
+        CountDownLatch latch = new CountDownLatch(1)
+        ErrorCode error
+        String body
+
+        AsyncRESTCallback callback() {
+            return new AsyncRESTCallback(null) {
+                @Override
+                void fail(ErrorCode err) {
+                    error = err
+                    latch.countDown()
+                }
+
+                @Override
+                void success(HttpEntity<String> responseEntity) {
+                    body = responseEntity.body
+                    latch.countDown()
+                }
+            }
+        }
+
+        void await() {
+            assert latch.await(30, TimeUnit.SECONDS)
+        }
+    }
+
+    Result post(String url, long timeout = 30) {
+        Result r = new Result()
+        restf.asyncJsonPost(url, "{}", r.callback(), TimeUnit.SECONDS, timeout)
+        return r
+    }
+
+    static String simulatorUrl(String path) {
+        return "http://127.0.0.1:8989$path"
+    }
+
+    // accepts connections and closes them without responding
+    static class ClosingServer {
+        ServerSocket socket = new ServerSocket(0)
+        AtomicInteger accepted = new AtomicInteger()
+        Thread thread = Thread.start {
+            while (!socket.isClosed()) {
+                try {
+                    Socket s = socket.accept()
+                    accepted.incrementAndGet()
+                    s.close()
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:${socket.localPort}$path"
+        }
+
+        void close() {
+            socket.close()
+            thread.join()
+        }
+    }
+
+    void testRetryOnIOFailure() {
+        resetProperties()
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_RETRIES = 2
+
+        ClosingServer server = new ClosingServer()
+        try {
+            Result r = post(server.url("/async-http-io-failure"))
+            r.await()
+
+            assert r.error != null
+            assert r.error.code == SysErrors.IO_ERROR.toString()
+            assert server.accepted.get() == 3
+        } finally {
+            server.close()
+        }
+
+        // the request goes through once the destination recovers
+        AtomicInteger calls = new AtomicInteger()
+        envSpec.simulator("/async-http-recover") {
+            if (calls.incrementAndGet() <= 2) {
+                throw new HttpError(503, "on purpose")
+            }
+
+            return [result: "ok"]
+        }
+
+        Result r = post(simulatorUrl("/async-http-recover"))
+        r.await()
+        assert r.error == null
+        assert r.body.contains("ok")
+        assert calls.get() == 3
+    }
+
+    void testRetriesExhaustedOnErrorStatus() {
+        resetProperties()
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_RETRIES = 2
+
+        AtomicInteger calls = new AtomicInteger()
+        envSpec.simulator("/async-http-error-status") {
+            calls.incrementAndGet()
+            throw new HttpError(503, "on purpose")
+        }
+
+        Result r = post(simulatorUrl("/async-http-error-status"))
+        r.await()
+
+        assert r.error != null
+        assert r.error.code == SysErrors.HTTP_ERROR.toString()
+        assert calls.get() == 3
+        TimeUnit.SECONDS.sleep(2)
+        assert calls.get() == 3
+    }
+
+    void testInFlightPerDestination() {
+        resetProperties()
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_IN_FLIGHT_PER_DESTINATION = 2
+
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        envSpec.simulator("/async-http-in-flight") {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+            TimeUnit.MILLISECONDS.sleep(200)
+            running.decrementAndGet()
+            return [:]
+        }
+
+        List<Result> results = (0..<10).collect { post(simulatorUrl("/async-http-in-flight")) }
+        results.each {
+            it.await()
+            assert it.error == null
+        }
+        assert maxRunning.get() == 2
+    }
+
+    void testFailuresReleaseInFlightSlot() {
+        resetProperties()
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_IN_FLIGHT_PER_DESTINATION = 1
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_RETRIES = 0
+
+        envSpec.simulator("/async-http-rejected") {
+            throw new HttpError(400, "on purpose")
+        }
+        envSpec.simulator("/async-http-accepted") {
+            return [:]
+        }
+
+        // error responses release the only slot of the destination
+        List<Result> rejected = (0..<3).collect { post(simulatorUrl("/async-http-rejected")) }
+        List<Result> accepted = (0..<3).collect { post(simulatorUrl("/async-http-accepted")) }
+        rejected.each {
+            it.await()
+            assert it.error.code == SysErrors.HTTP_ERROR.toString()
+        }
+        accepted.each {
+            it.await()
+            assert it.error == null
+        }
+
+        // so do I/O failures
+        ClosingServer server = new ClosingServer()
+        try {
+            List<Result> failed = (0..<3).collect { post(server.url("/async-http-io-failure")) }
+            failed.each {
+                it.await()
+                assert it.error.code == SysErrors.IO_ERROR.toString()
+            }
+            assert server.accepted.get() == 3
+        } finally {
+            server.close()
+        }
+    }
+
+    void testTimeoutCancelsRetries() {
+        resetProperties()
+        CoreGlobalProperty.REST_FACADE_ASYNC_MAX_RETRIES = 100
+
+        AtomicInteger calls = new AtomicInteger()
+        envSpec.simulator("/async-http-timeout") {
+            calls.incrementAndGet()
+            throw new HttpError(503, "on purpose")
+        }
+
+        Result r = post(simulatorUrl("/async-http-timeout"), 2)
+        r.await()
+        assert r.error.code == SysErrors.TIMEOUT.toString()
+
+        // no more attempts once the caller has timed out
+        int attempts = calls.get()
+        assert attempts < 100
+        TimeUnit.SECONDS.sleep(3)
+        assert calls.get() <= attempts + 1
+        int stopped = calls.get()
+        TimeUnit.SECONDS.sleep(2)
+        assert calls.get() == stopped
+    }
+
+    @Override
+    void test() {
+        restf = bean(RESTFacade.class)
+
+        envSpec.create {
+            testRetryOnIOFailure()
+            testRetriesExhaustedOnErrorStatus()
+            testInFlightPerDestination()
+            testFailuresReleaseInFlightSlot()
+            testTimeoutCancelsRetries()
+        }
+    }
+}
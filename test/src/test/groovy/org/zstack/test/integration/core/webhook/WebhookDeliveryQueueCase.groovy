@@ -0,0 +1,225 @@
+package org.zstack.test.integration.core.webhook
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.Platform
+import org.zstack.core.webhook.WebhookDeliveryQueue
+import org.zstack.core.webhook.WebhookGlobalProperty
+import org.zstack.header.core.webhooks.WebhookInventory
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.HttpError
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class WebhookDeliveryQueueCase extends SubCase {
+    EnvSpec envSpec
+    WebhookDeliveryQueue deliveryQueue
+
+    int queueSize = WebhookGlobalProperty.DELIVERY_QUEUE_SIZE
+    int concurrency = WebhookGlobalProperty.DELIVERY_CONCURRENCY_PER_ENDPOINT
+    int maxRetries = WebhookGlobalProperty.DELIVERY_MAX_RETRIES
+    int retryInterval = WebhookGlobalProperty.DELIVERY_RETRY_INTERVAL
+
+    @Override
+    void clean() {
+        resetProperties()
+        envSpec.delete()
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+        spring {
+            include("webhook.xml")
+        }
+    }
+
+    @Override
+    void environment() {
+        envSpec = env {
+            // nothing
+        }
+    }
+
+    void resetProperties() {
+        WebhookGlobalProperty.DELIVERY_QUEUE_SIZE = queueSize
+        WebhookGlobalProperty.DELIVERY_CONCURRENCY_PER_ENDPOINT = concurrency
+        WebhookGlobalProperty.DELIVERY_MAX_RETRIES = maxRetries
+        WebhookGlobalProperty.DELIVERY_RETRY_INTERVAL = retryInterval
+    }
+
+    static WebhookInventory hook(String path) {
+        WebhookInventory inv = new WebhookInventory()
+        inv.setUuid(Platform.uuid)
+        inv.setName(path)
+        inv.setUrl("http://127.0.0.1:8989$path")
+        return inv
+    }
+
+    void deliver(String path, int num) {
+        WebhookInventory inv = hook(path)
+        (0..<num).each { deliveryQueue.deliver([inv], "{\"seq\": $it}") }
+    }
+
+    void testConcurrencyPerEndpoint() {
+        resetProperties()
+        WebhookGlobalProperty.DELIVERY_CONCURRENCY_PER_ENDPOINT = 2
+
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger maxRunning = new AtomicInteger()
+        AtomicInteger delivered = new AtomicInteger()
+        envSpec.simulator("/webhook-concurrency") {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+            TimeUnit.MILLISECONDS.sleep(200)
+            running.decrementAndGet()
+            delivered.incrementAndGet()
+            return [:]
+        }
+
+        deliver("/webhook-concurrency", 10)
+
+        retryInSecs {
+            assert delivered.get() == 10
+        }
+        assert maxRunning.get() <= 2
+    }
+
+    void testEndpointsDoNotBlockEachOther() {
+        resetProperties()
+
+        CountDownLatch blocked = new CountDownLatch(1)
+        AtomicInteger slowDelivered = new AtomicInteger()
+        AtomicInteger fastDelivered = new AtomicInteger()
+        envSpec.simulator("/webhook-stuck") {
+            blocked.await(30, TimeUnit.SECONDS)
+            slowDelivered.incrementAndGet()
+            return [:]
+        }
+        envSpec.simulator("/webhook-fast") {
+            fastDelivered.incrementAndGet()
+            return [:]
+        }
+
+        deliver("/webhook-stuck", 5)
+        deliver("/webhook-fast", 5)
+
+        retryInSecs {
+            assert fastDelivered.get() == 5
+        }
+        assert slowDelivered.get() == 0
+
+        blocked.countDown()
+        retryInSecs {
+            assert slowDelivered.get() == 5
+        }
+    }
+
+    void testQueueBound() {
+        resetProperties()
+        WebhookGlobalProperty.DELIVERY_QUEUE_SIZE = 3
+        WebhookGlobalProperty.DELIVERY_CONCURRENCY_PER_ENDPOINT = 1
+
+        CountDownLatch entered = new CountDownLatch(1)
+        CountDownLatch blocked = new CountDownLatch(1)
+        AtomicInteger delivered = new AtomicInteger()
+        envSpec.simulator("/webhook-bound") {
+            entered.countDown()
+            blocked.await(30, TimeUnit.SECONDS)
+            delivered.incrementAndGet()
+            return [:]
+        }
+
+        WebhookInventory inv = hook("/webhook-bound")
+        deliveryQueue.deliver([inv], "{}")
+        assert entered.await(10, TimeUnit.SECONDS)
+
+        // the worker is stuck on the first request, only 3 of the rest are queued
+        (0..<9).each { deliveryQueue.deliver([inv], "{}") }
+        blocked.countDown()
+
+        retryInSecs {
+            assert delivered.get() == 4
+        }
+        TimeUnit.SECONDS.sleep(1)
+        assert delivered.get() == 4
+    }
+
+    void testRetryOnServerError() {
+        resetProperties()
+        WebhookGlobalProperty.DELIVERY_RETRY_INTERVAL = 1
+        WebhookGlobalProperty.DELIVERY_MAX_RETRIES = 5
+
+        AtomicInteger calls = new AtomicInteger()
+        AtomicInteger delivered = new AtomicInteger()
+        envSpec.simulator("/webhook-retry") {
+            if (calls.incrementAndGet() <= 2) {
+                throw new HttpError(503, "on purpose")
+            }
+
+            delivered.incrementAndGet()
+            return [:]
+        }
+
+        deliver("/webhook-retry", 1)
+
+        retryInSecs {
+            assert delivered.get() == 1
+        }
+        assert calls.get() == 3
+    }
+
+    void testGiveUpAfterMaxRetries() {
+        resetProperties()
+        WebhookGlobalProperty.DELIVERY_RETRY_INTERVAL = 1
+        WebhookGlobalProperty.DELIVERY_MAX_RETRIES = 2
+
+        AtomicInteger calls = new AtomicInteger()
+        envSpec.simulator("/webhook-give-up") {
+            calls.incrementAndGet()
+            throw new HttpError(503, "on purpose")
+        }
+
+        deliver("/webhook-give-up", 1)
+
+        retryInSecs {
+            assert calls.get() == 3
+        }
+        TimeUnit.SECONDS.sleep(4)
+        assert calls.get() == 3
+    }
+
+    void testNoRetryOnClientError() {
+        resetProperties()
+        WebhookGlobalProperty.DELIVERY_RETRY_INTERVAL = 1
+
+        AtomicInteger calls = new AtomicInteger()
+        envSpec.simulator("/webhook-rejected") {
+            calls.incrementAndGet()
+            throw new HttpError(400, "on purpose")
+        }
+
+        deliver("/webhook-rejected", 1)
+
+        retryInSecs {
+            assert calls.get() == 1
+        }
+        TimeUnit.SECONDS.sleep(2)
+        assert calls.get() == 1
+    }
+
+    @Override
+    void test() {
+        deliveryQueue = bean(WebhookDeliveryQueue.class)
+
+        envSpec.create {
+            testConcurrencyPerEndpoint()
+            testEndpointsDoNotBlockEachOther()
+            testQueueBound()
+            testRetryOnServerError()
+            testGiveUpAfterMaxRetries()
+            testNoRetryOnClientError()
+        }
+    }
+}
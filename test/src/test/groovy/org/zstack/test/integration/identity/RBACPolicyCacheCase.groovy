@@ -0,0 +1,156 @@
+package org.zstack.test.integration.identity
+
+import org.zstack.sdk.PolicyInventory
+import org.zstack.sdk.PolicyStatement
+import org.zstack.sdk.PolicyStatementEffect
+import org.zstack.sdk.SessionInventory
+import org.zstack.sdk.UserGroupInventory
+import org.zstack.sdk.UserInventory
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+class RBACPolicyCacheCase extends SubCase {
+    EnvSpec env
+    SessionInventory accountSession
+    SessionInventory userSession
+    UserInventory user
+    PolicyInventory denyQueryZone
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            zone {
+                name = "zone"
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            prepare()
+            testPolicyAttachedToUser()
+            testPolicyAttachedToGroup()
+            testPolicyDeleted()
+        }
+    }
+
+    void prepare() {
+        createAccount {
+            name = "policy-cache"
+            password = "password"
+        }
+
+        accountSession = logInByAccount {
+            accountName = "policy-cache"
+            password = "password"
+        } as SessionInventory
+
+        user = createUser {
+            name = "user"
+            password = "password"
+            sessionId = accountSession.uuid
+        } as UserInventory
+
+        userSession = logInByUser {
+            accountName = "policy-cache"
+            userName = "user"
+            password = "password"
+        } as SessionInventory
+
+        denyQueryZone = createPolicy {
+            name = "deny-query-zone"
+            statements = [new PolicyStatement(
+                    name: "deny",
+                    effect: PolicyStatementEffect.Deny,
+                    actions: ["org.zstack.header.zone.APIQueryZoneMsg"]
+            )]
+            sessionId = accountSession.uuid
+        } as PolicyInventory
+    }
+
+    private void assertQueryZoneAllowed() {
+        assert !queryZone { sessionId = userSession.uuid }.isEmpty()
+    }
+
+    private void assertQueryZoneDenied() {
+        expect(AssertionError.class) {
+            queryZone {
+                sessionId = userSession.uuid
+            }
+        }
+    }
+
+    void testPolicyAttachedToUser() {
+        // policies of the user are cached
+        assertQueryZoneAllowed()
+
+        attachPolicyToUser {
+            userUuid = user.uuid
+            policyUuid = denyQueryZone.uuid
+            sessionId = accountSession.uuid
+        }
+        assertQueryZoneDenied()
+
+        detachPolicyFromUser {
+            userUuid = user.uuid
+            policyUuid = denyQueryZone.uuid
+            sessionId = accountSession.uuid
+        }
+        assertQueryZoneAllowed()
+    }
+
+    void testPolicyAttachedToGroup() {
+        UserGroupInventory group = createUserGroup {
+            name = "group"
+            sessionId = accountSession.uuid
+        } as UserGroupInventory
+
+        attachPolicyToUserGroup {
+            groupUuid = group.uuid
+            policyUuid = denyQueryZone.uuid
+            sessionId = accountSession.uuid
+        }
+        assertQueryZoneAllowed()
+
+        addUserToGroup {
+            groupUuid = group.uuid
+            userUuid = user.uuid
+            sessionId = accountSession.uuid
+        }
+        assertQueryZoneDenied()
+
+        removeUserFromGroup {
+            groupUuid = group.uuid
+            userUuid = user.uuid
+            sessionId = accountSession.uuid
+        }
+        assertQueryZoneAllowed()
+    }
+
+    void testPolicyDeleted() {
+        attachPolicyToUser {
+            userUuid = user.uuid
+            policyUuid = denyQueryZone.uuid
+            sessionId = accountSession.uuid
+        }
+        assertQueryZoneDenied()
+
+        deletePolicy {
+            uuid = denyQueryZone.uuid
+            sessionId = accountSession.uuid
+        }
+        assertQueryZoneAllowed()
+    }
+}
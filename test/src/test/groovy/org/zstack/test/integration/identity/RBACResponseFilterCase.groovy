@@ -0,0 +1,176 @@
+package org.zstack.test.integration.identity
+
+import org.zstack.core.Platform
+import org.zstack.core.cloudbus.CloudBus
+import org.zstack.header.message.JsonSchemaBuilder
+import org.zstack.header.vm.APIQueryVmInstanceMsg
+import org.zstack.header.vm.APIQueryVmInstanceReply
+import org.zstack.header.vm.VmInstanceInventory
+import org.zstack.header.vm.VmNicInventory
+import org.zstack.identity.rbac.RBACAPIResponseFilter
+import org.zstack.sdk.PolicyInventory
+import org.zstack.sdk.PolicyStatement
+import org.zstack.sdk.PolicyStatementEffect
+import org.zstack.sdk.SessionInventory
+import org.zstack.sdk.UserInventory
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+class RBACResponseFilterCase extends SubCase {
+    EnvSpec env
+    SessionInventory accountSession
+    SessionInventory userSession
+    UserInventory user
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            zone {
+                name = "zone"
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            prepare()
+            testDenyNestedInventoriesInList()
+            testDenyInventoriesWithNestedFieldsInList()
+        }
+    }
+
+    void prepare() {
+        createAccount {
+            name = "response-filter"
+            password = "password"
+        }
+
+        accountSession = logInByAccount {
+            accountName = "response-filter"
+            password = "password"
+        } as SessionInventory
+
+        user = createUser {
+            name = "user"
+            password = "password"
+            sessionId = accountSession.uuid
+        } as UserInventory
+
+        userSession = logInByUser {
+            accountName = "response-filter"
+            userName = "user"
+            password = "password"
+        } as SessionInventory
+    }
+
+    static APIQueryVmInstanceReply queryReply(int vmNum, int nicNum) {
+        APIQueryVmInstanceReply reply = new APIQueryVmInstanceReply()
+        reply.inventories = (0..<vmNum).collect { int i ->
+            VmInstanceInventory vm = new VmInstanceInventory()
+            vm.uuid = Platform.uuid
+            vm.name = "vm-$i"
+            vm.hostUuid = Platform.uuid
+            vm.vmNics = (0..<nicNum).collect { int j ->
+                VmNicInventory nic = new VmNicInventory()
+                nic.uuid = Platform.uuid
+                nic.vmInstanceUuid = vm.uuid
+                nic.ip = "192.168.0.${i * 10 + j}"
+                nic.mac = "fa:16:3e:00:00:${i}${j}"
+                return nic
+            }
+            return vm
+        }
+        reply.putHeaderEntry(CloudBus.HEADER_SCHEMA, new JsonSchemaBuilder(reply).build())
+        return reply
+    }
+
+    APIQueryVmInstanceReply filterWithDenyResources(List<String> resources, APIQueryVmInstanceReply reply) {
+        PolicyInventory policy = createPolicy {
+            name = "deny-resources"
+            statements = [new PolicyStatement(
+                    name: "deny",
+                    effect: PolicyStatementEffect.Deny,
+                    actions: ["org.zstack.header.zone.APIDeleteZoneMsg"],
+                    resources: resources
+            )]
+            sessionId = accountSession.uuid
+        } as PolicyInventory
+
+        attachPolicyToUser {
+            userUuid = user.uuid
+            policyUuid = policy.uuid
+            sessionId = accountSession.uuid
+        }
+
+        APIQueryVmInstanceMsg msg = new APIQueryVmInstanceMsg()
+        msg.setSession(new org.zstack.header.identity.SessionInventory(
+                uuid: userSession.uuid,
+                accountUuid: userSession.accountUuid,
+                userUuid: userSession.userUuid
+        ))
+
+        try {
+            return new RBACAPIResponseFilter().filter(msg, reply) as APIQueryVmInstanceReply
+        } finally {
+            deletePolicy {
+                uuid = policy.uuid
+                sessionId = accountSession.uuid
+            }
+        }
+    }
+
+    void testDenyNestedInventoriesInList() {
+        APIQueryVmInstanceReply reply = queryReply(3, 2)
+        List<String> names = reply.inventories.collect { it.name }
+
+        reply = filterWithDenyResources([
+                "org.zstack.header.vm.VmNicInventory",
+                "org.zstack.header.vm.VmInstanceInventory:hostUuid"
+        ], reply)
+
+        // every nic of every vm is removed, the vms stay with their denied fields masked
+        assert reply.inventories.size() == 3
+        assert reply.inventories.collect { it.name } == names
+        reply.inventories.each {
+            assert it.vmNics.isEmpty()
+            assert it.hostUuid == null
+            assert it.uuid != null
+        }
+    }
+
+    void testDenyInventoriesWithNestedFieldsInList() {
+        APIQueryVmInstanceReply reply = queryReply(3, 2)
+
+        reply = filterWithDenyResources([
+                "org.zstack.header.vm.VmInstanceInventory",
+                "org.zstack.header.vm.VmNicInventory:ip,mac"
+        ], reply)
+
+        // fields of the nested nics are masked before their vms are removed
+        assert reply.inventories.isEmpty()
+
+        // only the nics are masked when the vms are not denied
+        reply = filterWithDenyResources(["org.zstack.header.vm.VmNicInventory:ip,mac"], queryReply(3, 2))
+        assert reply.inventories.size() == 3
+        reply.inventories.each {
+            assert it.vmNics.size() == 2
+            it.vmNics.each { nic ->
+                assert nic.ip == null
+                assert nic.mac == null
+                assert nic.uuid != null
+            }
+        }
+    }
+}
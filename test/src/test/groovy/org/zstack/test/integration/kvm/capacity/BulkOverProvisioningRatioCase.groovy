@@ -0,0 +1,162 @@
+package org.zstack.test.integration.kvm.capacity
+
+import org.zstack.compute.allocator.HostAllocatorGlobalConfig
+import org.zstack.compute.host.HostGlobalConfig
+import org.zstack.header.allocator.HostCapacityOverProvisioningManager
+import org.zstack.header.allocator.HostCpuOverProvisioningManager
+import org.zstack.sdk.HostInventory
+import org.zstack.sdk.ImageInventory
+import org.zstack.sdk.InstanceOfferingInventory
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+
+class BulkOverProvisioningRatioCase extends SubCase {
+    EnvSpec env
+    HostCapacityOverProvisioningManager ratioMgr
+    HostCpuOverProvisioningManager cpuRatioMgr
+    HostInventory host1
+    HostInventory host2
+
+    @Override
+    void clean() {
+        ratioMgr.deleteMemoryRatio(host2.uuid)
+        HostAllocatorGlobalConfig.HOST_ALLOCATOR_MAX_MEMORY.resetValue()
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(6)
+                cpu = 1
+            }
+
+            sftpBackupStorage {
+                name = "sftp"
+                url = "/sftp"
+                username = "root"
+                password = "password"
+                hostname = "localhost"
+
+                image {
+                    name = "image"
+                    url  = "http://zstack.org/download/test.qcow2"
+                }
+            }
+
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+                    hypervisorType = "KVM"
+
+                    kvm {
+                        name = "kvm1"
+                        managementIp = "127.0.0.1"
+                        username = "root"
+                        password = "password"
+                        totalCpu = 2
+                        totalMem = SizeUnit.GIGABYTE.toByte(4)
+                    }
+
+                    kvm {
+                        name = "kvm2"
+                        managementIp = "127.0.0.2"
+                        username = "root"
+                        password = "password"
+                        totalCpu = 2
+                        totalMem = SizeUnit.GIGABYTE.toByte(4)
+                    }
+
+                    attachPrimaryStorage("local")
+                    attachL2Network("l2")
+                }
+
+                localPrimaryStorage {
+                    name = "local"
+                    url = "/local_ps"
+                }
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.100"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+
+                attachBackupStorage("sftp")
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            ratioMgr = bean(HostCapacityOverProvisioningManager.class)
+            cpuRatioMgr = bean(HostCpuOverProvisioningManager.class)
+            host1 = env.inventoryByName("kvm1") as HostInventory
+            host2 = env.inventoryByName("kvm2") as HostInventory
+
+            testRatiosResolvedInBulk()
+            testAllocateByMemoryRatio()
+        }
+    }
+
+    void testRatiosResolvedInBulk() {
+        updateResourceConfig {
+            category = HostGlobalConfig.CATEGORY
+            name = HostGlobalConfig.HOST_CPU_OVER_PROVISIONING_RATIO.name
+            value = "4"
+            resourceUuid = host1.uuid
+        }
+
+        Map<String, Integer> cpuRatios = cpuRatioMgr.getRatios([host1.uuid, host2.uuid])
+        assert cpuRatios[host1.uuid] == 4
+        assert cpuRatios[host2.uuid] == HostGlobalConfig.HOST_CPU_OVER_PROVISIONING_RATIO.value(Integer.class)
+        cpuRatios.each { uuid, r -> assert r == cpuRatioMgr.getRatio(uuid) }
+
+        ratioMgr.setMemoryRatio(host2.uuid, 2.0)
+        Map<String, Double> memoryRatios = ratioMgr.getMemoryRatios([host1.uuid, host2.uuid])
+        assert memoryRatios[host2.uuid] == 2.0
+        memoryRatios.each { uuid, r -> assert r == ratioMgr.getMemoryRatio(uuid) }
+    }
+
+    void testAllocateByMemoryRatio() {
+        InstanceOfferingInventory offering = env.inventoryByName("instanceOffering") as InstanceOfferingInventory
+        ImageInventory image = env.inventoryByName("image") as ImageInventory
+        L3NetworkInventory l3 = env.inventoryByName("l3") as L3NetworkInventory
+
+        HostAllocatorGlobalConfig.HOST_ALLOCATOR_MAX_MEMORY.updateValue(false)
+
+        // 6G doesn't fit in 4G of host1, only host2 over-provisions its memory by 2
+        VmInstanceInventory vm = createVmInstance {
+            name = "vm"
+            instanceOfferingUuid = offering.uuid
+            imageUuid = image.uuid
+            l3NetworkUuids = [l3.uuid]
+        } as VmInstanceInventory
+
+        assert vm.hostUuid == host2.uuid
+    }
+}
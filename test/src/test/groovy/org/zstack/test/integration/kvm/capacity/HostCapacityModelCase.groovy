@@ -0,0 +1,184 @@
+package org.zstack.test.integration.kvm.capacity
+
+import org.zstack.compute.allocator.HostCapacityModel
+import org.zstack.core.db.SQL
+import org.zstack.header.allocator.HostCapacityVO
+import org.zstack.header.allocator.HostCapacityVO_
+import org.zstack.sdk.HostInventory
+import org.zstack.sdk.ImageInventory
+import org.zstack.sdk.InstanceOfferingInventory
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+
+class HostCapacityModelCase extends SubCase {
+    EnvSpec env
+    HostCapacityModel model
+    HostInventory host
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(1)
+                cpu = 1
+            }
+
+            sftpBackupStorage {
+                name = "sftp"
+                url = "/sftp"
+                username = "root"
+                password = "password"
+                hostname = "localhost"
+
+                image {
+                    name = "image"
+                    url  = "http://zstack.org/download/test.qcow2"
+                }
+            }
+
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+                    hypervisorType = "KVM"
+
+                    kvm {
+                        name = "kvm"
+                        managementIp = "127.0.0.1"
+                        username = "root"
+                        password = "password"
+                        totalMem = SizeUnit.GIGABYTE.toByte(8)
+                    }
+
+                    attachPrimaryStorage("local")
+                    attachL2Network("l2")
+                }
+
+                localPrimaryStorage {
+                    name = "local"
+                    url = "/local_ps"
+                }
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.100"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+
+                attachBackupStorage("sftp")
+            }
+
+            vm {
+                name = "vm"
+                useInstanceOffering("instanceOffering")
+                useImage("image")
+                useL3Networks("l3")
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            model = bean(HostCapacityModel.class)
+            host = env.inventoryByName("kvm") as HostInventory
+
+            testCapacityFollowsDatabase()
+            testReserveCapacity()
+            testCapacityReturned()
+            testStaleCapacityReloadedBeforeRejecting()
+        }
+    }
+
+    private void assertModelEqualsDatabase() {
+        HostCapacityVO cap = dbFindByUuid(host.uuid, HostCapacityVO.class)
+        HostCapacityModel.Capacity c = model.getCapacity(host.uuid)
+        assert c.availableCpu == cap.availableCpu
+        assert c.availableMemory == cap.availableMemory
+    }
+
+    void testCapacityFollowsDatabase() {
+        assertModelEqualsDatabase()
+    }
+
+    void testReserveCapacity() {
+        HostCapacityVO cap = dbFindByUuid(host.uuid, HostCapacityVO.class)
+
+        assert !model.reserve(host.uuid, cap.availableCpu + 1, 0, 0)
+        assert !model.reserve(host.uuid, 0, cap.availableMemory, 1)
+        assertModelEqualsDatabase()
+
+        assert model.reserve(host.uuid, 1, SizeUnit.GIGABYTE.toByte(1), 0)
+        assert (dbFindByUuid(host.uuid, HostCapacityVO.class) as HostCapacityVO).availableCpu == cap.availableCpu - 1
+        assertModelEqualsDatabase()
+
+        assert model.reserve(host.uuid, -1, -SizeUnit.GIGABYTE.toByte(1), 0)
+        assert (dbFindByUuid(host.uuid, HostCapacityVO.class) as HostCapacityVO).availableMemory == cap.availableMemory
+        assertModelEqualsDatabase()
+    }
+
+    void testCapacityReturned() {
+        VmInstanceInventory vm = env.inventoryByName("vm") as VmInstanceInventory
+        HostCapacityModel.Capacity before = model.getCapacity(host.uuid)
+
+        stopVmInstance {
+            uuid = vm.uuid
+        }
+
+        retryInSecs {
+            assert model.getCapacity(host.uuid).availableCpu == before.availableCpu + 1
+            assertModelEqualsDatabase()
+        }
+    }
+
+    void testStaleCapacityReloadedBeforeRejecting() {
+        HostCapacityVO cap = dbFindByUuid(host.uuid, HostCapacityVO.class)
+
+        // the model keeps the host full, then the capacity comes back behind it as if
+        // returned by another management node
+        SQL.New(HostCapacityVO.class).eq(HostCapacityVO_.uuid, host.uuid)
+                .set(HostCapacityVO_.availableCpu, 0L).set(HostCapacityVO_.availableMemory, 0L).update()
+        model.invalidate(host.uuid)
+        assert model.getCapacity(host.uuid).availableCpu == 0
+        SQL.New(HostCapacityVO.class).eq(HostCapacityVO_.uuid, host.uuid)
+                .set(HostCapacityVO_.availableCpu, cap.availableCpu).set(HostCapacityVO_.availableMemory, cap.availableMemory).update()
+        assert model.getCapacity(host.uuid).availableCpu == 0
+
+        VmInstanceInventory vm = createVmInstance {
+            name = "vm-after-stale-capacity"
+            instanceOfferingUuid = (env.inventoryByName("instanceOffering") as InstanceOfferingInventory).uuid
+            imageUuid = (env.inventoryByName("image") as ImageInventory).uuid
+            l3NetworkUuids = [(env.inventoryByName("l3") as L3NetworkInventory).uuid]
+        } as VmInstanceInventory
+
+        assert vm.hostUuid == host.uuid
+        assert (dbFindByUuid(host.uuid, HostCapacityVO.class) as HostCapacityVO).availableCpu == cap.availableCpu - 1
+        assertModelEqualsDatabase()
+    }
+}
@@ -0,0 +1,290 @@
+package org.zstack.test.integration.kvm.host
+
+import org.springframework.http.HttpEntity
+import org.zstack.compute.host.HostGlobalConfig
+import org.zstack.compute.host.HostGlobalProperty
+import org.zstack.compute.host.HostReconnectTask
+import org.zstack.compute.host.HostTrackImpl
+import org.zstack.core.db.Q
+import org.zstack.header.core.NoErrorCompletion
+import org.zstack.header.host.*
+import org.zstack.kvm.KVMAgentCommands
+import org.zstack.kvm.KVMConstant
+import org.zstack.kvm.KVMReconnectHostTask
+import org.zstack.sdk.ClusterInventory
+import org.zstack.sdk.HostInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.FieldUtils
+import org.zstack.utils.gson.JSONObjectUtil
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class HostTrackSchedulerCase extends SubCase {
+    EnvSpec env
+    HostTrackImpl tracker
+
+    int maxConcurrentPings = HostGlobalProperty.HOST_TRACKER_MAX_CONCURRENT_PINGS
+
+    @Override
+    void clean() {
+        HostGlobalProperty.HOST_TRACKER_MAX_CONCURRENT_PINGS = maxConcurrentPings
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = makeEnv {
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+
+                    kvm {
+                        name = "kvm1"
+                        managementIp = "127.0.0.1"
+                        username = "root"
+                        password = "password"
+                    }
+
+                    kvm {
+                        name = "kvm2"
+                        managementIp = "127.0.0.2"
+                        username = "root"
+                        password = "password"
+                    }
+                }
+            }
+        }
+    }
+
+    static class ReadyHostReconnectTask extends HostReconnectTask {
+        @Override
+        protected HostReconnectTask.CanDoAnswer canDoReconnect() {
+            return HostReconnectTask.CanDoAnswer.Ready
+        }
+
+        ReadyHostReconnectTask(String uuid, NoErrorCompletion completion) {
+            super(uuid, completion)
+        }
+    }
+
+    // counts pings per host, pings to hosts in blocked wait for the latch
+    class PingCounter {
+        Map<String, AtomicInteger> pings = new ConcurrentHashMap<>()
+        Map<String, CountDownLatch> blocked = new ConcurrentHashMap<>()
+        Map<String, CountDownLatch> entered = new ConcurrentHashMap<>()
+        Set<String> failing = ConcurrentHashMap.newKeySet()
+
+        PingCounter() {
+            env.simulator(KVMConstant.KVM_PING_PATH) { HttpEntity<String> e, EnvSpec espec ->
+                KVMAgentCommands.PingCmd cmd = JSONObjectUtil.toObject(e.getBody(), KVMAgentCommands.PingCmd.class)
+                pings.computeIfAbsent(cmd.hostUuid, { new AtomicInteger() }).incrementAndGet()
+                entered[cmd.hostUuid]?.countDown()
+                blocked[cmd.hostUuid]?.await(30, TimeUnit.SECONDS)
+
+                def rsp = new KVMAgentCommands.PingResponse()
+                if (failing.contains(cmd.hostUuid)) {
+                    rsp.success = false
+                    rsp.error = "on purpose"
+                } else {
+                    rsp.hostUuid = cmd.hostUuid
+                }
+
+                return rsp
+            }
+        }
+
+        int of(String hostUuid) {
+            return pings[hostUuid] == null ? 0 : pings[hostUuid].get()
+        }
+
+        void reset() {
+            pings.clear()
+        }
+
+        CountDownLatch block(String hostUuid) {
+            CountDownLatch latch = new CountDownLatch(1)
+            entered[hostUuid] = new CountDownLatch(1)
+            blocked[hostUuid] = latch
+            assert entered[hostUuid].await(10, TimeUnit.SECONDS)
+            return latch
+        }
+
+        void unblock(String hostUuid, CountDownLatch latch) {
+            blocked.remove(hostUuid)
+            entered.remove(hostUuid)
+            latch.countDown()
+        }
+    }
+
+    void waitHostStatus(String hostUuid, HostStatus status) {
+        retryInSecs {
+            assert Q.New(HostVO.class).select(HostVO_.status).eq(HostVO_.uuid, hostUuid).findValue() == status
+        }
+    }
+
+    void waitNoPingInFlight() {
+        retryInSecs {
+            assert tracker.inFlightPings.get() == 0
+        }
+    }
+
+    void testTrackAndUntrackWhileBatchRuns() {
+        HostInventory kvm1 = env.inventoryByName("kvm1")
+        HostInventory kvm2 = env.inventoryByName("kvm2")
+        ClusterInventory cluster = env.inventoryByName("cluster")
+        PingCounter counter = new PingCounter()
+
+        // a ping to kvm1 is in flight
+        CountDownLatch latch = counter.block(kvm1.uuid)
+
+        HostInventory kvm3 = addKVMHost {
+            clusterUuid = cluster.uuid
+            managementIp = "127.0.0.3"
+            name = "kvm3"
+            username = "root"
+            password = "password"
+        }
+        tracker.untrackHost(kvm2.uuid)
+        counter.reset()
+
+        // the new host is pinged while the batch is running, the removed one is not
+        retryInSecs {
+            assert counter.of(kvm3.uuid) > 0
+        }
+        TimeUnit.SECONDS.sleep(2)
+        assert counter.of(kvm2.uuid) == 0
+
+        // removing a host whose ping is in flight stops pinging it after the reply
+        tracker.untrackHost(kvm1.uuid)
+        counter.unblock(kvm1.uuid, latch)
+        waitNoPingInFlight()
+        counter.reset()
+        TimeUnit.SECONDS.sleep(3)
+        assert counter.of(kvm1.uuid) == 0
+        assert counter.of(kvm2.uuid) == 0
+        assert counter.of(kvm3.uuid) > 0
+
+        tracker.trackHost([kvm1.uuid, kvm2.uuid])
+        retryInSecs {
+            assert counter.of(kvm1.uuid) > 0
+            assert counter.of(kvm2.uuid) > 0
+        }
+
+        deleteHost { uuid = kvm3.uuid }
+        env.cleanSimulatorHandlers()
+    }
+
+    void testMaxConcurrentPings() {
+        HostInventory kvm1 = env.inventoryByName("kvm1")
+        HostInventory kvm2 = env.inventoryByName("kvm2")
+        PingCounter counter = new PingCounter()
+
+        HostGlobalProperty.HOST_TRACKER_MAX_CONCURRENT_PINGS = 1
+        waitNoPingInFlight()
+
+        // the only slot is taken by kvm1, kvm2 waits
+        CountDownLatch latch = counter.block(kvm1.uuid)
+        counter.reset()
+        TimeUnit.SECONDS.sleep(3)
+        assert counter.of(kvm2.uuid) == 0
+        assert tracker.inFlightPings.get() == 1
+
+        counter.unblock(kvm1.uuid, latch)
+        retryInSecs {
+            assert counter.of(kvm2.uuid) > 0
+        }
+
+        HostGlobalProperty.HOST_TRACKER_MAX_CONCURRENT_PINGS = maxConcurrentPings
+        env.cleanSimulatorHandlers()
+    }
+
+    void testReconnectAfterPingFailure() {
+        HostInventory kvm1 = env.inventoryByName("kvm1")
+        PingCounter counter = new PingCounter()
+
+        AtomicInteger connects = new AtomicInteger()
+        def cleanup = notifyWhenReceivedMessage(ConnectHostMsg.class) { ConnectHostMsg msg ->
+            if (msg.hostUuid == kvm1.uuid) {
+                connects.incrementAndGet()
+            }
+        }
+
+        counter.failing.add(kvm1.uuid)
+        waitHostStatus(kvm1.uuid, HostStatus.Disconnected)
+        retryInSecs {
+            assert connects.get() > 0
+        }
+
+        // the host is reconnected once pings succeed again, and it is still pinged afterwards
+        counter.failing.remove(kvm1.uuid)
+        waitHostStatus(kvm1.uuid, HostStatus.Connected)
+        counter.reset()
+        retryInSecs {
+            assert counter.of(kvm1.uuid) > 1
+        }
+        waitHostStatus(kvm1.uuid, HostStatus.Connected)
+
+        cleanup()
+        env.cleanSimulatorHandlers()
+    }
+
+    void testPingIntervalChange() {
+        HostInventory kvm1 = env.inventoryByName("kvm1")
+        PingCounter counter = new PingCounter()
+
+        HostGlobalConfig.PING_HOST_INTERVAL.updateValue(10)
+        // the trackers are restarted, the first ping is within one interval
+        TimeUnit.SECONDS.sleep(1)
+        counter.reset()
+        TimeUnit.SECONDS.sleep(5)
+        assert counter.of(kvm1.uuid) <= 1
+
+        HostGlobalConfig.PING_HOST_INTERVAL.updateValue(1)
+        TimeUnit.SECONDS.sleep(1)
+        counter.reset()
+        TimeUnit.SECONDS.sleep(5)
+        assert counter.of(kvm1.uuid) >= 3
+
+        env.cleanSimulatorHandlers()
+    }
+
+    @Override
+    void test() {
+        tracker = bean(HostTrackImpl.class)
+
+        env.create {
+            HostGlobalConfig.PING_HOST_INTERVAL.updateValue(1)
+            HostGlobalConfig.MAXIMUM_PING_FAILURE.updateValue(1)
+            HostGlobalConfig.SLEEP_TIME_AFTER_PING_FAILURE.updateValue(0)
+
+            functionForMockTestObjectFactory[HostReconnectTask.class] = {
+                if (it instanceof KVMReconnectHostTask) {
+                    return new ReadyHostReconnectTask(it.uuid, FieldUtils.getFieldValue("completion", it))
+                } else {
+                    return it
+                }
+            }
+
+            onCleanExecute {
+                functionForMockTestObjectFactory.remove(HostReconnectTask.class)
+            }
+
+            testTrackAndUntrackWhileBatchRuns()
+            testMaxConcurrentPings()
+            testReconnectAfterPingFailure()
+            testPingIntervalChange()
+        }
+    }
+}
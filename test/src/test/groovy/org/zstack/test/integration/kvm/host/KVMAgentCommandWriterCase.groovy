@@ -0,0 +1,197 @@
+package org.zstack.test.integration.kvm.host
+
+import org.zstack.core.Platform
+import com.google.gson.stream.JsonWriter
+import org.zstack.kvm.KVMAgentCommandAddonExtensionPoint
+import org.zstack.kvm.KVMAgentCommands
+import org.zstack.kvm.KVMBeforeAsyncJsonPostExtensionPoint
+import org.zstack.kvm.KVMConstant
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.SubCase
+import org.zstack.utils.gson.JSONObjectUtil
+
+class KVMAgentCommandWriterCase extends SubCase {
+    @Override
+    void clean() {
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+    }
+
+    static class EmptyCmd extends KVMAgentCommands.AgentCommand {
+    }
+
+    static def newWriter(List<KVMBeforeAsyncJsonPostExtensionPoint> exts, List<KVMAgentCommandAddonExtensionPoint> addonExts = []) {
+        def cons = Class.forName("org.zstack.kvm.KVMAgentCommandWriter").getDeclaredConstructor(List.class, List.class)
+        cons.setAccessible(true)
+        return cons.newInstance(addonExts, exts)
+    }
+
+    // how KVMHost.Http serialized commands before KVMAgentCommandWriter
+    static String gsonOutput(List<KVMBeforeAsyncJsonPostExtensionPoint> exts, String path, KVMAgentCommands.AgentCommand cmd, String commandStr, Map<String, String> header) {
+        if (commandStr == null) {
+            commandStr = JSONObjectUtil.toJsonString(cmd)
+        }
+
+        LinkedHashMap commandMap = JSONObjectUtil.toObject(commandStr, LinkedHashMap.class)
+        LinkedHashMap kvmHostAddon = new LinkedHashMap()
+        for (KVMBeforeAsyncJsonPostExtensionPoint extp : exts) {
+            LinkedHashMap tmpHashMap = extp.kvmBeforeAsyncJsonPostExtensionPoint(path, commandMap, header)
+
+            if (tmpHashMap != null && !tmpHashMap.isEmpty()) {
+                tmpHashMap.keySet().each { key -> kvmHostAddon.put(key, tmpHashMap.get(key)) }
+            }
+        }
+
+        if (commandStr == "{}") {
+            return commandStr.replaceAll("\\}\$",
+                    String.format("\"%s\":%s}", KVMConstant.KVM_HOST_ADDONS, JSONObjectUtil.toJsonString(kvmHostAddon)))
+        } else {
+            return commandStr.replaceAll("\\}\$",
+                    String.format(",\"%s\":%s}", KVMConstant.KVM_HOST_ADDONS, JSONObjectUtil.toJsonString(kvmHostAddon)))
+        }
+    }
+
+    static KVMBeforeAsyncJsonPostExtensionPoint ext(Closure<LinkedHashMap> c) {
+        return new KVMBeforeAsyncJsonPostExtensionPoint() {
+            @Override
+            LinkedHashMap kvmBeforeAsyncJsonPostExtensionPoint(String path, LinkedHashMap commandMap, Map header) {
+                return c(path, commandMap, header)
+            }
+        }
+    }
+
+    static List<KVMAgentCommands.AgentCommand> commands() {
+        KVMAgentCommands.CheckVmStateCmd checkVmState = new KVMAgentCommands.CheckVmStateCmd()
+        checkVmState.hostUuid = Platform.uuid
+        checkVmState.vmUuids = [Platform.uuid, Platform.uuid]
+
+        KVMAgentCommands.ConnectCmd connect = new KVMAgentCommands.ConnectCmd()
+        connect.setHostUuid(Platform.uuid)
+        connect.setSendCommandUrl("http://127.0.0.1:8080/zstack/kvm/{}/\"quoted\"")
+        connect.setIptablesRules(["-A INPUT -p tcp --dport 7070 -j ACCEPT"])
+        connect.setIgnoreMsrs(true)
+
+        // the fields are null, the command serializes to {}
+        KVMAgentCommands.PingCmd ping = new KVMAgentCommands.PingCmd()
+
+        return [checkVmState, connect, ping, new EmptyCmd()]
+    }
+
+    static List<List<KVMBeforeAsyncJsonPostExtensionPoint>> extensionLists() {
+        return [
+                [],
+                [ext { path, cmd, header -> null }, ext { path, cmd, header -> new LinkedHashMap() }],
+                [
+                        ext { path, cmd, header ->
+                            LinkedHashMap m = new LinkedHashMap()
+                            m.put("path", path)
+                            m.put("fields", new ArrayList(cmd.keySet()))
+                            m.put("header", header)
+                            return m
+                        },
+                        ext { path, cmd, header ->
+                            LinkedHashMap m = new LinkedHashMap()
+                            m.put("number", 10)
+                            m.put("double", 1.5d)
+                            m.put("flag", true)
+                            m.put("nested", [a: [1, 2, 3], b: [c: "d"]])
+                            m.put("nothing", null)
+                            // overrides the value of the first extension
+                            m.put("path", "overridden")
+                            return m
+                        }
+                ]
+        ]
+    }
+
+    void testSameOutputAsGson() {
+        String path = "/host/test"
+        Map<String, String> header = ["taskuuid": Platform.uuid]
+
+        extensionLists().each { exts ->
+            def writer = newWriter(exts)
+
+            commands().each { cmd ->
+                assert writer.write(path, cmd, null, header) == gsonOutput(exts, path, cmd, null, header)
+
+                String commandStr = JSONObjectUtil.toJsonString(cmd)
+                assert writer.write(path, null, commandStr, header) == gsonOutput(exts, path, null, commandStr, header)
+            }
+        }
+    }
+
+    void testNestedWrite() {
+        def inner = newWriter([])
+        KVMAgentCommands.PingCmd innerCmd = new KVMAgentCommands.PingCmd(hostUuid: Platform.uuid)
+        String innerOutput = null
+
+        // an extension serializing another command in the same thread doesn't corrupt the outer one
+        List<KVMBeforeAsyncJsonPostExtensionPoint> exts = [ext { path, cmd, header ->
+            innerOutput = inner.write(path, innerCmd, null, header)
+            return [inner: true] as LinkedHashMap
+        }]
+
+        KVMAgentCommands.CheckVmStateCmd cmd = new KVMAgentCommands.CheckVmStateCmd(hostUuid: Platform.uuid, vmUuids: [Platform.uuid])
+        assert newWriter(exts).write("/outer", cmd, null, [:]) == gsonOutput(exts, "/outer", cmd, null, [:])
+        assert innerOutput == gsonOutput([], "/outer", innerCmd, null, [:])
+    }
+
+    static KVMAgentCommandAddonExtensionPoint addonExt(Closure c) {
+        return new KVMAgentCommandAddonExtensionPoint() {
+            @Override
+            void writeKvmHostAddons(String path, KVMAgentCommands.AgentCommand cmd, Map<String, String> header, JsonWriter writer) throws IOException {
+                c(path, cmd, header, writer)
+            }
+        }
+    }
+
+    void testAddonExtensions() {
+        KVMAgentCommands.CheckVmStateCmd cmd = new KVMAgentCommands.CheckVmStateCmd(hostUuid: Platform.uuid, vmUuids: [Platform.uuid])
+        List<KVMAgentCommands.AgentCommand> seen = []
+
+        List<KVMAgentCommandAddonExtensionPoint> addonExts = [
+                addonExt { String path, KVMAgentCommands.AgentCommand c, Map header, JsonWriter writer ->
+                    seen.add(c)
+                    writer.name("streamed").value(path)
+                    writer.name("list").beginArray().value(1).value(2).endArray()
+                },
+                addonExt { String path, KVMAgentCommands.AgentCommand c, Map header, JsonWriter writer ->
+                    writer.name("nothing").nullValue()
+                }
+        ]
+
+        // addon extensions write into kvmHostAddons of the serialized command
+        String output = newWriter([], addonExts).write("/addon", cmd, null, [:])
+        Map expected = JSONObjectUtil.toObject(JSONObjectUtil.toJsonString(cmd), LinkedHashMap.class)
+        expected[KVMConstant.KVM_HOST_ADDONS] = [streamed: "/addon", list: [1, 2]]
+        assert JSONObjectUtil.toObject(output, LinkedHashMap.class) == expected
+        assert seen == [cmd]
+
+        // so they do for empty commands and commands passed as strings, legacy extensions are written after them
+        List<KVMBeforeAsyncJsonPostExtensionPoint> exts = [ext { path, c, header -> [legacy: c.keySet().toList()] as LinkedHashMap }]
+        output = newWriter(exts, addonExts).write("/addon", null, "{}", [:])
+        assert output == '{"kvmHostAddons":{"streamed":"/addon","list":[1,2],"legacy":[]}}'
+        assert seen == [cmd, null]
+    }
+
+    void testEmptyCommand() {
+        def writer = newWriter([])
+        assert writer.write("/empty", null, "", [:]) == null
+        assert writer.write("/empty", null, "  ", [:]) == null
+    }
+
+    @Override
+    void test() {
+        testSameOutputAsGson()
+        testNestedWrite()
+        testAddonExtensions()
+        testEmptyCommand()
+    }
+}
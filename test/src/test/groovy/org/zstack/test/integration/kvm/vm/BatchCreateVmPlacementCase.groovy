@@ -0,0 +1,156 @@
+package org.zstack.test.integration.kvm.vm
+
+import org.zstack.sdk.BatchCreateVmInstanceResult
+import org.zstack.sdk.ImageInventory
+import org.zstack.sdk.InstanceOfferingInventory
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+
+class BatchCreateVmPlacementCase extends SubCase {
+    EnvSpec env
+    InstanceOfferingInventory instanceOffering
+    ImageInventory image
+    L3NetworkInventory l3
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(1)
+                cpu = 1
+            }
+
+            sftpBackupStorage {
+                name = "sftp"
+                url = "/sftp"
+                username = "root"
+                password = "password"
+                hostname = "localhost"
+
+                image {
+                    name = "image"
+                    url  = "http://zstack.org/download/test.qcow2"
+                }
+            }
+
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+                    hypervisorType = "KVM"
+
+                    kvm {
+                        name = "kvm1"
+                        managementIp = "127.0.0.1"
+                        username = "root"
+                        password = "password"
+                        totalMem = SizeUnit.GIGABYTE.toByte(8)
+                    }
+
+                    kvm {
+                        name = "kvm2"
+                        managementIp = "127.0.0.2"
+                        username = "root"
+                        password = "password"
+                        totalMem = SizeUnit.GIGABYTE.toByte(8)
+                    }
+
+                    attachPrimaryStorage("local")
+                    attachL2Network("l2")
+                }
+
+                localPrimaryStorage {
+                    name = "local"
+                    url = "/local_ps"
+                }
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.100"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+
+                attachBackupStorage("sftp")
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            instanceOffering = env.inventoryByName("instanceOffering") as InstanceOfferingInventory
+            image = env.inventoryByName("image") as ImageInventory
+            l3 = env.inventoryByName("l3") as L3NetworkInventory
+
+            String packedHostUuid = testPackVms()
+            testSpreadVms(packedHostUuid)
+            testRejectSharedResourceUuid()
+        }
+    }
+
+    private Set<String> batchCreate(int num, String strategy) {
+        BatchCreateVmInstanceResult res = batchCreateVmInstance {
+            name = "vm"
+            instanceOfferingUuid = instanceOffering.uuid
+            imageUuid = image.uuid
+            l3NetworkUuids = [l3.uuid]
+            count = num
+            placementStrategy = strategy
+        } as BatchCreateVmInstanceResult
+
+        assert res.results.size() == num
+        assert res.results.every { it.success }
+        return res.results.collect { it.inventory.hostUuid } as Set<String>
+    }
+
+    String testPackVms() {
+        Set<String> hostUuids = batchCreate(3, "Pack")
+        assert hostUuids.size() == 1
+        return hostUuids.iterator().next()
+    }
+
+    void testSpreadVms(String packedHostUuid) {
+        // the other host has the most free memory for both VMs
+        Set<String> hostUuids = batchCreate(2, "Spread")
+        assert hostUuids.size() == 1
+        assert !hostUuids.contains(packedHostUuid)
+    }
+
+    void testRejectSharedResourceUuid() {
+        expect(AssertionError.class) {
+            batchCreateVmInstance {
+                name = "vm"
+                instanceOfferingUuid = instanceOffering.uuid
+                imageUuid = image.uuid
+                l3NetworkUuids = [l3.uuid]
+                count = 2
+                resourceUuid = "36c27e8ff05c4780bf6d2fa65700f22e"
+            }
+        }
+    }
+}
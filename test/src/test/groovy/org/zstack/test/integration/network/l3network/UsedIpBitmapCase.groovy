@@ -0,0 +1,118 @@
+package org.zstack.test.integration.network.l3network
+
+import org.zstack.core.cloudbus.CloudBus
+import org.zstack.core.db.DatabaseFacade
+import org.zstack.core.db.Q
+import org.zstack.header.network.l3.*
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.test.integration.network.NetworkTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.network.NetworkUtils
+
+class UsedIpBitmapCase extends SubCase {
+    EnvSpec env
+    L3NetworkInventory l3
+    IpRangeVO range
+    CloudBus bus
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(NetworkTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            zone {
+                name = "zone"
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.20"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            l3 = env.inventoryByName("l3") as L3NetworkInventory
+            range = Q.New(IpRangeVO.class).eq(IpRangeVO_.l3NetworkUuid, l3.uuid).find()
+            bus = bean(CloudBus.class)
+
+            testAllocateFirstAvailableIps()
+            testAllocateIpUsedBehindBitmap()
+            testReturnedIpAllocatedAgain()
+            testIpDeletedByDatabaseFacadeAllocatedAgain()
+        }
+    }
+
+    UsedIpInventory allocateIp() {
+        AllocateIpMsg msg = new AllocateIpMsg()
+        msg.l3NetworkUuid = l3.uuid
+        msg.allocateStrategy = L3NetworkConstant.FIRST_AVAILABLE_IP_ALLOCATOR_STRATEGY
+        bus.makeTargetServiceIdByResourceUuid(msg, L3NetworkConstant.SERVICE_ID, l3.uuid)
+        AllocateIpReply reply = bus.call(msg) as AllocateIpReply
+        assert reply.success
+        return reply.ipInventory
+    }
+
+    void testAllocateFirstAvailableIps() {
+        List<UsedIpInventory> ips = (1..5).collect { allocateIp() }
+        assert ips.collect { it.ip } == (10..14).collect { "192.168.100.${it}".toString() }
+        assert Q.New(UsedIpVO.class).eq(UsedIpVO_.ipRangeUuid, range.uuid).count() == 5
+    }
+
+    void testAllocateIpUsedBehindBitmap() {
+        // used by another management node, the bitmap doesn't know
+        UsedIpVO vo = new UsedIpVO(range.uuid, "192.168.100.15")
+        vo.uuid = UUID.nameUUIDFromBytes((range.uuid + vo.ip).bytes).toString().replaceAll("-", "")
+        vo.ipInLong = NetworkUtils.ipv4StringToLong(vo.ip)
+        vo.l3NetworkUuid = l3.uuid
+        vo.netmask = range.netmask
+        vo.gateway = range.gateway
+        vo.ipVersion = range.ipVersion
+        bean(DatabaseFacade.class).persist(vo)
+
+        assert allocateIp().ip == "192.168.100.16"
+    }
+
+    void testReturnedIpAllocatedAgain() {
+        UsedIpVO vo = Q.New(UsedIpVO.class).eq(UsedIpVO_.ip, "192.168.100.12").eq(UsedIpVO_.ipRangeUuid, range.uuid).find()
+
+        ReturnIpMsg msg = new ReturnIpMsg()
+        msg.usedIpUuid = vo.uuid
+        msg.l3NetworkUuid = l3.uuid
+        bus.makeTargetServiceIdByResourceUuid(msg, L3NetworkConstant.SERVICE_ID, l3.uuid)
+        assert bus.call(msg).success
+
+        assert allocateIp().ip == "192.168.100.12"
+        assert allocateIp().ip == "192.168.100.17"
+    }
+
+    void testIpDeletedByDatabaseFacadeAllocatedAgain() {
+        // deleted without ReturnIpMsg, e.g. cascaded from its nic
+        UsedIpVO vo = Q.New(UsedIpVO.class).eq(UsedIpVO_.ip, "192.168.100.13").eq(UsedIpVO_.ipRangeUuid, range.uuid).find()
+        bean(DatabaseFacade.class).removeByPrimaryKey(vo.uuid, UsedIpVO.class)
+
+        assert allocateIp().ip == "192.168.100.13"
+    }
+}
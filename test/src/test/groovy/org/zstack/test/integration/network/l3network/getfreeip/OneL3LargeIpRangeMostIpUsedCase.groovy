@@ -0,0 +1,122 @@
+package org.zstack.test.integration.network.l3network.getfreeip
+
+import org.zstack.core.cloudbus.CloudBus
+import org.zstack.core.db.Q
+import org.zstack.header.network.l3.IpRangeVO
+import org.zstack.header.network.l3.IpRangeVO_
+import org.zstack.header.network.l3.L3NetworkConstant
+import org.zstack.header.network.l3.ReturnIpMsg
+import org.zstack.header.network.l3.UsedIpInventory
+import org.zstack.network.l3.L3NetworkManager
+import org.zstack.sdk.FreeIpInventory
+import org.zstack.test.integration.network.NetworkTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.IpRangeSpec
+import org.zstack.testlib.L3NetworkSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.network.NetworkUtils
+
+class OneL3LargeIpRangeMostIpUsedCase extends SubCase {
+    EnvSpec env
+    long startIp
+    List<UsedIpInventory> usedIps
+
+    @Override
+    void setup() {
+        useSpring(NetworkTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            zone {
+                name = "zone"
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        ip {
+                            name = "ipr"
+                            startIp = "10.223.0.10"
+                            endIp = "10.223.3.254"
+                            gateway = "10.223.0.1"
+                            netmask = "255.255.252.0"
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    void occupyIPs() {
+        IpRangeSpec ipr = env.specByName("ipr")
+        startIp = NetworkUtils.ipv4StringToLong(ipr.inventory.startIp)
+
+        IpRangeVO vo = Q.New(IpRangeVO.class).eq(IpRangeVO_.uuid, ipr.inventory.uuid).find()
+        L3NetworkManager l3Mgr = bean(L3NetworkManager.class)
+        usedIps = (0..<600).collect { l3Mgr.reserveIp(vo, NetworkUtils.longToIpv4String(startIp + it)) }
+        assert usedIps.every { it != null }
+    }
+
+    void returnIp(long ip) {
+        L3NetworkSpec l3 = env.specByName("l3")
+        UsedIpInventory used = usedIps.find { it.ip == NetworkUtils.longToIpv4String(ip) }
+
+        ReturnIpMsg msg = new ReturnIpMsg()
+        msg.usedIpUuid = used.uuid
+        msg.l3NetworkUuid = l3.inventory.uuid
+        CloudBus bus = bean(CloudBus.class)
+        bus.makeTargetServiceIdByResourceUuid(msg, L3NetworkConstant.SERVICE_ID, l3.inventory.uuid)
+        assert bus.call(msg).success
+    }
+
+    void testGetFreeIpsAfterUsedIps() {
+        IpRangeSpec ipr = env.specByName("ipr")
+
+        List<FreeIpInventory> freeIps = getFreeIpOfIpRange {
+            ipRangeUuid = ipr.inventory.uuid
+            limit = 5
+        }
+
+        assert freeIps.collect { it.ip } == (600..604).collect { NetworkUtils.longToIpv4String(startIp + it) }
+    }
+
+    void testGetFreeIpsInGapOfUsedIps() {
+        L3NetworkSpec l3 = env.specByName("l3")
+        returnIp(startIp + 300)
+
+        List<FreeIpInventory> freeIps = getFreeIpOfL3Network {
+            l3NetworkUuid = l3.inventory.uuid
+            start = NetworkUtils.longToIpv4String(startIp + 100)
+            limit = 3
+        }
+
+        assert freeIps.collect { it.ip } == [300, 600, 601].collect { NetworkUtils.longToIpv4String(startIp + it) }
+
+        IpRangeSpec ipr = env.specByName("ipr")
+        freeIps = getFreeIpOfIpRange {
+            ipRangeUuid = ipr.inventory.uuid
+            limit = 10000
+        }
+
+        assert freeIps.size() == NetworkUtils.ipRangeLength(ipr.inventory.startIp, ipr.inventory.endIp) - 599
+    }
+
+    @Override
+    void test() {
+        env.create {
+            occupyIPs()
+            testGetFreeIpsAfterUsedIps()
+            testGetFreeIpsInGapOfUsedIps()
+        }
+    }
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+}
@@ -0,0 +1,177 @@
+package org.zstack.test.integration.portal
+
+import org.springframework.http.HttpStatus
+import org.zstack.core.Platform
+import org.zstack.core.thread.ThreadFacade
+import org.zstack.header.apimediator.PortalErrors
+import org.zstack.header.errorcode.ErrorCode
+import org.zstack.header.identity.SessionInventory
+import org.zstack.header.image.APIAddImageMsg
+import org.zstack.header.longjob.APISubmitLongJobMsg
+import org.zstack.header.managementnode.APIGetVersionMsg
+import org.zstack.header.message.APIMessage
+import org.zstack.header.vm.APIQueryVmInstanceMsg
+import org.zstack.header.vm.APIStartVmInstanceMsg
+import org.zstack.portal.apimediator.ApiAdmission
+import org.zstack.portal.managementnode.PortalGlobalProperty
+import org.zstack.rest.RestServer
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ApiAdmissionCase extends SubCase {
+    ThreadFacade thdf
+
+    int queryWorkerNum = PortalGlobalProperty.API_QUERY_WORKER_NUM
+    int maxPendingPerLane = PortalGlobalProperty.API_MAX_PENDING_PER_LANE
+    int maxPendingPerAccount = PortalGlobalProperty.API_MAX_PENDING_PER_ACCOUNT
+
+    @Override
+    void clean() {
+        resetProperties()
+    }
+
+    @Override
+    void setup() {
+        INCLUDE_CORE_SERVICES = false
+    }
+
+    @Override
+    void environment() {
+        thdf = bean(ThreadFacade.class)
+    }
+
+    void resetProperties() {
+        PortalGlobalProperty.API_QUERY_WORKER_NUM = queryWorkerNum
+        PortalGlobalProperty.API_MAX_PENDING_PER_LANE = maxPendingPerLane
+        PortalGlobalProperty.API_MAX_PENDING_PER_ACCOUNT = maxPendingPerAccount
+    }
+
+    static <T extends APIMessage> T api(Class<T> clz, String accountUuid) {
+        T msg = clz.newInstance()
+        msg.setSession(new SessionInventory(uuid: Platform.uuid, accountUuid: accountUuid))
+        return msg
+    }
+
+    // occupies the only worker of the lane of the message until the returned latch is counted down
+    CountDownLatch block(ApiAdmission admission, APIMessage msg) {
+        CountDownLatch running = new CountDownLatch(1)
+        CountDownLatch blocked = new CountDownLatch(1)
+        assert admission.submit(msg, {
+            running.countDown()
+            blocked.await(30, TimeUnit.SECONDS)
+        })
+        assert running.await(10, TimeUnit.SECONDS)
+        return blocked
+    }
+
+    void testLaneClassification() {
+        ApiAdmission admission = new ApiAdmission(thdf, 1)
+
+        assert admission.getLaneType(new APIGetVersionMsg()) == ApiAdmission.LaneType.Query
+        assert admission.getLaneType(new APIQueryVmInstanceMsg()) == ApiAdmission.LaneType.Query
+        // APIAddImageMsg is run by AddImageLongJob annotated with @LongJobFor
+        assert admission.getLaneType(new APIAddImageMsg()) == ApiAdmission.LaneType.LongRunning
+        assert admission.getLaneType(new APISubmitLongJobMsg()) == ApiAdmission.LaneType.LongRunning
+        assert admission.getLaneType(new APIStartVmInstanceMsg()) == ApiAdmission.LaneType.Mutating
+    }
+
+    void testAccountsTakeTurns() {
+        resetProperties()
+        ApiAdmission admission = new ApiAdmission(thdf, 1)
+
+        CountDownLatch blocked = block(admission, api(APIStartVmInstanceMsg.class, "blocker"))
+
+        List<String> order = Collections.synchronizedList([])
+        CountDownLatch done = new CountDownLatch(22)
+        (0..<20).each {
+            assert admission.submit(api(APIStartVmInstanceMsg.class, "busy"), { order.add("busy"); done.countDown() })
+        }
+        (0..<2).each {
+            assert admission.submit(api(APIStartVmInstanceMsg.class, "quiet"), { order.add("quiet"); done.countDown() })
+        }
+
+        blocked.countDown()
+        assert done.await(10, TimeUnit.SECONDS)
+
+        // the burst of the busy account doesn't delay the quiet account behind it
+        assert order.findIndexValues { it == "quiet" } == [1, 3]
+    }
+
+    void testMaxPendingApisPerLane() {
+        resetProperties()
+        PortalGlobalProperty.API_QUERY_WORKER_NUM = 1
+        PortalGlobalProperty.API_MAX_PENDING_PER_LANE = 3
+        PortalGlobalProperty.API_MAX_PENDING_PER_ACCOUNT = 0
+        ApiAdmission admission = new ApiAdmission(thdf, 1)
+
+        CountDownLatch blocked = block(admission, api(APIStartVmInstanceMsg.class, Platform.uuid))
+        (0..<3).each {
+            assert admission.submit(api(APIStartVmInstanceMsg.class, Platform.uuid), {})
+        }
+        assert !admission.submit(api(APIStartVmInstanceMsg.class, Platform.uuid), {})
+        assert admission.getRejectedApis()[ApiAdmission.LaneType.Mutating.toString()] == 1
+
+        // other lanes are not affected
+        assert admission.submit(api(APIQueryVmInstanceMsg.class, Platform.uuid), {})
+
+        // health checks are never rejected
+        CountDownLatch queryBlocked = block(admission, api(APIQueryVmInstanceMsg.class, Platform.uuid))
+        (0..<3).each {
+            assert admission.submit(api(APIQueryVmInstanceMsg.class, Platform.uuid), {})
+        }
+        assert !admission.submit(api(APIQueryVmInstanceMsg.class, Platform.uuid), {})
+        assert admission.submit(api(APIGetVersionMsg.class, Platform.uuid), {})
+        assert admission.submit(new APIGetVersionMsg(), {})
+
+        blocked.countDown()
+        queryBlocked.countDown()
+        retryInSecs {
+            assert admission.getPendingApis().values().every { it == 0 }
+            assert admission.getRunningApis().values().every { it == 0 }
+        }
+    }
+
+    void testMaxPendingApisPerAccount() {
+        resetProperties()
+        PortalGlobalProperty.API_MAX_PENDING_PER_LANE = 0
+        PortalGlobalProperty.API_MAX_PENDING_PER_ACCOUNT = 2
+        ApiAdmission admission = new ApiAdmission(thdf, 1)
+
+        CountDownLatch blocked = block(admission, api(APIStartVmInstanceMsg.class, "blocker"))
+        (0..<2).each {
+            assert admission.submit(api(APIStartVmInstanceMsg.class, "account1"), {})
+        }
+        assert !admission.submit(api(APIStartVmInstanceMsg.class, "account1"), {})
+        // another account still gets in
+        assert admission.submit(api(APIStartVmInstanceMsg.class, "account2"), {})
+
+        blocked.countDown()
+        retryInSecs {
+            assert admission.getPendingApis()[ApiAdmission.LaneType.Mutating.toString()] == 0
+        }
+
+        // the account can submit again once its queue drains
+        assert admission.submit(api(APIStartVmInstanceMsg.class, "account1"), {})
+    }
+
+    void testRejectionMapsToTooManyRequests() {
+        RestServer server = bean(RestServer.class)
+
+        ErrorCode rejected = new ErrorCode(PortalErrors.TOO_MANY_REQUESTS.toString(), "rejected")
+        assert server.getErrorStatus(rejected) == HttpStatus.TOO_MANY_REQUESTS.value()
+
+        ErrorCode other = new ErrorCode(PortalErrors.NO_SERVICE_FOR_MESSAGE.toString(), "other")
+        assert server.getErrorStatus(other) == HttpStatus.SERVICE_UNAVAILABLE.value()
+    }
+
+    @Override
+    void test() {
+        testLaneClassification()
+        testAccountsTakeTurns()
+        testMaxPendingApisPerLane()
+        testMaxPendingApisPerAccount()
+        testRejectionMapsToTooManyRequests()
+    }
+}
@@ -0,0 +1,182 @@
+package org.zstack.test.integration.zql
+
+import org.zstack.core.db.Q
+import org.zstack.header.configuration.InstanceOfferingVO
+import org.zstack.header.configuration.InstanceOfferingVO_
+import org.zstack.header.errorcode.OperationFailureException
+import org.zstack.sdk.ZQLQueryResult
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+import org.zstack.zql.ZQL
+import org.zstack.zql.ZQLGlobalProperty
+import org.zstack.zql.ZQLPlanCache
+import org.zstack.zql.ZQLQueryReturn
+
+class ZQLCursorCase extends SubCase {
+    EnvSpec env
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            1.upto(5) {
+                createInstanceOffering {
+                    name = "offering-${it}"
+                    cpuNum = 1
+                    memorySize = SizeUnit.GIGABYTE.toByte(1)
+                }
+            }
+
+            testPageByCursor()
+            testPageFieldsByCursor()
+            testPageByCursorApi()
+            testUnboundedQueryLoadedByPages()
+            testUnboundedQueryConsumedByPages()
+            testUnboundedQueryResultsLimited()
+        }
+    }
+
+    void testPageByCursor() {
+        List<String> uuids = []
+        String cursor = null
+        int pages = 0
+        while (true) {
+            def ret = ZQL.fromString("query instanceoffering where cpuNum = 1").page(cursor, 2).getSingleResult() as ZQLQueryReturn
+            uuids.addAll(ret.inventories.collect { it.uuid })
+            pages ++
+            cursor = ret.nextCursor
+            if (cursor == null) {
+                break
+            }
+        }
+
+        assert pages == 3
+        assert uuids == uuids.sort(false)
+        assert uuids.toSet() == allOfferingUuids()
+
+        expect(OperationFailureException.class) {
+            ZQL.fromString("query instanceoffering order by name asc").page(null, 2).getSingleResult()
+        }
+    }
+
+    void testPageFieldsByCursor() {
+        def ret = ZQL.fromString("query instanceoffering.name").page(null, 4).getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 4
+        assert ret.inventories.every { it.name != null && it.uuid == null }
+        assert ret.nextCursor != null
+
+        ret = ZQL.fromString("query instanceoffering.name").page(ret.nextCursor, 4).getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert ret.nextCursor == null
+    }
+
+    void testPageByCursorApi() {
+        def ret = zQLQuery {
+            zql = "query instanceoffering return with (total)"
+            pageSize = 3
+        } as ZQLQueryResult
+
+        assert ret.results[0].inventories.size() == 3
+        assert ret.results[0].total == 5
+        String cursor = ret.results[0].nextCursor
+        assert cursor != null
+
+        ret = zQLQuery {
+            zql = "query instanceoffering return with (total)"
+            pageSize = 3
+            delegate.cursor = cursor
+        } as ZQLQueryResult
+
+        assert ret.results[0].inventories.size() == 2
+        assert ret.results[0].total == 5
+        assert ret.results[0].nextCursor == null
+    }
+
+    void testUnboundedQueryLoadedByPages() {
+        int pageSize = ZQLGlobalProperty.KEYSET_PAGE_SIZE
+        ZQLGlobalProperty.KEYSET_PAGE_SIZE = 2
+        try {
+            def ret = ZQL.fromString("query instanceoffering where cpuNum = 1").getSingleResult() as ZQLQueryReturn
+            assert ret.inventories.collect { it.uuid }.toSet() == allOfferingUuids()
+        } finally {
+            ZQLGlobalProperty.KEYSET_PAGE_SIZE = pageSize
+            bean(ZQLPlanCache.class).invalidateAll()
+        }
+    }
+
+    void testUnboundedQueryConsumedByPages() {
+        int pageSize = ZQLGlobalProperty.KEYSET_PAGE_SIZE
+        int maxResults = ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS
+        ZQLGlobalProperty.KEYSET_PAGE_SIZE = 2
+        ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS = 3
+        try {
+            List<List> pages = []
+            def ret = ZQL.fromString("query instanceoffering where cpuNum = 1").forEachPage { pages.add(it) }
+            assert ret.inventories == null
+            assert pages.size() == 3
+            assert pages.every { it.size() <= 2 }
+            assert pages.flatten().collect { it.uuid }.toSet() == allOfferingUuids()
+
+            // a query not paged by the primary key is consumed in one page
+            pages.clear()
+            ZQL.fromString("query instanceoffering where cpuNum = 1 order by name asc").forEachPage { pages.add(it) }
+            assert pages.size() == 1
+            assert pages[0].collect { it.name } == (1..5).collect { "offering-${it}".toString() }
+
+            expect(OperationFailureException.class) {
+                ZQL.fromString("query instanceoffering; query instanceoffering").forEachPage { pages.add(it) }
+            }
+        } finally {
+            ZQLGlobalProperty.KEYSET_PAGE_SIZE = pageSize
+            ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS = maxResults
+            bean(ZQLPlanCache.class).invalidateAll()
+        }
+    }
+
+    void testUnboundedQueryResultsLimited() {
+        int pageSize = ZQLGlobalProperty.KEYSET_PAGE_SIZE
+        int maxResults = ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS
+        ZQLGlobalProperty.KEYSET_PAGE_SIZE = 2
+        ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS = 3
+        try {
+            expect(OperationFailureException.class) {
+                ZQL.fromString("query instanceoffering where cpuNum = 1").getSingleResult()
+            }
+
+            // a limit or a cursor bounds the query
+            def ret = ZQL.fromString("query instanceoffering where cpuNum = 1 limit 3").getSingleResult() as ZQLQueryReturn
+            assert ret.inventories.size() == 3
+            ret = ZQL.fromString("query instanceoffering where cpuNum = 1").page(null, 3).getSingleResult() as ZQLQueryReturn
+            assert ret.inventories.size() == 3
+
+            ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS = 0
+            ret = ZQL.fromString("query instanceoffering where cpuNum = 1").getSingleResult() as ZQLQueryReturn
+            assert ret.inventories.size() == 5
+        } finally {
+            ZQLGlobalProperty.KEYSET_PAGE_SIZE = pageSize
+            ZQLGlobalProperty.MAX_UNBOUNDED_QUERY_RESULTS = maxResults
+            bean(ZQLPlanCache.class).invalidateAll()
+        }
+    }
+
+    private Set<String> allOfferingUuids() {
+        return Q.New(InstanceOfferingVO.class).select(InstanceOfferingVO_.uuid).listValues().toSet()
+    }
+}
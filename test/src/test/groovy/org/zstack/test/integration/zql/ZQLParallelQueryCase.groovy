@@ -0,0 +1,88 @@
+package org.zstack.test.integration.zql
+
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+import org.zstack.zql.ZQL
+import org.zstack.zql.ZQLGlobalProperty
+import org.zstack.zql.ZQLPlanCache
+import org.zstack.zql.ZQLQueryReturn
+
+class ZQLParallelQueryCase extends SubCase {
+    EnvSpec env
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            1.upto(3) {
+                createInstanceOffering {
+                    name = "offering-${it}"
+                    cpuNum = it
+                    memorySize = SizeUnit.GIGABYTE.toByte(1)
+                }
+            }
+
+            testStatementsReturnedInOrder()
+            testStatementsReturnedInOrderWhenRunInTurn()
+            testFailedStatement()
+        }
+    }
+
+    private static final String TEXT = "query instanceoffering where cpuNum = 1;" +
+            "count instanceoffering;" +
+            "query instanceoffering.name where cpuNum > 1 return with (total) order by cpuNum asc;" +
+            "query instanceoffering where cpuNum = 3 return with (total)"
+
+    private static void checkResults(List<ZQLQueryReturn> rs) {
+        assert rs.size() == 4
+
+        assert rs[0].inventories.collect { it.name } == ["offering-1"]
+        assert rs[1].total == 3
+        assert rs[2].inventories.collect { it.name } == ["offering-2", "offering-3"]
+        assert rs[2].total == 2
+        assert rs[3].inventories.collect { it.name } == ["offering-3"]
+        assert rs[3].total == 1
+    }
+
+    void testStatementsReturnedInOrder() {
+        bean(ZQLPlanCache.class).invalidateAll()
+
+        // compiled, then run by the cached plans
+        checkResults(ZQL.fromString(TEXT).getResultList())
+        checkResults(ZQL.fromString(TEXT).getResultList())
+    }
+
+    void testStatementsReturnedInOrderWhenRunInTurn() {
+        int parallel = ZQLGlobalProperty.MAX_PARALLEL_QUERIES_PER_REQUEST
+        ZQLGlobalProperty.MAX_PARALLEL_QUERIES_PER_REQUEST = 1
+        try {
+            bean(ZQLPlanCache.class).invalidateAll()
+            checkResults(ZQL.fromString(TEXT).getResultList())
+        } finally {
+            ZQLGlobalProperty.MAX_PARALLEL_QUERIES_PER_REQUEST = parallel
+        }
+    }
+
+    void testFailedStatement() {
+        expect(RuntimeException.class) {
+            ZQL.fromString("query instanceoffering; query instanceoffering where noSuchField = 1").getResultList()
+        }
+    }
+}
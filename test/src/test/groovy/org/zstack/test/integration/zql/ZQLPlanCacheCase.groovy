@@ -0,0 +1,187 @@
+package org.zstack.test.integration.zql
+
+import org.zstack.core.db.Q
+import org.zstack.header.identity.SessionVO
+import org.zstack.header.identity.SessionVO_
+import org.zstack.sdk.SessionInventory
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+import org.zstack.zql.ZQL
+import org.zstack.zql.ZQLContext
+import org.zstack.zql.ZQLPlanCache
+import org.zstack.zql.ZQLQueryReturn
+
+class ZQLPlanCacheCase extends SubCase {
+    EnvSpec env
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(1)
+                cpu = 1
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            testPlanCached()
+            testLiteralsBoundAsParameters()
+            testPlanNotSharedByAccounts()
+            testPlanSharedByAccountsWithOwnResults()
+        }
+    }
+
+    void testPlanCached() {
+        ZQLPlanCache cache = bean(ZQLPlanCache.class)
+        cache.invalidateAll()
+        long hit = cache.getHitCount()
+        long compiled = cache.getCompiledCount()
+
+        def ret = ZQL.fromString("query instanceoffering where name='instanceOffering'").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert cache.getCompiledCount() == compiled + 1
+
+        // formatted differently, the same plan
+        ret = ZQL.fromString("query  instanceoffering where name = 'instanceOffering';").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert cache.getHitCount() == hit + 1
+        assert cache.getCompiledCount() == compiled + 1
+
+        // literals are bound as parameters, a different one runs the same plan
+        ret = ZQL.fromString("query instanceoffering where name='not-exist'").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.isEmpty()
+        assert cache.getHitCount() == hit + 2
+        assert cache.getCompiledCount() == compiled + 1
+
+        ret = ZQL.fromString("query instanceoffering.name return with (total) limit 10").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert ret.total == 1
+        ret = ZQL.fromString("query instanceoffering.name return with (total) limit 10").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert ret.inventories[0].name == "instanceOffering"
+        assert ret.total == 1
+    }
+
+    void testLiteralsBoundAsParameters() {
+        ZQLPlanCache cache = bean(ZQLPlanCache.class)
+        cache.invalidateAll()
+        long compiled = cache.getCompiledCount()
+
+        def ret = ZQL.fromString("query instanceoffering where state='Enabled' and cpuNum = 1").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        ret = ZQL.fromString("query instanceoffering where state='Disabled' and cpuNum = '1'").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.isEmpty()
+        assert cache.getCompiledCount() == compiled + 1
+
+        // not a value of the field, judged by the database as the literal did
+        ret = ZQL.fromString("query instanceoffering where state='NoSuchState' and cpuNum = 1").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.isEmpty()
+        assert cache.getCompiledCount() == compiled + 2
+        ret = ZQL.fromString("query instanceoffering where state='Enabled' and cpuNum = 1").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert cache.getCompiledCount() == compiled + 2
+
+        ret = ZQL.fromString("query instanceoffering where uuid in ('a', 'b')").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.isEmpty()
+        String uuid = (ZQL.fromString("query instanceoffering").getSingleResult() as ZQLQueryReturn).inventories[0].uuid
+        ret = ZQL.fromString("query instanceoffering where uuid in ('a', '${uuid}')").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert cache.getCompiledCount() == compiled + 4
+
+        // limits are not values, plans are not shared by them
+        ret = ZQL.fromString("query instanceoffering limit 1").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        ret = ZQL.fromString("query instanceoffering limit 2").getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+        assert cache.getCompiledCount() == compiled + 6
+    }
+
+    void testPlanNotSharedByAccounts() {
+        createAccount {
+            name = "test"
+            password = "password"
+        }
+
+        def session = logInByAccount {
+            accountName = "test"
+            password = "password"
+        } as SessionInventory
+
+        String text = "query instanceoffering where name='instanceOffering'"
+        def ret = ZQL.fromString(text).getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+
+        SessionVO vo = Q.New(SessionVO.class).eq(SessionVO_.uuid, session.uuid).find()
+        ZQLContext.putAPISession(org.zstack.header.identity.SessionInventory.valueOf(vo))
+        try {
+            ret = ZQL.fromString(text).getSingleResult() as ZQLQueryReturn
+            assert ret.inventories.isEmpty()
+        } finally {
+            ZQLContext.cleanAPISession()
+        }
+
+        ret = ZQL.fromString(text).getSingleResult() as ZQLQueryReturn
+        assert ret.inventories.size() == 1
+    }
+
+    void testPlanSharedByAccountsWithOwnResults() {
+        ZQLPlanCache cache = bean(ZQLPlanCache.class)
+        cache.invalidateAll()
+
+        def sessions = ["test1", "test2"].collect { accountName ->
+            createAccount {
+                name = accountName
+                password = "password"
+            }
+
+            return logInByAccount {
+                accountName = accountName
+                password = "password"
+            } as SessionInventory
+        }
+
+        createInstanceOffering {
+            name = "test1-offering"
+            memorySize = SizeUnit.GIGABYTE.toByte(1)
+            cpuNum = 1
+            sessionId = sessions[0].uuid
+        }
+
+        def query = { SessionInventory session ->
+            SessionVO vo = Q.New(SessionVO.class).eq(SessionVO_.uuid, session.uuid).find()
+            ZQLContext.putAPISession(org.zstack.header.identity.SessionInventory.valueOf(vo))
+            try {
+                return ZQL.fromString("query instanceoffering where cpuNum = 1").getSingleResult() as ZQLQueryReturn
+            } finally {
+                ZQLContext.cleanAPISession()
+            }
+        }
+
+        long compiled = cache.getCompiledCount()
+        def ret = query(sessions[0])
+        assert ret.inventories.size() == 1
+        assert ret.inventories[0].name == "test1-offering"
+        assert cache.getCompiledCount() == compiled + 1
+
+        // the account is bound as a parameter, the plan is shared
+        ret = query(sessions[1])
+        assert ret.inventories.isEmpty()
+        assert cache.getCompiledCount() == compiled + 1
+    }
+}
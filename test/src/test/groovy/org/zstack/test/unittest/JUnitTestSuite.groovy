@@ -6,6 +6,8 @@ import org.junit.runner.RunWith
 import org.junit.runner.notification.Failure
 import org.junit.runners.Suite
 import org.zstack.configuration.OfferingUserConfigUtils
+import org.zstack.test.unittest.utils.IpIntervalsCase
+import org.zstack.test.unittest.utils.Ipv4RangeBitmapCase
 import org.zstack.test.unittest.utils.NetworkUtilsCase
 import org.zstack.test.unittest.utils.OfferingUserConfigUtilsCase
 import org.zstack.test.unittest.utils.SizeUnitUtilsCase
@@ -18,6 +20,8 @@ import java.util.stream.Collectors
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses([
+        IpIntervalsCase.class,
+        Ipv4RangeBitmapCase.class,
         NetworkUtilsCase.class,
         OfferingUserConfigUtilsCase.class,
         SizeUnitUtilsCase.class
@@ -0,0 +1,43 @@
+package org.zstack.test.unittest.utils
+
+import org.junit.Test
+import org.zstack.utils.network.IpIntervals
+import org.zstack.utils.network.LongSortedSet
+import org.zstack.utils.network.NetworkUtils
+
+class IpIntervalsCase {
+    @Test
+    void testLongSortedSet() {
+        LongSortedSet set = new LongSortedSet([5L, 1L, 3L, 5L, 3L])
+        assert set.size() == 3
+        assert set.contains(3)
+        assert !set.contains(4)
+        assert set.ceilingIndex(0) == 0
+        assert set.ceilingIndex(4) == 2
+        assert set.ceilingIndex(6) == 3
+    }
+
+    @Test
+    void testFreeIpv4() {
+        LongSortedSet used = new LongSortedSet([10L, 11L, 13L, 20L, 100L])
+        assert IpIntervals.free(10, 15, used, 10) == [12L, 14L, 15L]
+        assert IpIntervals.free(10, 30, used, 3) == [12L, 14L, 15L]
+        assert IpIntervals.free(19, 22, used, 10) == [19L, 21L, 22L]
+        assert IpIntervals.free(10, 11, used, 10).isEmpty()
+        assert IpIntervals.free(1, 3, new LongSortedSet(new long[0]), 10) == [1L, 2L, 3L]
+    }
+
+    @Test
+    void testFreeIpv6() {
+        TreeSet<BigInteger> used = new TreeSet<>([BigInteger.valueOf(2), BigInteger.valueOf(3)])
+        assert IpIntervals.free(BigInteger.ONE, BigInteger.valueOf(5), used, 10) ==
+                [BigInteger.ONE, BigInteger.valueOf(4), BigInteger.valueOf(5)]
+    }
+
+    @Test
+    void testFreeIpInLargeRange() {
+        List<String> used = ["10.0.0.0", "10.0.0.1", "10.0.0.3"]
+        assert NetworkUtils.getFreeIpInRange("10.0.0.0", "10.255.255.255", used, 2, "0.0.0.0") == ["10.0.0.2", "10.0.0.4"]
+        assert NetworkUtils.getFreeIpv6InRange("2001::1", "2001::ffff:ffff", ["2001::2"], 2, "2001::1") == ["2001::3", "2001::4"]
+    }
+}
@@ -0,0 +1,58 @@
+package org.zstack.test.unittest.utils
+
+import org.junit.Test
+import org.zstack.utils.network.Ipv4RangeBitmap
+import org.zstack.utils.network.NetworkUtils
+
+class Ipv4RangeBitmapCase {
+    @Test
+    void testFirstFree() {
+        long start = NetworkUtils.ipv4StringToLong("10.0.0.0")
+        long end = NetworkUtils.ipv4StringToLong("10.0.255.255")
+        Ipv4RangeBitmap bitmap = new Ipv4RangeBitmap(start, end)
+        assert bitmap.size() == 65536
+
+        for (long ip = start; ip < start + 1000; ip++) {
+            assert bitmap.setUsed(ip)
+        }
+        assert !bitmap.setUsed(start)
+        assert bitmap.usedCount() == 1000
+        assert bitmap.firstFree() == start + 1000
+
+        assert bitmap.setFree(start + 100)
+        assert !bitmap.setFree(start + 100)
+        assert bitmap.firstFree() == start + 100
+        assert bitmap.nextFree(start + 101) == start + 1000
+    }
+
+    @Test
+    void testFull() {
+        long start = NetworkUtils.ipv4StringToLong("192.168.0.10")
+        long end = NetworkUtils.ipv4StringToLong("192.168.0.200")
+        Ipv4RangeBitmap bitmap = new Ipv4RangeBitmap(start, end)
+
+        Random random = new Random()
+        Set<Long> ips = new HashSet<>()
+        for (int i = 0; i < bitmap.size(); i++) {
+            long ip = bitmap.randomFree(random)
+            assert ip >= start && ip <= end
+            assert bitmap.setUsed(ip)
+            ips.add(ip)
+        }
+
+        assert ips.size() == bitmap.size()
+        assert bitmap.isFull()
+        assert bitmap.firstFree() == -1
+        assert bitmap.randomFree(random) == -1
+
+        bitmap.setFree(end)
+        assert bitmap.firstFree() == end
+        assert bitmap.randomFree(random) == end
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    void testOutOfRange() {
+        long start = NetworkUtils.ipv4StringToLong("192.168.0.10")
+        new Ipv4RangeBitmap(start, start).setUsed(start + 1)
+    }
+}
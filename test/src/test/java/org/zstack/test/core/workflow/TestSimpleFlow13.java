@@ -0,0 +1,100 @@
+package org.zstack.test.core.workflow;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.zstack.core.Platform;
+import org.zstack.core.workflow.SimpleFlowChain;
+import org.zstack.core.workflow.WorkFlowException;
+import org.zstack.core.workflow.WorkFlowStatistic;
+import org.zstack.header.core.workflow.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * test @AfterDone runnables and flow latency statistics, names with uuids share one statistic
+ */
+public class TestSimpleFlow13 {
+    boolean afterDoneCalled;
+
+    public static class SleepFlow extends NoRollbackFlow {
+        @AfterDone
+        List<Runnable> afterDone = new ArrayList<>();
+
+        Runnable onDone;
+
+        @Override
+        public void run(FlowTrigger trigger, Map data) {
+            afterDone.add(onDone);
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+
+            trigger.next();
+        }
+    }
+
+    @Test
+    public void test() throws WorkFlowException {
+        for (int i = 0; i < 2; i++) {
+            afterDoneCalled = false;
+
+            SleepFlow flow = new SleepFlow();
+            flow.onDone = () -> afterDoneCalled = true;
+            new SimpleFlowChain().then(flow).start();
+
+            Assert.assertTrue(afterDoneCalled);
+        }
+
+        WorkFlowStatistic stat = SimpleFlowChain.getStatistics().get("SleepFlow");
+        Assert.assertNotNull(stat);
+        Assert.assertEquals(2, stat.getCount());
+        Assert.assertTrue(stat.getMaxTime() >= 20);
+        Assert.assertTrue(stat.getP99Time() >= 16);
+
+        // anonymous flows are recorded by their __name__, not collapsed by class
+        SimpleFlowChain chain = new SimpleFlowChain();
+        chain.allowWatch();
+        for (String name : new String[]{"test-flow13-a", "test-flow13-b"}) {
+            chain.then(new NoRollbackFlow() {
+                String __name__ = name;
+
+                @Override
+                public void run(FlowTrigger trigger, Map data) {
+                    trigger.next();
+                }
+            });
+        }
+        chain.start();
+
+        Map<String, WorkFlowStatistic> stats = SimpleFlowChain.getStatistics();
+        Assert.assertEquals(1, stats.get("test-flow13-a").getCount());
+        Assert.assertEquals(1, stats.get("test-flow13-b").getCount());
+
+        // names embedding resource uuids don't add an entry per resource
+        int num = SimpleFlowChain.getStatistics().size();
+        chain = new SimpleFlowChain();
+        for (int i = 0; i < 100; i++) {
+            String uuid = i % 2 == 0 ? Platform.getUuid() : UUID.randomUUID().toString();
+            chain.then(new NoRollbackFlow() {
+                String __name__ = String.format("test-flow13-stop-vm-%s-on-host-%s", uuid, Platform.getUuid());
+
+                @Override
+                public void run(FlowTrigger trigger, Map data) {
+                    trigger.next();
+                }
+            });
+        }
+        chain.start();
+
+        stats = SimpleFlowChain.getStatistics();
+        Assert.assertEquals(num + 1, stats.size());
+        Assert.assertEquals(100, stats.get("test-flow13-stop-vm-{uuid}-on-host-{uuid}").getCount());
+    }
+}
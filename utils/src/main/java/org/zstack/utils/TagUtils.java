@@ -1,6 +1,7 @@
 package org.zstack.utils;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  */
@@ -73,4 +74,25 @@ public class TagUtils {
     public static String tagPatternToSqlPattern(String tag) {
         return tag.replaceAll("\\{(.+?)\\}", "%");
     }
+
+    /**
+     * @return a regex matching strings as the SQL pattern does with LIKE
+     */
+    public static String sqlPatternToRegex(String sqlPattern) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sqlPattern.length(); i++) {
+            char c = sqlPattern.charAt(i);
+            if (c == '%') {
+                sb.append(".*");
+            } else if (c == '_') {
+                sb.append('.');
+            } else if (c == '\\' && i + 1 < sqlPattern.length()) {
+                sb.append(Pattern.quote(String.valueOf(sqlPattern.charAt(++i))));
+            } else {
+                sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return sb.toString();
+    }
 }
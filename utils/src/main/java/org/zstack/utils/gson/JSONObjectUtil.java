@@ -1,8 +1,11 @@
 package org.zstack.utils.gson;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 import org.json.JSONArray;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -58,6 +61,23 @@ public class JSONObjectUtil {
         return gson.toJson(obj);
     }
 
+    public static void toJson(Object obj, Appendable writer) {
+        gson.toJson(obj, writer);
+    }
+
+    public static void toJson(Object obj, JsonWriter writer) {
+        if (obj == null) {
+            gson.toJson(JsonNull.INSTANCE, writer);
+        } else {
+            gson.toJson(obj, obj.getClass(), writer);
+        }
+    }
+
+    // a streaming writer with the same settings as toJsonString()
+    public static JsonWriter newJsonWriter(Writer writer) throws IOException {
+        return gson.newJsonWriter(writer);
+    }
+
     public static <T> T rehashObject(Object obj, Class<T> clazz) {
         String str = toJsonString(obj);
         return toObject(str, clazz);
@@ -0,0 +1,61 @@
+package org.zstack.utils.network;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * arithmetic on intervals of ip addresses. Free addresses of a range are found in the gaps
+ * between its used addresses, so the cost is proportional to the addresses returned and
+ * the used addresses passed, not to the size of the range.
+ */
+public class IpIntervals {
+    /**
+     * @return free addresses in [from, end] in ascending order, at most limit of them
+     */
+    public static List<Long> free(long from, long end, LongSortedSet used, int limit) {
+        List<Long> ret = new ArrayList<>();
+        long cursor = from;
+        for (int i = used.ceilingIndex(from); i < used.size() && cursor <= end && ret.size() < limit; i++) {
+            long gapEnd = Math.min(used.get(i) - 1, end);
+            for (; cursor <= gapEnd && ret.size() < limit; cursor++) {
+                ret.add(cursor);
+            }
+
+            cursor = Math.max(cursor, used.get(i) + 1);
+        }
+
+        for (; cursor <= end && ret.size() < limit; cursor++) {
+            ret.add(cursor);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return free addresses in [from, end] in ascending order, at most limit of them
+     */
+    public static List<BigInteger> free(BigInteger from, BigInteger end, NavigableSet<BigInteger> used, int limit) {
+        List<BigInteger> ret = new ArrayList<>();
+        BigInteger cursor = from;
+        for (BigInteger u : used.tailSet(from, true)) {
+            if (cursor.compareTo(end) > 0 || ret.size() >= limit) {
+                break;
+            }
+
+            BigInteger gapEnd = u.subtract(BigInteger.ONE).min(end);
+            for (; cursor.compareTo(gapEnd) <= 0 && ret.size() < limit; cursor = cursor.add(BigInteger.ONE)) {
+                ret.add(cursor);
+            }
+
+            cursor = cursor.max(u.add(BigInteger.ONE));
+        }
+
+        for (; cursor.compareTo(end) <= 0 && ret.size() < limit; cursor = cursor.add(BigInteger.ONE)) {
+            ret.add(cursor);
+        }
+
+        return ret;
+    }
+}
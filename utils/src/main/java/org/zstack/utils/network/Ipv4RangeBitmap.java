@@ -0,0 +1,173 @@
+package org.zstack.utils.network;
+
+import java.util.Random;
+
+/**
+ * a bitmap of used addresses of an IPv4 range, one bit per address.
+ *
+ * Every word of 64 addresses has a bit in a summary, set when the word is full, so finding
+ * a free address skips full words by the summary instead of visiting them; in a /16 range
+ * that's at most 16 summary words. Not thread safe, callers synchronize.
+ */
+public class Ipv4RangeBitmap {
+    private final long startIp;
+    private final int size;
+    private final long[] words;
+    // bit w is set when words[w] is full
+    private final long[] fullWords;
+    private int used;
+
+    public Ipv4RangeBitmap(long startIp, long endIp) {
+        if (endIp < startIp) {
+            throw new IllegalArgumentException(String.format("invalid ip range[%s, %s]", startIp, endIp));
+        }
+
+        this.startIp = startIp;
+        size = (int) (endIp - startIp + 1);
+        words = new long[(size + 63) >>> 6];
+        fullWords = new long[(words.length + 63) >>> 6];
+
+        // addresses beyond the range in the last word are never free
+        int tail = size & 63;
+        if (tail != 0) {
+            words[words.length - 1] = -1L << tail;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int usedCount() {
+        return used;
+    }
+
+    public boolean isFull() {
+        return used >= size;
+    }
+
+    public boolean contains(long ip) {
+        return ip >= startIp && ip - startIp < size;
+    }
+
+    public boolean isUsed(long ip) {
+        int i = index(ip);
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return false if the ip is already used
+     */
+    public boolean setUsed(long ip) {
+        int i = index(ip);
+        int w = i >>> 6;
+        long bit = 1L << i;
+        if ((words[w] & bit) != 0) {
+            return false;
+        }
+
+        words[w] |= bit;
+        used++;
+        if (words[w] == -1L) {
+            fullWords[w >>> 6] |= 1L << w;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return false if the ip is already free
+     */
+    public boolean setFree(long ip) {
+        int i = index(ip);
+        int w = i >>> 6;
+        long bit = 1L << i;
+        if ((words[w] & bit) == 0) {
+            return false;
+        }
+
+        words[w] &= ~bit;
+        used--;
+        fullWords[w >>> 6] &= ~(1L << w);
+        return true;
+    }
+
+    private int index(long ip) {
+        if (!contains(ip)) {
+            throw new IllegalArgumentException(String.format("ip[%s] is out of the range[%s, %s]",
+                    NetworkUtils.longToIpv4String(ip), NetworkUtils.longToIpv4String(startIp),
+                    NetworkUtils.longToIpv4String(startIp + size - 1)));
+        }
+
+        return (int) (ip - startIp);
+    }
+
+    private int nextNotFullWord(int from) {
+        int s = from >>> 6;
+        if (s >= fullWords.length) {
+            return -1;
+        }
+
+        long notFull = ~fullWords[s] & (-1L << from);
+        while (true) {
+            if (notFull != 0) {
+                int w = (s << 6) + Long.numberOfTrailingZeros(notFull);
+                return w < words.length ? w : -1;
+            }
+
+            if (++s == fullWords.length) {
+                return -1;
+            }
+
+            notFull = ~fullWords[s];
+        }
+    }
+
+    private int nextFreeIndex(int from) {
+        if (from >= size) {
+            return -1;
+        }
+
+        int w = from >>> 6;
+        long free = ~words[w] & (-1L << from);
+        while (free == 0) {
+            w = nextNotFullWord(w + 1);
+            if (w == -1) {
+                return -1;
+            }
+
+            free = ~words[w];
+        }
+
+        return (w << 6) + Long.numberOfTrailingZeros(free);
+    }
+
+    /**
+     * @return the first free ip not less than the fromIp, or -1 if none
+     */
+    public long nextFree(long fromIp) {
+        int i = nextFreeIndex((int) (Math.max(fromIp, startIp) - startIp));
+        return i == -1 ? -1 : startIp + i;
+    }
+
+    public long firstFree() {
+        return nextFree(startIp);
+    }
+
+    /**
+     * @return the first free ip from a random position of the range, wrapping around at the end
+     * of the range, or -1 if none
+     */
+    public long randomFree(Random random) {
+        if (isFull()) {
+            return -1;
+        }
+
+        int i = nextFreeIndex(random.nextInt(size));
+        if (i == -1) {
+            i = nextFreeIndex(0);
+        }
+
+        return i == -1 ? -1 : startIp + i;
+    }
+}
@@ -0,0 +1,62 @@
+package org.zstack.utils.network;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * an immutable set of longs kept in a sorted primitive array, e.g. used IPv4 addresses
+ * in long, without boxing every element like a Set<Long> does.
+ */
+public class LongSortedSet {
+    private final long[] values;
+
+    public LongSortedSet(Collection<Long> c) {
+        long[] vs = new long[c.size()];
+        int i = 0;
+        for (Long v : c) {
+            vs[i++] = v;
+        }
+
+        values = dedupe(vs);
+    }
+
+    public LongSortedSet(long[] vs) {
+        values = dedupe(Arrays.copyOf(vs, vs.length));
+    }
+
+    private static long[] dedupe(long[] vs) {
+        Arrays.sort(vs);
+        int n = 0;
+        for (int i = 0; i < vs.length; i++) {
+            if (n == 0 || vs[n - 1] != vs[i]) {
+                vs[n++] = vs[i];
+            }
+        }
+
+        return n == vs.length ? vs : Arrays.copyOf(vs, n);
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    public long get(int index) {
+        return values[index];
+    }
+
+    public boolean contains(long v) {
+        return Arrays.binarySearch(values, v) >= 0;
+    }
+
+    /**
+     * @return index of the least value not less than v, or size() if none
+     */
+    public int ceilingIndex(long v) {
+        int i = Arrays.binarySearch(values, v);
+        return i >= 0 ? i : -i - 1;
+    }
+}
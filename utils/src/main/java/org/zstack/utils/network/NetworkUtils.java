@@ -1,7 +1,6 @@
 package org.zstack.utils.network;
 
 import com.googlecode.ipv6.IPv6Address;
-import com.googlecode.ipv6.IPv6AddressRange;
 import com.googlecode.ipv6.IPv6Network;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.net.util.SubnetUtils;
@@ -13,6 +12,7 @@ import org.zstack.utils.data.Pair;
 import org.zstack.utils.logging.CLogger;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.*;
@@ -449,46 +449,20 @@ public class NetworkUtils {
         long s = ipv4StringToLong(startIp);
         long e = ipv4StringToLong(endIp);
         long f = ipv4StringToLong(start);
-        List<String> res = new ArrayList<String>();
-        for (long i = s > f ? s : f; i<=e; i++) {
-            String ip = longToIpv4String(i);
-            if (!usedIps.contains(ip)) {
-                res.add(ip);
-            }
-
-            if (res.size() >= limit) {
-                break;
-            }
-        }
-
-        return res;
+        LongSortedSet used = new LongSortedSet(usedIps.stream().map(NetworkUtils::ipv4StringToLong).collect(Collectors.toList()));
+        return IpIntervals.free(Math.max(s, f), e, used, limit).stream()
+                .map(NetworkUtils::longToIpv4String).collect(Collectors.toList());
     }
 
     public static List<String> getFreeIpv6InRange(String startIp, String endIp, List<String> usedIps, int limit, String start) {
-        IPv6Address s = IPv6Address.fromString(startIp);
-        IPv6Address e = IPv6Address.fromString(endIp);
-        IPv6Address f = IPv6Address.fromString(start);
-        IPv6AddressRange range = IPv6AddressRange.fromFirstAndLast(s, e);
-
-        List<String> res = new ArrayList<String>();
-        while (s.compareTo(e) <= 0) {
-            if (s.compareTo(f) <= 0) {
-                s = s.add(1);
-                continue;
-            }
-            if (usedIps.contains(s.toString())) {
-                s = s.add(1);
-                continue;
-            }
-            res.add(s.toString());
-            s = s.add(1);
-
-            if (res.size() >= limit) {
-                break;
-            }
-        }
-
-        return res;
+        BigInteger s = IPv6Address.fromString(startIp).toBigInteger();
+        BigInteger e = IPv6Address.fromString(endIp).toBigInteger();
+        // the start address itself is not returned
+        BigInteger f = IPv6Address.fromString(start).toBigInteger().add(BigInteger.ONE);
+        TreeSet<BigInteger> used = usedIps.stream().map(IPv6NetworkUtils::getBigIntegerFromString)
+                .collect(Collectors.toCollection(TreeSet::new));
+        return IpIntervals.free(s.max(f), e, used, limit).stream()
+                .map(IPv6NetworkUtils::ipv6AddressToString).collect(Collectors.toList());
     }
 
     public static List<String> getAllMac() {